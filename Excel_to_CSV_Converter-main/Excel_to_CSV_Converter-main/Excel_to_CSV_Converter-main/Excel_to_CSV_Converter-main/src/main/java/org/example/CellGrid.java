@@ -0,0 +1,118 @@
+package org.example;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Append-only table of cell texts held in direct buffers, for the operations
+ * that have to see a whole sheet before writing its first line.
+ * <p>
+ * Texts are stored as UTF-8 in 1 MB chunks and located through one packed
+ * {@code long} per cell (chunk, offset and length), so a large sheet costs a
+ * handful of off-heap blocks rather than a {@code String} per cell on the
+ * Java heap. Rows may have different lengths. {@link #close()} frees the
+ * blocks through {@link DirectBuffers} rather than leaving them to the
+ * garbage collector.
+ */
+final class CellGrid implements AutoCloseable {
+
+    private static final int CHUNK_BITS = 20;
+    private static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+    private static final int LENGTH_BITS = 17;
+    private static final int INDEX_PAGE_BITS = 16;
+    private static final int INDEX_PAGE_SIZE = 1 << INDEX_PAGE_BITS;
+
+    private final List<ByteBuffer> chunks = new ArrayList<>();
+    private final List<ByteBuffer> indexPages = new ArrayList<>();
+    private int[] rowStarts = new int[1024];
+    private int rowCount;
+    private int cellCount;
+    private byte[] scratch = new byte[256];
+
+    void addRow(List<String> values) throws IOException {
+        if (rowCount + 1 >= rowStarts.length) {
+            rowStarts = Arrays.copyOf(rowStarts, rowStarts.length * 2);
+        }
+        rowStarts[rowCount] = cellCount;
+        for (String value : values) {
+            addCell(value);
+        }
+        rowCount++;
+        rowStarts[rowCount] = cellCount;
+    }
+
+    int getRowCount() {
+        return rowCount;
+    }
+
+    int getCellCount(int row) {
+        return rowStarts[row + 1] - rowStarts[row];
+    }
+
+    /**
+     * @return the text of the cell, or {@code null} if the row is shorter
+     */
+    String get(int row, int column) {
+        if (column >= getCellCount(row)) {
+            return null;
+        }
+        int cell = rowStarts[row] + column;
+        long location = indexPages.get(cell >>> INDEX_PAGE_BITS).getLong((cell & (INDEX_PAGE_SIZE - 1)) * Long.BYTES);
+        int length = (int) (location & ((1 << LENGTH_BITS) - 1));
+        int offset = (int) ((location >>> LENGTH_BITS) & (CHUNK_SIZE - 1));
+        ByteBuffer chunk = chunks.get((int) (location >>> (LENGTH_BITS + CHUNK_BITS)));
+        if (scratch.length < length) {
+            scratch = new byte[Math.max(length, scratch.length * 2)];
+        }
+        for (int i = 0; i < length; i++) {
+            scratch[i] = chunk.get(offset + i);
+        }
+        return new String(scratch, 0, length, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Frees the buffers; the grid is empty afterwards.
+     */
+    @Override
+    public void close() {
+        for (ByteBuffer chunk : chunks) {
+            DirectBuffers.free(chunk);
+        }
+        for (ByteBuffer page : indexPages) {
+            DirectBuffers.free(page);
+        }
+        chunks.clear();
+        indexPages.clear();
+        rowCount = 0;
+        cellCount = 0;
+    }
+
+    private void addCell(String value) throws IOException {
+        if (cellCount == Integer.MAX_VALUE) {
+            throw new IOException("Sheet has too many cells to buffer");
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length >= 1 << LENGTH_BITS) {
+            throw new IOException("Cell text too long to buffer: " + bytes.length + " bytes");
+        }
+        ByteBuffer chunk = chunks.isEmpty() ? null : chunks.get(chunks.size() - 1);
+        if (chunk == null || chunk.remaining() < bytes.length) {
+            chunk = ByteBuffer.allocateDirect(CHUNK_SIZE);
+            chunks.add(chunk);
+        }
+        long location = ((long) (chunks.size() - 1) << (LENGTH_BITS + CHUNK_BITS))
+                | ((long) chunk.position() << LENGTH_BITS) | bytes.length;
+        chunk.put(bytes);
+
+        int page = cellCount >>> INDEX_PAGE_BITS;
+        if (page == indexPages.size()) {
+            indexPages.add(ByteBuffer.allocateDirect(INDEX_PAGE_SIZE * Long.BYTES));
+        }
+        indexPages.get(page).putLong((cellCount & (INDEX_PAGE_SIZE - 1)) * Long.BYTES, location);
+        cellCount++;
+    }
+}
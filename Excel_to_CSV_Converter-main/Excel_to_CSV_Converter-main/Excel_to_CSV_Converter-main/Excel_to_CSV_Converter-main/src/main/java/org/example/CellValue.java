@@ -0,0 +1,185 @@
+package org.example;
+
+import org.apache.poi.ss.usermodel.DateUtil;
+
+/**
+ * One cell as delivered by {@link SheetReader}: its type and raw value,
+ * without a POI {@code Cell} behind it. Instances are reused from row to row.
+ * <p>
+ * A shared string cell of an .xlsx sheet only holds its index into the
+ * {@link SharedStrings} table until its text is asked for, and
+ * {@link #isCommentMarker()} tests it by that index, so the strings of a row
+ * dropped for its comment marker are never looked up.
+ */
+public final class CellValue {
+
+    public enum Type {
+        STRING, NUMERIC, BOOLEAN, FORMULA, ERROR, BLANK
+    }
+
+    private Type type = Type.BLANK;
+    private Type resultType = Type.BLANK;
+    private String text;
+    private SharedStrings sharedStrings;
+    private int sharedIndex;
+    private double number;
+    private boolean date;
+    private boolean date1904;
+    boolean present;
+    /** The record this cell is still to be decoded from, see {@link #defer}. */
+    Object record;
+    int recordIndex;
+
+    public Type getType() {
+        return type;
+    }
+
+    /**
+     * For a formula cell, the type of the result saved with it; for any other cell, its {@link #getType()}.
+     */
+    public Type getCachedResultType() {
+        return resultType;
+    }
+
+    public boolean isString() {
+        return type == Type.STRING;
+    }
+
+    /**
+     * The cell as text: strings as they are, numbers as {@link String#valueOf(double)},
+     * dates as {@link java.util.Date#toString()}, booleans as {@code true}/{@code false}
+     * and formulas as their formula text. Errors and blanks are empty.
+     */
+    public String asText() {
+        switch (type) {
+            case STRING:
+                if (text == null && sharedStrings != null) {
+                    text = sharedStrings.get(sharedIndex);
+                }
+                return text;
+            case FORMULA:
+                return text;
+            case NUMERIC:
+                return date ? DateUtil.getJavaDate(number, date1904).toString() : String.valueOf(number);
+            case BOOLEAN:
+                return number != 0 ? "true" : "false";
+            case ERROR:
+            case BLANK:
+            default:
+                return "";
+        }
+    }
+
+    /**
+     * The cell as an integer: numbers truncated, formulas by their cached
+     * numeric result, booleans as 1 or 0, strings only if they parse as an
+     * integer; anything else is 0.
+     */
+    public int asInt() {
+        switch (type) {
+            case STRING:
+                try {
+                    return Integer.parseInt(asText());
+                } catch (NumberFormatException e) {
+                    return 0;
+                }
+            case NUMERIC:
+            case BOOLEAN:
+            case FORMULA:
+                return Double.isNaN(number) ? 0 : (int) number;
+            case ERROR:
+            case BLANK:
+            default:
+                return 0;
+        }
+    }
+
+    /**
+     * The cell as a number: numbers as they are, formulas by their cached
+     * numeric result, booleans as 1 or 0; anything else is NaN.
+     */
+    public double asNumber() {
+        switch (type) {
+            case NUMERIC:
+            case BOOLEAN:
+            case FORMULA:
+                return number;
+            default:
+                return Double.NaN;
+        }
+    }
+
+    /**
+     * Whether the cell is a string whose text, trimmed, is {@code Comment} in any case.
+     */
+    boolean isCommentMarker() {
+        if (type != Type.STRING) {
+            return false;
+        }
+        return text == null && sharedStrings != null
+                ? sharedStrings.isCommentMarker(sharedIndex)
+                : isCommentMarker(text);
+    }
+
+    static boolean isCommentMarker(String text) {
+        return text != null && "Comment".equalsIgnoreCase(text.trim());
+    }
+
+    void setString(String value) {
+        set(Type.STRING, value, Double.NaN);
+    }
+
+    void setSharedString(SharedStrings table, int index) {
+        set(Type.STRING, null, Double.NaN);
+        sharedStrings = table;
+        sharedIndex = index;
+    }
+
+    void setNumber(double value, boolean dateFormatted, boolean workbookUses1904) {
+        set(Type.NUMERIC, null, value);
+        date = dateFormatted;
+        date1904 = workbookUses1904;
+    }
+
+    void setBoolean(boolean value) {
+        set(Type.BOOLEAN, null, value ? 1 : 0);
+    }
+
+    /**
+     * @param resultType the type of the result saved with the formula, {@link Type#BLANK} if it has none
+     * @param cachedResult the numeric result saved with the formula, or NaN if it has none
+     */
+    void setFormula(String formula, Type resultType, double cachedResult) {
+        set(Type.FORMULA, formula, cachedResult);
+        this.resultType = resultType;
+    }
+
+    /**
+     * Leaves the cell to be decoded from {@code record}, the {@code index}th
+     * cell of it, when {@link SheetRow#getCell} first returns it.
+     */
+    void defer(Object record, int index) {
+        set(Type.BLANK, null, Double.NaN);
+        this.record = record;
+        this.recordIndex = index;
+    }
+
+    void setError() {
+        set(Type.ERROR, null, Double.NaN);
+    }
+
+    void setBlank() {
+        set(Type.BLANK, null, Double.NaN);
+    }
+
+    private void set(Type type, String text, double number) {
+        this.type = type;
+        this.resultType = type;
+        this.text = text;
+        this.sharedStrings = null;
+        this.number = number;
+        this.date = false;
+        this.present = true;
+        this.record = null;
+    }
+}
@@ -0,0 +1,55 @@
+package org.example;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.nio.ByteBuffer;
+import java.util.logging.Logger;
+
+/**
+ * Releases direct and memory-mapped buffers without waiting for the garbage
+ * collector, through {@code sun.misc.Unsafe.invokeCleaner} where the JVM
+ * allows it. Where it does not, the memory is returned, or the file
+ * unmapped, when the buffer is collected.
+ * <p>
+ * A freed buffer must not be touched again, and neither must any slice or
+ * duplicate of it; callers free a buffer only once nothing can still read it.
+ */
+public final class DirectBuffers {
+
+    private static final Logger logger = Logger.getLogger(DirectBuffers.class.getName());
+    private static final MethodHandle INVOKE_CLEANER = findCleaner();
+
+    private DirectBuffers() {
+    }
+
+    /**
+     * Frees {@code buffer}, which must be a direct buffer obtained from
+     * {@link ByteBuffer#allocateDirect} or a file mapping, not a view of one.
+     */
+    public static void free(ByteBuffer buffer) {
+        if (INVOKE_CLEANER == null || buffer == null) {
+            return;
+        }
+        try {
+            INVOKE_CLEANER.invokeExact(buffer);
+        } catch (Throwable e) {
+            logger.fine("Could not free direct buffer: " + e);
+        }
+    }
+
+    private static MethodHandle findCleaner() {
+        try {
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+            theUnsafe.setAccessible(true);
+            return MethodHandles.lookup()
+                    .findVirtual(unsafeClass, "invokeCleaner", MethodType.methodType(void.class, ByteBuffer.class))
+                    .bindTo(theUnsafe.get(null));
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            logger.fine("Direct buffers will be freed by the garbage collector: " + e);
+            return null;
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package org.example;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Runs every operation of a {@link JobSpec} over one workbook in a single
+ * pass: the workbook is opened once and each sheet is scanned once for all
+ * the operations that touch it (see {@link OperationEngine}). Prints the time
+ * each operation took on its own and the time the shared scans took.
+ * <p>
+ * Usage: {@code JobRunner <job spec csv> <workbook> <output folder>}
+ */
+public class JobRunner {
+
+    private static final Logger logger = Logger.getLogger(JobRunner.class.getName());
+
+    public static void main(String[] args) {
+        if (args.length < 3) {
+            System.err.println("Usage: JobRunner <job spec csv> <workbook> <output folder>");
+            return;
+        }
+        try {
+            System.out.print(run(Path.of(args[0]), new File(args[1]), new File(args[2])));
+        } catch (IOException e) {
+            logger.log(Level.SEVERE, "Job failed: " + e.getMessage());
+        }
+    }
+
+    /**
+     * @return the timing summary of the run
+     */
+    public static String run(Path specFile, File workbookFile, File outputFolder) throws IOException {
+        JobSpec spec = JobSpec.read(specFile);
+        if (!outputFolder.isDirectory() && !outputFolder.mkdirs()) {
+            throw new IOException("Cannot create output folder " + outputFolder);
+        }
+        long start = System.nanoTime();
+        OperationEngine.run(workbookFile, outputFolder, spec.getOperations());
+        long elapsed = System.nanoTime() - start;
+        logger.info("Ran " + spec.getOperations().size() + " operation(s) over " + workbookFile + " in "
+                + elapsed / 1_000_000 + " ms");
+        return summarize(spec.getOperations(), elapsed);
+    }
+
+    private static String summarize(List<Operation> operations, long elapsedNanos) {
+        Map<String, long[]> totals = new LinkedHashMap<>();
+        for (Operation operation : operations) {
+            totals.put(operation.getName(), new long[4]);
+        }
+        long scanMillis = 0;
+        long openMillis = 0;
+        for (OperationMetrics.Stage stage : OperationMetrics.getStages()) {
+            if (OperationMetrics.SHARED.equals(stage.getOperation()) && OperationMetrics.STAGE_SCAN.equals(stage.getStage())) {
+                scanMillis += stage.getWallTimeMillis();
+                continue;
+            }
+            long[] total = totals.get(stage.getOperation());
+            if (total == null) {
+                continue;
+            }
+            if (OperationMetrics.STAGE_OPEN.equals(stage.getStage())) {
+                openMillis = Math.max(openMillis, stage.getWallTimeMillis());
+            } else {
+                total[0] += stage.getWallTimeMillis();
+                total[1] += stage.getRows();
+                total[2] += stage.getBytesWritten();
+                total[3] += OperationMetrics.STAGE_EXTRACT.equals(stage.getStage()) ? 1 : 0;
+            }
+        }
+
+        StringBuilder summary = new StringBuilder();
+        summary.append(String.format("%-24s %8s %10s %12s %10s%n", "operation", "sheets", "rows", "bytes", "ms"));
+        for (Map.Entry<String, long[]> entry : totals.entrySet()) {
+            long[] total = entry.getValue();
+            summary.append(String.format("%-24s %8d %10d %12d %10d%n", entry.getKey(), total[3], total[1], total[2], total[0]));
+        }
+        summary.append(String.format("%-24s %43d%n", "open workbook", openMillis));
+        summary.append(String.format("%-24s %43d%n", "shared sheet scans", scanMillis));
+        summary.append(String.format("%-24s %43d%n", "total", elapsedNanos / 1_000_000));
+        return summary.toString();
+    }
+}
@@ -0,0 +1,188 @@
+package org.example;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * A list of operations to run over one workbook, read from a CSV file with
+ * one operation per line:
+ * <pre>
+ * name,sheet,range,steps,output,comments,values
+ * users,Users,A1:F500,,{sheet}.csv
+ * users-turned,Users,A1:F500,transpose &gt; rotate 90,{sheet}_turned.csv
+ * all-rotated,*,,rotate 180,{name}_{sheet}.csv,,int
+ * </pre>
+ * <ul>
+ * <li>{@code name}: unique; the operation's timings are reported under it.</li>
+ * <li>{@code sheet}: a {@link SheetSelection} such as {@code Users}, {@code "#1,/Q\d/"} or
+ * {@code !Summary}, or {@code *} or empty for every sheet.</li>
+ * <li>{@code range}: {@code A1:F500}, a start cell only, or empty for the whole sheet.</li>
+ * <li>{@code steps}: {@code transpose} and {@code rotate <degrees>} steps separated by {@code >}, or empty.</li>
+ * <li>{@code output}: CSV file name, where {@code {sheet}} and {@code {name}} are replaced;
+ * {@code {name}_{sheet}.csv} if empty.</li>
+ * <li>{@code comments} (optional): {@code none}, {@code cell}, {@code row} or {@code header},
+ * see {@link Operation.CommentRule}.</li>
+ * <li>{@code values} (optional): {@code text} or {@code int}.</li>
+ * </ul>
+ * Empty lines, lines starting with {@code #} and a first line starting with
+ * {@code name} are skipped.
+ */
+public final class JobSpec {
+
+    private static final Pattern ROTATE = Pattern.compile("rotate\\s*:?\\s*(-?\\d+)");
+
+    private final List<Operation> operations;
+
+    private JobSpec(List<Operation> operations) {
+        this.operations = Collections.unmodifiableList(operations);
+    }
+
+    public static JobSpec read(Path specFile) throws IOException {
+        List<Operation> operations = new ArrayList<>();
+        Set<String> names = new HashSet<>();
+        List<String> lines = Files.readAllLines(specFile, StandardCharsets.UTF_8);
+        boolean header = true;
+        for (int i = 0; i < lines.size(); i++) {
+            String line = lines.get(i).trim();
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+            List<String> fields = splitCsv(line);
+            boolean firstRecord = header;
+            header = false;
+            if (firstRecord && "name".equalsIgnoreCase(fields.get(0))) {
+                continue;
+            }
+            try {
+                Operation operation = parse(fields);
+                if (!names.add(operation.getName())) {
+                    throw new IllegalArgumentException("duplicate operation name " + operation.getName());
+                }
+                operations.add(operation);
+            } catch (IllegalArgumentException e) {
+                throw new IOException(specFile + " line " + (i + 1) + ": " + e.getMessage(), e);
+            }
+        }
+        if (operations.isEmpty()) {
+            throw new IOException(specFile + " lists no operations");
+        }
+        return new JobSpec(operations);
+    }
+
+    public List<Operation> getOperations() {
+        return operations;
+    }
+
+    private static Operation parse(List<String> fields) {
+        if (fields.size() < 5) {
+            throw new IllegalArgumentException("expected name,sheet,range,steps,output but got " + fields.size() + " field(s)");
+        }
+        String name = fields.get(0);
+        if (name.isEmpty()) {
+            throw new IllegalArgumentException("operation name is empty");
+        }
+        Operation operation = Operation.named(name);
+
+        operation.sheets(SheetSelection.parse(fields.get(1)));
+
+        String range = fields.get(2);
+        if (!range.isEmpty()) {
+            String[] corners = range.split(":");
+            if (corners.length > 2 || !isCell(corners[0]) || (corners.length == 2 && !isCell(corners[1]))) {
+                throw new IllegalArgumentException("invalid range " + range);
+            }
+            operation.window(corners[0].replace("$", ""), corners.length == 2 ? corners[1].replace("$", "") : null);
+        }
+
+        String steps = fields.get(3);
+        if (!steps.isEmpty()) {
+            for (String step : steps.split(">")) {
+                String normalized = step.trim().toLowerCase(Locale.ROOT);
+                Matcher rotate = ROTATE.matcher(normalized);
+                if ("transpose".equals(normalized)) {
+                    operation.transpose();
+                } else if (rotate.matches()) {
+                    operation.rotate(Integer.parseInt(rotate.group(1)));
+                } else if (!"extract".equals(normalized)) {
+                    throw new IllegalArgumentException("unknown step '" + step.trim() + "'");
+                }
+            }
+        }
+
+        String output = fields.get(4).isEmpty() ? "{name}_{sheet}.csv" : fields.get(4);
+        operation.outputName(sheetName -> output.replace("{name}", name).replace("{sheet}", sheetName));
+
+        if (fields.size() > 5 && !fields.get(5).isEmpty()) {
+            operation.comments(commentRule(fields.get(5)));
+        }
+        if (fields.size() > 6 && !fields.get(6).isEmpty()) {
+            String values = fields.get(6).toLowerCase(Locale.ROOT);
+            if ("int".equals(values)) {
+                operation.integerValues();
+            } else if (!"text".equals(values)) {
+                throw new IllegalArgumentException("values must be text or int, not " + fields.get(6));
+            }
+        }
+        return operation;
+    }
+
+    private static Operation.CommentRule commentRule(String value) {
+        switch (value.toLowerCase(Locale.ROOT)) {
+            case "none":
+                return Operation.CommentRule.NONE;
+            case "cell":
+                return Operation.CommentRule.SKIP_CELL;
+            case "row":
+                return Operation.CommentRule.SKIP_ROW;
+            case "header":
+                return Operation.CommentRule.CUT_AT_HEADER;
+            default:
+                throw new IllegalArgumentException("comments must be none, cell, row or header, not " + value);
+        }
+    }
+
+    private static boolean isCell(String reference) {
+        return reference.trim().matches("\\$?[A-Za-z]+\\$?\\d+");
+    }
+
+    /**
+     * Splits one CSV line, honouring double-quoted fields; fields are trimmed.
+     */
+    private static List<String> splitCsv(String line) {
+        List<String> fields = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (quoted) {
+                if (c == '"' && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    field.append('"');
+                    i++;
+                } else if (c == '"') {
+                    quoted = false;
+                } else {
+                    field.append(c);
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                fields.add(field.toString().trim());
+                field.setLength(0);
+            } else {
+                field.append(c);
+            }
+        }
+        fields.add(field.toString().trim());
+        return fields;
+    }
+}
@@ -1,13 +1,9 @@
 package org.example;
 
-import org.apache.poi.ss.usermodel.*;
-import org.apache.poi.xssf.usermodel.XSSFWorkbook;
-import org.apache.poi.ss.util.CellReference;
-
 import javax.swing.*;
 import javax.swing.filechooser.FileNameExtensionFilter;
 import java.io.*;
-import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
 import java.util.Scanner;
 import java.util.logging.*;
 
@@ -24,9 +20,9 @@ public class MannualPromptExtraction {
             return;
         }
 
-        String operation = getUserInput("Enter the operation (transpose/rotate/extract): ").toLowerCase();
+        String operation = getUserInput("Enter the operation (transpose/rotate/extract/job): ").toLowerCase();
         if (!isValidOperation(operation)) {
-            logError("Invalid operation. Supported operations are transpose, rotate, and extract.");
+            logError("Invalid operation. Supported operations are transpose, rotate, extract and job.");
             return;
         }
 
@@ -36,55 +32,49 @@ public class MannualPromptExtraction {
             return;
         }
 
+        // A job spec names the sheets of each of its operations itself
+        SheetSelection sheets = SheetSelection.ALL;
+        if (!"job".equals(operation)) {
+            try {
+                sheets = SheetSelection.parse(getUserInput("Enter the sheets (names, #number, /regex/, !exclude; empty for all): "));
+            } catch (IllegalArgumentException e) {
+                logError("Invalid sheet selection: " + e.getMessage());
+                return;
+            }
+        }
+
         switch (operation) {
             case "rotate":
                 int degree = getRotationDegree();
-                rotateAndWrite(excelFilePath, degree, outputFolder);
+                rotateAndWrite(excelFilePath, degree, outputFolder, sheets);
                 break;
             case "extract":
                 String startCell = getUserInput("Enter the starting cell (e.g., A1): ");
                 String endCell = getUserInput("Enter the ending cell (e.g., C3): ");
-                extractCellsAndWrite(excelFilePath, startCell, endCell, outputFolder);
+                extractCellsAndWrite(excelFilePath, startCell, endCell, outputFolder, sheets);
                 break;
             case "transpose":
-                transposeAndWrite(excelFilePath, outputFolder);
+                transposeAndWrite(excelFilePath, outputFolder, sheets);
+                break;
+            case "job":
+                // Any number of operations from a job spec file, in one pass over the workbook
+                String specFile = getUserInput("Enter the job spec file: ");
+                runJob(specFile, excelFilePath, outputFolder);
                 break;
             default:
-                logError("Invalid operation. Supported operations are transpose, rotate, and extract.");
+                logError("Invalid operation. Supported operations are transpose, rotate, extract and job.");
                 break;
         }
 
         System.out.println("Excel file operation completed successfully.");
     }
 
-    private static void transposeAndWrite(String excelFilePath, String outputFolder) {
-        try (FileInputStream fis = new FileInputStream(excelFilePath);
-             Workbook workbook = new XSSFWorkbook(fis)) {
-
-            for (int i = 0; i < workbook.getNumberOfSheets(); i++) {
-                Sheet sheet = workbook.getSheetAt(i);
-                String sheetName = sheet.getSheetName();
-
-                File csvFile = new File(outputFolder, sheetName + "_transposed.csv");
-
-                try (BufferedWriter bw = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(csvFile), StandardCharsets.UTF_8))) {
-                    // Transpose logic
-                    for (int col = 0; col < sheet.getRow(0).getLastCellNum(); col++) {
-                        StringBuilder rowString = new StringBuilder();
-                        for (int row = 0; row <= sheet.getLastRowNum(); row++) {
-                            Row currentRow = sheet.getRow(row);
-                            if (currentRow != null && currentRow.getCell(col) != null) {
-                                if (rowString.length() > 0) {
-                                    rowString.append(",");
-                                }
-                                rowString.append(getCellValueAsString(currentRow.getCell(col)));
-                            }
-                        }
-                        bw.write(rowString.toString());
-                        bw.newLine();
-                    }
-                }
-            }
+    private static void transposeAndWrite(String excelFilePath, String outputFolder, SheetSelection sheets) {
+        try {
+            OperationEngine.run(new File(excelFilePath), new File(outputFolder), Operation.named("transpose")
+                    .sheets(sheets)
+                    .transpose()
+                    .outputName(sheetName -> sheetName + "_transposed.csv"));
 
             logger.info("Transposing Excel file completed successfully.");
 
@@ -93,34 +83,21 @@ public class MannualPromptExtraction {
         }
     }
 
-    private static void rotateAndWrite(String excelFilePath, int degree, String outputFolder) {
-        try (FileInputStream fis = new FileInputStream(excelFilePath);
-             Workbook workbook = new XSSFWorkbook(fis)) {
-
-            for (int i = 0; i < workbook.getNumberOfSheets(); i++) {
-                Sheet sheet = workbook.getSheetAt(i);
-                String sheetName = sheet.getSheetName();
-
-                int[][] matrix = createMatrix(sheet);
-                int[][] rotatedMatrix = rotateMatrix(matrix, degree);
-
-                File csvFile = new File(outputFolder, sheetName + "_rotated_" + degree + ".csv");
+    private static void runJob(String specFile, String excelFilePath, String outputFolder) {
+        try {
+            System.out.print(JobRunner.run(Path.of(specFile), new File(excelFilePath), new File(outputFolder)));
+        } catch (IOException e) {
+            logError("Error running job " + specFile + ": " + e.getMessage());
+        }
+    }
 
-                try (BufferedWriter bw = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(csvFile), StandardCharsets.UTF_8))) {
-                    // Write rotated matrix to CSV
-                    for (int[] row : rotatedMatrix) {
-                        StringBuilder rowString = new StringBuilder();
-                        for (int cell : row) {
-                            if (rowString.length() > 0) {
-                                rowString.append(",");
-                            }
-                            rowString.append(cell);
-                        }
-                        bw.write(rowString.toString());
-                        bw.newLine();
-                    }
-                }
-            }
+    private static void rotateAndWrite(String excelFilePath, int degree, String outputFolder, SheetSelection sheets) {
+        try {
+            OperationEngine.run(new File(excelFilePath), new File(outputFolder), Operation.named("rotate")
+                    .sheets(sheets)
+                    .integerValues()
+                    .rotate(degree)
+                    .outputName(sheetName -> sheetName + "_rotated_" + degree + ".csv"));
 
             logger.info("Rotating Excel file by " + degree + " degrees completed successfully.");
 
@@ -129,45 +106,13 @@ public class MannualPromptExtraction {
         }
     }
 
-    private static void extractCellsAndWrite(String excelFilePath, String startCell, String endCell, String outputFolder) {
-        try (FileInputStream fis = new FileInputStream(excelFilePath);
-             Workbook workbook = new XSSFWorkbook(fis)) {
-
-            for (int i = 0; i < workbook.getNumberOfSheets(); i++) {
-                Sheet sheet = workbook.getSheetAt(i);
-                String sheetName = sheet.getSheetName();
-
-                CellReference startRef = new CellReference(startCell);
-                CellReference endRef = new CellReference(endCell);
-
-                int startRow = startRef.getRow();
-                int endRow = endRef.getRow();
-                int startCol = startRef.getCol();
-                int endCol = endRef.getCol();
-
-                File csvFile = new File(outputFolder, sheetName + "_extracted_" + startCell + "_" + endCell + ".csv");
-
-                try (BufferedWriter bw = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(csvFile), StandardCharsets.UTF_8))) {
-                    // Write cells in the specified range to CSV
-                    for (int row = startRow; row <= endRow; row++) {
-                        Row currentRow = sheet.getRow(row);
-                        if (currentRow != null) {
-                            StringBuilder rowString = new StringBuilder();
-                            for (int col = startCol; col <= endCol; col++) {
-                                Cell cell = currentRow.getCell(col);
-                                if (cell != null) {
-                                    if (rowString.length() > 0) {
-                                        rowString.append(",");
-                                    }
-                                    rowString.append(getCellValueAsString(cell));
-                                }
-                            }
-                            bw.write(rowString.toString());
-                            bw.newLine();
-                        }
-                    }
-                }
-            }
+    private static void extractCellsAndWrite(String excelFilePath, String startCell, String endCell, String outputFolder,
+                                             SheetSelection sheets) {
+        try {
+            OperationEngine.run(new File(excelFilePath), new File(outputFolder), Operation.named("extract")
+                    .sheets(sheets)
+                    .window(startCell, endCell)
+                    .outputName(sheetName -> sheetName + "_extracted_" + startCell + "_" + endCell + ".csv"));
 
             logger.info("Extracting cells from Excel file completed successfully.");
 
@@ -176,96 +121,6 @@ public class MannualPromptExtraction {
         }
     }
 
-    private static int[][] createMatrix(Sheet sheet) {
-        int numRows = sheet.getLastRowNum() + 1;
-        int numCols = sheet.getRow(0).getLastCellNum();
-        int[][] matrix = new int[numRows][numCols];
-
-        for (int row = 0; row < numRows; row++) {
-            Row currentRow = sheet.getRow(row);
-            if (currentRow != null) {
-                for (int col = 0; col < numCols; col++) {
-                    Cell cell = currentRow.getCell(col);
-                    if (cell != null) {
-                        switch (cell.getCellType()) {
-                            case STRING:
-                                // Handle string values if needed
-                                String stringValue = cell.getStringCellValue();
-                                // Convert string value to numeric if applicable
-                                try {
-                                    matrix[row][col] = Integer.parseInt(stringValue);
-                                } catch (NumberFormatException e) {
-                                    // Handle if string cannot be parsed to integer
-                                    matrix[row][col] = 0; // or another default value
-                                }
-                                break;
-                            case NUMERIC:
-                                // Check if the cell is formatted as numeric
-                                if (DateUtil.isCellDateFormatted(cell)) {
-                                    matrix[row][col] = (int) cell.getDateCellValue().getTime();
-                                } else {
-                                    matrix[row][col] = (int) cell.getNumericCellValue();
-                                }
-                                break;
-                            case BOOLEAN:
-                                // Handle boolean values if needed
-                                matrix[row][col] = cell.getBooleanCellValue() ? 1 : 0;
-                                break;
-                            case FORMULA:
-                                // Handle formulas if needed
-                                matrix[row][col] = (int) cell.getNumericCellValue(); // or another appropriate handling
-                                break;
-                            case BLANK:
-                            default:
-                                // Handle blank cells or other types
-                                matrix[row][col] = 0; // or another default value
-                                break;
-                        }
-                    }
-                }
-            }
-        }
-        return matrix;
-    }
-
-    private static int[][] rotateMatrix(int[][] matrix, int degree) {
-        int numRows = matrix.length;
-        int numCols = matrix[0].length;
-        int[][] rotatedMatrix;
-
-        switch (degree % 360) {
-            case 90:
-                rotatedMatrix = new int[numCols][numRows];
-                for (int i = 0; i < numRows; i++) {
-                    for (int j = 0; j < numCols; j++) {
-                        rotatedMatrix[j][numRows - 1 - i] = matrix[i][j];
-                    }
-                }
-                break;
-            case 180:
-                rotatedMatrix = new int[numRows][numCols];
-                for (int i = 0; i < numRows; i++) {
-                    for (int j = 0; j < numCols; j++) {
-                        rotatedMatrix[numRows - 1 - i][numCols - 1 - j] = matrix[i][j];
-                    }
-                }
-                break;
-            case 270:
-                rotatedMatrix = new int[numCols][numRows];
-                for (int i = 0; i < numRows; i++) {
-                    for (int j = 0; j < numCols; j++) {
-                        rotatedMatrix[numCols - 1 - j][i] = matrix[i][j];
-                    }
-                }
-                break;
-            default:
-                rotatedMatrix = matrix; // No rotation
-                break;
-        }
-
-        return rotatedMatrix;
-    }
-
     private static int getRotationDegree() {
         Scanner scanner = new Scanner(System.in);
         System.out.print("Enter the degree to rotate (-∞ to +∞): ");
@@ -308,7 +163,7 @@ public class MannualPromptExtraction {
     }
 
     private static boolean isValidOperation(String operation) {
-        return operation.equals("transpose") || operation.equals("rotate") || operation.equals("extract");
+        return operation.equals("transpose") || operation.equals("rotate") || operation.equals("extract") || operation.equals("job");
     }
 
     private static void logError(String message) {
@@ -332,26 +187,4 @@ public class MannualPromptExtraction {
         }
     }
 
-    private static String getCellValueAsString(Cell cell) {
-        if (cell == null) {
-            return "";
-        }
-        switch (cell.getCellType()) {
-            case STRING:
-                return cell.getStringCellValue();
-            case NUMERIC:
-                if (DateUtil.isCellDateFormatted(cell)) {
-                    return cell.getDateCellValue().toString();
-                } else {
-                    return String.valueOf(cell.getNumericCellValue());
-                }
-            case BOOLEAN:
-                return String.valueOf(cell.getBooleanCellValue());
-            case FORMULA:
-                return cell.getCellFormula();
-            case BLANK:
-            default:
-                return "";
-        }
-    }
 }
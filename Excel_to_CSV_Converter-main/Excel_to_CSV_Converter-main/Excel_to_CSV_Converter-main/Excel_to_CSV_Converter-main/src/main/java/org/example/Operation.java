@@ -0,0 +1,328 @@
+package org.example;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Function;
+
+import org.apache.poi.ss.util.CellAddress;
+
+/**
+ * One chain of stages run by {@link OperationEngine}, from the cells of a
+ * sheet to one CSV file per sheet:
+ * <ol>
+ * <li>crop to a cell window ({@link #window}),</li>
+ * <li>drop comment cells, rows or columns ({@link #comments}),</li>
+ * <li>render each cell as text or as an integer ({@link #integerValues}),</li>
+ * <li>transpose and/or rotate ({@link #transpose}, {@link #rotate}), in any order and number,</li>
+ * <li>write the rows as RFC 4180 CSV.</li>
+ * </ol>
+ * The first three stages work row by row on the streamed sheet. Without a
+ * transpose or rotation every row is written as soon as it is read and empty
+ * rows are left out; otherwise the rows of the window are buffered once, off
+ * the heap, with rows missing from the file kept as blank rows, and written
+ * in the composed {@link Orientation}. The width of the buffered table is
+ * that of its first row.
+ */
+public final class Operation {
+
+    /**
+     * What to do with cells whose text is {@code Comment}.
+     */
+    public enum CommentRule {
+        /** Keep them. */
+        NONE,
+        /** Leave out the cell itself. */
+        SKIP_CELL,
+        /** Leave out every row that has one. */
+        SKIP_ROW,
+        /** Leave out, in every row, the columns from the first one in the window's first row onwards. */
+        CUT_AT_HEADER
+    }
+
+    private final String name;
+    private SheetSelection sheets = SheetSelection.ALL;
+    private int startRow;
+    private int startColumn;
+    private int endRow = -1;
+    private int endColumn = -1;
+    private CommentRule comments = CommentRule.NONE;
+    private boolean integerValues;
+    private Orientation orientation = Orientation.IDENTITY;
+    private Function<String, String> outputName = sheet -> sheet + ".csv";
+
+    private Operation(String name) {
+        this.name = name;
+    }
+
+    /**
+     * @param name the name the operation's timings are reported under in {@link OperationMetrics}
+     */
+    public static Operation named(String name) {
+        return new Operation(name);
+    }
+
+    /**
+     * Restricts the operation to one sheet; by default it runs on every sheet.
+     */
+    public Operation sheet(String sheetName) {
+        return sheets(SheetSelection.named(sheetName));
+    }
+
+    /**
+     * Restricts the operation to the sheets in {@code selection}; by default it runs on every sheet.
+     */
+    public Operation sheets(SheetSelection selection) {
+        this.sheets = selection;
+        return this;
+    }
+
+    /**
+     * Crops every sheet to the cells from {@code startCell} to {@code endCell}.
+     * Without an end cell the window runs to the last row, and each row to its last cell.
+     */
+    public Operation window(String startCell, String endCell) {
+        CellAddress start = new CellAddress(startCell);
+        this.startRow = start.getRow();
+        this.startColumn = start.getColumn();
+        if (endCell != null && !endCell.trim().isEmpty()) {
+            CellAddress end = new CellAddress(endCell.trim());
+            this.endRow = end.getRow();
+            this.endColumn = end.getColumn();
+        } else {
+            this.endRow = -1;
+            this.endColumn = -1;
+        }
+        return this;
+    }
+
+    public Operation comments(CommentRule rule) {
+        this.comments = rule;
+        return this;
+    }
+
+    /**
+     * Writes every cell as {@link CellValue#asInt()} instead of {@link CellValue#asText()}.
+     */
+    public Operation integerValues() {
+        this.integerValues = true;
+        return this;
+    }
+
+    public Operation transpose() {
+        return orient(Orientation.TRANSPOSE);
+    }
+
+    public Operation rotate(int degrees) {
+        return orient(Orientation.rotation(degrees));
+    }
+
+    public Operation orient(Orientation next) {
+        this.orientation = orientation.then(next);
+        return this;
+    }
+
+    /**
+     * @param outputName maps a sheet name to the name of its CSV file in the output folder
+     */
+    public Operation outputName(Function<String, String> outputName) {
+        this.outputName = outputName;
+        return this;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    SheetSelection getSheets() {
+        return sheets;
+    }
+
+    /**
+     * @return the cells this operation reads from a sheet, for {@link SheetReader} to skip the rest
+     */
+    SheetReader.Window window() {
+        return new SheetReader.Window(startRow, endRow, startColumn, endColumn);
+    }
+
+    File outputFile(String sheet, File outputFolder) {
+        return new File(outputFolder, outputName.apply(sheet));
+    }
+
+    SheetRun start(String sheet, File csvFile) throws IOException {
+        return new SheetRun(sheet, csvFile);
+    }
+
+    static String escape(String value) {
+        if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0 && value.indexOf('\r') < 0) {
+            return value;
+        }
+        return "\"" + value.replace("\"", "\"\"") + "\"";
+    }
+
+    /**
+     * The operation applied to one sheet; fed row by row on the reading thread.
+     */
+    final class SheetRun {
+
+        private final String sheet;
+        private final File csvFile;
+        private final BufferedWriter writer;
+        private final CellGrid grid;
+        private final OperationMetrics.Stage extractMetrics;
+        private long extractNanos;
+        private final List<String> values = new ArrayList<>();
+        private final StringBuilder line = new StringBuilder();
+        private int nextRow = startRow;
+        private int width = -1;
+        private int cutColumn = -1;
+        private boolean closed;
+
+        private SheetRun(String sheet, File csvFile) throws IOException {
+            this.sheet = sheet;
+            this.csvFile = csvFile;
+            this.writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(csvFile), StandardCharsets.UTF_8));
+            this.grid = orientation.isIdentity() ? null : new CellGrid();
+            this.extractMetrics = OperationMetrics.stage(name, sheet, OperationMetrics.STAGE_EXTRACT);
+        }
+
+        /**
+         * Adds time the engine measured around {@link #row} to this operation's extract stage.
+         */
+        void addExtractTime(long nanos) {
+            extractNanos += nanos;
+        }
+
+        void row(SheetRow row) throws IOException {
+            int index = row.getRowIndex();
+            if (index < startRow || (endRow >= 0 && index > endRow)) {
+                return;
+            }
+            if (comments == CommentRule.CUT_AT_HEADER && index == startRow) {
+                cutColumn = findComment(row, endColumn >= 0 ? endColumn : row.getLastCellNum() - 1);
+            }
+            int last = endColumn >= 0 ? endColumn : row.getLastCellNum() - 1;
+            if (cutColumn >= 0) {
+                last = Math.min(last, cutColumn - 1);
+            }
+
+            if (comments == CommentRule.SKIP_ROW && findComment(row, last) >= 0) {
+                nextRow = index + 1;
+                return;
+            }
+            values.clear();
+            for (int column = startColumn; column <= last; column++) {
+                CellValue cell = row.getCell(column);
+                if (comments == CommentRule.SKIP_CELL && cell != null && cell.isCommentMarker()) {
+                    continue;
+                }
+                values.add(render(cell));
+            }
+
+            if (grid == null) {
+                writeLine(values);
+                return;
+            }
+            for (; nextRow < index; nextRow++) {
+                grid.addRow(Collections.emptyList());
+            }
+            grid.addRow(values);
+            extractMetrics.recordRow(values.size());
+            nextRow = index + 1;
+            if (width < 0) {
+                width = values.size();
+            }
+        }
+
+        void finish() throws IOException {
+            if (grid == null) {
+                long start = System.nanoTime();
+                close();
+                extractMetrics.recordTime(extractNanos + System.nanoTime() - start);
+                extractMetrics.addBytesWritten(csvFile.length());
+                return;
+            }
+            extractMetrics.recordTime(extractNanos);
+            OperationMetrics.Stage writeMetrics = OperationMetrics.stage(name, sheet, OperationMetrics.STAGE_WRITE);
+            try (OperationMetrics.Timer ignored = writeMetrics.start()) {
+                int rows = grid.getRowCount();
+                int columns = Math.max(width, 0);
+                int outputRows = orientation.outputRows(rows, columns);
+                int outputColumns = orientation.outputColumns(rows, columns);
+                String blank = render(null);
+                for (int r = 0; r < outputRows; r++) {
+                    values.clear();
+                    for (int c = 0; c < outputColumns; c++) {
+                        String value = grid.get(orientation.sourceRow(r, c, rows), orientation.sourceColumn(r, c, columns));
+                        values.add(value == null ? blank : value);
+                    }
+                    writeLine(values);
+                }
+                close();
+            }
+            writeMetrics.addBytesWritten(csvFile.length());
+        }
+
+        /**
+         * Closes the output without finishing it, after a failure, and frees the buffered sheet.
+         */
+        void close() throws IOException {
+            if (!closed) {
+                closed = true;
+                try {
+                    writer.close();
+                } finally {
+                    if (grid != null) {
+                        grid.close();
+                    }
+                }
+            }
+        }
+
+        private void writeLine(List<String> cells) throws IOException {
+            line.setLength(0);
+            for (int i = 0; i < cells.size(); i++) {
+                if (i > 0) {
+                    line.append(',');
+                }
+                line.append(escape(cells.get(i)));
+            }
+            if (grid == null && line.length() == 0) {
+                return;
+            }
+            writer.write(line.toString());
+            writer.newLine();
+            if (grid == null) {
+                extractMetrics.recordRow(cells.size());
+            }
+        }
+
+        private String render(CellValue cell) {
+            if (integerValues) {
+                return cell == null ? "0" : Integer.toString(cell.asInt());
+            }
+            return cell == null ? "" : cell.asText();
+        }
+
+        /**
+         * Tests the cells by {@link CellValue#isCommentMarker()}, so that none of them is rendered.
+         *
+         * @return the first column up to {@code last} holding a comment marker, or -1
+         */
+        private int findComment(SheetRow row, int last) {
+            for (int column = startColumn; column <= last; column++) {
+                CellValue cell = row.getCell(column);
+                if (cell != null && cell.isCommentMarker()) {
+                    return column;
+                }
+            }
+            return -1;
+        }
+    }
+}
@@ -0,0 +1,203 @@
+package org.example;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.StringJoiner;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Runs {@link Operation}s over a workbook with one {@link SheetReader}.
+ * <p>
+ * The workbook is opened once and each sheet is parsed once, whatever the
+ * number of operations: every row read is handed to each operation that
+ * applies to the sheet. Each operation's {@link SheetSelection} is resolved
+ * against the sheet names before any sheet is read, and sheets no operation
+ * selects are not opened, let alone parsed. Only
+ * the union of the operations' cell windows is read from a sheet, so a
+ * small range of a large sheet costs little more than that range. The
+ * interactive front-ends in this package and in {@code org.project} only
+ * collect their parameters and describe their operation; {@link JobRunner}
+ * runs a whole {@link JobSpec} this way.
+ * <p>
+ * Time is split between the operations that share a scan: each one's
+ * {@code extract} stage only counts the time spent in its own stages, and
+ * the parsing itself is reported once per sheet as the
+ * {@value OperationMetrics#STAGE_SCAN} stage of operation
+ * {@value OperationMetrics#SHARED}.
+ */
+public final class OperationEngine {
+
+    private static final Logger logger = Logger.getLogger(OperationEngine.class.getName());
+
+    private OperationEngine() {
+    }
+
+    public static void run(File workbookFile, File outputFolder, Operation operation) throws IOException {
+        run(workbookFile, outputFolder, Collections.singletonList(operation));
+    }
+
+    /**
+     * Writes the CSV files of all {@code operations} into {@code outputFolder}
+     * and then the metrics report, if one was requested.
+     */
+    public static void run(File workbookFile, File outputFolder, List<Operation> operations) throws IOException {
+        try (SheetReader reader = open(workbookFile, operations)) {
+            reader.read(new Dispatcher(select(reader.getSheetNames(), operations), outputFolder));
+        } finally {
+            OperationMetrics.writeReportIfRequested();
+        }
+    }
+
+    private static SheetReader open(File workbookFile, List<Operation> operations) throws IOException {
+        Set<String> names = new LinkedHashSet<>();
+        for (Operation operation : operations) {
+            names.add(operation.getName());
+        }
+        List<OperationMetrics.Timer> timers = new ArrayList<>(names.size());
+        for (String name : names) {
+            timers.add(OperationMetrics.stage(name, "*", OperationMetrics.STAGE_OPEN).start());
+        }
+        try {
+            return SheetReader.open(workbookFile);
+        } finally {
+            for (OperationMetrics.Timer timer : timers) {
+                timer.close();
+            }
+        }
+    }
+
+    /**
+     * @return for each sheet, in workbook order, the operations that select it
+     */
+    private static List<List<Operation>> select(List<String> sheetNames, List<Operation> operations) throws IOException {
+        List<List<Operation>> bySheet = new ArrayList<>(sheetNames.size());
+        for (int i = 0; i < sheetNames.size(); i++) {
+            bySheet.add(new ArrayList<>());
+        }
+        for (Operation operation : operations) {
+            Set<Integer> selected;
+            try {
+                selected = operation.getSheets().resolve(sheetNames);
+            } catch (IllegalArgumentException e) {
+                throw new IOException("Operation " + operation.getName() + ": " + e.getMessage(), e);
+            }
+            StringJoiner names = new StringJoiner(", ");
+            for (int index : selected) {
+                bySheet.get(index).add(operation);
+                names.add(sheetNames.get(index));
+            }
+            if (selected.isEmpty()) {
+                logger.warning("Operation " + operation.getName() + " selects none of the sheets " + sheetNames);
+            } else if (!operation.getSheets().isAll()) {
+                logger.info("Operation " + operation.getName() + " runs on " + selected.size() + " of "
+                        + sheetNames.size() + " sheet(s): " + names);
+            }
+        }
+        return bySheet;
+    }
+
+    /**
+     * Fans the rows of each sheet out to the operations that select it.
+     */
+    private static final class Dispatcher implements SheetReader.Handler {
+
+        private final List<List<Operation>> operations;
+        private final File outputFolder;
+        private final List<Operation.SheetRun> runs = new ArrayList<>();
+        private String sheetName;
+        private int sheetIndex;
+        private SheetReader.Window window;
+        private long scanNanos;
+        private long lastMark;
+
+        private Dispatcher(List<List<Operation>> operations, File outputFolder) {
+            this.operations = operations;
+            this.outputFolder = outputFolder;
+        }
+
+        @Override
+        public SheetReader.Window startSheet(String sheetName, int sheetIndex) throws IOException {
+            this.sheetName = sheetName;
+            this.sheetIndex = sheetIndex;
+            runs.clear();
+            Set<File> outputs = new HashSet<>();
+            window = null;
+            try {
+                for (Operation operation : operations.get(sheetIndex)) {
+                    File csvFile = operation.outputFile(sheetName, outputFolder);
+                    if (!outputs.add(csvFile.getAbsoluteFile())) {
+                        throw new IOException("More than one operation writes " + csvFile + " for sheet " + sheetName);
+                    }
+                    runs.add(operation.start(sheetName, csvFile));
+                    window = window == null ? operation.window() : window.union(operation.window());
+                }
+            } catch (IOException | RuntimeException e) {
+                closeRuns();
+                throw e;
+            }
+            scanNanos = 0;
+            lastMark = System.nanoTime();
+            return window;
+        }
+
+        @Override
+        public void row(SheetRow row) throws IOException {
+            long mark = System.nanoTime();
+            scanNanos += mark - lastMark;
+            try {
+                for (Operation.SheetRun run : runs) {
+                    run.row(row);
+                    long now = System.nanoTime();
+                    run.addExtractTime(now - mark);
+                    mark = now;
+                }
+            } catch (IOException | RuntimeException e) {
+                closeRuns();
+                throw e;
+            }
+            lastMark = mark;
+        }
+
+        @Override
+        public void endSheet() throws IOException {
+            List<Operation> selected = operations.get(sheetIndex);
+            scanNanos += System.nanoTime() - lastMark;
+            OperationMetrics.stage(OperationMetrics.SHARED, sheetName, OperationMetrics.STAGE_SCAN).recordTime(scanNanos);
+            try {
+                for (Operation.SheetRun run : runs) {
+                    run.finish();
+                }
+            } finally {
+                closeRuns();
+            }
+            logger.info("Sheet " + sheetName + " scanned once (" + scanNanos / 1_000_000 + " ms, " + window
+                    + ") for " + describe(selected));
+        }
+
+        private void closeRuns() {
+            for (Operation.SheetRun run : runs) {
+                try {
+                    run.close();
+                } catch (IOException e) {
+                    logger.log(Level.WARNING, "Error closing output of sheet " + sheetName + ": " + e.getMessage());
+                }
+            }
+            runs.clear();
+        }
+
+        private static String describe(List<Operation> operations) {
+            StringJoiner names = new StringJoiner(", ");
+            for (Operation operation : operations) {
+                names.add(operation.getName());
+            }
+            return names.toString();
+        }
+    }
+}
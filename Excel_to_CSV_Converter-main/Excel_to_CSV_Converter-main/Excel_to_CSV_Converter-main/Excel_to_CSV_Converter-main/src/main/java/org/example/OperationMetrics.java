@@ -0,0 +1,286 @@
+package org.example;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Per-operation, per-sheet, per-stage metrics for the interactive operations
+ * in this package: wall time, rows and cells processed, bytes written and the
+ * bytes allocated by the timed thread.
+ * <p>
+ * Counters are {@link LongAdder}s so recording never blocks. Every stage is
+ * registered as an MXBean under {@code org.example:type=Operation,...}; setting
+ * the {@value #REPORT_PROPERTY} system property makes {@link #writeReportIfRequested()}
+ * dump all stages as JSON to that path.
+ */
+public final class OperationMetrics {
+
+    public static final String REPORT_PROPERTY = "operation.metrics.report";
+
+    public static final String STAGE_OPEN = "open";
+    public static final String STAGE_EXTRACT = "extract";
+    public static final String STAGE_ROTATE = "rotate";
+    public static final String STAGE_WRITE = "write";
+    /** Parsing a sheet, shared by every operation run on it; reported under operation {@value #SHARED}. */
+    public static final String STAGE_SCAN = "scan";
+    public static final String SHARED = "*";
+
+    private static final Logger logger = Logger.getLogger(OperationMetrics.class.getName());
+    private static final com.sun.management.ThreadMXBean THREADS = allocationTrackingThreadBean();
+    private static final ConcurrentMap<String, Stage> STAGES = new ConcurrentHashMap<>();
+
+    private OperationMetrics() {
+    }
+
+    public interface StageMXBean {
+        String getOperation();
+
+        String getSheet();
+
+        String getStage();
+
+        long getInvocations();
+
+        long getWallTimeMillis();
+
+        long getRows();
+
+        long getCells();
+
+        long getBytesWritten();
+
+        long getAllocatedBytes();
+    }
+
+    public static final class Stage implements StageMXBean {
+
+        private final String operation;
+        private final String sheet;
+        private final String stage;
+        private final LongAdder invocations = new LongAdder();
+        private final LongAdder wallNanos = new LongAdder();
+        private final LongAdder rows = new LongAdder();
+        private final LongAdder cells = new LongAdder();
+        private final LongAdder bytesWritten = new LongAdder();
+        private final LongAdder allocatedBytes = new LongAdder();
+
+        private Stage(String operation, String sheet, String stage) {
+            this.operation = operation;
+            this.sheet = sheet;
+            this.stage = stage;
+        }
+
+        /**
+         * Starts timing one invocation of this stage on the current thread;
+         * close the returned timer on the same thread.
+         */
+        public Timer start() {
+            return new Timer(this);
+        }
+
+        public void recordRow(int cellCount) {
+            rows.increment();
+            cells.add(cellCount);
+        }
+
+        public void addBytesWritten(long bytes) {
+            bytesWritten.add(bytes);
+        }
+
+        /**
+         * Records one invocation timed by the caller, for work that is
+         * interleaved with other stages and cannot use a {@link Timer}.
+         */
+        public void recordTime(long nanos) {
+            wallNanos.add(nanos);
+            invocations.increment();
+        }
+
+        @Override
+        public String getOperation() {
+            return operation;
+        }
+
+        @Override
+        public String getSheet() {
+            return sheet;
+        }
+
+        @Override
+        public String getStage() {
+            return stage;
+        }
+
+        @Override
+        public long getInvocations() {
+            return invocations.sum();
+        }
+
+        @Override
+        public long getWallTimeMillis() {
+            return wallNanos.sum() / 1_000_000L;
+        }
+
+        @Override
+        public long getRows() {
+            return rows.sum();
+        }
+
+        @Override
+        public long getCells() {
+            return cells.sum();
+        }
+
+        @Override
+        public long getBytesWritten() {
+            return bytesWritten.sum();
+        }
+
+        @Override
+        public long getAllocatedBytes() {
+            return allocatedBytes.sum();
+        }
+    }
+
+    public static final class Timer implements AutoCloseable {
+
+        private final Stage stage;
+        private final long startNanos = System.nanoTime();
+        private final long startAllocated = currentThreadAllocatedBytes();
+
+        private Timer(Stage stage) {
+            this.stage = stage;
+        }
+
+        @Override
+        public void close() {
+            stage.wallNanos.add(System.nanoTime() - startNanos);
+            if (startAllocated >= 0) {
+                stage.allocatedBytes.add(currentThreadAllocatedBytes() - startAllocated);
+            }
+            stage.invocations.increment();
+        }
+    }
+
+    /**
+     * Returns the metrics of {@code stage} for {@code sheet} within {@code operation},
+     * creating and registering them on first use.
+     */
+    public static Stage stage(String operation, String sheet, String stage) {
+        return STAGES.computeIfAbsent(operation + '\u0000' + sheet + '\u0000' + stage, key -> {
+            Stage metrics = new Stage(operation, sheet, stage);
+            register(metrics, "org.example:type=Operation,operation=" + ObjectName.quote(operation)
+                    + ",sheet=" + ObjectName.quote(sheet) + ",stage=" + stage);
+            return metrics;
+        });
+    }
+
+    /**
+     * @return all stages recorded so far, by operation, sheet and stage name
+     */
+    public static List<Stage> getStages() {
+        List<Stage> sorted = new ArrayList<>(STAGES.values());
+        sorted.sort(Comparator.comparing(Stage::getOperation).thenComparing(Stage::getSheet).thenComparing(Stage::getStage));
+        return sorted;
+    }
+
+    public static String toJson() {
+        List<Stage> sorted = getStages();
+
+        StringBuilder json = new StringBuilder("{\n  \"stages\": [");
+        for (int i = 0; i < sorted.size(); i++) {
+            Stage m = sorted.get(i);
+            json.append(i == 0 ? "\n" : ",\n")
+                    .append("    {\"operation\": ").append(quote(m.getOperation()))
+                    .append(", \"sheet\": ").append(quote(m.getSheet()))
+                    .append(", \"stage\": ").append(quote(m.getStage()))
+                    .append(", \"invocations\": ").append(m.getInvocations())
+                    .append(", \"wallTimeMillis\": ").append(m.wallNanos.sum() / 1_000_000.0)
+                    .append(", \"rows\": ").append(m.getRows())
+                    .append(", \"cells\": ").append(m.getCells())
+                    .append(", \"bytesWritten\": ").append(m.getBytesWritten())
+                    .append(", \"allocatedBytes\": ").append(m.getAllocatedBytes())
+                    .append('}');
+        }
+        json.append("\n  ]\n}\n");
+        return json.toString();
+    }
+
+    /**
+     * Writes the JSON report to the path named by {@value #REPORT_PROPERTY}, if set.
+     */
+    public static void writeReportIfRequested() {
+        String reportPath = System.getProperty(REPORT_PROPERTY);
+        if (reportPath == null || reportPath.isEmpty()) {
+            return;
+        }
+        Path reportFile = Path.of(reportPath).toAbsolutePath();
+        try {
+            Files.createDirectories(reportFile.getParent());
+            try (BufferedWriter writer = Files.newBufferedWriter(reportFile, StandardCharsets.UTF_8)) {
+                writer.write(toJson());
+            }
+            logger.info("Metrics report written to " + reportPath);
+        } catch (IOException e) {
+            logger.log(Level.SEVERE, "Error writing metrics report: " + e.getMessage());
+        }
+    }
+
+    private static long currentThreadAllocatedBytes() {
+        return THREADS == null ? -1 : THREADS.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    private static com.sun.management.ThreadMXBean allocationTrackingThreadBean() {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean) {
+            com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) bean;
+            if (threads.isThreadAllocatedMemorySupported()) {
+                threads.setThreadAllocatedMemoryEnabled(true);
+                return threads;
+            }
+        }
+        return null;
+    }
+
+    private static void register(Object mbean, String name) {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName objectName = new ObjectName(name);
+            if (!server.isRegistered(objectName)) {
+                server.registerMBean(mbean, objectName);
+            }
+        } catch (JMException | SecurityException e) {
+            logger.log(Level.WARNING, "Could not register metrics MBean " + name + ": " + e.getMessage());
+        }
+    }
+
+    private static String quote(String value) {
+        StringBuilder quoted = new StringBuilder("\"");
+        for (char c : value.toCharArray()) {
+            if (c == '"' || c == '\\') {
+                quoted.append('\\').append(c);
+            } else if (c < 0x20) {
+                quoted.append(String.format("\\u%04x", (int) c));
+            } else {
+                quoted.append(c);
+            }
+        }
+        return quoted.append('"').toString();
+    }
+}
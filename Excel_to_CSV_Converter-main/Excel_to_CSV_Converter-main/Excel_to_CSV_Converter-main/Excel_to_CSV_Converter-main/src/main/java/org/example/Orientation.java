@@ -0,0 +1,78 @@
+package org.example;
+
+/**
+ * A transpose, a rotation by a multiple of 90 degrees, or any chain of them.
+ * <p>
+ * Every such chain is one of eight symmetries of a rectangle: an optional
+ * swap of rows and columns followed by optional flips of each axis. Chains
+ * are therefore composed here, with {@link #then}, instead of being applied
+ * one after the other, so the cells are reordered exactly once however many
+ * steps the operation has.
+ */
+public final class Orientation {
+
+    public static final Orientation IDENTITY = new Orientation(false, false, false);
+    public static final Orientation TRANSPOSE = new Orientation(true, false, false);
+
+    private final boolean swap;
+    private final boolean flipRows;
+    private final boolean flipColumns;
+
+    private Orientation(boolean swap, boolean flipRows, boolean flipColumns) {
+        this.swap = swap;
+        this.flipRows = flipRows;
+        this.flipColumns = flipColumns;
+    }
+
+    /**
+     * Clockwise rotation; negative degrees turn counter-clockwise. Degrees
+     * that are not a multiple of 90 leave the cells as they are.
+     */
+    public static Orientation rotation(int degrees) {
+        switch (Math.floorMod(degrees, 360)) {
+            case 90:
+                return new Orientation(true, true, false);
+            case 180:
+                return new Orientation(false, true, true);
+            case 270:
+                return new Orientation(true, false, true);
+            default:
+                return IDENTITY;
+        }
+    }
+
+    /**
+     * @return this orientation followed by {@code next}
+     */
+    public Orientation then(Orientation next) {
+        if (swap) {
+            return new Orientation(!next.swap, flipRows ^ next.flipColumns, flipColumns ^ next.flipRows);
+        }
+        return new Orientation(next.swap, flipRows ^ next.flipRows, flipColumns ^ next.flipColumns);
+    }
+
+    public boolean isIdentity() {
+        return !swap && !flipRows && !flipColumns;
+    }
+
+    int outputRows(int rows, int columns) {
+        return swap ? columns : rows;
+    }
+
+    int outputColumns(int rows, int columns) {
+        return swap ? rows : columns;
+    }
+
+    /**
+     * @return the row of a {@code rows} x {@code columns} source that ends up at output position ({@code row}, {@code column})
+     */
+    int sourceRow(int row, int column, int rows) {
+        int r = swap ? column : row;
+        return flipRows ? rows - 1 - r : r;
+    }
+
+    int sourceColumn(int row, int column, int columns) {
+        int c = swap ? row : column;
+        return flipColumns ? columns - 1 - c : c;
+    }
+}
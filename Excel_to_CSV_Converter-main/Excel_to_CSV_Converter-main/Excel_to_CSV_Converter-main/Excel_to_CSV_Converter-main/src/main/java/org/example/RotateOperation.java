@@ -1,17 +1,14 @@
 package org.example;
 
-import org.apache.poi.ss.usermodel.*;
-import org.apache.poi.xssf.usermodel.XSSFWorkbook;
-
 import javax.swing.*;
 import javax.swing.filechooser.FileNameExtensionFilter;
 import java.io.*;
-import java.nio.charset.StandardCharsets;
 import java.util.logging.*;
 
 public class RotateOperation {
 
     private static final Logger logger = Logger.getLogger(RotateOperation.class.getName());
+    private static final String OPERATION = "rotate";
 
     public static void main(String[] args) {
         configureLogger(); // Configure logger settings
@@ -34,40 +31,24 @@ public class RotateOperation {
             return;
         }
 
-        rotateAndWrite(excelFilePath, rotationDegree, outputFolder);
+        SheetSelection sheets = promptForSheets();
+        if (sheets == null) {
+            return;
+        }
+
+        rotateAndWrite(excelFilePath, rotationDegree, outputFolder, sheets);
 
         System.out.println("Rotating operation completed successfully.");
     }
 
-    private static void rotateAndWrite(String excelFilePath, int degree, String outputFolder) {
-        try (FileInputStream fis = new FileInputStream(excelFilePath);
-             Workbook workbook = new XSSFWorkbook(fis)) {
-
-            for (int i = 0; i < workbook.getNumberOfSheets(); i++) {
-                Sheet sheet = workbook.getSheetAt(i);
-                String sheetName = sheet.getSheetName();
-
-                int[][] matrix = createMatrix(sheet);
-                int[][] rotatedMatrix = rotateMatrix(matrix, degree);
-
-                // Adjusting file name to include rotation degree and keep original sheet name
-                String outputFileName = "A_" + sheetName + "_rotated_" + degree + ".csv";
-                File csvFile = new File(outputFolder, outputFileName);
-
-                try (BufferedWriter bw = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(csvFile), StandardCharsets.UTF_8))) {
-                    for (int[] row : rotatedMatrix) {
-                        StringBuilder rowString = new StringBuilder();
-                        for (int cell : row) {
-                            if (rowString.length() > 0) {
-                                rowString.append(",");
-                            }
-                            rowString.append(cell);
-                        }
-                        bw.write(rowString.toString());
-                        bw.newLine();
-                    }
-                }
-            }
+    private static void rotateAndWrite(String excelFilePath, int degree, String outputFolder, SheetSelection sheets) {
+        try {
+            // Adjusting file name to include rotation degree and keep original sheet name
+            OperationEngine.run(new File(excelFilePath), new File(outputFolder), Operation.named(OPERATION)
+                    .sheets(sheets)
+                    .integerValues()
+                    .rotate(degree)
+                    .outputName(sheetName -> "A_" + sheetName + "_rotated_" + degree + ".csv"));
 
             logger.info("Rotating Excel file by " + degree + " degrees completed successfully.");
 
@@ -76,84 +57,6 @@ public class RotateOperation {
         }
     }
 
-    private static int[][] createMatrix(Sheet sheet) {
-        int numRows = sheet.getLastRowNum() + 1;
-        int numCols = sheet.getRow(0).getLastCellNum();
-        int[][] matrix = new int[numRows][numCols];
-
-        for (int row = 0; row < numRows; row++) {
-            Row currentRow = sheet.getRow(row);
-            if (currentRow != null) {
-                for (int col = 0; col < numCols; col++) {
-                    Cell cell = currentRow.getCell(col);
-                    if (cell != null) {
-                        switch (cell.getCellType()) {
-                            case STRING:
-                                try {
-                                    matrix[row][col] = Integer.parseInt(cell.getStringCellValue());
-                                } catch (NumberFormatException e) {
-                                    matrix[row][col] = 0;
-                                }
-                                break;
-                            case NUMERIC:
-                                matrix[row][col] = (int) cell.getNumericCellValue();
-                                break;
-                            case BOOLEAN:
-                                matrix[row][col] = cell.getBooleanCellValue() ? 1 : 0;
-                                break;
-                            case FORMULA:
-                                matrix[row][col] = (int) cell.getNumericCellValue();
-                                break;
-                            case BLANK:
-                            default:
-                                matrix[row][col] = 0;
-                                break;
-                        }
-                    }
-                }
-            }
-        }
-        return matrix;
-    }
-
-    private static int[][] rotateMatrix(int[][] matrix, int degree) {
-        int numRows = matrix.length;
-        int numCols = matrix[0].length;
-        int[][] rotatedMatrix;
-
-        switch (degree % 360) {
-            case 90:
-                rotatedMatrix = new int[numCols][numRows];
-                for (int i = 0; i < numRows; i++) {
-                    for (int j = 0; j < numCols; j++) {
-                        rotatedMatrix[j][numRows - 1 - i] = matrix[i][j];
-                    }
-                }
-                break;
-            case 180:
-                rotatedMatrix = new int[numRows][numCols];
-                for (int i = 0; i < numRows; i++) {
-                    for (int j = 0; j < numCols; j++) {
-                        rotatedMatrix[numRows - 1 - i][numCols - 1 - j] = matrix[i][j];
-                    }
-                }
-                break;
-            case 270:
-                rotatedMatrix = new int[numCols][numRows];
-                for (int i = 0; i < numRows; i++) {
-                    for (int j = 0; j < numCols; j++) {
-                        rotatedMatrix[numCols - 1 - j][i] = matrix[i][j];
-                    }
-                }
-                break;
-            default:
-                rotatedMatrix = matrix;
-                break;
-        }
-
-        return rotatedMatrix;
-    }
-
     private static void logError(String message) {
         logger.log(Level.SEVERE, message);
     }
@@ -198,6 +101,19 @@ public class RotateOperation {
         return null;
     }
 
+    /**
+     * @return the sheets to rotate, every sheet if left empty, or {@code null} if the selection is invalid
+     */
+    private static SheetSelection promptForSheets() {
+        String selection = JOptionPane.showInputDialog("Sheets to rotate (names, #number, /regex/, !exclude; empty for all):");
+        try {
+            return SheetSelection.parse(selection);
+        } catch (IllegalArgumentException e) {
+            logError("Invalid sheet selection: " + e.getMessage());
+            return null;
+        }
+    }
+
     private static int promptForRotationDegree() {
         String degreeString = JOptionPane.showInputDialog("Enter rotation degree (90, 180, 270):");
         try {
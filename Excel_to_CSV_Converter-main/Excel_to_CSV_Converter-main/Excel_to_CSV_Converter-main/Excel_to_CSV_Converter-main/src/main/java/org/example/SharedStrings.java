@@ -0,0 +1,38 @@
+package org.example;
+
+import java.util.BitSet;
+import org.apache.poi.xssf.eventusermodel.ReadOnlySharedStringsTable;
+
+/**
+ * The shared strings table of an .xlsx package, as {@link CellValue} looks
+ * its strings up.
+ * <p>
+ * Whether a string is a comment marker is decided once per table index, the
+ * first time a cell with that index is tested, and remembered in two bit
+ * sets; after that, {@link #isCommentMarker(int)} answers for any cell with
+ * the index without the string being looked up, trimmed or compared again.
+ */
+final class SharedStrings {
+
+    private final ReadOnlySharedStringsTable table;
+    private final BitSet classified = new BitSet();
+    private final BitSet commentMarkers = new BitSet();
+
+    SharedStrings(ReadOnlySharedStringsTable table) {
+        this.table = table;
+    }
+
+    String get(int index) {
+        return table.getItemAt(index).getString();
+    }
+
+    boolean isCommentMarker(int index) {
+        if (!classified.get(index)) {
+            classified.set(index);
+            if (CellValue.isCommentMarker(get(index))) {
+                commentMarkers.set(index);
+            }
+        }
+        return commentMarkers.get(index);
+    }
+}
@@ -0,0 +1,481 @@
+package org.example;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import org.apache.poi.openxml4j.exceptions.OpenXML4JException;
+import org.apache.poi.openxml4j.opc.OPCPackage;
+import org.apache.poi.openxml4j.opc.PackageAccess;
+import org.apache.poi.poifs.filesystem.FileMagic;
+import org.apache.poi.ss.usermodel.DateUtil;
+import org.apache.poi.xssf.eventusermodel.ReadOnlySharedStringsTable;
+import org.apache.poi.xssf.eventusermodel.XSSFReader;
+import org.apache.poi.xssf.model.StylesTable;
+import org.apache.poi.xssf.usermodel.XSSFCellStyle;
+import org.project.WorkbookMetadata;
+import org.xml.sax.SAXException;
+
+/**
+ * Reads the rows of every sheet of a workbook, in order, into a {@link Handler}.
+ * <p>
+ * For .xlsx files the sheet XML is parsed with StAX straight from the
+ * package, so no POI cell or row objects are created and memory does not grow
+ * with the sheet; only the shared strings and styles are held, and only once
+ * a cell needs them. Legacy .xls files are read from their record stream by
+ * an {@link XlsSheetReader}, in one pass over all sheets, and their rows are
+ * handed over the same way.
+ * <p>
+ * The handler names the {@link Window} of cells it needs from each sheet and
+ * the window is applied while parsing: rows above it are skipped without
+ * looking at their cells, cells left or right of it are skipped without
+ * decoding their value (so no shared string is looked up), and the sheet part
+ * is closed, unread, as soon as the last row of the window has been passed.
+ * A handler that returns no window keeps the sheet from being parsed at all;
+ * for .xlsx files its part is not even opened, since the sheet names come
+ * from the workbook part (see {@link #getSheetNames()}).
+ * <p>
+ * Cells of an .xlsx shared formula other than the first one only carry a
+ * reference to the formula, not its text; they are reported with their
+ * cached value instead.
+ */
+public final class SheetReader implements Closeable {
+
+    public interface Handler {
+
+        /**
+         * @return the cells of this sheet to read, or {@code null} to skip the sheet
+         */
+        Window startSheet(String sheetName, int sheetIndex) throws IOException;
+
+        void row(SheetRow row) throws IOException;
+
+        void endSheet() throws IOException;
+    }
+
+    /**
+     * Zero-based, inclusive row and column bounds; a negative last row or
+     * last column leaves that side open.
+     */
+    public static final class Window {
+
+        public static final Window ALL = new Window(0, -1, 0, -1);
+
+        private final int firstRow;
+        private final int lastRow;
+        private final int firstColumn;
+        private final int lastColumn;
+
+        public Window(int firstRow, int lastRow, int firstColumn, int lastColumn) {
+            this.firstRow = Math.max(firstRow, 0);
+            this.lastRow = lastRow < 0 ? -1 : lastRow;
+            this.firstColumn = Math.max(firstColumn, 0);
+            this.lastColumn = lastColumn < 0 ? -1 : lastColumn;
+        }
+
+        /**
+         * @return the smallest window covering both this one and {@code other}
+         */
+        public Window union(Window other) {
+            return new Window(Math.min(firstRow, other.firstRow),
+                    lastRow < 0 || other.lastRow < 0 ? -1 : Math.max(lastRow, other.lastRow),
+                    Math.min(firstColumn, other.firstColumn),
+                    lastColumn < 0 || other.lastColumn < 0 ? -1 : Math.max(lastColumn, other.lastColumn));
+        }
+
+        boolean isRowBefore(int row) {
+            return row < firstRow;
+        }
+
+        boolean isRowAfter(int row) {
+            return lastRow >= 0 && row > lastRow;
+        }
+
+        boolean isLastRow(int row) {
+            return lastRow >= 0 && row >= lastRow;
+        }
+
+        boolean containsColumn(int column) {
+            return column >= firstColumn && (lastColumn < 0 || column <= lastColumn);
+        }
+
+        @Override
+        public String toString() {
+            return "rows " + (firstRow + 1) + ".." + (lastRow < 0 ? "end" : String.valueOf(lastRow + 1))
+                    + ", columns " + (firstColumn + 1) + ".." + (lastColumn < 0 ? "end" : String.valueOf(lastColumn + 1));
+        }
+    }
+
+    private final OPCPackage pkg;
+    private final XlsSheetReader xls;
+    private final PackageSheets packageSheets;
+    private final SheetRow row = new SheetRow();
+
+    private SheetReader(XlsSheetReader xls) {
+        this.pkg = null;
+        this.xls = xls;
+        this.packageSheets = null;
+    }
+
+    private SheetReader(OPCPackage pkg, WorkbookMetadata metadata) throws IOException, OpenXML4JException {
+        this.pkg = pkg;
+        this.xls = null;
+        this.packageSheets = new PackageSheets(pkg, metadata);
+    }
+
+    public static SheetReader open(File workbookFile) throws IOException {
+        if (FileMagic.valueOf(workbookFile) == FileMagic.OLE2) {
+            return new SheetReader(new XlsSheetReader(workbookFile));
+        }
+        WorkbookMetadata metadata = WorkbookMetadata.read(workbookFile);
+        OPCPackage pkg = null;
+        try {
+            pkg = OPCPackage.open(workbookFile, PackageAccess.READ);
+            return new SheetReader(pkg, metadata);
+        } catch (OpenXML4JException | RuntimeException e) {
+            if (pkg != null) {
+                pkg.revert();
+            }
+            throw new IOException("Cannot open workbook " + workbookFile + ": " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * @return the names of the sheets, in workbook order; no sheet has been parsed to get them
+     */
+    public List<String> getSheetNames() throws IOException {
+        if (packageSheets != null) {
+            return packageSheets.getSheetNames();
+        }
+        return xls.getSheetNames();
+    }
+
+    public void read(Handler handler) throws IOException {
+        if (xls != null) {
+            xls.read(new WindowedHandler(handler));
+            return;
+        }
+        try {
+            packageSheets.read(handler);
+        } catch (OpenXML4JException | XMLStreamException e) {
+            throw new IOException("Error reading workbook: " + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (xls != null) {
+            xls.close();
+        } else {
+            pkg.revert();
+        }
+    }
+
+    /**
+     * Applies each sheet's {@link Window} to the rows of an .xls record stream.
+     */
+    private static final class WindowedHandler implements XlsSheetReader.Handler {
+
+        private final Handler handler;
+        private Window window;
+
+        private WindowedHandler(Handler handler) {
+            this.handler = handler;
+        }
+
+        @Override
+        public boolean startSheet(String sheetName, int sheetIndex) throws IOException {
+            window = handler.startSheet(sheetName, sheetIndex);
+            return window != null;
+        }
+
+        @Override
+        public boolean needsCell(int rowIndex, int column) {
+            return !window.isRowBefore(rowIndex) && !window.isRowAfter(rowIndex) && window.containsColumn(column);
+        }
+
+        @Override
+        public boolean row(SheetRow row) throws IOException {
+            if (window.isRowBefore(row.getRowIndex())) {
+                return true;
+            }
+            if (window.isRowAfter(row.getRowIndex())) {
+                return false;
+            }
+            handler.row(row);
+            return !window.isLastRow(row.getRowIndex());
+        }
+
+        @Override
+        public boolean endSheet() throws IOException {
+            handler.endSheet();
+            return true;
+        }
+    }
+
+    /**
+     * @return the zero-based column of an A1 reference such as {@code AB12}
+     */
+    static int columnOf(String cellReference) {
+        int column = 0;
+        for (int i = 0; i < cellReference.length(); i++) {
+            char c = cellReference.charAt(i);
+            if (c >= 'A' && c <= 'Z') {
+                column = column * 26 + (c - 'A' + 1);
+            } else if (c >= 'a' && c <= 'z') {
+                column = column * 26 + (c - 'a' + 1);
+            } else if (c != '$') {
+                break;
+            }
+        }
+        return column - 1;
+    }
+
+    /**
+     * Streaming access to the sheets of an .xlsx package.
+     */
+    private final class PackageSheets {
+
+        private final OPCPackage pkg;
+        private final XSSFReader reader;
+        private final Map<Integer, Boolean> dateStyles = new HashMap<>();
+        private final XMLInputFactory factory = XMLInputFactory.newInstance();
+        private SharedStrings sharedStrings;
+        private StylesTable styles;
+        private final WorkbookMetadata metadata;
+        private boolean stylesLoaded;
+
+        private PackageSheets(OPCPackage pkg, WorkbookMetadata metadata) throws IOException, OpenXML4JException {
+            this.pkg = pkg;
+            this.reader = new XSSFReader(pkg);
+            this.metadata = metadata;
+            factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+            factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        }
+
+        private List<String> getSheetNames() {
+            return metadata.getSheetNames();
+        }
+
+        private void read(Handler handler) throws IOException, OpenXML4JException, XMLStreamException {
+            for (WorkbookMetadata.SheetInfo sheet : metadata.getSheets()) {
+                Window window = handler.startSheet(sheet.getName(), sheet.getIndex());
+                if (window == null) {
+                    continue;
+                }
+                try (InputStream in = reader.getSheet(sheet.getRelationshipId())) {
+                    readSheet(in, window, handler);
+                }
+                handler.endSheet();
+            }
+        }
+
+        private void readSheet(InputStream in, Window window, Handler handler) throws IOException, XMLStreamException {
+            XMLStreamReader xml = factory.createXMLStreamReader(in);
+            try {
+                int nextRow = 0;
+                int nextColumn = 0;
+                boolean inRow = false;
+                while (xml.hasNext()) {
+                    int event = xml.next();
+                    if (event == XMLStreamConstants.START_ELEMENT) {
+                        String name = xml.getLocalName();
+                        if ("row".equals(name)) {
+                            String r = xml.getAttributeValue(null, "r");
+                            int rowIndex = r == null ? nextRow : Integer.parseInt(r) - 1;
+                            nextRow = rowIndex + 1;
+                            if (window.isRowAfter(rowIndex)) {
+                                break;
+                            }
+                            if (window.isRowBefore(rowIndex)) {
+                                skipElement(xml);
+                                continue;
+                            }
+                            row.reset(rowIndex);
+                            nextColumn = 0;
+                            inRow = true;
+                        } else if ("c".equals(name) && inRow) {
+                            String ref = xml.getAttributeValue(null, "r");
+                            int column = ref == null ? nextColumn : columnOf(ref);
+                            nextColumn = column + 1;
+                            if (window.containsColumn(column)) {
+                                readCell(xml, row.cellAt(column));
+                            } else {
+                                skipElement(xml);
+                            }
+                        }
+                    } else if (event == XMLStreamConstants.END_ELEMENT) {
+                        String name = xml.getLocalName();
+                        if ("row".equals(name) && inRow) {
+                            inRow = false;
+                            handler.row(row);
+                            if (window.isLastRow(row.getRowIndex())) {
+                                break;
+                            }
+                        } else if ("sheetData".equals(name)) {
+                            break;
+                        }
+                    }
+                }
+            } finally {
+                xml.close();
+            }
+        }
+
+        /**
+         * Moves past the end tag of the element whose start tag is current,
+         * without looking at what it contains.
+         */
+        private void skipElement(XMLStreamReader xml) throws XMLStreamException {
+            int depth = 1;
+            while (depth > 0 && xml.hasNext()) {
+                int event = xml.next();
+                if (event == XMLStreamConstants.START_ELEMENT) {
+                    depth++;
+                } else if (event == XMLStreamConstants.END_ELEMENT) {
+                    depth--;
+                }
+            }
+        }
+
+        /**
+         * Reads a {@code <c>} element, positioned on its start tag, up to its end tag.
+         */
+        private void readCell(XMLStreamReader xml, CellValue cell) throws XMLStreamException {
+            String type = xml.getAttributeValue(null, "t");
+            String style = xml.getAttributeValue(null, "s");
+            String value = null;
+            String formula = null;
+            StringBuilder inline = null;
+            while (xml.hasNext()) {
+                int event = xml.next();
+                if (event == XMLStreamConstants.START_ELEMENT) {
+                    String name = xml.getLocalName();
+                    if ("v".equals(name)) {
+                        value = xml.getElementText();
+                    } else if ("f".equals(name)) {
+                        formula = xml.getElementText();
+                    } else if ("is".equals(name)) {
+                        inline = readInlineString(xml);
+                    }
+                } else if (event == XMLStreamConstants.END_ELEMENT && "c".equals(xml.getLocalName())) {
+                    break;
+                }
+            }
+
+            if (formula != null && !formula.isEmpty()) {
+                cell.setFormula(formula, cachedType(type, value), cachedNumber(type, value));
+            } else if ("s".equals(type)) {
+                if (value == null) {
+                    cell.setString("");
+                } else {
+                    cell.setSharedString(sharedStrings(), Integer.parseInt(value.trim()));
+                }
+            } else if ("inlineStr".equals(type)) {
+                cell.setString(inline == null ? (value == null ? "" : value) : inline.toString());
+            } else if ("str".equals(type) || "d".equals(type)) {
+                cell.setString(value == null ? "" : value);
+            } else if ("b".equals(type)) {
+                cell.setBoolean("1".equals(value) || "true".equalsIgnoreCase(value));
+            } else if ("e".equals(type)) {
+                cell.setError();
+            } else if (value == null || value.isEmpty()) {
+                cell.setBlank();
+            } else {
+                double number = Double.parseDouble(value);
+                cell.setNumber(number, isDateStyle(style) && DateUtil.isValidExcelDate(number), metadata.isDate1904());
+            }
+        }
+
+        private StringBuilder readInlineString(XMLStreamReader xml) throws XMLStreamException {
+            StringBuilder text = new StringBuilder();
+            int phonetic = 0;
+            while (xml.hasNext()) {
+                int event = xml.next();
+                if (event == XMLStreamConstants.START_ELEMENT) {
+                    if ("rPh".equals(xml.getLocalName())) {
+                        phonetic++;
+                    } else if ("t".equals(xml.getLocalName()) && phonetic == 0) {
+                        text.append(xml.getElementText());
+                    }
+                } else if (event == XMLStreamConstants.END_ELEMENT) {
+                    if ("rPh".equals(xml.getLocalName())) {
+                        phonetic--;
+                    } else if ("is".equals(xml.getLocalName())) {
+                        break;
+                    }
+                }
+            }
+            return text;
+        }
+
+        private CellValue.Type cachedType(String type, String value) {
+            if (value == null || value.isEmpty()) {
+                return CellValue.Type.BLANK;
+            }
+            if ("str".equals(type)) {
+                return CellValue.Type.STRING;
+            }
+            if ("e".equals(type)) {
+                return CellValue.Type.ERROR;
+            }
+            return "b".equals(type) ? CellValue.Type.BOOLEAN : CellValue.Type.NUMERIC;
+        }
+
+        private double cachedNumber(String type, String value) {
+            if (value == null || value.isEmpty() || "str".equals(type) || "e".equals(type)) {
+                return Double.NaN;
+            }
+            if ("b".equals(type)) {
+                return "1".equals(value) ? 1 : 0;
+            }
+            try {
+                return Double.parseDouble(value);
+            } catch (NumberFormatException e) {
+                return Double.NaN;
+            }
+        }
+
+        private SharedStrings sharedStrings() throws XMLStreamException {
+            if (sharedStrings == null) {
+                try {
+                    sharedStrings = new SharedStrings(new ReadOnlySharedStringsTable(pkg));
+                } catch (IOException | SAXException e) {
+                    throw new XMLStreamException("Cannot read shared strings: " + e.getMessage(), e);
+                }
+            }
+            return sharedStrings;
+        }
+
+        private boolean isDateStyle(String style) throws XMLStreamException {
+            if (!stylesLoaded) {
+                stylesLoaded = true;
+                try {
+                    styles = reader.getStylesTable();
+                } catch (IOException | OpenXML4JException e) {
+                    throw new XMLStreamException("Cannot read styles: " + e.getMessage(), e);
+                }
+            }
+            if (styles == null) {
+                return false;
+            }
+            int index = style == null ? 0 : Integer.parseInt(style);
+            return dateStyles.computeIfAbsent(index, key -> {
+                if (key >= styles.getNumCellStyles()) {
+                    return false;
+                }
+                XSSFCellStyle cellStyle = styles.getStyleAt(key);
+                return cellStyle != null && DateUtil.isADateFormat(cellStyle.getDataFormat(), cellStyle.getDataFormatString());
+            });
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package org.example;
+
+/**
+ * A row delivered by {@link SheetReader}, indexed like a POI {@code Row}:
+ * {@link #getLastCellNum()} is one past the last cell and cells that are not
+ * in the file are {@code null}. The reader reuses the instance for the next
+ * row, so values must be copied out before the handler returns.
+ * <p>
+ * A reader may leave cells undecoded until they are asked for; they are
+ * then decoded by its {@link Decoder}.
+ */
+public final class SheetRow {
+
+    /**
+     * Decodes a cell a reader left undecoded.
+     */
+    interface Decoder {
+        void decode(CellValue cell);
+    }
+
+    private final Decoder decoder;
+    private int rowIndex;
+    private int lastCellNum;
+    private CellValue[] cells = new CellValue[16];
+
+    SheetRow() {
+        this(null);
+    }
+
+    SheetRow(Decoder decoder) {
+        this.decoder = decoder;
+    }
+
+    public int getRowIndex() {
+        return rowIndex;
+    }
+
+    public int getLastCellNum() {
+        return lastCellNum;
+    }
+
+    public CellValue getCell(int column) {
+        if (column < 0 || column >= lastCellNum) {
+            return null;
+        }
+        CellValue cell = cells[column];
+        if (cell == null || !cell.present) {
+            return null;
+        }
+        if (cell.record != null) {
+            decoder.decode(cell);
+        }
+        return cell;
+    }
+
+    /**
+     * Whether the file has a cell at {@code column}, without decoding it.
+     */
+    public boolean hasCell(int column) {
+        return column >= 0 && column < lastCellNum && cells[column] != null && cells[column].present;
+    }
+
+    void reset(int rowIndex) {
+        for (int i = 0; i < lastCellNum; i++) {
+            if (cells[i] != null) {
+                cells[i].present = false;
+            }
+        }
+        this.rowIndex = rowIndex;
+        this.lastCellNum = 0;
+    }
+
+    /**
+     * Returns the cell to fill in at {@code column}, which then counts as present.
+     */
+    CellValue cellAt(int column) {
+        if (column >= cells.length) {
+            CellValue[] grown = new CellValue[Math.max(cells.length * 2, column + 1)];
+            System.arraycopy(cells, 0, grown, 0, cells.length);
+            cells = grown;
+        }
+        if (cells[column] == null) {
+            cells[column] = new CellValue();
+        }
+        lastCellNum = Math.max(lastCellNum, column + 1);
+        return cells[column];
+    }
+}
@@ -0,0 +1,186 @@
+package org.example;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * Which sheets of a workbook an {@link Operation} runs on, written as a
+ * comma-separated list of terms:
+ * <ul>
+ * <li>{@code Users}: the sheet with that exact name,</li>
+ * <li>{@code #3}: the third sheet,</li>
+ * <li>{@code /Q[1-4] 20\d\d/}: every sheet whose whole name matches the regular expression,</li>
+ * <li>any of these after {@code !}: leave those sheets out.</li>
+ * </ul>
+ * Without an including term every sheet is included before the exclusions
+ * are taken away, so {@code !Summary} means every sheet but Summary. An
+ * empty list or {@code *} selects every sheet.
+ * <p>
+ * A selection is resolved against the sheet names of the workbook, which
+ * {@link SheetReader} reads from the workbook part before any sheet is
+ * parsed; a sheet that is named or numbered but not in the workbook is an
+ * error rather than an empty result.
+ */
+public final class SheetSelection {
+
+    public static final SheetSelection ALL = new SheetSelection(Collections.emptyList(), Collections.emptyList(), "*");
+
+    private final List<Term> includes;
+    private final List<Term> excludes;
+    private final String text;
+
+    private SheetSelection(List<Term> includes, List<Term> excludes, String text) {
+        this.includes = includes;
+        this.excludes = excludes;
+        this.text = text;
+    }
+
+    /**
+     * @return the selection of the one sheet called {@code sheetName}
+     */
+    public static SheetSelection named(String sheetName) {
+        return new SheetSelection(Collections.singletonList(new Term(sheetName, -1, null)), Collections.emptyList(), sheetName);
+    }
+
+    /**
+     * @throws IllegalArgumentException if a term is not a valid index or regular expression
+     */
+    public static SheetSelection parse(String selection) {
+        String text = selection == null ? "" : selection.trim();
+        if (text.isEmpty() || "*".equals(text)) {
+            return ALL;
+        }
+        List<Term> includes = new ArrayList<>();
+        List<Term> excludes = new ArrayList<>();
+        for (String token : split(text)) {
+            boolean exclude = token.startsWith("!");
+            String term = exclude ? token.substring(1).trim() : token;
+            if (term.isEmpty()) {
+                throw new IllegalArgumentException("empty sheet term in '" + text + "'");
+            }
+            (exclude ? excludes : includes).add(Term.parse(term));
+        }
+        return new SheetSelection(includes, excludes, text);
+    }
+
+    public boolean isAll() {
+        return includes.isEmpty() && excludes.isEmpty();
+    }
+
+    /**
+     * @param sheetNames the names of the workbook's sheets, in workbook order
+     * @return the zero-based indices of the selected sheets, in workbook order
+     * @throws IllegalArgumentException if a name or index in the selection is not in the workbook
+     */
+    public Set<Integer> resolve(List<String> sheetNames) {
+        Set<Integer> selected = new LinkedHashSet<>();
+        for (Term term : includes) {
+            term.check(sheetNames);
+        }
+        for (Term term : excludes) {
+            term.check(sheetNames);
+        }
+        for (int i = 0; i < sheetNames.size(); i++) {
+            if ((includes.isEmpty() || matchesAny(includes, sheetNames.get(i), i)) && !matchesAny(excludes, sheetNames.get(i), i)) {
+                selected.add(i);
+            }
+        }
+        return selected;
+    }
+
+    @Override
+    public String toString() {
+        return text;
+    }
+
+    private static boolean matchesAny(List<Term> terms, String sheetName, int index) {
+        for (Term term : terms) {
+            if (term.matches(sheetName, index)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Splits on commas, except inside a {@code /regex/} term. Sheet names
+     * cannot contain {@code /}, so the first one after the opening slash
+     * closes the pattern.
+     */
+    private static List<String> split(String text) {
+        List<String> tokens = new ArrayList<>();
+        StringBuilder token = new StringBuilder();
+        boolean inPattern = false;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == ',' && !inPattern) {
+                tokens.add(token.toString().trim());
+                token.setLength(0);
+                continue;
+            }
+            if (c == '/') {
+                String sofar = token.toString().trim();
+                inPattern = !inPattern && (sofar.isEmpty() || "!".equals(sofar));
+            }
+            token.append(c);
+        }
+        tokens.add(token.toString().trim());
+        return tokens;
+    }
+
+    private static final class Term {
+
+        private final String name;
+        private final int index;
+        private final Pattern pattern;
+
+        private Term(String name, int index, Pattern pattern) {
+            this.name = name;
+            this.index = index;
+            this.pattern = pattern;
+        }
+
+        private static Term parse(String term) {
+            if (term.length() > 1 && term.startsWith("/") && term.endsWith("/")) {
+                try {
+                    return new Term(null, -1, Pattern.compile(term.substring(1, term.length() - 1)));
+                } catch (PatternSyntaxException e) {
+                    throw new IllegalArgumentException("invalid sheet pattern " + term + ": " + e.getDescription(), e);
+                }
+            }
+            if (term.startsWith("#")) {
+                try {
+                    int number = Integer.parseInt(term.substring(1).trim());
+                    if (number < 1) {
+                        throw new IllegalArgumentException("sheet numbers start at #1, not " + term);
+                    }
+                    return new Term(null, number - 1, null);
+                } catch (NumberFormatException e) {
+                    throw new IllegalArgumentException("invalid sheet number " + term, e);
+                }
+            }
+            return new Term(term, -1, null);
+        }
+
+        private boolean matches(String sheetName, int sheetIndex) {
+            if (pattern != null) {
+                return pattern.matcher(sheetName).matches();
+            }
+            return name != null ? name.equals(sheetName) : index == sheetIndex;
+        }
+
+        private void check(List<String> sheetNames) {
+            if (name != null && !sheetNames.contains(name)) {
+                throw new IllegalArgumentException("no sheet named '" + name + "' in " + sheetNames);
+            }
+            if (index >= sheetNames.size()) {
+                throw new IllegalArgumentException("no sheet #" + (index + 1) + ", the workbook has " + sheetNames.size());
+            }
+        }
+    }
+}
@@ -0,0 +1,471 @@
+package org.example;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Logger;
+
+import org.apache.poi.hssf.eventusermodel.AbortableHSSFListener;
+import org.apache.poi.hssf.eventusermodel.EventWorkbookBuilder.SheetRecordCollectingListener;
+import org.apache.poi.hssf.eventusermodel.FormatTrackingHSSFListener;
+import org.apache.poi.hssf.eventusermodel.HSSFEventFactory;
+import org.apache.poi.hssf.eventusermodel.HSSFRequest;
+import org.apache.poi.hssf.eventusermodel.HSSFUserException;
+import org.apache.poi.hssf.model.HSSFFormulaParser;
+import org.apache.poi.hssf.record.ArrayRecord;
+import org.apache.poi.hssf.record.BOFRecord;
+import org.apache.poi.hssf.record.BlankRecord;
+import org.apache.poi.hssf.record.BoolErrRecord;
+import org.apache.poi.hssf.record.BoundSheetRecord;
+import org.apache.poi.hssf.record.CellValueRecordInterface;
+import org.apache.poi.hssf.record.DateWindow1904Record;
+import org.apache.poi.hssf.record.EOFRecord;
+import org.apache.poi.hssf.record.ExtendedFormatRecord;
+import org.apache.poi.hssf.record.FormulaRecord;
+import org.apache.poi.hssf.record.LabelRecord;
+import org.apache.poi.hssf.record.LabelSSTRecord;
+import org.apache.poi.hssf.record.MulBlankRecord;
+import org.apache.poi.hssf.record.MulRKRecord;
+import org.apache.poi.hssf.record.NumberRecord;
+import org.apache.poi.hssf.record.RKRecord;
+import org.apache.poi.hssf.record.Record;
+import org.apache.poi.hssf.record.SSTRecord;
+import org.apache.poi.hssf.record.SharedFormulaRecord;
+import org.apache.poi.hssf.record.SharedValueRecordBase;
+import org.apache.poi.hssf.usermodel.HSSFWorkbook;
+import org.apache.poi.poifs.filesystem.POIFSFileSystem;
+import org.apache.poi.ss.formula.ptg.ExpPtg;
+import org.apache.poi.ss.formula.ptg.Ptg;
+import org.apache.poi.ss.usermodel.CellType;
+import org.apache.poi.ss.usermodel.DateUtil;
+
+/**
+ * Reads legacy BIFF8 ({@code .xls}) workbooks with the HSSF event API, so a
+ * sheet is never loaded as POI rows and cells: the record stream is
+ * processed once, only the shared string table, the formats and the current
+ * {@link SheetRow} are held, and the stream is abandoned as soon as the
+ * {@link Handler} has what it needs. Cells the handler does not need are
+ * reported blank without decoding their records, and those it does not read
+ * to {@linkplain Handler#decidesRow decide on a row} are only decoded if the
+ * row's {@link SheetRow#getCell} asks for them.
+ * <p>
+ * Sheets are numbered like their {@code BOUNDSHEET} records, which also
+ * counts chart, macro and dialog sheets; every top-level substream after the
+ * workbook globals is one sheet, whatever its type, and substreams nested in
+ * a sheet, such as embedded charts, belong to it.
+ * <p>
+ * A cell of a shared or array formula only refers to the first cell of its
+ * group; its formula is kept once in the {@code SHRFMLA} or {@code ARRAY}
+ * record that follows that first cell. Such cells are rendered from the
+ * owning record as the usermodel renders them, the first cell of a group
+ * being held back by one record until its owner has been read. A cell whose
+ * owner cannot be found is reported with its cached value and logged.
+ */
+public final class XlsSheetReader implements Closeable {
+
+    private static final Logger logger = Logger.getLogger(XlsSheetReader.class.getName());
+
+    /** Returned from a listener to stop the record stream early. */
+    private static final short STOP = 1;
+
+    public interface Handler {
+
+        /**
+         * @return whether to read the cells of this sheet
+         */
+        boolean startSheet(String sheetName, int sheetIndex) throws IOException;
+
+        /**
+         * Whether the value of the cell at {@code column} of row
+         * {@code rowIndex} is used; a cell this rejects is reported blank.
+         */
+        default boolean needsCell(int rowIndex, int column) {
+            return true;
+        }
+
+        /**
+         * Whether the cell at {@code column} of row {@code rowIndex} is read
+         * to decide whether the row is used at all. The other cells the
+         * handler needs are decoded only when {@link SheetRow#getCell} first
+         * returns them, so those of rows it drops are never decoded.
+         */
+        default boolean decidesRow(int rowIndex, int column) {
+            return true;
+        }
+
+        /**
+         * @return {@code false} to end the sheet at this row; {@link #endSheet()}
+         *         is then called at once and the rest of the sheet is skipped
+         */
+        boolean row(SheetRow row) throws IOException;
+
+        /**
+         * @return {@code false} to stop reading the workbook
+         */
+        boolean endSheet() throws IOException;
+    }
+
+    private final POIFSFileSystem fileSystem;
+    private List<String> sheetNames;
+
+    public XlsSheetReader(File file) throws IOException {
+        this.fileSystem = new POIFSFileSystem(file, true);
+    }
+
+    /**
+     * @return the names of the sheets, in workbook order, read from the workbook globals only
+     */
+    public List<String> getSheetNames() throws IOException {
+        if (sheetNames == null) {
+            List<String> names = new ArrayList<>();
+            process(new AbortableHSSFListener() {
+                @Override
+                public short abortableProcessRecord(Record record) {
+                    if (record instanceof BoundSheetRecord) {
+                        names.add(((BoundSheetRecord) record).getSheetname());
+                    } else if (record instanceof BOFRecord && ((BOFRecord) record).getType() != BOFRecord.TYPE_WORKBOOK) {
+                        return STOP;
+                    }
+                    return 0;
+                }
+            });
+            sheetNames = names;
+        }
+        return sheetNames;
+    }
+
+    /**
+     * Reads the sheets the handler asks for, in one pass over the workbook.
+     */
+    public void read(Handler handler) throws IOException {
+        process(new SheetListener(getSheetNames(), handler));
+    }
+
+    @Override
+    public void close() throws IOException {
+        fileSystem.close();
+    }
+
+    private void process(AbortableHSSFListener listener) throws IOException {
+        HSSFRequest request = new HSSFRequest();
+        request.addListenerForAllRecords(listener);
+        try {
+            new HSSFEventFactory().abortableProcessWorkbookEvents(request, fileSystem);
+        } catch (HSSFUserException e) {
+            if (e.getReason() instanceof IOException) {
+                throw (IOException) e.getReason();
+            }
+            throw new IOException(e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Collects the cells of the sheets the handler reads into rows and hands
+     * each completed row over.
+     */
+    private static final class SheetListener extends AbortableHSSFListener {
+
+        private final List<String> sheetNames;
+        private final Handler handler;
+        private final SheetRecordCollectingListener workbookRecords = new SheetRecordCollectingListener(null);
+        private final FormatTrackingHSSFListener formats = new FormatTrackingHSSFListener(null);
+        private final List<ExtendedFormatRecord> extendedFormats = new ArrayList<>();
+        private final SheetRow row = new SheetRow(this::decode);
+        private final List<SharedValueRecordBase> sharedValues = new ArrayList<>();
+        private SSTRecord sst;
+        private boolean date1904;
+        private HSSFWorkbook formulaWorkbook;
+        private FormulaRecord pendingFormula;
+        private int unresolvedFormulas;
+        private int depth;
+        private int sheetIndex = -1;
+        private String sheetName;
+        private boolean inSheet;
+        private boolean hasRow;
+
+        private SheetListener(List<String> sheetNames, Handler handler) {
+            this.sheetNames = sheetNames;
+            this.handler = handler;
+        }
+
+        @Override
+        public short abortableProcessRecord(Record record) throws HSSFUserException {
+            try {
+                return handleRecord(record);
+            } catch (IOException e) {
+                throw new HSSFUserException(e.getMessage(), e);
+            }
+        }
+
+        private short handleRecord(Record record) throws IOException {
+            if (sheetIndex < 0) {
+                // Workbook globals: keep what formula rendering, strings and dates need.
+                workbookRecords.processRecordInternally(record);
+                formats.processRecordInternally(record);
+                if (record instanceof SSTRecord) {
+                    sst = (SSTRecord) record;
+                } else if (record instanceof ExtendedFormatRecord) {
+                    extendedFormats.add((ExtendedFormatRecord) record);
+                } else if (record instanceof DateWindow1904Record) {
+                    date1904 = ((DateWindow1904Record) record).getWindowing() == 1;
+                }
+            }
+
+            if (record instanceof BOFRecord) {
+                if (depth++ == 0 && ((BOFRecord) record).getType() != BOFRecord.TYPE_WORKBOOK) {
+                    sheetIndex++;
+                    sheetName = sheetIndex < sheetNames.size() ? sheetNames.get(sheetIndex) : "Sheet" + (sheetIndex + 1);
+                    inSheet = handler.startSheet(sheetName, sheetIndex);
+                    sharedValues.clear();
+                    unresolvedFormulas = 0;
+                    hasRow = false;
+                }
+                return 0;
+            }
+            if (record instanceof EOFRecord && --depth > 0) {
+                return 0;
+            }
+            if (!inSheet || depth > 1) {
+                return 0;
+            }
+            if (record instanceof SharedFormulaRecord || record instanceof ArrayRecord) {
+                sharedValues.add((SharedValueRecordBase) record);
+            }
+            if (pendingFormula != null) {
+                FormulaRecord formula = pendingFormula;
+                pendingFormula = null;
+                if (!startCell(formula.getRow())) {
+                    return endSheet();
+                }
+                decodeOrDefer(formula, 0, formula.getRow(), formula.getColumn());
+            }
+            if (record instanceof EOFRecord) {
+                if (hasRow) {
+                    handler.row(row);
+                }
+                return endSheet();
+            }
+            return handleCell(record) ? 0 : endSheet();
+        }
+
+        /**
+         * Ends the current sheet, after its last row or because the handler stopped it.
+         */
+        private short endSheet() throws IOException {
+            if (unresolvedFormulas > 0) {
+                logger.warning("Sheet " + sheetName + ": " + unresolvedFormulas
+                        + " shared or array formula cells could not be rendered, reported their cached values");
+            }
+            inSheet = false;
+            pendingFormula = null;
+            return handler.endSheet() ? 0 : STOP;
+        }
+
+        /**
+         * @return {@code false} if the handler ended the sheet
+         */
+        private boolean handleCell(Record record) throws IOException {
+            if (record instanceof MulRKRecord) {
+                MulRKRecord mulRk = (MulRKRecord) record;
+                if (!startCell(mulRk.getRow())) {
+                    return false;
+                }
+                for (int i = 0; i < mulRk.getNumColumns(); i++) {
+                    int column = mulRk.getFirstColumn() + i;
+                    if (handler.needsCell(mulRk.getRow(), column)) {
+                        decodeOrDefer(mulRk, i, mulRk.getRow(), column);
+                    } else {
+                        row.cellAt(column).setBlank();
+                    }
+                }
+                return true;
+            }
+            if (record instanceof MulBlankRecord) {
+                MulBlankRecord mulBlank = (MulBlankRecord) record;
+                if (!startCell(mulBlank.getRow())) {
+                    return false;
+                }
+                for (int i = 0; i < mulBlank.getNumColumns(); i++) {
+                    row.cellAt(mulBlank.getFirstColumn() + i).setBlank();
+                }
+                return true;
+            }
+            if (!(record instanceof CellValueRecordInterface)) {
+                return true;
+            }
+
+            CellValueRecordInterface value = (CellValueRecordInterface) record;
+            if (!startCell(value.getRow())) {
+                return false;
+            }
+            CellValue cell = row.cellAt(value.getColumn());
+            if (!handler.needsCell(value.getRow(), value.getColumn()) || record instanceof BlankRecord) {
+                cell.setBlank();
+            } else if (record instanceof FormulaRecord && expReference((FormulaRecord) record) != null) {
+                // Its owning SHRFMLA or ARRAY record may be the next record.
+                cell.setBlank();
+                pendingFormula = (FormulaRecord) record;
+            } else {
+                decodeOrDefer(record, 0, value.getRow(), value.getColumn());
+            }
+            return true;
+        }
+
+        /**
+         * Decodes the {@code index}th cell of {@code record} now if the
+         * handler reads it to decide on the row, and otherwise leaves it for
+         * {@link SheetRow#getCell} to decode.
+         */
+        private void decodeOrDefer(Record record, int index, int rowIndex, int column) {
+            CellValue cell = row.cellAt(column);
+            if (handler.decidesRow(rowIndex, column)) {
+                decode(record, index, cell);
+            } else {
+                cell.defer(record, index);
+            }
+        }
+
+        private void decode(CellValue cell) {
+            decode((Record) cell.record, cell.recordIndex, cell);
+        }
+
+        private void decode(Record record, int index, CellValue cell) {
+            if (record instanceof MulRKRecord) {
+                MulRKRecord mulRk = (MulRKRecord) record;
+                setNumber(cell, mulRk.getRKNumberAt(index), mulRk.getXFAt(index));
+            } else if (record instanceof NumberRecord) {
+                setNumber(cell, ((NumberRecord) record).getValue(), ((NumberRecord) record).getXFIndex());
+            } else if (record instanceof RKRecord) {
+                setNumber(cell, ((RKRecord) record).getRKNumber(), ((RKRecord) record).getXFIndex());
+            } else if (record instanceof LabelSSTRecord) {
+                cell.setString(sst.getString(((LabelSSTRecord) record).getSSTIndex()).getString());
+            } else if (record instanceof LabelRecord) {
+                cell.setString(((LabelRecord) record).getValue());
+            } else if (record instanceof BoolErrRecord) {
+                BoolErrRecord boolErr = (BoolErrRecord) record;
+                if (boolErr.isBoolean()) {
+                    cell.setBoolean(boolErr.getBooleanValue());
+                } else {
+                    cell.setError();
+                }
+            } else if (record instanceof FormulaRecord) {
+                setFormula((FormulaRecord) record, cell);
+            } else {
+                cell.setBlank();
+            }
+        }
+
+        /**
+         * Hands the previous row over when a cell of another row turns up.
+         *
+         * @return {@code false} if the handler ended the sheet
+         */
+        private boolean startCell(int rowIndex) throws IOException {
+            if (hasRow && rowIndex == row.getRowIndex()) {
+                return true;
+            }
+            if (hasRow && !handler.row(row)) {
+                return false;
+            }
+            row.reset(rowIndex);
+            hasRow = true;
+            return true;
+        }
+
+        private void setNumber(CellValue cell, double value, int xfIndex) {
+            cell.setNumber(value, DateUtil.isValidExcelDate(value) && isDateFormat(xfIndex), date1904);
+        }
+
+        private boolean isDateFormat(int xfIndex) {
+            if (xfIndex < 0 || xfIndex >= extendedFormats.size()) {
+                return false;
+            }
+            int formatIndex = extendedFormats.get(xfIndex).getFormatIndex();
+            return DateUtil.isADateFormat(formatIndex, formats.getFormatString(formatIndex));
+        }
+
+        private void setFormula(FormulaRecord formula, CellValue cell) {
+            Ptg[] tokens = formula.getParsedExpression();
+            ExpPtg owner = expReference(formula);
+            if (owner != null) {
+                tokens = ownerTokens(formula, owner);
+                if (tokens == null) {
+                    unresolvedFormulas++;
+                    setCachedValue(formula, cell);
+                    return;
+                }
+            }
+            try {
+                if (formulaWorkbook == null) {
+                    formulaWorkbook = workbookRecords.getStubHSSFWorkbook();
+                }
+                cell.setFormula(HSSFFormulaParser.toFormulaString(formulaWorkbook, tokens), cachedType(formula), cachedNumber(formula));
+            } catch (RuntimeException e) {
+                unresolvedFormulas++;
+                setCachedValue(formula, cell);
+            }
+        }
+
+        /**
+         * Tokens of a shared or array formula cell, taken from the record that
+         * owns the group starting at {@code owner}, or {@code null} if none does.
+         */
+        private Ptg[] ownerTokens(FormulaRecord formula, ExpPtg owner) {
+            for (SharedValueRecordBase shared : sharedValues) {
+                if (shared.isFirstCell(owner.getRow(), owner.getColumn()) && shared.isInRange(formula.getRow(), formula.getColumn())) {
+                    return shared instanceof SharedFormulaRecord
+                            ? ((SharedFormulaRecord) shared).getFormulaTokens(formula)
+                            : ((ArrayRecord) shared).getFormulaTokens();
+                }
+            }
+            return null;
+        }
+
+        private static ExpPtg expReference(FormulaRecord formula) {
+            Ptg[] tokens = formula.getParsedExpression();
+            return tokens.length == 1 && tokens[0] instanceof ExpPtg ? (ExpPtg) tokens[0] : null;
+        }
+
+        private static void setCachedValue(FormulaRecord formula, CellValue cell) {
+            CellType result = formula.getCachedResultTypeEnum();
+            if (result == CellType.NUMERIC) {
+                cell.setNumber(formula.getValue(), false, false);
+            } else if (result == CellType.BOOLEAN) {
+                cell.setBoolean(formula.getCachedBooleanValue());
+            } else {
+                cell.setBlank();
+            }
+        }
+
+        private static CellValue.Type cachedType(FormulaRecord formula) {
+            switch (formula.getCachedResultTypeEnum()) {
+                case NUMERIC:
+                    return CellValue.Type.NUMERIC;
+                case STRING:
+                    return CellValue.Type.STRING;
+                case BOOLEAN:
+                    return CellValue.Type.BOOLEAN;
+                case ERROR:
+                    return CellValue.Type.ERROR;
+                default:
+                    return CellValue.Type.BLANK;
+            }
+        }
+
+        /**
+         * The cached result as {@link CellValue#setFormula} takes it: booleans as 1 or 0.
+         */
+        private static double cachedNumber(FormulaRecord formula) {
+            CellType result = formula.getCachedResultTypeEnum();
+            if (result == CellType.NUMERIC) {
+                return formula.getValue();
+            }
+            if (result == CellType.BOOLEAN) {
+                return formula.getCachedBooleanValue() ? 1 : 0;
+            }
+            return Double.NaN;
+        }
+    }
+}
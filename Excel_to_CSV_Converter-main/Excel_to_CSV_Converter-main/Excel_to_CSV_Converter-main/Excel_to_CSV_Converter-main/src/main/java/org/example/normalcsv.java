@@ -1,18 +1,14 @@
 package org.example;
 
-import org.apache.poi.ss.usermodel.*;
-import org.apache.poi.xssf.usermodel.XSSFWorkbook;
-import org.apache.poi.ss.util.CellAddress;
-
 import javax.swing.*;
 import javax.swing.filechooser.FileNameExtensionFilter;
 import java.io.*;
-import java.nio.charset.StandardCharsets;
 import java.util.logging.*;
 
 public class normalcsv {
 
     private static final Logger logger = Logger.getLogger(ExtractOperation.class.getName());
+    private static final String OPERATION = "normal";
 
     public static void main(String[] args) {
         configureLogger(); // Configure logger settings
@@ -47,43 +43,11 @@ public class normalcsv {
     }
 
     private static void extractAndWrite(String excelFilePath, String startCellRef, String endCellRef, String outputFolder) {
-        try (FileInputStream fis = new FileInputStream(excelFilePath);
-             Workbook workbook = new XSSFWorkbook(fis)) {
-
-            for (int i = 0; i < workbook.getNumberOfSheets(); i++) {
-                Sheet sheet = workbook.getSheetAt(i);
-                String sheetName = sheet.getSheetName();
-
-                CellAddress start = new CellAddress(startCellRef);
-                CellAddress end = new CellAddress(endCellRef);
-
-                String outputFileName = sheetName + ".csv";
-                File csvFile = new File(outputFolder, outputFileName);
-
-                try (BufferedWriter bw = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(csvFile), StandardCharsets.UTF_8))) {
-                    for (int row = start.getRow(); row <= end.getRow(); row++) {
-                        StringBuilder rowString = new StringBuilder();
-                        Row currentRow = sheet.getRow(row);
-                        if (currentRow != null) {
-                            for (int col = start.getColumn(); col <= end.getColumn(); col++) {
-                                Cell cell = currentRow.getCell(col);
-                                // Ignore columns with the "Comment" field
-                                if (cell != null && cell.getCellType() == CellType.STRING && "Comment".equalsIgnoreCase(cell.getStringCellValue())) {
-                                    continue;
-                                }
-                                if (rowString.length() > 0) {
-                                    rowString.append(",");
-                                }
-                                rowString.append(getCellValueAsString(cell));
-                            }
-                        }
-                        if (rowString.length() > 0) {
-                            bw.write(rowString.toString());
-                            bw.newLine();
-                        }
-                    }
-                }
-            }
+        try {
+            // Comment cells are left out; every sheet is cropped to the same window
+            OperationEngine.run(new File(excelFilePath), new File(outputFolder), Operation.named(OPERATION)
+                    .window(startCellRef, endCellRef)
+                    .comments(Operation.CommentRule.SKIP_CELL));
 
             logger.info("Extracting data from " + startCellRef + " to " + endCellRef + " completed successfully.");
 
@@ -112,29 +76,6 @@ public class normalcsv {
         }
     }
 
-    private static String getCellValueAsString(Cell cell) {
-        if (cell == null) {
-            return "";
-        }
-        switch (cell.getCellType()) {
-            case STRING:
-                return cell.getStringCellValue();
-            case NUMERIC:
-                if (DateUtil.isCellDateFormatted(cell)) {
-                    return cell.getDateCellValue().toString();
-                } else {
-                    return String.valueOf(cell.getNumericCellValue());
-                }
-            case BOOLEAN:
-                return String.valueOf(cell.getBooleanCellValue());
-            case FORMULA:
-                return cell.getCellFormula();
-            case BLANK:
-            default:
-                return "";
-        }
-    }
-
     private static String chooseExcelFile() {
         JFileChooser fileChooser = new JFileChooser();
         fileChooser.setDialogTitle("Choose Excel File");
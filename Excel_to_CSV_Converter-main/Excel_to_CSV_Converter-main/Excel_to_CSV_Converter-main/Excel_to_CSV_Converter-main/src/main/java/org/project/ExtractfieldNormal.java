@@ -1,13 +1,11 @@
 package org.project;
 
-import org.apache.poi.ss.usermodel.*;
-import org.apache.poi.xssf.usermodel.XSSFWorkbook;
-import org.apache.poi.ss.util.CellAddress;
+import org.example.Operation;
+import org.example.OperationEngine;
 
 import javax.swing.*;
 import javax.swing.filechooser.FileNameExtensionFilter;
 import java.io.*;
-import java.nio.charset.StandardCharsets;
 import java.util.logging.*;
 import java.awt.event.KeyEvent;
 import java.awt.event.KeyAdapter;
@@ -54,63 +52,12 @@ public class ExtractfieldNormal {
     }
 
     private static void extractAndWrite(String excelFilePath, String startCellRef, String endCellRef, String outputFolder, String sheetName) {
-        try (FileInputStream fis = new FileInputStream(excelFilePath);
-             Workbook workbook = new XSSFWorkbook(fis)) {
-
-            Sheet sheet = workbook.getSheet(sheetName);
-            if (sheet == null) {
-                logError("Sheet " + sheetName + " not found.");
-                return;
-            }
-
-            CellAddress start = new CellAddress(startCellRef);
-            CellAddress end = (endCellRef != null && !endCellRef.trim().isEmpty()) ? new CellAddress(endCellRef) : null;
-
-            String outputFileName = sheetName + ".csv";
-            File csvFile = new File(outputFolder, outputFileName);
-
-            try (BufferedWriter bw = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(csvFile), StandardCharsets.UTF_8))) {
-                int endRow = (end != null) ? end.getRow() : sheet.getLastRowNum();
-                int endCol = (end != null) ? end.getColumn() : -1; // To handle full row extraction
-
-                Integer commentColIndex = null;
-
-                for (int row = start.getRow(); row <= endRow; row++) {
-                    Row currentRow = sheet.getRow(row);
-                    if (currentRow != null) {
-                        if (row == start.getRow()) { // Check headers only for the first row
-                            for (int col = start.getColumn(); col < currentRow.getLastCellNum(); col++) {
-                                Cell cell = currentRow.getCell(col);
-                                if (cell != null && cell.getCellType() == CellType.STRING) {
-                                    String cellValue = cell.getStringCellValue().trim();
-                                    if ("Comment".equalsIgnoreCase(cellValue)) {
-                                        commentColIndex = col; // Set comment column index
-                                        break;
-                                    }
-                                }
-                            }
-                        }
-
-                        StringBuilder rowString = new StringBuilder();
-                        for (int col = start.getColumn(); col <= (endCol != -1 ? endCol : currentRow.getLastCellNum() - 1); col++) {
-                            if (commentColIndex != null && col >= commentColIndex) break; // Skip columns starting from the comment column
-
-                            Cell cell = currentRow.getCell(col);
-                            String cellValue = getCellValueAsString(cell);
-                            if (rowString.length() > 0) {
-                                rowString.append(",");
-                            }
-                            rowString.append(escapeCsvValue(cellValue));
-                        }
-
-                        // Write row to CSV if it has content
-                        if (rowString.length() > 0) {
-                            bw.write(rowString.toString());
-                            bw.newLine();
-                        }
-                    }
-                }
-            }
+        try {
+            // Columns from the "Comment" header of the first row onwards are left out
+            OperationEngine.run(new File(excelFilePath), new File(outputFolder), Operation.named("extract-normal")
+                    .sheet(sheetName)
+                    .window(startCellRef, endCellRef)
+                    .comments(Operation.CommentRule.CUT_AT_HEADER));
 
             logger.info("Extracting data from " + startCellRef + " to " + (endCellRef != null ? endCellRef : "end") + " completed successfully.");
 
@@ -119,29 +66,6 @@ public class ExtractfieldNormal {
         }
     }
 
-    private static String getCellValueAsString(Cell cell) {
-        if (cell == null) {
-            return "";
-        }
-        switch (cell.getCellType()) {
-            case STRING:
-                return cell.getStringCellValue().replace("\n", " ");
-            case NUMERIC:
-                if (DateUtil.isCellDateFormatted(cell)) {
-                    return cell.getDateCellValue().toString();
-                } else {
-                    return String.valueOf(cell.getNumericCellValue());
-                }
-            case BOOLEAN:
-                return String.valueOf(cell.getBooleanCellValue());
-            case FORMULA:
-                return cell.getCellFormula();
-            case BLANK:
-            default:
-                return "";
-        }
-    }
-
     private static String chooseExcelFile() {
         JFileChooser fileChooser = new JFileChooser();
         fileChooser.setDialogTitle("Choose Excel File");
@@ -189,14 +113,15 @@ public class ExtractfieldNormal {
     }
 
     private static String chooseSheetName(String excelFilePath) {
-        try (FileInputStream fis = new FileInputStream(excelFilePath);
-             Workbook workbook = new XSSFWorkbook(fis)) {
-            String[] sheetNames = new String[workbook.getNumberOfSheets()];
-            for (int i = 0; i < workbook.getNumberOfSheets(); i++) {
-                sheetNames[i] = workbook.getSheetName(i);
+        try {
+            // Only the workbook index is read here; the full workbook is loaded once, in extractAndWrite
+            Object[] sheets = WorkbookMetadata.read(new File(excelFilePath)).getSheets().toArray();
+            if (sheets.length == 0) {
+                return null;
             }
-            return (String) JOptionPane.showInputDialog(null, "Choose sheet",
-                    "Sheet Selection", JOptionPane.QUESTION_MESSAGE, null, sheetNames, sheetNames[0]);
+            Object selected = JOptionPane.showInputDialog(null, "Choose sheet",
+                    "Sheet Selection", JOptionPane.QUESTION_MESSAGE, null, sheets, sheets[0]);
+            return selected == null ? null : ((WorkbookMetadata.SheetInfo) selected).getName();
         } catch (IOException e) {
             logError("Error reading Excel file: " + e.getMessage());
             return null;
@@ -223,12 +148,4 @@ public class ExtractfieldNormal {
         logger.log(Level.SEVERE, message);
     }
 
-    private static String escapeCsvValue(String value) {
-        if (value.contains(",") || value.contains("\"") || value.contains("\n")) {
-            value = value.replace("\"", "\"\"");
-            return "\"" + value + "\"";
-        } else {
-            return value;
-        }
-    }
 }
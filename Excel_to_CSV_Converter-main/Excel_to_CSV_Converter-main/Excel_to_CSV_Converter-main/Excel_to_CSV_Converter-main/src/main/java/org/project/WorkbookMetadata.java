@@ -0,0 +1,439 @@
+package org.project;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import org.apache.poi.hssf.eventusermodel.AbortableHSSFListener;
+import org.apache.poi.hssf.eventusermodel.HSSFEventFactory;
+import org.apache.poi.hssf.eventusermodel.HSSFRequest;
+import org.apache.poi.hssf.eventusermodel.HSSFUserException;
+import org.apache.poi.hssf.record.BOFRecord;
+import org.apache.poi.hssf.record.BoundSheetRecord;
+import org.apache.poi.hssf.record.Record;
+import org.apache.poi.poifs.filesystem.FileMagic;
+import org.apache.poi.poifs.filesystem.POIFSFileSystem;
+
+/**
+ * Sheet names, part sizes and estimated dimensions of a workbook, read
+ * without building a POI workbook.
+ * <p>
+ * For .xlsx files only {@code xl/workbook.xml}, its relationships and the
+ * head of each sheet part up to the {@code <dimension>} element are parsed,
+ * which takes milliseconds regardless of the workbook size. The dimension is
+ * what Excel recorded when the file was saved, so row and column counts are
+ * estimates; they are {@code -1} when the writer left the element out. For
+ * legacy .xls files only the sheet records at the head of the workbook stream
+ * are read, and only sheet names and visibility are reported.
+ * <p>
+ * This is the one reader of workbook structure shared by the converters in
+ * {@code org.project}, {@code org.example} and {@code org.csdconverter}.
+ */
+public final class WorkbookMetadata {
+
+    private static final String RELATIONSHIPS_NS = "http://schemas.openxmlformats.org/officeDocument/2006/relationships";
+    private static final String OFFICE_DOCUMENT_REL = "/officeDocument";
+    private static final String SHARED_STRINGS_REL = "/sharedStrings";
+    /** Any non-zero return from an {@link AbortableHSSFListener} stops the event loop. */
+    private static final short STOP = 1;
+
+    private final List<SheetInfo> sheets;
+    private final boolean legacyFormat;
+    private final boolean date1904;
+    private final String sharedStringsPart;
+    private final long sharedStringsSize;
+
+    private WorkbookMetadata(List<SheetInfo> sheets, boolean legacyFormat, boolean date1904, String sharedStringsPart,
+                             long sharedStringsSize) {
+        this.sheets = Collections.unmodifiableList(sheets);
+        this.legacyFormat = legacyFormat;
+        this.date1904 = date1904;
+        this.sharedStringsPart = sharedStringsPart;
+        this.sharedStringsSize = sharedStringsSize;
+    }
+
+    public static WorkbookMetadata read(File workbookFile) throws IOException {
+        if (FileMagic.valueOf(workbookFile) == FileMagic.OLE2) {
+            return new WorkbookMetadata(readBoundSheets(workbookFile), true, false, null, -1);
+        }
+        try (ZipFile zip = new ZipFile(workbookFile)) {
+            return readPackage(zip);
+        } catch (XMLStreamException e) {
+            throw new IOException("Malformed workbook " + workbookFile + ": " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Whether the workbook is a legacy .xls file, for which only sheet names are known.
+     */
+    public boolean isLegacyFormat() {
+        return legacyFormat;
+    }
+
+    /**
+     * Whether dates count from 1904 instead of 1900; always {@code false} for .xls workbooks.
+     */
+    public boolean isDate1904() {
+        return date1904;
+    }
+
+    /**
+     * ZIP entry of the shared strings table, or {@code null} if the workbook has none.
+     */
+    public String getSharedStringsPart() {
+        return sharedStringsPart;
+    }
+
+    /**
+     * Uncompressed size of the shared strings table in bytes, or -1 if the workbook has none.
+     */
+    public long getSharedStringsSize() {
+        return sharedStringsSize;
+    }
+
+    public List<SheetInfo> getSheets() {
+        return sheets;
+    }
+
+    public List<String> getSheetNames() {
+        List<String> names = new ArrayList<>(sheets.size());
+        for (SheetInfo sheet : sheets) {
+            names.add(sheet.getName());
+        }
+        return names;
+    }
+
+    /**
+     * @return the sheet with that name, or {@code null} if the workbook has none
+     */
+    public SheetInfo getSheet(String name) {
+        for (SheetInfo sheet : sheets) {
+            if (sheet.getName().equals(name)) {
+                return sheet;
+            }
+        }
+        return null;
+    }
+
+    public static final class SheetInfo {
+
+        private final String name;
+        private final int index;
+        private final boolean hidden;
+        private final String relationshipId;
+        private final String partName;
+        private final long partSize;
+        private final long compressedPartSize;
+        private final int firstRow;
+        private final int lastRow;
+        private final int firstColumn;
+        private final int lastColumn;
+
+        private SheetInfo(String name, int index, boolean hidden, String relationshipId, String partName, long partSize,
+                          long compressedPartSize, int firstRow, int lastRow, int firstColumn, int lastColumn) {
+            this.name = name;
+            this.index = index;
+            this.hidden = hidden;
+            this.relationshipId = relationshipId;
+            this.partName = partName;
+            this.partSize = partSize;
+            this.compressedPartSize = compressedPartSize;
+            this.firstRow = firstRow;
+            this.lastRow = lastRow;
+            this.firstColumn = firstColumn;
+            this.lastColumn = lastColumn;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public int getIndex() {
+            return index;
+        }
+
+        public boolean isHidden() {
+            return hidden;
+        }
+
+        /**
+         * Id of the workbook relationship to the sheet part, or {@code null} for .xls workbooks.
+         */
+        public String getRelationshipId() {
+            return relationshipId;
+        }
+
+        /**
+         * ZIP entry holding the sheet XML, or {@code null} for .xls workbooks.
+         */
+        public String getPartName() {
+            return partName;
+        }
+
+        /**
+         * Uncompressed size of the sheet XML in bytes, or -1 if unknown.
+         */
+        public long getPartSize() {
+            return partSize;
+        }
+
+        public long getCompressedPartSize() {
+            return compressedPartSize;
+        }
+
+        /**
+         * Zero-based index of the last used row, or -1 if unknown.
+         */
+        public int getLastRow() {
+            return lastRow;
+        }
+
+        /**
+         * Zero-based index of the last used column, or -1 if unknown.
+         */
+        public int getLastColumn() {
+            return lastColumn;
+        }
+
+        public int getEstimatedRowCount() {
+            return lastRow < 0 ? -1 : lastRow - firstRow + 1;
+        }
+
+        public int getEstimatedColumnCount() {
+            return lastColumn < 0 ? -1 : lastColumn - firstColumn + 1;
+        }
+
+        @Override
+        public String toString() {
+            return getEstimatedRowCount() < 0
+                    ? name
+                    : name + " (~" + getEstimatedRowCount() + " rows x " + getEstimatedColumnCount() + " columns)";
+        }
+    }
+
+    private static WorkbookMetadata readPackage(ZipFile zip) throws IOException, XMLStreamException {
+        String workbookPart = "xl/workbook.xml";
+        ZipEntry rootRels = zip.getEntry("_rels/.rels");
+        if (rootRels != null) {
+            Map<String, String> documents = readRelationships(zip, rootRels, "", OFFICE_DOCUMENT_REL);
+            if (!documents.isEmpty()) {
+                workbookPart = documents.values().iterator().next();
+            }
+        }
+        ZipEntry workbookEntry = zip.getEntry(workbookPart);
+        if (workbookEntry == null) {
+            throw new IOException("Workbook part " + workbookPart + " not found");
+        }
+        String baseDir = workbookPart.contains("/") ? workbookPart.substring(0, workbookPart.lastIndexOf('/') + 1) : "";
+        ZipEntry workbookRels = zip.getEntry(baseDir + "_rels/" + workbookPart.substring(baseDir.length()) + ".rels");
+        Map<String, String> targets = workbookRels == null
+                ? new HashMap<>()
+                : readRelationships(zip, workbookRels, baseDir, null);
+        String sharedStringsPart = null;
+        if (workbookRels != null) {
+            Map<String, String> sharedStrings = readRelationships(zip, workbookRels, baseDir, SHARED_STRINGS_REL);
+            if (!sharedStrings.isEmpty()) {
+                sharedStringsPart = sharedStrings.values().iterator().next();
+            }
+        }
+
+        List<SheetInfo> sheets = new ArrayList<>();
+        boolean date1904 = false;
+        XMLStreamReader xml = openXml(zip, workbookEntry);
+        try {
+            while (xml.hasNext()) {
+                if (xml.next() != XMLStreamConstants.START_ELEMENT) {
+                    continue;
+                }
+                if ("workbookPr".equals(xml.getLocalName())) {
+                    String value = xml.getAttributeValue(null, "date1904");
+                    date1904 = "1".equals(value) || "true".equals(value);
+                } else if ("sheet".equals(xml.getLocalName())) {
+                    String name = xml.getAttributeValue(null, "name");
+                    boolean hidden = xml.getAttributeValue(null, "state") != null
+                            && !"visible".equals(xml.getAttributeValue(null, "state"));
+                    String relationshipId = xml.getAttributeValue(RELATIONSHIPS_NS, "id");
+                    sheets.add(readSheet(zip, name, sheets.size(), hidden, relationshipId, targets.get(relationshipId)));
+                }
+            }
+        } finally {
+            xml.close();
+        }
+        ZipEntry sharedStringsEntry = sharedStringsPart == null ? null : zip.getEntry(sharedStringsPart);
+        return new WorkbookMetadata(sheets, false, date1904, sharedStringsPart,
+                sharedStringsEntry == null ? -1 : sharedStringsEntry.getSize());
+    }
+
+    /**
+     * Reads the BOUNDSHEET records of an .xls workbook, which precede the first sheet substream.
+     */
+    private static List<SheetInfo> readBoundSheets(File workbookFile) throws IOException {
+        List<SheetInfo> sheets = new ArrayList<>();
+        HSSFRequest request = new HSSFRequest();
+        request.addListenerForAllRecords(new AbortableHSSFListener() {
+            @Override
+            public short abortableProcessRecord(Record record) {
+                if (record instanceof BoundSheetRecord) {
+                    BoundSheetRecord sheet = (BoundSheetRecord) record;
+                    sheets.add(new SheetInfo(sheet.getSheetname(), sheets.size(), sheet.isHidden() || sheet.isVeryHidden(),
+                            null, null, -1, -1, -1, -1, -1, -1));
+                } else if (record instanceof BOFRecord && ((BOFRecord) record).getType() != BOFRecord.TYPE_WORKBOOK) {
+                    return STOP;
+                }
+                return 0;
+            }
+        });
+        try (POIFSFileSystem fileSystem = new POIFSFileSystem(workbookFile, true)) {
+            new HSSFEventFactory().abortableProcessWorkbookEvents(request, fileSystem);
+        } catch (HSSFUserException e) {
+            throw new IOException(e.getMessage(), e);
+        }
+        return sheets;
+    }
+
+    /**
+     * Reads the sheet part only as far as its {@code <dimension>} element,
+     * which precedes the cell data.
+     */
+    private static SheetInfo readSheet(ZipFile zip, String name, int index, boolean hidden, String relationshipId,
+                                       String partName) throws IOException, XMLStreamException {
+        ZipEntry entry = partName == null ? null : zip.getEntry(partName);
+        if (entry == null) {
+            return new SheetInfo(name, index, hidden, relationshipId, partName, -1, -1, -1, -1, -1, -1);
+        }
+        int[] bounds = {-1, -1, -1, -1};
+        XMLStreamReader xml = openXml(zip, entry);
+        try {
+            while (xml.hasNext()) {
+                if (xml.next() != XMLStreamConstants.START_ELEMENT) {
+                    continue;
+                }
+                if ("dimension".equals(xml.getLocalName())) {
+                    bounds = parseDimension(xml.getAttributeValue(null, "ref"));
+                    break;
+                }
+                if ("sheetData".equals(xml.getLocalName())) {
+                    break;
+                }
+            }
+        } finally {
+            xml.close();
+        }
+        return new SheetInfo(name, index, hidden, relationshipId, partName, entry.getSize(), entry.getCompressedSize(),
+                bounds[0], bounds[1], bounds[2], bounds[3]);
+    }
+
+    /**
+     * Parses a reference such as {@code A1:H3001} or {@code B2} into
+     * zero-based {firstRow, lastRow, firstColumn, lastColumn}.
+     */
+    private static int[] parseDimension(String ref) {
+        int[] bounds = {-1, -1, -1, -1};
+        if (ref == null || ref.isEmpty()) {
+            return bounds;
+        }
+        String[] corners = ref.split(":");
+        int[] first = parseCell(corners[0]);
+        int[] last = corners.length > 1 ? parseCell(corners[1]) : first;
+        if (first == null || last == null) {
+            return bounds;
+        }
+        return new int[]{first[0], last[0], first[1], last[1]};
+    }
+
+    /**
+     * @return zero-based {row, column}, or {@code null} if {@code cell} is not an A1 reference
+     */
+    private static int[] parseCell(String cell) {
+        int column = 0;
+        int i = 0;
+        String ref = cell.replace("$", "");
+        while (i < ref.length() && Character.isLetter(ref.charAt(i))) {
+            column = column * 26 + (Character.toUpperCase(ref.charAt(i)) - 'A' + 1);
+            i++;
+        }
+        if (i == 0 || i == ref.length()) {
+            return null;
+        }
+        try {
+            return new int[]{Integer.parseInt(ref.substring(i)) - 1, column - 1};
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    /**
+     * @param typeSuffix keep only relationships whose type ends with this, or {@code null} for all
+     * @return relationship id to the ZIP entry name of its target
+     */
+    private static Map<String, String> readRelationships(ZipFile zip, ZipEntry entry, String baseDir, String typeSuffix)
+            throws IOException, XMLStreamException {
+        Map<String, String> targets = new HashMap<>();
+        XMLStreamReader xml = openXml(zip, entry);
+        try {
+            while (xml.hasNext()) {
+                if (xml.next() != XMLStreamConstants.START_ELEMENT || !"Relationship".equals(xml.getLocalName())) {
+                    continue;
+                }
+                String type = xml.getAttributeValue(null, "Type");
+                if (typeSuffix != null && (type == null || !type.endsWith(typeSuffix))) {
+                    continue;
+                }
+                if ("External".equals(xml.getAttributeValue(null, "TargetMode"))) {
+                    continue;
+                }
+                String target = xml.getAttributeValue(null, "Target");
+                targets.put(xml.getAttributeValue(null, "Id"), target.startsWith("/") ? target.substring(1) : baseDir + target);
+            }
+        } finally {
+            xml.close();
+        }
+        return targets;
+    }
+
+    private static XMLStreamReader openXml(ZipFile zip, ZipEntry entry) throws IOException, XMLStreamException {
+        XMLInputFactory factory = XMLInputFactory.newInstance();
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        InputStream in = zip.getInputStream(entry);
+        return new ClosingXmlReader(factory.createXMLStreamReader(in), in);
+    }
+
+    /**
+     * {@link XMLStreamReader#close()} does not close the underlying stream.
+     */
+    private static final class ClosingXmlReader extends javax.xml.stream.util.StreamReaderDelegate {
+
+        private final InputStream in;
+
+        private ClosingXmlReader(XMLStreamReader reader, InputStream in) {
+            super(reader);
+            this.in = in;
+        }
+
+        @Override
+        public void close() throws XMLStreamException {
+            try {
+                super.close();
+            } finally {
+                try {
+                    in.close();
+                } catch (IOException e) {
+                    throw new XMLStreamException(e);
+                }
+            }
+        }
+    }
+}
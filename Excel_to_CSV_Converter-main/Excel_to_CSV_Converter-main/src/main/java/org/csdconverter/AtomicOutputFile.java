@@ -0,0 +1,183 @@
+package org.csdconverter;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileAttribute;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.logging.Logger;
+import java.util.regex.Pattern;
+
+/**
+ * An output file that is written under a temporary name in its target
+ * directory and only renamed into place by {@link #commit()}.
+ * <p>
+ * A run that dies half way therefore leaves the previous version of the file,
+ * or no file, but never a truncated one; the leftover temporary file is
+ * hidden ({@code .<name>.<16 hex digits>.tmp}). A later writer of the same
+ * target deletes it once it has not been modified for an hour (see
+ * {@value #LEFTOVER_AGE_PROPERTY}), so the temporary file of a writer still
+ * running elsewhere is left alone. The rename is atomic wherever the file
+ * system supports it. With {@value #FSYNC_PROPERTY}{@code =true} the data is
+ * forced to disk before the rename and the directory after it, so a
+ * committed file also survives a power loss. Each commit is recorded in the
+ * {@link RunJournal} of the current thread, if any.
+ */
+final class AtomicOutputFile {
+
+    static final String FSYNC_PROPERTY = "csd.output.fsync";
+    static final String LEFTOVER_AGE_PROPERTY = "csd.output.leftoverAgeMillis";
+    static final long DEFAULT_LEFTOVER_AGE_MILLIS = 60 * 60 * 1000L;
+
+    private static final Logger logger = Logger.getLogger(AtomicOutputFile.class.getName());
+    private static final String TEMP_SUFFIX = ".tmp";
+    /** Owner-only, as {@link Files#createTempFile} creates them. */
+    private static final FileAttribute<?>[] TEMP_ATTRIBUTES = FileSystems.getDefault().supportedFileAttributeViews().contains("posix")
+            ? new FileAttribute<?>[] {PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rw-------"))}
+            : new FileAttribute<?>[0];
+
+    private final Path target;
+    private final Path temp;
+    private boolean done;
+
+    /**
+     * Creates the target's directories and an empty temporary file next to
+     * it, removing stale temporary files an interrupted run left for the same target.
+     */
+    AtomicOutputFile(String targetPath) throws IOException {
+        File outputFile = new File(targetPath);
+        if (outputFile.getParentFile() != null && !outputFile.getParentFile().exists() && !outputFile.getParentFile().mkdirs()) {
+            throw new IOException("Failed to create output directories for: " + targetPath);
+        }
+        this.target = outputFile.toPath();
+        Path directory = target.toAbsolutePath().getParent();
+        String prefix = "." + target.getFileName() + ".";
+        deleteLeftovers(directory, prefix);
+        this.temp = createTemp(directory, prefix);
+    }
+
+    private static Path createTemp(Path directory, String prefix) throws IOException {
+        while (true) {
+            Path candidate = directory.resolve(String.format("%s%016x%s", prefix, ThreadLocalRandom.current().nextLong(), TEMP_SUFFIX));
+            try {
+                return Files.createFile(candidate, TEMP_ATTRIBUTES);
+            } catch (FileAlreadyExistsException e) {
+                // Try another name
+            }
+        }
+    }
+
+    OutputStream newOutputStream() throws IOException {
+        return Files.newOutputStream(temp);
+    }
+
+    File getTempFile() {
+        return temp.toFile();
+    }
+
+    /**
+     * Makes the temporary file a hard link to {@code source}, or a copy of it
+     * if {@code link} is false or the file system cannot link the two, so that
+     * {@link #commit()} puts existing content in place without writing it.
+     *
+     * @return whether the target will be a hard link
+     */
+    boolean fillFrom(Path source, boolean link) throws IOException {
+        if (link) {
+            Files.delete(temp);
+            if (OutputStore.link(temp, source)) {
+                return true;
+            }
+        }
+        Files.copy(source, temp, StandardCopyOption.REPLACE_EXISTING);
+        return false;
+    }
+
+    /**
+     * Moves the fully written and closed temporary file over the target.
+     */
+    void commit() throws IOException {
+        if (done) {
+            return;
+        }
+        boolean fsync = Boolean.getBoolean(FSYNC_PROPERTY);
+        if (fsync) {
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+                channel.force(true);
+            }
+        }
+        try {
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+        // Renaming a hard link over another link to the same file does nothing
+        Files.deleteIfExists(temp);
+        done = true;
+        if (fsync) {
+            syncDirectory(target.toAbsolutePath().getParent());
+        }
+        RunJournal journal = RunJournal.current();
+        if (journal != null) {
+            journal.recordCommit(target.toString());
+        }
+    }
+
+    /**
+     * Discards the temporary file; the target is left as it was.
+     */
+    void abort() {
+        if (done) {
+            return;
+        }
+        done = true;
+        try {
+            Files.deleteIfExists(temp);
+        } catch (IOException e) {
+            logger.warning("Could not delete temporary file " + temp + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Deletes the temporary files of this target, and only this target, that
+     * are old enough not to belong to a writer that is still running.
+     */
+    private static void deleteLeftovers(Path directory, String prefix) {
+        Pattern name = Pattern.compile(Pattern.quote(prefix) + "[0-9a-f]{16}" + Pattern.quote(TEMP_SUFFIX));
+        long staleBefore = System.currentTimeMillis() - Long.getLong(LEFTOVER_AGE_PROPERTY, DEFAULT_LEFTOVER_AGE_MILLIS);
+        try (DirectoryStream<Path> leftovers = Files.newDirectoryStream(directory,
+                path -> name.matcher(path.getFileName().toString()).matches())) {
+            for (Path leftover : leftovers) {
+                if (Files.getLastModifiedTime(leftover).toMillis() >= staleBefore) {
+                    continue;
+                }
+                Files.deleteIfExists(leftover);
+                logger.info("Deleted temporary file of an interrupted run: " + leftover);
+            }
+        } catch (IOException | RuntimeException e) {
+            logger.fine("Could not clean up temporary files in " + directory + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Makes the rename itself durable. Not every platform can open a
+     * directory for syncing, in which case this is skipped.
+     */
+    static void syncDirectory(Path directory) {
+        try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException | RuntimeException e) {
+            logger.fine("Could not sync directory " + directory + ": " + e.getMessage());
+        }
+    }
+}
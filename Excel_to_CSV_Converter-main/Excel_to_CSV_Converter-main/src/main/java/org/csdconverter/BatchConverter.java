@@ -0,0 +1,102 @@
+package org.csdconverter;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Converts many workbooks concurrently, one task per workbook.
+ * <p>
+ * Each task reserves the workbook's estimated memory from the
+ * {@link MemoryBudget}, so that conversions only start while their
+ * workbooks fit in the heap together and the rest queue. Within a
+ * conversion, {@link MainCSD} takes a {@link CpuPermits} permit only for
+ * opening the workbook and parsing and extracting its sheets, which bounds
+ * the number of tasks competing for the processors however many are
+ * running, while reading the files and writing and committing the CSV
+ * outputs overlap freely across tasks.
+ * <p>
+ * Usage: {@code BatchConverter <jobs.csv>}, where every record of the CSV
+ * names a configuration file and a workbook; a first record starting with
+ * {@code config} is taken as a header.
+ */
+public class BatchConverter {
+
+    private static final Logger logger = Logger.getLogger(BatchConverter.class.getName());
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        if (args.length < 1) {
+            System.err.println("Usage: BatchConverter <jobs csv: config file,workbook file per line>");
+            return;
+        }
+        convertAll(readJobs(Path.of(args[0])));
+        ConversionMetrics.get().writeReportIfRequested();
+    }
+
+    /**
+     * Converts every {config, workbook} pair and waits for all of them.
+     *
+     * @return the number of conversions that failed with an exception
+     */
+    public static int convertAll(List<String[]> jobs) throws InterruptedException {
+        long start = System.nanoTime();
+        List<Future<?>> futures = new ArrayList<>(jobs.size());
+        ExecutorService executor = ConversionExecutors.newTaskExecutor("csd-batch-");
+        try {
+            for (String[] job : jobs) {
+                futures.add(executor.submit(() -> {
+                    try (MemoryBudget.Reservation memory = MemoryBudget.reserve(new File(job[1]))) {
+                        MainCSD.convertWithoutReport(job[0], job[1]);
+                    }
+                    return null;
+                }));
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        int failed = 0;
+        for (int i = 0; i < futures.size(); i++) {
+            try {
+                futures.get(i).get();
+            } catch (ExecutionException e) {
+                failed++;
+                logger.log(Level.SEVERE, "Conversion of " + jobs.get(i)[1] + " failed", e.getCause());
+            }
+        }
+        executor.awaitTermination(1, TimeUnit.MINUTES);
+        logger.info("Converted " + (jobs.size() - failed) + " of " + jobs.size() + " workbook(s) in "
+                + (System.nanoTime() - start) / 1_000_000 + " ms ("
+                + (ConversionExecutors.usesVirtualThreads() ? "virtual" : "platform") + " threads, "
+                + CpuPermits.getPermits() + " CPU permit(s), " + MemoryBudget.megabytes(MemoryBudget.getBudget())
+                + " MB memory budget)");
+        return failed;
+    }
+
+    static List<String[]> readJobs(Path jobsFile) throws IOException {
+        List<String[]> jobs = new ArrayList<>();
+        try (CsvReader reader = new CsvReader(Files.newBufferedReader(jobsFile, StandardCharsets.UTF_8))) {
+            List<String> record;
+            while ((record = reader.readRecord()) != null) {
+                if (record.size() < 2 || record.get(0).trim().isEmpty()) {
+                    continue;
+                }
+                if (jobs.isEmpty() && record.get(0).trim().toLowerCase().startsWith("config")) {
+                    continue;
+                }
+                jobs.add(new String[]{record.get(0).trim(), record.get(1).trim()});
+            }
+        }
+        return jobs;
+    }
+}
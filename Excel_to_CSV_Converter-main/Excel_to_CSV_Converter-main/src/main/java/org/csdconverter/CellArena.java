@@ -0,0 +1,248 @@
+package org.csdconverter;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.example.DirectBuffers;
+
+/**
+ * Off-heap store for the cells of a sheet that has to be held in full, such
+ * as a sheet that is transposed before it is written.
+ * <p>
+ * Cell values are appended UTF-8 encoded to direct {@link ByteBuffer} chunks
+ * of {@value #CHUNK_SIZE} bytes, and each cell is located by one packed
+ * {@code long} (chunk, offset, length) in an equally off-heap index. A row is
+ * the range of index entries starting at its entry in a third off-heap list.
+ * Whatever the number of cells, the garbage collector only sees the arena and
+ * its chunk lists, so a 30M-cell sheet no longer means 30M live strings for
+ * every old-generation collection to trace.
+ * <p>
+ * Rows are appended through {@link #newRow()}, which matches the
+ * {@code Supplier<List<String>>} row targets of {@link SheetExtractor}.
+ * {@link #close()} releases the native memory through {@link DirectBuffers}. Not thread-safe
+ * while rows are added; once it is filled, any number of threads may read it.
+ */
+class CellArena implements AutoCloseable {
+
+    static final int CHUNK_SIZE = 1 << 20;
+
+    private static final int OFFSET_BITS = 20;
+    private static final int LENGTH_BITS = 21;
+    private static final long OFFSET_MASK = (1L << OFFSET_BITS) - 1;
+    private static final long LENGTH_MASK = (1L << LENGTH_BITS) - 1;
+
+    private final List<ByteBuffer> chunks = new ArrayList<>();
+    private final LongList cells = new LongList();
+    private final LongList rowStarts = new LongList();
+    private final RowAppender appender = new RowAppender();
+    private ByteBuffer current;
+
+    /**
+     * Starts a new row and returns a view that appends cells to it. The view
+     * is reused and only valid until the next call.
+     */
+    List<String> newRow() {
+        rowStarts.add(cells.size());
+        return appender;
+    }
+
+    int getRowCount() {
+        return (int) rowStarts.size();
+    }
+
+    long getCellCount() {
+        return cells.size();
+    }
+
+    int getCellCount(int row) {
+        return (int) (rowEnd(row) - rowStarts.get(row));
+    }
+
+    /**
+     * Returns the value of a cell, or an empty string if the row is shorter.
+     */
+    String get(int row, int column) {
+        long cell = rowStarts.get(row) + column;
+        if (column < 0 || cell >= rowEnd(row)) {
+            return "";
+        }
+        long entry = cells.get(cell);
+        int length = (int) (entry & LENGTH_MASK);
+        if (length == 0) {
+            return "";
+        }
+        byte[] bytes = new byte[length];
+        ByteBuffer chunk = chunks.get((int) (entry >>> (OFFSET_BITS + LENGTH_BITS))).duplicate();
+        chunk.position((int) ((entry >>> LENGTH_BITS) & OFFSET_MASK));
+        chunk.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Replaces the contents of {@code target} with the cells of one row.
+     */
+    void readRow(int row, List<String> target) {
+        target.clear();
+        int count = getCellCount(row);
+        for (int column = 0; column < count; column++) {
+            target.add(get(row, column));
+        }
+    }
+
+    /**
+     * Returns a new arena whose rows are this arena's columns. The column count
+     * is taken from the first row, and rows shorter than that contribute empty
+     * cells. Cell bytes are copied between arenas without being decoded.
+     */
+    CellArena transpose() {
+        CellArena transposed = new CellArena();
+        int rowCount = getRowCount();
+        if (rowCount == 0 || getCellCount(0) == 0) {
+            return transposed;
+        }
+        int columnCount = getCellCount(0);
+        for (int column = 0; column < columnCount; column++) {
+            transposed.rowStarts.add(transposed.cells.size());
+            for (int row = 0; row < rowCount; row++) {
+                long cell = rowStarts.get(row) + column;
+                if (cell < rowEnd(row)) {
+                    transposed.copyCell(this, cells.get(cell));
+                } else {
+                    transposed.cells.add(0L);
+                }
+            }
+        }
+        return transposed;
+    }
+
+    /**
+     * Off-heap bytes held by the arena, including its indexes.
+     */
+    long getReservedBytes() {
+        return (long) chunks.size() * CHUNK_SIZE + cells.getReservedBytes() + rowStarts.getReservedBytes();
+    }
+
+    @Override
+    public void close() {
+        for (ByteBuffer chunk : chunks) {
+            DirectBuffers.free(chunk);
+        }
+        chunks.clear();
+        current = null;
+        cells.close();
+        rowStarts.close();
+    }
+
+    private long rowEnd(int row) {
+        return row + 1 < rowStarts.size() ? rowStarts.get(row + 1) : cells.size();
+    }
+
+    private void append(String value) {
+        if (value == null || value.isEmpty()) {
+            cells.add(0L);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        cells.add(reserve(bytes.length));
+        current.put(bytes);
+    }
+
+    private void copyCell(CellArena source, long entry) {
+        int length = (int) (entry & LENGTH_MASK);
+        if (length == 0) {
+            cells.add(0L);
+            return;
+        }
+        ByteBuffer bytes = source.chunks.get((int) (entry >>> (OFFSET_BITS + LENGTH_BITS))).duplicate();
+        int offset = (int) ((entry >>> LENGTH_BITS) & OFFSET_MASK);
+        bytes.limit(offset + length).position(offset);
+        cells.add(reserve(length));
+        current.put(bytes);
+    }
+
+    /**
+     * Makes room for {@code length} bytes in the current chunk and returns the
+     * packed index entry of a cell stored there.
+     */
+    private long reserve(int length) {
+        if (length > CHUNK_SIZE) {
+            // Excel caps a cell at 32767 characters, well below a chunk
+            throw new IllegalArgumentException("Cell value of " + length + " bytes exceeds the arena chunk size");
+        }
+        if (current == null || current.remaining() < length) {
+            current = ByteBuffer.allocateDirect(CHUNK_SIZE);
+            chunks.add(current);
+        }
+        return ((long) (chunks.size() - 1) << (OFFSET_BITS + LENGTH_BITS))
+                | ((long) current.position() << LENGTH_BITS)
+                | length;
+    }
+
+    /**
+     * Write-only list view of the row being appended; {@link #size()} reports
+     * the cells appended to it so far.
+     */
+    private final class RowAppender extends AbstractList<String> {
+
+        @Override
+        public boolean add(String value) {
+            append(value);
+            return true;
+        }
+
+        @Override
+        public String get(int index) {
+            return CellArena.this.get(getRowCount() - 1, index);
+        }
+
+        @Override
+        public int size() {
+            return getCellCount(getRowCount() - 1);
+        }
+    }
+
+    /**
+     * Growable list of {@code long}s in direct pages of {@value #PAGE_SIZE} entries.
+     */
+    private static final class LongList {
+
+        private static final int PAGE_SHIFT = 17;
+        private static final int PAGE_SIZE = 1 << PAGE_SHIFT;
+        private static final int PAGE_MASK = PAGE_SIZE - 1;
+
+        private final List<ByteBuffer> pages = new ArrayList<>();
+        private long size;
+
+        void add(long value) {
+            int page = (int) (size >>> PAGE_SHIFT);
+            if (page == pages.size()) {
+                pages.add(ByteBuffer.allocateDirect(PAGE_SIZE * Long.BYTES));
+            }
+            pages.get(page).putLong((int) (size & PAGE_MASK) * Long.BYTES, value);
+            size++;
+        }
+
+        long get(long index) {
+            return pages.get((int) (index >>> PAGE_SHIFT)).getLong((int) (index & PAGE_MASK) * Long.BYTES);
+        }
+
+        long size() {
+            return size;
+        }
+
+        long getReservedBytes() {
+            return (long) pages.size() * PAGE_SIZE * Long.BYTES;
+        }
+
+        void close() {
+            for (ByteBuffer page : pages) {
+                DirectBuffers.free(page);
+            }
+            pages.clear();
+            size = 0;
+        }
+    }
+}
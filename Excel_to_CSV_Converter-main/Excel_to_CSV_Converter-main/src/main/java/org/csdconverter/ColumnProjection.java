@@ -0,0 +1,151 @@
+package org.csdconverter;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.logging.Logger;
+
+import org.apache.poi.ss.util.CellReference;
+
+/**
+ * The output columns of a {@link SheetConfig}, in output order.
+ * <p>
+ * The columns are given as a comma-separated list of entries, each naming a
+ * source column either by its header, matched ignoring case and surrounding
+ * spaces or in its {@linkplain MainCSD#standardizeHeader standardized} form,
+ * or by its letter ({@code C}, {@code AB}), and optionally renaming it with
+ * {@code as}: {@code Email as mail, C, Name}. A header takes precedence over
+ * a letter of the same spelling. A column may be listed more than once, and
+ * column A, which is left out of unprojected output, may be listed too. An
+ * empty list or {@code NA} keeps every column.
+ * <p>
+ * Entries are resolved against the header row once per sheet; an entry that
+ * names no column is logged and left out. The resolved columns are also what
+ * a {@link SheetReader} is told to decode, so the cells of other columns are
+ * skipped by the readers and never rendered or stored.
+ */
+final class ColumnProjection {
+
+    private static final Logger logger = Logger.getLogger(ColumnProjection.class.getName());
+    private static final String RENAME = " as ";
+
+    private final List<String> sources = new ArrayList<>();
+    private final List<String> names = new ArrayList<>();
+
+    private ColumnProjection() {
+    }
+
+    /**
+     * @return the projection described by {@code spec}, or {@code null} if every column is kept
+     */
+    static ColumnProjection parse(String spec) {
+        if (spec == null || spec.trim().isEmpty() || "NA".equalsIgnoreCase(spec.trim())) {
+            return null;
+        }
+        ColumnProjection projection = new ColumnProjection();
+        for (String entry : spec.split(",")) {
+            String source = entry.trim();
+            String name = null;
+            int rename = source.toLowerCase(Locale.ROOT).lastIndexOf(RENAME);
+            if (rename > 0) {
+                name = source.substring(rename + RENAME.length()).trim();
+                source = source.substring(0, rename).trim();
+            }
+            if (!source.isEmpty()) {
+                projection.sources.add(source);
+                projection.names.add(name == null || name.isEmpty() ? null : name);
+            }
+        }
+        return projection.sources.isEmpty() ? null : projection;
+    }
+
+    /**
+     * Resolves the entries against {@code headerRow}; without a header row
+     * only column letters resolve.
+     */
+    Resolved resolve(SheetRow headerRow, String sheetName) {
+        List<String> headers = readHeaders(headerRow);
+        int[] columns = new int[sources.size()];
+        String[] renames = new String[sources.size()];
+        int count = 0;
+        for (int i = 0; i < sources.size(); i++) {
+            int column = findColumn(headers, sources.get(i));
+            if (column < 0) {
+                logger.warning("Sheet: " + sheetName + " - No column '" + sources.get(i) + "' to project, leaving it out");
+                continue;
+            }
+            columns[count] = column;
+            renames[count] = names.get(i);
+            count++;
+        }
+        return new Resolved(Arrays.copyOf(columns, count), Arrays.copyOf(renames, count));
+    }
+
+    static List<String> readHeaders(SheetRow headerRow) {
+        List<String> headers = new ArrayList<>();
+        if (headerRow != null) {
+            for (int column = 0; column < headerRow.getLastCellNum(); column++) {
+                headers.add(headerRow.getCellValue(column).trim());
+            }
+        }
+        return headers;
+    }
+
+    /**
+     * @return the index of the column {@code source} names, or -1 if there is none
+     */
+    static int findColumn(List<String> headers, String source) {
+        for (int column = 0; column < headers.size(); column++) {
+            String header = headers.get(column);
+            if (!header.isEmpty() && (header.equalsIgnoreCase(source) || source.equalsIgnoreCase(MainCSD.standardizeHeader(header)))) {
+                return column;
+            }
+        }
+        if (source.matches("[A-Z]{1,3}")) {
+            return CellReference.convertColStringToIndex(source);
+        }
+        return -1;
+    }
+
+    /**
+     * A projection resolved against one sheet's header row.
+     */
+    static final class Resolved {
+
+        private final int[] columns;
+        private final String[] renames;
+        private final BitSet columnSet = new BitSet();
+
+        private Resolved(int[] columns, String[] renames) {
+            this.columns = columns;
+            this.renames = renames;
+            for (int column : columns) {
+                columnSet.set(column);
+            }
+        }
+
+        int size() {
+            return columns.length;
+        }
+
+        /**
+         * Source column of output column {@code i}.
+         */
+        int getColumn(int i) {
+            return columns[i];
+        }
+
+        /**
+         * Header of output column {@code i} when it is renamed, otherwise {@code null}.
+         */
+        String getRename(int i) {
+            return renames[i];
+        }
+
+        boolean contains(int column) {
+            return columnSet.get(column);
+        }
+    }
+}
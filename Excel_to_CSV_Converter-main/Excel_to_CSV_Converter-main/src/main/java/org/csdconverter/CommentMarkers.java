@@ -0,0 +1,97 @@
+package org.csdconverter;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.SortedSet;
+import java.util.TreeSet;
+
+/**
+ * Rules that mark comment rows and the comment column of a sheet.
+ * <p>
+ * A row is a comment row when its first cell starts with
+ * {@value #DEFAULT_ROW_PREFIX} (see {@value #ROW_PREFIX_PROPERTY}; empty
+ * turns comment rows off), and the comment column is the first one whose
+ * header is one of {@value #DEFAULT_HEADERS} (see {@value #HEADERS_PROPERTY},
+ * a comma-separated, case-sensitive list). The rules are applied to a cell
+ * through {@link SheetRow#getCellMarkers(int)}, so that a reader can answer
+ * without rendering the cell: {@link SpillableSharedStrings} classifies every
+ * shared string once, while the table is indexed, and a row that refers to
+ * shared strings is then classified by their indices, its strings being
+ * looked up only if the row is kept.
+ */
+final class CommentMarkers {
+
+    static final String ROW_PREFIX_PROPERTY = "csd.comment.rowPrefix";
+    static final String HEADERS_PROPERTY = "csd.comment.headers";
+    static final String DEFAULT_ROW_PREFIX = "#";
+    static final String DEFAULT_HEADERS = "Comment,Comments";
+
+    /** Set for a value that marks its row as a comment row when it is in the first column. */
+    static final int ROW_MARKER = 1;
+    /** Set for a value that marks its column as the comment column when it is in the header row. */
+    static final int COMMENT_HEADER = 2;
+
+    private static final CommentMarkers INSTANCE = new CommentMarkers(
+            System.getProperty(ROW_PREFIX_PROPERTY, DEFAULT_ROW_PREFIX),
+            System.getProperty(HEADERS_PROPERTY, DEFAULT_HEADERS));
+
+    private final String rowPrefix;
+    private final Set<String> headers = new HashSet<>();
+
+    private CommentMarkers(String rowPrefix, String headers) {
+        this.rowPrefix = rowPrefix;
+        for (String header : headers.split(",")) {
+            if (!header.trim().isEmpty()) {
+                this.headers.add(header.trim());
+            }
+        }
+    }
+
+    static CommentMarkers get() {
+        return INSTANCE;
+    }
+
+    String getRowPrefix() {
+        return rowPrefix;
+    }
+
+    /**
+     * @return the comment column headers, sorted so that equal rules describe alike
+     */
+    SortedSet<String> getHeaders() {
+        return new TreeSet<>(headers);
+    }
+
+    /**
+     * @return the {@link #ROW_MARKER} and {@link #COMMENT_HEADER} bits that apply to {@code value}
+     */
+    int classify(String value) {
+        if (value == null || value.isEmpty()) {
+            return 0;
+        }
+        int markers = 0;
+        if (!rowPrefix.isEmpty() && value.startsWith(rowPrefix)) {
+            markers |= ROW_MARKER;
+        }
+        if (headers.contains(value)) {
+            markers |= COMMENT_HEADER;
+        }
+        return markers;
+    }
+
+    boolean isCommentRow(SheetRow row) {
+        return (row.getCellMarkers(0) & ROW_MARKER) != 0;
+    }
+
+    /**
+     * @return the index of the comment column named in {@code headerRow}, or -1 if there is none
+     */
+    int findCommentColumn(SheetRow headerRow) {
+        for (int column = 0; column < headerRow.getLastCellNum(); column++) {
+            if ((headerRow.getCellMarkers(column) & COMMENT_HEADER) != 0) {
+                return column;
+            }
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,88 @@
+package org.csdconverter;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+
+/**
+ * Executors for running one task per workbook or sheet.
+ * <p>
+ * On Java 21 and later every task gets its own virtual thread, so thousands
+ * of tasks blocked on file I/O cost no platform threads. The virtual thread
+ * API is looked up reflectively, which keeps the module building for Java
+ * 11; on older JDKs, or with {@value #EXECUTOR_PROPERTY}{@code =platform},
+ * tasks run on a fixed pool of {@value #DEFAULT_PLATFORM_THREADS} platform
+ * threads (see {@value #PLATFORM_THREADS_PROPERTY}) instead. Either way
+ * CPU-bound work inside the tasks should be bracketed by {@link CpuPermits}.
+ */
+final class ConversionExecutors {
+
+    static final String EXECUTOR_PROPERTY = "csd.executor";
+    static final String PLATFORM_THREADS_PROPERTY = "csd.executor.platformThreads";
+    static final int DEFAULT_PLATFORM_THREADS = 32;
+
+    private static final Logger logger = Logger.getLogger(ConversionExecutors.class.getName());
+
+    private ConversionExecutors() {
+    }
+
+    /**
+     * Returns a new executor running each task on its own virtual thread when
+     * the JVM supports it, or on a fixed platform thread pool otherwise.
+     */
+    static ExecutorService newTaskExecutor(String threadNamePrefix) {
+        if (usesVirtualThreads()) {
+            ExecutorService virtual = newVirtualThreadExecutor(threadNamePrefix);
+            if (virtual != null) {
+                return virtual;
+            }
+        }
+        int threads = Integer.getInteger(PLATFORM_THREADS_PROPERTY, DEFAULT_PLATFORM_THREADS);
+        AtomicInteger count = new AtomicInteger();
+        return Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, threadNamePrefix + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Whether {@link #newTaskExecutor} hands out virtual threads on this JVM.
+     */
+    static boolean usesVirtualThreads() {
+        return isVirtualThreadSupported() && !"platform".equalsIgnoreCase(System.getProperty(EXECUTOR_PROPERTY));
+    }
+
+    static boolean isVirtualThreadSupported() {
+        try {
+            Thread.class.getMethod("ofVirtual");
+            return true;
+        } catch (NoSuchMethodException e) {
+            return false;
+        }
+    }
+
+    /**
+     * {@code Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name(prefix, 1).factory())},
+     * or {@code null} before Java 21.
+     */
+    private static ExecutorService newVirtualThreadExecutor(String threadNamePrefix) {
+        if (!isVirtualThreadSupported()) {
+            return null;
+        }
+        try {
+            Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            builder = builderClass.getMethod("name", String.class, long.class).invoke(builder, threadNamePrefix, 1L);
+            ThreadFactory factory = (ThreadFactory) builderClass.getMethod("factory").invoke(builder);
+            Method newExecutor = Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class);
+            return (ExecutorService) newExecutor.invoke(null, factory);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            logger.warning("Virtual threads unavailable, using platform threads: " + e);
+            return null;
+        }
+    }
+}
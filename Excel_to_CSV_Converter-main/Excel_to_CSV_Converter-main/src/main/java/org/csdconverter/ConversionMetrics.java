@@ -0,0 +1,256 @@
+package org.csdconverter;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Process-wide registry of per-sheet, per-stage conversion metrics.
+ * <p>
+ * Every {@link StageMetrics} is registered as an MBean under
+ * {@code org.csdconverter:type=Stage,sheet=...,stage=...}, and the registry
+ * itself under {@code org.csdconverter:type=ConversionMetrics}. Setting the
+ * {@value #REPORT_PROPERTY} system property makes {@link MainCSD#convert}
+ * dump a JSON report to that path when a run finishes.
+ * <p>
+ * A server or daemon converts an open-ended set of sheets, so metrics are
+ * kept for at most {@value #MAX_SHEETS_PROPERTY} sheets (default
+ * {@value #DEFAULT_MAX_SHEETS}); the stages of the sheet recorded least
+ * recently are dropped and their MBeans unregistered to make room. Run-wide
+ * stages are never dropped, and {@link #clear()} drops everything.
+ */
+public final class ConversionMetrics implements ConversionMetricsMBean {
+
+    public static final String REPORT_PROPERTY = "csd.metrics.report";
+    public static final String MAX_SHEETS_PROPERTY = "csd.metrics.maxSheets";
+    public static final int DEFAULT_MAX_SHEETS = 500;
+
+    public static final String STAGE_CONVERT = "convert";
+    public static final String STAGE_LOAD_CONFIG = "loadConfig";
+    public static final String STAGE_OPEN = "open";
+    public static final String STAGE_EXTRACT = "extract";
+    public static final String STAGE_TRANSPOSE = "transpose";
+    public static final String STAGE_WRITE = "write";
+    public static final String STAGE_STORE = "store";
+
+    /** Sheet name used for stages that are not tied to a single sheet. */
+    public static final String RUN = "*";
+
+    private static final Logger logger = Logger.getLogger(ConversionMetrics.class.getName());
+    private static final String DOMAIN = "org.csdconverter";
+    private static final com.sun.management.ThreadMXBean THREADS = allocationTrackingThreadBean();
+    private static final ConversionMetrics INSTANCE = new ConversionMetrics();
+
+    private final ConcurrentMap<String, StageMetrics> stages = new ConcurrentHashMap<>();
+    /** Sheets with metrics, least recently recorded first; guarded by itself. */
+    private final Map<String, Boolean> recentSheets = new LinkedHashMap<>(16, 0.75f, true);
+    private final int maxSheets = Math.max(1, Integer.getInteger(MAX_SHEETS_PROPERTY, DEFAULT_MAX_SHEETS));
+
+    private ConversionMetrics() {
+        register(this, DOMAIN + ":type=ConversionMetrics");
+    }
+
+    public static ConversionMetrics get() {
+        return INSTANCE;
+    }
+
+    /**
+     * Returns the metrics of {@code stage} for {@code sheet}, creating and
+     * registering them on first use.
+     */
+    public StageMetrics stage(String sheet, String stage) {
+        synchronized (recentSheets) {
+            if (!RUN.equals(sheet) && recentSheets.put(sheet, Boolean.TRUE) == null && recentSheets.size() > maxSheets) {
+                Iterator<String> eldest = recentSheets.keySet().iterator();
+                String evicted = eldest.next();
+                eldest.remove();
+                drop(evicted);
+            }
+            return stages.computeIfAbsent(sheet + '\u0000' + stage, key -> {
+                StageMetrics metrics = new StageMetrics(sheet, stage);
+                register(metrics, objectName(metrics));
+                return metrics;
+            });
+        }
+    }
+
+    /**
+     * Drops the metrics of every sheet and stage and unregisters their MBeans.
+     */
+    @Override
+    public void clear() {
+        synchronized (recentSheets) {
+            recentSheets.clear();
+            for (StageMetrics metrics : stages.values()) {
+                unregister(objectName(metrics));
+            }
+            stages.clear();
+        }
+    }
+
+    private void drop(String sheet) {
+        stages.values().removeIf(metrics -> {
+            if (!metrics.getSheet().equals(sheet)) {
+                return false;
+            }
+            unregister(objectName(metrics));
+            return true;
+        });
+    }
+
+    @Override
+    public int getStageCount() {
+        return stages.size();
+    }
+
+    @Override
+    public long getTotalRows() {
+        return stages.values().stream().filter(m -> STAGE_EXTRACT.equals(m.getStage())).mapToLong(StageMetrics::getRows).sum();
+    }
+
+    @Override
+    public long getTotalCells() {
+        return stages.values().stream().filter(m -> STAGE_EXTRACT.equals(m.getStage())).mapToLong(StageMetrics::getCells).sum();
+    }
+
+    @Override
+    public long getTotalBytesWritten() {
+        return stages.values().stream().mapToLong(StageMetrics::getBytesWritten).sum();
+    }
+
+    @Override
+    public void reset() {
+        stages.values().forEach(StageMetrics::reset);
+    }
+
+    @Override
+    public String toJson() {
+        List<StageMetrics> sorted = new ArrayList<>(stages.values());
+        sorted.sort(Comparator.comparing(StageMetrics::getSheet).thenComparing(StageMetrics::getStage));
+
+        StringBuilder json = new StringBuilder();
+        json.append("{\n  \"totalRows\": ").append(getTotalRows())
+                .append(",\n  \"totalCells\": ").append(getTotalCells())
+                .append(",\n  \"totalBytesWritten\": ").append(getTotalBytesWritten())
+                .append(",\n  \"stages\": [");
+        for (int i = 0; i < sorted.size(); i++) {
+            StageMetrics m = sorted.get(i);
+            json.append(i == 0 ? "\n" : ",\n")
+                    .append("    {\"sheet\": ").append(quote(m.getSheet()))
+                    .append(", \"stage\": ").append(quote(m.getStage()))
+                    .append(", \"invocations\": ").append(m.getInvocations())
+                    .append(", \"wallTimeMillis\": ").append(m.getWallTimeNanos() / 1_000_000.0)
+                    .append(", \"rows\": ").append(m.getRows())
+                    .append(", \"cells\": ").append(m.getCells())
+                    .append(", \"bytesWritten\": ").append(m.getBytesWritten())
+                    .append(", \"allocatedBytes\": ").append(m.getAllocatedBytes())
+                    .append(", \"blockedTimeMillis\": ").append(m.getBlockedTimeNanos() / 1_000_000.0)
+                    .append('}');
+        }
+        json.append("\n  ]\n}\n");
+        return json.toString();
+    }
+
+    public void writeReport(Path reportFile) throws IOException {
+        if (reportFile.toAbsolutePath().getParent() != null) {
+            Files.createDirectories(reportFile.toAbsolutePath().getParent());
+        }
+        try (BufferedWriter writer = Files.newBufferedWriter(reportFile, StandardCharsets.UTF_8)) {
+            writer.write(toJson());
+        }
+    }
+
+    /**
+     * Writes the JSON report to the path named by {@value #REPORT_PROPERTY}, if set.
+     */
+    void writeReportIfRequested() {
+        String reportPath = System.getProperty(REPORT_PROPERTY);
+        if (reportPath == null || reportPath.isEmpty()) {
+            return;
+        }
+        try {
+            writeReport(Path.of(reportPath));
+            logger.info("Metrics report written to " + reportPath);
+        } catch (IOException e) {
+            logger.severe("Error writing metrics report: " + reportPath + ". " + e.getMessage());
+        }
+    }
+
+    /**
+     * Bytes allocated so far by the current thread, or -1 if the JVM cannot tell.
+     */
+    static long currentThreadAllocatedBytes() {
+        return THREADS == null ? -1 : THREADS.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    private static com.sun.management.ThreadMXBean allocationTrackingThreadBean() {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean) {
+            com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) bean;
+            if (threads.isThreadAllocatedMemorySupported()) {
+                threads.setThreadAllocatedMemoryEnabled(true);
+                return threads;
+            }
+        }
+        return null;
+    }
+
+    private static String objectName(StageMetrics metrics) {
+        return DOMAIN + ":type=Stage,sheet=" + ObjectName.quote(metrics.getSheet()) + ",stage=" + metrics.getStage();
+    }
+
+    private static void register(Object mbean, String name) {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName objectName = new ObjectName(name);
+            if (!server.isRegistered(objectName)) {
+                server.registerMBean(mbean, objectName);
+            }
+        } catch (JMException | SecurityException e) {
+            logger.log(Level.WARNING, "Could not register metrics MBean " + name + ": " + e.getMessage());
+        }
+    }
+
+    private static void unregister(String name) {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName objectName = new ObjectName(name);
+            if (server.isRegistered(objectName)) {
+                server.unregisterMBean(objectName);
+            }
+        } catch (JMException | SecurityException e) {
+            logger.log(Level.WARNING, "Could not unregister metrics MBean " + name + ": " + e.getMessage());
+        }
+    }
+
+    static String quote(String value) {
+        StringBuilder quoted = new StringBuilder("\"");
+        for (char c : value.toCharArray()) {
+            if (c == '"' || c == '\\') {
+                quoted.append('\\').append(c);
+            } else if (c < 0x20) {
+                quoted.append(String.format("\\u%04x", (int) c));
+            } else {
+                quoted.append(c);
+            }
+        }
+        return quoted.append('"').toString();
+    }
+}
@@ -0,0 +1,30 @@
+package org.csdconverter;
+
+/**
+ * JMX view of all conversion metrics recorded by this JVM.
+ */
+public interface ConversionMetricsMBean {
+
+    int getStageCount();
+
+    long getTotalRows();
+
+    long getTotalCells();
+
+    long getTotalBytesWritten();
+
+    /**
+     * Full report in the same JSON format as {@link ConversionMetrics#writeReport}.
+     */
+    String toJson();
+
+    /**
+     * Zeroes every counter, keeping the stages and their MBeans.
+     */
+    void reset();
+
+    /**
+     * Drops every stage and unregisters its MBean.
+     */
+    void clear();
+}
@@ -0,0 +1,383 @@
+package org.csdconverter;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Handler;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+import java.util.logging.Logger;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+
+/**
+ * Long-lived conversion server, so that callers submitting many conversions
+ * pay JVM startup and POI class loading once instead of per run.
+ * <p>
+ * Jobs are submitted over a small HTTP API bound to the loopback interface
+ * only, queued in a bounded queue of {@value #DEFAULT_QUEUE_SIZE} jobs (see
+ * {@value #QUEUE_SIZE_PROPERTY}) and run by a fixed pool of workers, one per
+ * processor by default (see {@value #WORKERS_PROPERTY}). A full queue is
+ * reported as {@code 503} rather than buffered without bound.
+ * <ul>
+ * <li>{@code POST /jobs} with {@code config} and {@code workbook} form or
+ * query parameters queues a {@link MainCSD#convert} run and returns its id</li>
+ * <li>{@code GET /jobs} and {@code GET /jobs/<id>} report job states,
+ * timings and the errors logged while each job ran</li>
+ * <li>{@code GET /status} reports the queue and pool</li>
+ * <li>{@code GET /metrics} returns the {@link ConversionMetrics} JSON report</li>
+ * </ul>
+ * Usage: {@code ConversionServer [port]}, default {@value #DEFAULT_PORT}.
+ */
+public class ConversionServer {
+
+    public static final int DEFAULT_PORT = 8765;
+    public static final int DEFAULT_QUEUE_SIZE = 16;
+    public static final String WORKERS_PROPERTY = "csd.server.workers";
+    public static final String QUEUE_SIZE_PROPERTY = "csd.server.queueSize";
+    public static final String HISTORY_PROPERTY = "csd.server.history";
+
+    private static final Logger logger = Logger.getLogger(ConversionServer.class.getName());
+    private static final Logger CONVERTER_LOGGER = Logger.getLogger("org.csdconverter");
+    private static final int DEFAULT_HISTORY = 1000;
+
+    private final HttpServer server;
+    private final ThreadPoolExecutor workers;
+    private final ExecutorService httpExecutor;
+    private final Map<String, Job> jobs;
+    private final ConcurrentMap<Long, Job> jobsByThread = new ConcurrentHashMap<>();
+    private final Handler errorCollector = new ErrorCollector();
+    private final AtomicLong nextId = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+
+    public ConversionServer(int port, int workerCount, int queueSize) throws IOException {
+        int history = Integer.getInteger(HISTORY_PROPERTY, DEFAULT_HISTORY);
+        this.jobs = new LinkedHashMap<String, Job>() {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Job> eldest) {
+                return size() > history && eldest.getValue().isDone();
+            }
+        };
+        this.workers = new ThreadPoolExecutor(workerCount, workerCount, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueSize), daemonThreads("csd-worker-"));
+        this.httpExecutor = Executors.newFixedThreadPool(2, daemonThreads("csd-http-"));
+        this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        server.setExecutor(httpExecutor);
+        server.createContext("/jobs", this::handleJobs);
+        server.createContext("/status", exchange -> respond(exchange, 200, statusJson()));
+        server.createContext("/metrics", exchange -> respond(exchange, 200, ConversionMetrics.get().toJson()));
+    }
+
+    public static void main(String[] args) throws IOException {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_PORT;
+        int workerCount = Integer.getInteger(WORKERS_PROPERTY, Runtime.getRuntime().availableProcessors());
+        int queueSize = Integer.getInteger(QUEUE_SIZE_PROPERTY, DEFAULT_QUEUE_SIZE);
+        ConversionServer conversionServer = new ConversionServer(port, workerCount, queueSize);
+        Runtime.getRuntime().addShutdownHook(new Thread(conversionServer::stop, "csd-server-shutdown"));
+        conversionServer.start();
+    }
+
+    public void start() {
+        warmUp();
+        CONVERTER_LOGGER.addHandler(errorCollector);
+        server.start();
+        logger.info("Conversion server listening on http://" + server.getAddress().getHostString() + ":"
+                + server.getAddress().getPort() + " with " + workers.getCorePoolSize() + " worker(s) and a queue of "
+                + workers.getQueue().remainingCapacity());
+    }
+
+    /**
+     * Stops accepting requests and waits for queued and running jobs to finish.
+     */
+    public void stop() {
+        server.stop(0);
+        workers.shutdown();
+        try {
+            if (!workers.awaitTermination(1, TimeUnit.MINUTES)) {
+                logger.warning("Conversion jobs still running at shutdown: " + workers.getActiveCount());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        httpExecutor.shutdown();
+        CONVERTER_LOGGER.removeHandler(errorCollector);
+    }
+
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    /**
+     * Loads the POI classes a conversion needs before the first job arrives.
+     */
+    private static void warmUp() {
+        long start = System.nanoTime();
+        try (XSSFWorkbook workbook = new XSSFWorkbook()) {
+            workbook.createSheet().createRow(0).createCell(0).setCellValue("warm-up");
+        } catch (IOException e) {
+            logger.fine("Warm-up failed: " + e.getMessage());
+        }
+        logger.info("Warm-up took " + (System.nanoTime() - start) / 1_000_000 + " ms");
+    }
+
+    private void handleJobs(HttpExchange exchange) throws IOException {
+        String path = exchange.getRequestURI().getPath();
+        String method = exchange.getRequestMethod();
+        if ("/jobs".equals(path) || "/jobs/".equals(path)) {
+            if ("POST".equals(method)) {
+                submit(exchange);
+            } else if ("GET".equals(method)) {
+                respond(exchange, 200, jobsJson());
+            } else {
+                respond(exchange, 405, error("Method not allowed: " + method));
+            }
+            return;
+        }
+        Job job;
+        synchronized (jobs) {
+            job = jobs.get(path.substring("/jobs/".length()));
+        }
+        if (job == null) {
+            respond(exchange, 404, error("No such job: " + path));
+        } else {
+            respond(exchange, 200, job.toJson());
+        }
+    }
+
+    private void submit(HttpExchange exchange) throws IOException {
+        Map<String, String> params = parseParameters(exchange.getRequestURI().getRawQuery());
+        params.putAll(parseParameters(new String(readBody(exchange.getRequestBody()), StandardCharsets.UTF_8)));
+        String config = params.get("config");
+        String workbook = params.get("workbook");
+        if (config == null || workbook == null) {
+            respond(exchange, 400, error("Both config and workbook are required"));
+            return;
+        }
+        for (String file : new String[]{config, workbook}) {
+            if (!new File(file).isFile()) {
+                respond(exchange, 400, error("File not found: " + file));
+                return;
+            }
+        }
+
+        Job job = new Job(Long.toString(nextId.incrementAndGet()), config, workbook);
+        synchronized (jobs) {
+            jobs.put(job.id, job);
+        }
+        try {
+            workers.execute(() -> run(job));
+        } catch (RejectedExecutionException e) {
+            synchronized (jobs) {
+                jobs.remove(job.id);
+            }
+            rejected.incrementAndGet();
+            exchange.getResponseHeaders().set("Retry-After", "1");
+            respond(exchange, 503, error("Job queue is full"));
+            return;
+        }
+        logger.info("Queued job " + job.id + ": " + config + " -> " + workbook);
+        respond(exchange, 202, job.toJson());
+    }
+
+    private void run(Job job) {
+        long threadId = Thread.currentThread().getId();
+        jobsByThread.put(threadId, job);
+        job.started = System.currentTimeMillis();
+        job.state = State.RUNNING;
+        RuntimeException failure = null;
+        try {
+            MainCSD.convert(job.config, job.workbook);
+        } catch (RuntimeException e) {
+            failure = e;
+            job.addError(e.toString());
+        } finally {
+            jobsByThread.remove(threadId);
+        }
+        job.finished = System.currentTimeMillis();
+        job.state = job.hasErrors() ? State.FAILED : State.SUCCEEDED;
+        if (failure != null) {
+            logger.log(Level.SEVERE, "Job " + job.id + " failed", failure);
+        }
+        logger.info("Job " + job.id + " " + job.state + " in " + (job.finished - job.started) + " ms");
+    }
+
+    private String statusJson() {
+        return "{\"workers\": " + workers.getCorePoolSize()
+                + ", \"activeJobs\": " + workers.getActiveCount()
+                + ", \"queuedJobs\": " + workers.getQueue().size()
+                + ", \"queueCapacity\": " + (workers.getQueue().size() + workers.getQueue().remainingCapacity())
+                + ", \"completedJobs\": " + workers.getCompletedTaskCount()
+                + ", \"rejectedJobs\": " + rejected.get() + "}\n";
+    }
+
+    private String jobsJson() {
+        List<Job> snapshot;
+        synchronized (jobs) {
+            snapshot = new ArrayList<>(jobs.values());
+        }
+        StringBuilder json = new StringBuilder("[");
+        for (Iterator<Job> it = snapshot.iterator(); it.hasNext(); ) {
+            json.append("\n  ").append(it.next().toJson().trim());
+            if (it.hasNext()) {
+                json.append(',');
+            }
+        }
+        return json.append("\n]\n").toString();
+    }
+
+    private static String error(String message) {
+        return "{\"error\": " + ConversionMetrics.quote(message) + "}\n";
+    }
+
+    private static void respond(HttpExchange exchange, int status, String json) throws IOException {
+        byte[] body = json.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(status, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    private static byte[] readBody(InputStream in) throws IOException {
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int n;
+        while ((n = in.read(buffer)) > 0) {
+            body.write(buffer, 0, n);
+        }
+        return body.toByteArray();
+    }
+
+    private static Map<String, String> parseParameters(String encoded) {
+        Map<String, String> params = new HashMap<>();
+        if (encoded == null || encoded.isEmpty()) {
+            return params;
+        }
+        for (String pair : encoded.split("&")) {
+            int eq = pair.indexOf('=');
+            if (eq > 0) {
+                params.put(URLDecoder.decode(pair.substring(0, eq), StandardCharsets.UTF_8),
+                        URLDecoder.decode(pair.substring(eq + 1).trim(), StandardCharsets.UTF_8));
+            }
+        }
+        return params;
+    }
+
+    private static ThreadFactory daemonThreads(String prefix) {
+        AtomicInteger count = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, prefix + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    enum State {
+        QUEUED, RUNNING, SUCCEEDED, FAILED
+    }
+
+    private static final class Job {
+
+        private final String id;
+        private final String config;
+        private final String workbook;
+        private final long submitted = System.currentTimeMillis();
+        private final List<String> errors = new ArrayList<>();
+        private volatile State state = State.QUEUED;
+        private volatile long started;
+        private volatile long finished;
+
+        private Job(String id, String config, String workbook) {
+            this.id = id;
+            this.config = config;
+            this.workbook = workbook;
+        }
+
+        private boolean isDone() {
+            return state == State.SUCCEEDED || state == State.FAILED;
+        }
+
+        private boolean hasErrors() {
+            synchronized (errors) {
+                return !errors.isEmpty();
+            }
+        }
+
+        private void addError(String message) {
+            synchronized (errors) {
+                errors.add(message);
+            }
+        }
+
+        private String toJson() {
+            StringBuilder json = new StringBuilder();
+            json.append("{\"id\": ").append(ConversionMetrics.quote(id))
+                    .append(", \"state\": \"").append(state).append('"')
+                    .append(", \"config\": ").append(ConversionMetrics.quote(config))
+                    .append(", \"workbook\": ").append(ConversionMetrics.quote(workbook))
+                    .append(", \"submitted\": ").append(submitted)
+                    .append(", \"queuedMillis\": ").append((started == 0 ? System.currentTimeMillis() : started) - submitted)
+                    .append(", \"runMillis\": ").append(started == 0 ? 0 : (finished == 0 ? System.currentTimeMillis() : finished) - started)
+                    .append(", \"errors\": [");
+            synchronized (errors) {
+                for (int i = 0; i < errors.size(); i++) {
+                    json.append(i == 0 ? "" : ", ").append(ConversionMetrics.quote(errors.get(i)));
+                }
+            }
+            return json.append("]}\n").toString();
+        }
+    }
+
+    /**
+     * Attributes SEVERE records logged by the converter to the job running on
+     * the logging thread, since {@link MainCSD#convert} reports failures by
+     * logging rather than throwing.
+     */
+    private final class ErrorCollector extends Handler {
+
+        @Override
+        public void publish(LogRecord record) {
+            if (record.getLevel().intValue() < Level.SEVERE.intValue()) {
+                return;
+            }
+            Job job = jobsByThread.get(Thread.currentThread().getId());
+            if (job != null) {
+                job.addError(record.getMessage());
+            }
+        }
+
+        @Override
+        public void flush() {
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package org.csdconverter;
+
+import java.util.concurrent.Semaphore;
+
+/**
+ * Process-wide limit on the number of threads doing CPU-bound work, such as
+ * parsing a workbook with POI, at the same time.
+ * <p>
+ * Tasks that mostly wait on I/O can then run on as many (virtual) threads as
+ * there are files, while the parsing they eventually do is still spread over
+ * no more than {@value #PERMITS_PROPERTY} threads, one per processor by
+ * default. Permits are reentrant per thread, so code holding a permit may
+ * call code that acquires one again.
+ */
+final class CpuPermits {
+
+    static final String PERMITS_PROPERTY = "csd.cpuPermits";
+
+    private static final int PERMITS = Integer.getInteger(PERMITS_PROPERTY, Runtime.getRuntime().availableProcessors());
+    private static final Semaphore SEMAPHORE = new Semaphore(PERMITS, true);
+    private static final ThreadLocal<int[]> HELD = ThreadLocal.withInitial(() -> new int[1]);
+
+    private CpuPermits() {
+    }
+
+    /**
+     * Blocks until a permit is available, unless the current thread already holds one.
+     */
+    static Permit acquire() throws InterruptedException {
+        int[] held = HELD.get();
+        if (held[0] == 0) {
+            SEMAPHORE.acquire();
+        }
+        held[0]++;
+        return new Permit(held);
+    }
+
+    static int getPermits() {
+        return PERMITS;
+    }
+
+    static int getAvailablePermits() {
+        return SEMAPHORE.availablePermits();
+    }
+
+    static final class Permit implements AutoCloseable {
+
+        private final int[] held;
+        private boolean released;
+
+        private Permit(int[] held) {
+            this.held = held;
+        }
+
+        @Override
+        public void close() {
+            if (released) {
+                return;
+            }
+            released = true;
+            if (--held[0] == 0) {
+                SEMAPHORE.release();
+            }
+        }
+    }
+}
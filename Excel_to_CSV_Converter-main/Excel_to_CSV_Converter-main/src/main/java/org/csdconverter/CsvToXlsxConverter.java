@@ -0,0 +1,184 @@
+package org.csdconverter;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Logger;
+import java.util.regex.Pattern;
+
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.ss.util.WorkbookUtil;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
+
+/**
+ * Rebuilds an .xlsx workbook from the CSV files produced by {@link MainCSD},
+ * driven by the same configuration table: every {@link SheetConfig} row reads
+ * its CSV and writes it to the sheet named in the configuration.
+ * <p>
+ * Rows are streamed into an {@link SXSSFWorkbook}, so only the configured
+ * row-access window is kept in memory and the rest is flushed to (optionally
+ * compressed) temporary files. Cells are placed where {@code MainCSD} reads
+ * them from, so converting the rebuilt workbook again yields the same CSVs.
+ * Transposed sheets have to be turned back column by column and are the one
+ * case where a whole CSV is held in memory.
+ */
+public class CsvToXlsxConverter {
+
+    public static final int DEFAULT_ROW_ACCESS_WINDOW = 100;
+
+    private static final Logger logger = Logger.getLogger(CsvToXlsxConverter.class.getName());
+    /** Integers as they are written back: no leading zeros, no "-0" and no more digits than a double holds exactly. */
+    private static final Pattern INTEGER = Pattern.compile("0|-?[1-9]\\d{0,14}");
+    private static final int START_COLUMN = 1;
+
+    private final int rowAccessWindow;
+    private final boolean compressTempFiles;
+
+    public CsvToXlsxConverter() {
+        this(DEFAULT_ROW_ACCESS_WINDOW, true);
+    }
+
+    /**
+     * @param rowAccessWindow   number of rows per sheet kept in memory before flushing to disk
+     * @param compressTempFiles whether the flushed sheet data is gzip-compressed on disk
+     */
+    public CsvToXlsxConverter(int rowAccessWindow, boolean compressTempFiles) {
+        this.rowAccessWindow = rowAccessWindow;
+        this.compressTempFiles = compressTempFiles;
+    }
+
+    /**
+     * Usage: {@code CsvToXlsxConverter <config.xlsx> <output.xlsx> [rowAccessWindow] [compressTempFiles]}
+     */
+    public static void main(String[] args) {
+        if (args.length < 2) {
+            System.err.println("Usage: CsvToXlsxConverter <config file> <output .xlsx> [row access window] [compress temp files]");
+            return;
+        }
+        int window = args.length > 2 ? Integer.parseInt(args[2]) : DEFAULT_ROW_ACCESS_WINDOW;
+        boolean compress = args.length <= 3 || Boolean.parseBoolean(args[3]);
+        new CsvToXlsxConverter(window, compress).convert(args[0], args[1]);
+    }
+
+    public void convert(String configFilePath, String xlsxFilePath) {
+        List<SheetConfig> sheetConfigs = MainCSD.loadSheetConfigs(configFilePath);
+
+        SXSSFWorkbook workbook = new SXSSFWorkbook(null, rowAccessWindow, compressTempFiles);
+        try {
+            for (SheetConfig config : sheetConfigs) {
+                String csvFilePath = MainCSD.resolveCsvPath(config);
+                File csvFile = new File(csvFilePath);
+                if (!csvFile.isFile()) {
+                    logger.severe("CSV file not found for sheet " + config.getSheetName() + ": " + csvFilePath);
+                    continue;
+                }
+                Sheet sheet = workbook.createSheet(uniqueSheetName(workbook, config.getSheetName()));
+                try {
+                    if (config.isTranspose() && !config.getExcludeFromTranspose().contains(config.getSheetName())) {
+                        writeTransposed(csvFile, sheet);
+                    } else {
+                        writeRows(csvFile, sheet);
+                    }
+                } catch (IOException e) {
+                    logger.severe("Error reading CSV file: " + csvFilePath + ". " + e.getMessage());
+                }
+            }
+
+            AtomicOutputFile output = new AtomicOutputFile(xlsxFilePath);
+            try {
+                try (OutputStream out = output.newOutputStream()) {
+                    workbook.write(out);
+                }
+                output.commit();
+            } finally {
+                output.abort();
+            }
+            logger.info("Workbook rebuilt from CSV files: " + xlsxFilePath);
+        } catch (IOException e) {
+            logger.severe("Error writing workbook: " + xlsxFilePath + ". " + e.getMessage());
+        } finally {
+            workbook.dispose();
+            try {
+                workbook.close();
+            } catch (IOException e) {
+                logger.warning("Error closing workbook: " + e.getMessage());
+            }
+        }
+    }
+
+    private static void writeRows(File csvFile, Sheet sheet) throws IOException {
+        try (CsvReader reader = openCsv(csvFile)) {
+            int rowIndex = 0;
+            List<String> record;
+            while ((record = reader.readRecord()) != null) {
+                writeRow(sheet.createRow(rowIndex++), record);
+            }
+        }
+    }
+
+    /**
+     * Each CSV line of a transposed sheet is one column of the original sheet,
+     * which started at row 2.
+     */
+    private static void writeTransposed(File csvFile, Sheet sheet) throws IOException {
+        List<List<String>> columns = new ArrayList<>();
+        int rowCount = 0;
+        try (CsvReader reader = openCsv(csvFile)) {
+            List<String> record;
+            while ((record = reader.readRecord()) != null) {
+                columns.add(record);
+                rowCount = Math.max(rowCount, record.size());
+            }
+        }
+        for (int i = 0; i < rowCount; i++) {
+            List<String> values = new ArrayList<>(columns.size());
+            for (List<String> column : columns) {
+                values.add(i < column.size() ? column.get(i) : "");
+            }
+            writeRow(sheet.createRow(i + 2), values);
+        }
+    }
+
+    /**
+     * Opens a CSV in the charset {@link MainCSD} writes it in, not whatever the
+     * platform default is where the workbook is rebuilt.
+     */
+    private static CsvReader openCsv(File csvFile) throws IOException {
+        return new CsvReader(new BufferedReader(new InputStreamReader(new FileInputStream(csvFile), MainCSD.CHARSET)));
+    }
+
+    /**
+     * Text that only looks like a number, such as {@code 007}, stays text so
+     * that it is written back unchanged.
+     */
+    private static void writeRow(Row row, List<String> values) {
+        for (int j = 0; j < values.size(); j++) {
+            String value = values.get(j);
+            if (value.isEmpty()) {
+                row.createCell(START_COLUMN + j);
+            } else if (INTEGER.matcher(value).matches()) {
+                row.createCell(START_COLUMN + j).setCellValue(Long.parseLong(value));
+            } else if ("true".equals(value) || "false".equals(value)) {
+                row.createCell(START_COLUMN + j).setCellValue(Boolean.parseBoolean(value));
+            } else {
+                row.createCell(START_COLUMN + j).setCellValue(value);
+            }
+        }
+    }
+
+    private static String uniqueSheetName(SXSSFWorkbook workbook, String sheetName) {
+        String base = WorkbookUtil.createSafeSheetName(sheetName);
+        String candidate = base;
+        for (int n = 2; workbook.getSheet(candidate) != null; n++) {
+            String suffix = " (" + n + ")";
+            candidate = base.substring(0, Math.min(base.length(), 31 - suffix.length())) + suffix;
+        }
+        return candidate;
+    }
+}
@@ -0,0 +1,42 @@
+package org.csdconverter;
+
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.CellType;
+import org.apache.poi.ss.usermodel.Row;
+
+/**
+ * {@link SheetRow} over a POI usermodel row.
+ */
+class DomSheetRow implements SheetRow {
+
+    private final Row row;
+
+    DomSheetRow(Row row) {
+        this.row = row;
+    }
+
+    @Override
+    public int getRowNum() {
+        return row.getRowNum();
+    }
+
+    @Override
+    public int getLastCellNum() {
+        return row.getLastCellNum();
+    }
+
+    @Override
+    public String getCellValue(int column) {
+        return MainCSD.getCellValue(row.getCell(column));
+    }
+
+    @Override
+    public double getNumericValue(int column) {
+        Cell cell = row.getCell(column);
+        if (cell == null) {
+            return Double.NaN;
+        }
+        CellType type = cell.getCellType() == CellType.FORMULA ? cell.getCachedFormulaResultType() : cell.getCellType();
+        return type == CellType.NUMERIC ? cell.getNumericCellValue() : Double.NaN;
+    }
+}
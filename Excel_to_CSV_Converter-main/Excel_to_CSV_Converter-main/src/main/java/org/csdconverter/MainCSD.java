@@ -2,12 +2,22 @@ package org.csdconverter;
 
 import java.io.BufferedWriter;
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileWriter;
 import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Supplier;
 import java.util.logging.Logger;
 import java.util.stream.Collectors;
 
@@ -16,8 +26,7 @@ import org.apache.poi.ss.usermodel.CellType;
 import org.apache.poi.ss.usermodel.Row;
 import org.apache.poi.ss.usermodel.Sheet;
 import org.apache.poi.ss.usermodel.Workbook;
-import org.apache.poi.ss.util.CellReference;
-import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.project.WorkbookMetadata;
 
 /**
  * This class converts data from Excel sheets to CSV files based on
@@ -25,8 +34,15 @@ import org.apache.poi.xssf.usermodel.XSSFWorkbook;
  */
 public class MainCSD {
 
+    /** Rows per chunk when {@link #writeCSV} encodes in parallel. */
+    static final int WRITE_CHUNK_ROWS = 4_096;
+
     private static final String BASE_OUTPUT_DIR = "D:/Excel_to_CSV_Converter-main/BASE_OUTPUT_DIRECTORY";
     private static final Logger logger = Logger.getLogger(MainCSD.class.getName());
+    /** Encoding of the CSV files written, and read back by {@link CsvToXlsxConverter}. */
+    static final Charset CHARSET = Charset.defaultCharset();
+    /** Line separator of the CSV files written. */
+    static final String LINE_SEPARATOR = System.lineSeparator();
 
     /**
      * Main method to initiate the Excel to CSV conversion process.
@@ -38,37 +54,271 @@ public class MainCSD {
     }
 
     public static void convert(String configFilePath, String excelFilePath) {
-        List<SheetConfig> sheetConfigs = loadSheetConfigs(configFilePath);
+        convertWithoutReport(configFilePath, excelFilePath);
+        ConversionMetrics.get().writeReportIfRequested();
+    }
 
-        for (SheetConfig config : sheetConfigs) {
-            String sheetName = config.getSheetName();
-            String csvFilePath = Paths.get(BASE_OUTPUT_DIR, config.getOutputDirectory(), config.getCsvName()).toString();
-            try (Workbook workbook = new XSSFWorkbook(new FileInputStream(excelFilePath))) {
-                Sheet sheet = workbook.getSheet(sheetName);
-                if (sheet != null) {
-                    List<List<String>> extractedData = extractDataFromSheet(sheet, config);
-
-                    if (config.isTranspose() && !config.getExcludeFromTranspose().contains(sheetName)) {
-                        extractedData = transposeData(extractedData);
-                    }
+    /**
+     * Runs one conversion without writing the metrics report, for callers
+     * that report once after a batch of conversions. The outputs the run
+     * commits are tracked in its {@link RunJournal}.
+     */
+    static void convertWithoutReport(String configFilePath, String excelFilePath) {
+        try (StageMetrics.Timer ignored = ConversionMetrics.get().stage(ConversionMetrics.RUN, ConversionMetrics.STAGE_CONVERT).start();
+             RunJournal journal = RunJournal.begin(Paths.get(BASE_OUTPUT_DIR, RunJournal.DIRECTORY), configFilePath, excelFilePath)) {
+            convertSheets(loadSheetConfigs(configFilePath), excelFilePath, journal);
+        }
+    }
 
-                    applyAdvanceConditionToHeaders(extractedData);
-                    cleanUpData(extractedData);
-                    writeCSV(csvFilePath, extractedData);
-                } else {
-                    throw new Exception("Sheet not found: " + sheetName);
+    /**
+     * Location of the {@link OutputStore} shared by all runs.
+     */
+    static Path storeDirectory() {
+        return Paths.get(BASE_OUTPUT_DIR, OutputStore.DIRECTORY);
+    }
+
+    /**
+     * Converts every configuration, reading each sheet once: configurations
+     * naming the same sheet share one row scan, and the workbook itself is
+     * opened once per run. Outputs that a resumed run already committed are
+     * skipped, as are, when the {@link OutputStore} is enabled, outputs it
+     * already holds; the run is marked complete once all planned outputs are.
+     * The workbook is only opened once its estimated memory is reserved from
+     * the {@link MemoryBudget}, which also decides whether an .xlsx workbook
+     * is too large to load into a usermodel workbook. A {@link CpuPermits}
+     * permit is held while the workbook is opened and while each sheet is
+     * parsed and extracted, and released before its output is written and
+     * committed.
+     */
+    private static void convertSheets(List<SheetConfig> sheetConfigs, String excelFilePath, RunJournal journal) {
+        File excelFile = new File(excelFilePath);
+        Map<String, List<SheetConfig>> configsBySheet = groupBySheet(sheetConfigs);
+        List<String> plannedOutputs = new ArrayList<>();
+        OutputStore store = OutputStore.openIfEnabled(storeDirectory());
+        try {
+            WorkbookMetadata metadata = WorkbookMetadata.read(excelFile);
+            planSheets(metadata, configsBySheet);
+            for (List<SheetConfig> configs : configsBySheet.values()) {
+                for (SheetConfig config : configs) {
+                    plannedOutputs.add(resolveCsvPath(config));
                 }
-            } catch (Exception e) {
-                logger.severe("Error processing sheet: " + sheetName + ". " + e.getMessage());
             }
+            skipCommitted(journal, configsBySheet);
+            try (OutputStore.WorkbookKeys keys = store == null ? null : new OutputStore.WorkbookKeys(excelFile, metadata)) {
+                Map<SheetConfig, String> storeKeys = store == null
+                        ? Collections.emptyMap()
+                        : reuseStored(store, keys, configsBySheet);
+                if (configsBySheet.isEmpty()) {
+                    journal.completeIfAll(plannedOutputs);
+                    logger.info("Conversion completed successfully.");
+                    return;
+                }
+                boolean streaming = SheetReaders.useStreamingReader(metadata);
+                if (streaming && !metadata.isLegacyFormat()) {
+                    logger.info("Workbook: ~" + MemoryBudget.megabytes(MemoryBudget.estimateUsermodel(metadata))
+                            + " MB as a usermodel workbook, reading it with the streaming reader");
+                }
+                try (MemoryBudget.Reservation memory = MemoryBudget.reserve(excelFile, metadata)) {
+                    if (streaming) {
+                        try (SheetReader reader = openReader(excelFile)) {
+                            for (Map.Entry<String, List<SheetConfig>> group : configsBySheet.entrySet()) {
+                                convertSheet(reader, group.getKey(), group.getValue());
+                            }
+                        }
+                    } else {
+                        try (Workbook workbook = openWorkbook(excelFilePath)) {
+                            for (Map.Entry<String, List<SheetConfig>> group : configsBySheet.entrySet()) {
+                                convertSheet(workbook, group.getKey(), group.getValue());
+                            }
+                        }
+                    }
+                }
+                storeConverted(store, storeKeys, journal);
+            }
+        } catch (IOException e) {
+            logger.severe("Error reading workbook: " + excelFilePath + ". " + e.getMessage());
+            return;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            logger.severe("Interrupted while waiting for memory to convert " + excelFilePath);
+            return;
         }
 
+        journal.completeIfAll(plannedOutputs);
         logger.info("Conversion completed successfully.");
     }
 
+    private static void skipCommitted(RunJournal journal, Map<String, List<SheetConfig>> configsBySheet) {
+        configsBySheet.values().forEach(configs -> configs.removeIf(config -> {
+            if (journal.isCommitted(resolveCsvPath(config))) {
+                logger.info("Sheet: " + config.getSheetName() + " - " + config.getCsvName() + " was committed by an earlier attempt, skipping");
+                return true;
+            }
+            return false;
+        }));
+        configsBySheet.values().removeIf(List::isEmpty);
+    }
+
+    /**
+     * Puts in place, from the store, every output it already holds and drops
+     * those configurations.
+     *
+     * @return the store key of each configuration left to convert
+     */
+    private static Map<SheetConfig, String> reuseStored(OutputStore store, OutputStore.WorkbookKeys keys,
+                                                        Map<String, List<SheetConfig>> configsBySheet) {
+        Map<SheetConfig, String> storeKeys = new HashMap<>();
+        configsBySheet.values().forEach(configs -> configs.removeIf(config -> {
+            String csvFilePath = resolveCsvPath(config);
+            try (StageMetrics.Timer ignored = ConversionMetrics.get().stage(config.getSheetName(), ConversionMetrics.STAGE_STORE).start()) {
+                String key = keys.keyOf(config);
+                if (store.materialize(key, csvFilePath)) {
+                    logger.info("Sheet: " + config.getSheetName() + " - " + config.getCsvName() + " is unchanged, reused from the output store");
+                    return true;
+                }
+                storeKeys.put(config, key);
+            } catch (IOException e) {
+                logger.warning("Sheet: " + config.getSheetName() + " - output store not used: " + e.getMessage());
+            }
+            return false;
+        }));
+        configsBySheet.values().removeIf(List::isEmpty);
+        return storeKeys;
+    }
+
+    private static void storeConverted(OutputStore store, Map<SheetConfig, String> storeKeys, RunJournal journal) {
+        for (Map.Entry<SheetConfig, String> entry : storeKeys.entrySet()) {
+            String csvFilePath = resolveCsvPath(entry.getKey());
+            if (journal.isCommittedNow(csvFilePath)) {
+                store.add(entry.getValue(), csvFilePath);
+            }
+        }
+    }
+
+    /**
+     * Groups configurations by sheet name in order of first appearance. When
+     * several configurations write the same CSV file only the last one is kept,
+     * since the earlier outputs would have been overwritten anyway.
+     */
+    private static Map<String, List<SheetConfig>> groupBySheet(List<SheetConfig> sheetConfigs) {
+        Map<String, SheetConfig> lastByCsvPath = new HashMap<>();
+        for (SheetConfig config : sheetConfigs) {
+            lastByCsvPath.put(resolveCsvPath(config), config);
+        }
+        Map<String, List<SheetConfig>> configsBySheet = new LinkedHashMap<>();
+        for (SheetConfig config : sheetConfigs) {
+            if (lastByCsvPath.get(resolveCsvPath(config)) != config) {
+                logger.info("Sheet: " + config.getSheetName() + " - " + config.getCsvName() + " is overwritten by a later configuration, skipping");
+                continue;
+            }
+            configsBySheet.computeIfAbsent(config.getSheetName(), name -> new ArrayList<>()).add(config);
+        }
+        return configsBySheet;
+    }
+
+    /**
+     * Drops the sheets the workbook does not have before anything is parsed, and
+     * logs the estimated size of the rest.
+     */
+    private static void planSheets(WorkbookMetadata metadata, Map<String, List<SheetConfig>> configsBySheet) {
+        configsBySheet.keySet().removeIf(sheetName -> {
+            WorkbookMetadata.SheetInfo sheet = metadata.getSheet(sheetName);
+            if (sheet == null) {
+                logger.severe("Error processing sheet: " + sheetName + ". Sheet not found: " + sheetName);
+                return true;
+            }
+            logger.info("Sheet: " + sheet + " - " + configsBySheet.get(sheetName).size() + " output(s)");
+            return false;
+        });
+    }
+
+    private static void convertSheet(Workbook workbook, String sheetName, List<SheetConfig> configs) {
+        Sheet sheet = workbook.getSheet(sheetName);
+        if (sheet == null) {
+            logger.severe("Error processing sheet: " + sheetName + ". Sheet not found: " + sheetName);
+            return;
+        }
+        SheetConfig config = configs.get(0);
+        try {
+            if (configs.size() > 1) {
+                SheetFanOut fanOut = new SheetFanOut(sheetName, configs);
+                fanOut.scan(sheet);
+                fanOut.finish();
+            } else if (isTransposed(config)) {
+                try (CellArena cells = new CellArena()) {
+                    extractDataFromSheet(sheet, config, cells::newRow);
+                    writeTransposedCSV(config, resolveCsvPath(config), cells);
+                }
+            } else {
+                streamCSV(sheet, config, resolveCsvPath(config));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            logger.severe("Interrupted while processing sheet: " + sheetName);
+        } catch (Exception e) {
+            logger.severe("Error processing sheet: " + sheetName + ". " + e.getMessage());
+        }
+    }
+
+    private static void convertSheet(SheetReader reader, String sheetName, List<SheetConfig> configs) {
+        try {
+            if (!reader.getSheetNames().contains(sheetName)) {
+                throw new Exception("Sheet not found: " + sheetName);
+            }
+            if (configs.size() > 1) {
+                SheetFanOut fanOut = new SheetFanOut(sheetName, configs);
+                fanOut.scan(reader);
+                fanOut.finish();
+            } else {
+                streamCSV(reader, configs.get(0), resolveCsvPath(configs.get(0)));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            logger.severe("Interrupted while processing sheet: " + sheetName);
+        } catch (Exception e) {
+            logger.severe("Error processing sheet: " + sheetName + ". " + e.getMessage());
+        }
+    }
+
+    private static Workbook openWorkbook(String excelFilePath) throws IOException, InterruptedException {
+        try (CpuPermits.Permit cpu = CpuPermits.acquire();
+             StageMetrics.Timer ignored = ConversionMetrics.get().stage(ConversionMetrics.RUN, ConversionMetrics.STAGE_OPEN).start()) {
+            return SheetReaders.openWorkbook(new File(excelFilePath));
+        }
+    }
+
+    private static SheetReader openReader(File excelFile) throws IOException, InterruptedException {
+        try (CpuPermits.Permit cpu = CpuPermits.acquire();
+             StageMetrics.Timer ignored = ConversionMetrics.get().stage(ConversionMetrics.RUN, ConversionMetrics.STAGE_OPEN).start()) {
+            return SheetReaders.open(excelFile);
+        }
+    }
+
+    /**
+     * Location of the CSV file written for a sheet configuration.
+     */
+    public static String resolveCsvPath(SheetConfig config) {
+        return Paths.get(BASE_OUTPUT_DIR, config.getOutputDirectory(), config.getCsvName()).toString();
+    }
+
+    /**
+     * Loads the sheet configurations from an .xlsx, .csv or .json table. Tables
+     * that have not changed since they were last parsed are served from cache.
+     *
+     * @see SheetConfigLoader
+     */
     public static List<SheetConfig> loadSheetConfigs(String configFilePath) {
+        try (StageMetrics.Timer ignored = ConversionMetrics.get().stage(ConversionMetrics.RUN, ConversionMetrics.STAGE_LOAD_CONFIG).start()) {
+            return SheetConfigLoader.load(configFilePath, MainCSD::readConfigWorkbook);
+        } catch (IOException e) {
+            logger.severe("Error loading sheet configurations: " + e.getMessage());
+            return new ArrayList<>();
+        }
+    }
+
+    private static List<SheetConfig> readConfigWorkbook(String configFilePath) throws IOException {
         List<SheetConfig> sheetConfigs = new ArrayList<>();
-        try (Workbook workbook = new XSSFWorkbook(new FileInputStream(configFilePath))) {
+        try (Workbook workbook = SheetReaders.openWorkbook(new File(configFilePath))) {
             Sheet configSheet = workbook.getSheetAt(0);
             for (Row row : configSheet) {
                 if (row.getRowNum() == 0) {
@@ -81,12 +331,12 @@ public class MainCSD {
                         getTextBooleanCellValue(row.getCell(4)),
                         getCellValue(row.getCell(5)),
                         getStringListCellValue(row.getCell(6)),
-                        getCellValue(row.getCell(7))
+                        getCellValue(row.getCell(7)),
+                        getCellValue(row.getCell(8)),
+                        getCellValue(row.getCell(9))
                 );
                 sheetConfigs.add(config);
             }
-        } catch (IOException e) {
-            logger.severe("Error loading sheet configurations: " + e.getMessage());
         }
         return sheetConfigs;
     }
@@ -109,7 +359,7 @@ public class MainCSD {
         return lowerCaseInput.replaceAll("\\s+", "_");
     }
 
-    private static String getCellValue(Cell cell) {
+    static String getCellValue(Cell cell) {
         if (cell == null) {
             return "";
         }
@@ -153,119 +403,110 @@ public class MainCSD {
         return stringList;
     }
 
-    private static List<List<String>> extractDataFromSheet(Sheet sheet, SheetConfig config) {
-        List<List<String>> data = new ArrayList<>();
-
-        boolean shouldTranspose = config.isTranspose();
-        logger.info("Sheet: " + sheet.getSheetName() + " - Should Transpose: " + shouldTranspose);
-        int startColumn = 1;
-
-        Row headerRow = sheet.getRow(0);
-        int commentColumnIndex = -1;
-
-        if (headerRow != null) {
-            for (Cell cell : headerRow) {
-                if ("Comment".equals(cell.getStringCellValue()) || "Comments".equals(cell.getStringCellValue())) {
-                    commentColumnIndex = cell.getColumnIndex();
-                    break;
-                }
-            }
+    /**
+     * Extracts the configured rows of a sheet, filling one row obtained from
+     * {@code rowTarget} for every row that survives range and comment filtering.
+     */
+    private static void extractDataFromSheet(Sheet sheet, SheetConfig config, Supplier<List<String>> rowTarget)
+            throws InterruptedException {
+        logger.info("Sheet: " + sheet.getSheetName() + " - Should Transpose: " + config.isTranspose());
+        try (CpuPermits.Permit cpu = CpuPermits.acquire();
+             StageMetrics.Timer ignored = extractMetrics(config).start()) {
+            new SheetExtractor(config).extract(sheet, rowTarget);
         }
+    }
 
-        String range = config.getRange();
-        int startRow = shouldTranspose ? 2 : 0;
-
-        List<Integer> rowIndices = new ArrayList<>();
+    /**
+     * Streams a sheet straight to CSV. Large sheets are split into row blocks
+     * extracted in parallel; smaller ones overlap extraction with encoding and
+     * disk writes on a separate writer thread.
+     */
+    private static void streamCSV(Sheet sheet, SheetConfig config, String csvFilePath) throws IOException, InterruptedException {
+        logger.info("Sheet: " + sheet.getSheetName() + " - Should Transpose: " + config.isTranspose());
+        SheetExtractor extractor = new SheetExtractor(config);
+        extractor.readHeader(sheet.getRow(0));
+        List<Integer> selectedRows = extractor.selectRows(sheet.getLastRowNum());
+        if (ParallelCsvWriter.isWorthSplitting(selectedRows)) {
+            logger.info("Sheet: " + sheet.getSheetName() + " - Parallel extraction of " + selectedRows.size() + " rows");
+            ParallelCsvWriter.write(sheet, extractor, selectedRows, csvFilePath, extractMetrics(config), writeMetrics(config));
+            return;
+        }
 
-        if (range != null && !range.isEmpty() && !"NA".equalsIgnoreCase(range)) {
-            String[] parts = range.split(",");
-            for (String part : parts) {
-                if (part.contains("-")) {
-                    String[] bounds = part.split("-");
-                    try {
-                        int start = Integer.parseInt(bounds[0].trim());
-                        int end = Integer.parseInt(bounds[1].trim());
-                        for (int i = start; i <= end; i++) {
-                            rowIndices.add(i - 1);
-                        }
-                    } catch (NumberFormatException e) {
-                        logger.severe("Invalid range format: " + range);
-                    }
-                } else if (part.matches("\\d+")) {
-                    int row = Integer.parseInt(part.trim()) - 1;
-                    rowIndices.add(row);
-                } else if (part.matches("[A-Z]+\\d+")) {
-                    CellReference cellReference = new CellReference(part.trim());
-                    int row = cellReference.getRow();
-                    rowIndices.add(row);
-                } else {
-                    logger.severe("Invalid range format: " + range);
+        PipelinedCsvWriter writer = new PipelinedCsvWriter(csvFilePath, writeMetrics(config));
+        try (CpuPermits.Permit cpu = CpuPermits.acquire();
+             StageMetrics.Timer ignored = extractMetrics(config).start()) {
+            for (int i : selectedRows) {
+                Row row = sheet.getRow(i);
+                if (row != null) {
+                    extractor.extractRow(new DomSheetRow(row), writer::nextRow);
                 }
             }
+        } catch (InterruptedException | RuntimeException e) {
+            writer.abort();
+            throw e;
         }
+        writer.finish();
+    }
 
-        for (int i = startRow; i <= sheet.getLastRowNum(); i++) {
-            if (!rowIndices.isEmpty() && !rowIndices.contains(i)) {
-                continue;
-            }
-
-            Row row = sheet.getRow(i);
-            if (row == null) {
-                continue;
-            }
-
-            if (config.isCommentRead() != null && config.isCommentRead()) {
-                Cell firstCell = row.getCell(0);
-                String cellValue = getCellValue(firstCell);
-                if (cellValue != null && cellValue.startsWith("#")) {
-                    continue;
-                }
-            }
-            List<String> rowData = new ArrayList<>();
-            for (int j = startColumn; j < row.getLastCellNum(); j++) {
-                Cell cell = row.getCell(j);
-                if (!config.isCommentRead() && j == commentColumnIndex) {
-                    continue;
+    /**
+     * Converts a sheet through a streaming {@link SheetReader}, used for
+     * formats that are not loaded into a POI usermodel workbook.
+     */
+    private static void streamCSV(SheetReader reader, SheetConfig config, String csvFilePath) throws Exception {
+        String sheetName = config.getSheetName();
+        logger.info("Sheet: " + sheetName + " - Should Transpose: " + config.isTranspose() + " (streaming)");
+        SheetExtractor extractor = new SheetExtractor(config);
+
+        if (isTransposed(config)) {
+            try (CellArena cells = new CellArena()) {
+                try (CpuPermits.Permit cpu = CpuPermits.acquire();
+                     StageMetrics.Timer ignored = extractMetrics(config).start()) {
+                    reader.readSheet(sheetName, extractor.rowHandler(cells::newRow));
                 }
-                rowData.add(getCellValue(cell));
+                writeTransposedCSV(config, csvFilePath, cells);
             }
-
-            data.add(rowData);
+            return;
         }
 
-        return data;
-    }
-
-    private static List<List<String>> transposeData(List<List<String>> data) {
-        List<List<String>> transposedData = new ArrayList<>();
-        if (data.isEmpty() || data.get(0).isEmpty()) {
-            return transposedData;
+        PipelinedCsvWriter writer = new PipelinedCsvWriter(csvFilePath, writeMetrics(config));
+        try (CpuPermits.Permit cpu = CpuPermits.acquire();
+             StageMetrics.Timer ignored = extractMetrics(config).start()) {
+            reader.readSheet(sheetName, extractor.rowHandler(writer::nextRow));
+        } catch (IOException | InterruptedException | RuntimeException e) {
+            writer.abort();
+            throw e;
         }
+        writer.finish();
+    }
 
-        int colCount = data.get(0).size();
+    static boolean isTransposed(SheetConfig config) {
+        return config.isTranspose() && !config.getExcludeFromTranspose().contains(config.getSheetName());
+    }
 
-        for (int col = 0; col < colCount; col++) {
-            List<String> transposedRow = new ArrayList<>();
-            for (List<String> currentRow : data) {
-                if (col < currentRow.size()) {
-                    transposedRow.add(currentRow.get(col));
-                } else {
-                    transposedRow.add("");
-                }
-            }
-            transposedData.add(transposedRow);
-        }
+    private static StageMetrics extractMetrics(SheetConfig config) {
+        return ConversionMetrics.get().stage(config.getSheetName(), ConversionMetrics.STAGE_EXTRACT);
+    }
 
-        return transposedData;
+    private static StageMetrics writeMetrics(SheetConfig config) {
+        return ConversionMetrics.get().stage(config.getSheetName(), ConversionMetrics.STAGE_WRITE);
     }
 
-    private static void applyAdvanceConditionToHeaders(List<List<String>> data) {
-        if (data == null || data.isEmpty()) {
-            return;
+    /**
+     * Transposes extracted cells and writes them with the header and clean-up
+     * rules applied. The extracted cells are released as soon as the
+     * transposed copy exists, so at most two off-heap copies of the sheet are
+     * alive at once and neither is visible to the garbage collector.
+     */
+    static void writeTransposedCSV(SheetConfig config, String csvFilePath, CellArena extractedData) {
+        CellArena transposedData;
+        try (StageMetrics.Timer ignored = ConversionMetrics.get().stage(config.getSheetName(), ConversionMetrics.STAGE_TRANSPOSE).start()) {
+            transposedData = extractedData.transpose();
+        } finally {
+            extractedData.close();
+        }
+        try (CellArena ignored = transposedData) {
+            writeCSV(csvFilePath, transposedData, writeMetrics(config));
         }
-
-        List<String> headers = data.get(0);
-        headers.replaceAll(MainCSD::standardizeHeader);
     }
 
     private static String escapeCsvData(String data) {
@@ -276,26 +517,81 @@ public class MainCSD {
         return data.toLowerCase();
     }
 
-    private static void cleanUpData(List<List<String>> data) {
-        for (List<String> row : data) {
-            row.replaceAll(s -> s.replace("*", ""));
+    /**
+     * Applies the header standardization (first row only) and clean-up rules to a single row.
+     */
+    static void prepareRow(List<String> row, boolean header) {
+        if (header) {
+            row.replaceAll(MainCSD::standardizeHeader);
         }
+        row.replaceAll(s -> s.replace("*", ""));
+    }
+
+    static String formatCsvLine(List<String> row) {
+        return row.stream().map(MainCSD::escapeCsvData).collect(Collectors.joining(","));
     }
 
-    private static void writeCSV(String csvFilePath, List<List<String>> data) {
-        File outputFile = new File(csvFilePath);
-        if (!outputFile.getParentFile().exists() && !outputFile.getParentFile().mkdirs()) {
-            logger.severe("Failed to create output directories for: " + csvFilePath);
+    private static void writeCSV(String csvFilePath, CellArena data, StageMetrics metrics) {
+        boolean parallel = data.getRowCount() >= 2 * WRITE_CHUNK_ROWS && ForkJoinPool.getCommonPoolParallelism() > 1;
+        writeCSV(csvFilePath, data, metrics, parallel);
+    }
+
+    /**
+     * Writes the rows of {@code data} with the header and clean-up rules
+     * applied. With {@code parallel} the rows are encoded in chunks of
+     * {@value #WRITE_CHUNK_ROWS} on the fork/join pool and committed in order
+     * by {@link OrderedChunkWriter}; the file is byte-identical either way
+     * (see {@code WriterParityHarness} in the test sources).
+     */
+    static void writeCSV(String csvFilePath, CellArena data, StageMetrics metrics, boolean parallel) {
+        AtomicOutputFile output;
+        try {
+            output = new AtomicOutputFile(csvFilePath);
+        } catch (IOException e) {
+            logger.severe(e.getMessage());
             return;
         }
-        try (BufferedWriter writer = new BufferedWriter(new FileWriter(outputFile))) {
-            for (List<String> row : data) {
-                String line = row.stream().map(MainCSD::escapeCsvData).collect(Collectors.joining(","));
-                writer.write(line);
-                writer.newLine();
+        try {
+            if (parallel) {
+                try (StageMetrics.Timer ignored = metrics.start();
+                     FileChannel channel = FileChannel.open(output.getTempFile().toPath(), StandardOpenOption.WRITE)) {
+                    int chunks = (data.getRowCount() + WRITE_CHUNK_ROWS - 1) / WRITE_CHUNK_ROWS;
+                    OrderedChunkWriter.write(channel, 0, chunks, chunk -> encodeRows(data, chunk * WRITE_CHUNK_ROWS,
+                            Math.min(data.getRowCount(), (chunk + 1) * WRITE_CHUNK_ROWS)));
+                }
+            } else {
+                try (StageMetrics.Timer ignored = metrics.start();
+                     BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(output.newOutputStream()))) {
+                    List<String> row = new ArrayList<>();
+                    for (int i = 0; i < data.getRowCount(); i++) {
+                        data.readRow(i, row);
+                        prepareRow(row, i == 0);
+                        writer.write(formatCsvLine(row));
+                        writer.newLine();
+                    }
+                }
             }
+            metrics.addBytesWritten(output.getTempFile().length());
+            output.commit();
         } catch (IOException e) {
             logger.severe("Error writing CSV file: " + csvFilePath + ". " + e.getMessage());
+        } finally {
+            output.abort();
+        }
+    }
+
+    /**
+     * Encodes rows {@code from} to {@code to - 1} exactly as the serial
+     * {@link #writeCSV} writes them.
+     */
+    private static ByteBuffer encodeRows(CellArena data, int from, int to) {
+        List<String> row = new ArrayList<>();
+        StringBuilder text = new StringBuilder();
+        for (int i = from; i < to; i++) {
+            data.readRow(i, row);
+            prepareRow(row, i == 0);
+            text.append(formatCsvLine(row)).append(LINE_SEPARATOR);
         }
+        return ByteBuffer.wrap(text.toString().getBytes(CHARSET));
     }
 }
@@ -1,6 +1,8 @@
 package org.csdconverter;
 
 import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
 import java.util.List;
 
 import javafx.application.Application;
@@ -18,6 +20,8 @@ import javafx.scene.layout.VBox;
 import javafx.stage.FileChooser;
 import javafx.stage.Stage;
 
+import org.project.WorkbookMetadata;
+
 public class MainUI extends Application {
 
     private TableView<SheetConfigTableModel> tableView;
@@ -49,10 +53,13 @@ public class MainUI extends Application {
         Button excelFileButton = new Button("Select Excel File");
         Label excelFilePathLabel = new Label("No file selected");
 
+        Label workbookInfoLabel = new Label();
+
         excelFileButton.setOnAction(e -> {
             File excelFile = excelFileChooser.showOpenDialog(primaryStage);
             if (excelFile != null) {
                 excelFilePathLabel.setText(excelFile.getAbsolutePath());
+                workbookInfoLabel.setText(describeWorkbook(excelFile));
             }
         });
 
@@ -81,11 +88,29 @@ public class MainUI extends Application {
             }
         });
 
+        Button rebuildButton = new Button("Rebuild Workbook from CSVs");
+        rebuildButton.setOnAction(e -> {
+            String configFilePath = configFilePathLabel.getText();
+            if (configFilePath.equals("No file selected")) {
+                showAlert(Alert.AlertType.WARNING, "File Missing", "Please select a configuration file.");
+                return;
+            }
+            FileChooser workbookChooser = new FileChooser();
+            workbookChooser.setTitle("Save Rebuilt Workbook");
+            workbookChooser.getExtensionFilters().add(new FileChooser.ExtensionFilter("Excel Workbook", "*.xlsx"));
+            File workbookFile = workbookChooser.showSaveDialog(primaryStage);
+            if (workbookFile != null) {
+                new CsvToXlsxConverter().convert(configFilePath, workbookFile.getAbsolutePath());
+                showAlert(Alert.AlertType.INFORMATION, "Rebuild Complete", "The workbook has been rebuilt from the CSV files.");
+            }
+        });
+
         layout.getChildren().addAll(
                 configFileButton, configFilePathLabel,
-                excelFileButton, excelFilePathLabel,
+                excelFileButton, excelFilePathLabel, workbookInfoLabel,
                 tableView,
-                startButton
+                startButton,
+                rebuildButton
         );
 
         Scene scene = new Scene(layout, 800, 600);
@@ -102,6 +127,35 @@ public class MainUI extends Application {
         tableView.setItems(sheetConfigs);
     }
 
+    /**
+     * Summarises the workbook's sheets and flags configured sheets it does not
+     * contain, without loading the workbook.
+     */
+    private String describeWorkbook(File excelFile) {
+        WorkbookMetadata metadata;
+        try {
+            metadata = WorkbookMetadata.read(excelFile);
+        } catch (IOException e) {
+            return "Could not read workbook: " + e.getMessage();
+        }
+        StringBuilder info = new StringBuilder("Sheets:");
+        for (WorkbookMetadata.SheetInfo sheet : metadata.getSheets()) {
+            info.append("\n  ").append(sheet);
+        }
+        List<String> missing = new ArrayList<>();
+        if (tableView.getItems() != null) {
+            for (SheetConfigTableModel config : tableView.getItems()) {
+                if (metadata.getSheet(config.getSheetName()) == null && !missing.contains(config.getSheetName())) {
+                    missing.add(config.getSheetName());
+                }
+            }
+        }
+        if (!missing.isEmpty()) {
+            info.append("\nNot in workbook: ").append(String.join(", ", missing));
+        }
+        return info.toString();
+    }
+
     private void showAlert(Alert.AlertType type, String title, String message) {
         Alert alert = new Alert(type);
         alert.setTitle(title);
@@ -0,0 +1,361 @@
+package org.csdconverter;
+
+import java.io.File;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+import java.util.zip.ZipEntry;
+
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.poi.openxml4j.util.ZipEntrySource;
+import org.apache.poi.openxml4j.util.ZipSecureFile;
+
+import org.example.DirectBuffers;
+
+/**
+ * Read-only {@link ZipEntrySource} over a memory-mapped .xlsx file.
+ * <p>
+ * The central directory is parsed straight from the mapping when the source
+ * is opened; entry data is not touched until POI asks for a part, and is then
+ * inflated from the mapped bytes directly into the parser. Nothing is copied
+ * onto the heap up front, and parts that are never read (other sheets'
+ * drawings, thumbnails, custom XML) cost no I/O at all. The page cache backs
+ * the mapping, so the file's size does not count against the Java heap.
+ * <p>
+ * Only the plain ZIP format written by Excel and POI is supported: archives
+ * needing ZIP64 or larger than 2 GB are rejected with an {@link IOException}
+ * so the caller can fall back to POI's own file access.
+ * <p>
+ * Entries are held to the same limits as POI's {@link ZipSecureFile}: one
+ * that declares or inflates to more than {@link ZipSecureFile#getMaxEntrySize()}
+ * bytes, or inflates at a ratio below {@link ZipSecureFile#getMinInflateRatio()},
+ * fails with an {@link IOException}. {@link #close()} unmaps the file, which
+ * otherwise stays locked on Windows until the mapping is collected; streams
+ * still open at that point keep it mapped until the last of them is closed.
+ */
+class MappedZipEntrySource implements ZipEntrySource {
+
+    private static final int END_OF_CENTRAL_DIRECTORY = 0x06054b50;
+    private static final int CENTRAL_DIRECTORY_ENTRY = 0x02014b50;
+    private static final int LOCAL_FILE_HEADER = 0x04034b50;
+    private static final int END_RECORD_SIZE = 22;
+    private static final int MAX_COMMENT_SIZE = 0xFFFF;
+    private static final int UTF8_FLAG = 1 << 11;
+    /** Inflated bytes before the inflate ratio is checked, as in POI's ZipArchiveThresholdInputStream. */
+    private static final long GRACE_ENTRY_SIZE = 100 * 1024;
+
+    private final MappedByteBuffer mapping;
+    private final Map<String, MappedEntry> entries = new LinkedHashMap<>();
+    private volatile boolean closed;
+    /** Streams not yet closed; guarded by this. */
+    private int openStreams;
+    private boolean unmapped;
+
+    MappedZipEntrySource(File file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException("Archive too large to map: " + file);
+            }
+            mapping = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+        }
+        mapping.order(ByteOrder.LITTLE_ENDIAN);
+        try {
+            readCentralDirectory(file);
+        } catch (IOException | RuntimeException e) {
+            DirectBuffers.free(mapping);
+            throw e;
+        }
+    }
+
+    @Override
+    public Enumeration<? extends ZipArchiveEntry> getEntries() {
+        return Collections.enumeration(entries.values());
+    }
+
+    @Override
+    public ZipArchiveEntry getEntry(String path) {
+        MappedEntry entry = entries.get(path);
+        if (entry == null && path.startsWith("/")) {
+            entry = entries.get(path.substring(1));
+        }
+        return entry;
+    }
+
+    @Override
+    public synchronized InputStream getInputStream(ZipArchiveEntry entry) throws IOException {
+        if (closed) {
+            throw new IOException("Zip source is closed");
+        }
+        MappedEntry mapped = entry instanceof MappedEntry ? (MappedEntry) entry : entries.get(entry.getName());
+        if (mapped == null) {
+            throw new IOException("No such entry: " + entry.getName());
+        }
+        if (mapped.getSize() > ZipSecureFile.getMaxEntrySize()) {
+            throw new IOException("Zip bomb detected! Entry " + mapped.getName() + " declares " + mapped.getSize()
+                    + " bytes, more than the limit of " + ZipSecureFile.getMaxEntrySize() + " set by ZipSecureFile.setMaxEntrySize");
+        }
+        ByteBuffer data = mapping.duplicate();
+        int start = dataOffset(mapped);
+        data.limit(Math.addExact(start, Math.toIntExact(mapped.getCompressedSize()))).position(start);
+        InputStream in;
+        switch (mapped.getMethod()) {
+            case ZipEntry.STORED:
+                in = new ByteBufferInputStream(data.slice(), false);
+                break;
+            case ZipEntry.DEFLATED:
+                in = new RawInflaterInputStream(new ByteBufferInputStream(data.slice(), true), mapped.getName());
+                break;
+            default:
+                throw new IOException("Unsupported compression method " + mapped.getMethod() + " for " + mapped.getName());
+        }
+        openStreams++;
+        return new MappingStream(in);
+    }
+
+    @Override
+    public synchronized void close() {
+        closed = true;
+        entries.clear();
+        unmapIfUnused();
+    }
+
+    private synchronized void streamClosed() {
+        openStreams--;
+        unmapIfUnused();
+    }
+
+    private void unmapIfUnused() {
+        if (closed && openStreams == 0 && !unmapped) {
+            unmapped = true;
+            DirectBuffers.free(mapping);
+        }
+    }
+
+    @Override
+    public boolean isClosed() {
+        return closed;
+    }
+
+    private void readCentralDirectory(File file) throws IOException {
+        int end = findEndOfCentralDirectory();
+        if (end < 0) {
+            throw new IOException("Not a ZIP archive: " + file);
+        }
+        int count = Short.toUnsignedInt(mapping.getShort(end + 10));
+        long directoryOffset = Integer.toUnsignedLong(mapping.getInt(end + 16));
+        if (count == 0xFFFF || directoryOffset == 0xFFFFFFFFL) {
+            throw new IOException("ZIP64 archives are not supported: " + file);
+        }
+
+        int pos = (int) directoryOffset;
+        for (int i = 0; i < count; i++) {
+            if (pos + 46 > mapping.limit() || mapping.getInt(pos) != CENTRAL_DIRECTORY_ENTRY) {
+                throw new IOException("Corrupt ZIP central directory in " + file);
+            }
+            int flags = Short.toUnsignedInt(mapping.getShort(pos + 8));
+            int method = Short.toUnsignedInt(mapping.getShort(pos + 10));
+            long crc = Integer.toUnsignedLong(mapping.getInt(pos + 16));
+            long compressedSize = Integer.toUnsignedLong(mapping.getInt(pos + 20));
+            long size = Integer.toUnsignedLong(mapping.getInt(pos + 24));
+            int nameLength = Short.toUnsignedInt(mapping.getShort(pos + 28));
+            int extraLength = Short.toUnsignedInt(mapping.getShort(pos + 30));
+            int commentLength = Short.toUnsignedInt(mapping.getShort(pos + 32));
+            long localHeaderOffset = Integer.toUnsignedLong(mapping.getInt(pos + 42));
+            if (compressedSize == 0xFFFFFFFFL || size == 0xFFFFFFFFL || localHeaderOffset == 0xFFFFFFFFL) {
+                throw new IOException("ZIP64 archives are not supported: " + file);
+            }
+
+            byte[] name = new byte[nameLength];
+            mapping.duplicate().position(pos + 46).get(name);
+            MappedEntry entry = new MappedEntry(
+                    new String(name, (flags & UTF8_FLAG) != 0 ? StandardCharsets.UTF_8 : StandardCharsets.ISO_8859_1),
+                    (int) localHeaderOffset);
+            entry.setMethod(method);
+            entry.setCrc(crc);
+            entry.setCompressedSize(compressedSize);
+            entry.setSize(size);
+            entries.put(entry.getName(), entry);
+
+            pos += 46 + nameLength + extraLength + commentLength;
+        }
+    }
+
+    private int findEndOfCentralDirectory() {
+        int last = mapping.limit() - END_RECORD_SIZE;
+        int first = Math.max(0, last - MAX_COMMENT_SIZE);
+        for (int pos = last; pos >= first; pos--) {
+            if (mapping.getInt(pos) == END_OF_CENTRAL_DIRECTORY) {
+                return pos;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Entry data starts after the local header, whose name and extra field
+     * lengths may differ from the central directory's.
+     */
+    private int dataOffset(MappedEntry entry) throws IOException {
+        int header = entry.localHeaderOffset;
+        if (header + 30 > mapping.limit() || mapping.getInt(header) != LOCAL_FILE_HEADER) {
+            throw new IOException("Corrupt local header for " + entry.getName());
+        }
+        int nameLength = Short.toUnsignedInt(mapping.getShort(header + 26));
+        int extraLength = Short.toUnsignedInt(mapping.getShort(header + 28));
+        return header + 30 + nameLength + extraLength;
+    }
+
+    private static final class MappedEntry extends ZipArchiveEntry {
+
+        private final int localHeaderOffset;
+
+        private MappedEntry(String name, int localHeaderOffset) {
+            super(name);
+            this.localHeaderOffset = localHeaderOffset;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return this == o;
+        }
+
+        @Override
+        public int hashCode() {
+            return System.identityHashCode(this);
+        }
+    }
+
+    /**
+     * Streams a slice of the mapping. A raw deflate stream may need one byte
+     * past its end before the inflater reports completion, so deflated slices
+     * are padded with a single zero byte.
+     */
+    private static final class ByteBufferInputStream extends InputStream {
+
+        private final ByteBuffer buffer;
+        private boolean padding;
+
+        private ByteBufferInputStream(ByteBuffer buffer, boolean padding) {
+            this.buffer = buffer;
+            this.padding = padding;
+        }
+
+        @Override
+        public int read() {
+            if (buffer.hasRemaining()) {
+                return buffer.get() & 0xFF;
+            }
+            if (padding) {
+                padding = false;
+                return 0;
+            }
+            return -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (len == 0) {
+                return 0;
+            }
+            if (!buffer.hasRemaining()) {
+                int c = read();
+                if (c < 0) {
+                    return -1;
+                }
+                b[off] = (byte) c;
+                return 1;
+            }
+            int n = Math.min(len, buffer.remaining());
+            buffer.get(b, off, n);
+            return n;
+        }
+
+        @Override
+        public int available() {
+            return buffer.remaining() + (padding ? 1 : 0);
+        }
+    }
+
+    /**
+     * A stream over the mapping; closing it lets the source unmap the file
+     * once the source is closed too.
+     */
+    private final class MappingStream extends FilterInputStream {
+
+        private boolean released;
+
+        private MappingStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                super.close();
+            } finally {
+                if (!released) {
+                    released = true;
+                    streamClosed();
+                }
+            }
+        }
+    }
+
+    /**
+     * Inflates a raw deflate stream, enforcing the {@link ZipSecureFile}
+     * limits, and releases the native inflater on close.
+     */
+    private static final class RawInflaterInputStream extends InflaterInputStream {
+
+        private final String name;
+        private boolean closed;
+
+        private RawInflaterInputStream(InputStream in, String name) {
+            super(in, new Inflater(true), 16 * 1024);
+            this.name = name;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = super.read(b, off, len);
+            if (n > 0) {
+                checkThreshold();
+            }
+            return n;
+        }
+
+        private void checkThreshold() throws IOException {
+            long inflated = inf.getBytesWritten();
+            if (inflated > ZipSecureFile.getMaxEntrySize()) {
+                throw new IOException("Zip bomb detected! Entry " + name + " inflates to more than the limit of "
+                        + ZipSecureFile.getMaxEntrySize() + " bytes set by ZipSecureFile.setMaxEntrySize");
+            }
+            if (inflated > GRACE_ENTRY_SIZE && (double) inf.getBytesRead() / inflated < ZipSecureFile.getMinInflateRatio()) {
+                throw new IOException("Zip bomb detected! Entry " + name + " inflates at a ratio below "
+                        + ZipSecureFile.getMinInflateRatio() + " set by ZipSecureFile.setMinInflateRatio");
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (!closed) {
+                closed = true;
+                inf.end();
+                super.close();
+            }
+        }
+    }
+}
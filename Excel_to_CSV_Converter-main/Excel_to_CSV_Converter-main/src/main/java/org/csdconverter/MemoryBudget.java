@@ -0,0 +1,208 @@
+package org.csdconverter;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Locale;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+import org.project.WorkbookMetadata;
+
+/**
+ * Process-wide heap budget that conversions reserve their estimated memory
+ * from before they open a workbook.
+ * <p>
+ * The estimate is taken from the workbook's ZIP entry sizes, read through
+ * {@link WorkbookMetadata} without parsing any cell data. A usermodel
+ * {@code XSSFWorkbook} parses every sheet and the shared strings table into
+ * XMLBeans objects, measured at about {@value #USERMODEL_BYTES_PER_XML_BYTE}
+ * heap bytes per byte of uncompressed XML (10 to 30 times the file size);
+ * the streaming readers keep shared strings and held sheets off the heap and
+ * only the current row on it, so they need a bounded
+ * {@value #STREAMING_OVERHEAD}-byte allowance whatever the size of the
+ * workbook, plus the file size for the shared strings of a legacy .xls
+ * workbook. With {@link SheetReaders#XLSX_READER_PROPERTY} at its
+ * {@code auto} default, a workbook whose usermodel estimate is larger than
+ * the budget divided by the number of {@link CpuPermits} is read with the
+ * streaming reader, so that as many conversions as there are permits fit in
+ * the budget at once.
+ * <p>
+ * The budget defaults to {@value #DEFAULT_BUDGET_PERCENT}% of the maximum
+ * heap and is set with {@value #BUDGET_PROPERTY}, either as a percentage of
+ * the maximum heap ({@code 50%}) or as a size ({@code 512m}, {@code 2g}).
+ * Reservations are granted in arrival order; one that does not fit waits
+ * until enough earlier ones are released, and one larger than the whole
+ * budget is reduced to the budget, so that it runs, alone. Like
+ * {@link CpuPermits}, reservations are reentrant per thread: code holding
+ * one may call code that reserves again without waiting or counting twice.
+ */
+final class MemoryBudget {
+
+    static final String BUDGET_PROPERTY = "csd.memory.budget";
+    static final int DEFAULT_BUDGET_PERCENT = 60;
+
+    static final long USERMODEL_BYTES_PER_XML_BYTE = 18;
+    static final long USERMODEL_OVERHEAD = 8L << 20;
+    static final long STREAMING_OVERHEAD = 32L << 20;
+
+    private static final Logger logger = Logger.getLogger(MemoryBudget.class.getName());
+    /** The semaphore counts kibibytes, so that budgets of any heap size fit in an int. */
+    private static final int UNIT_SHIFT = 10;
+    private static final long BUDGET = parseBudget(System.getProperty(BUDGET_PROPERTY), Runtime.getRuntime().maxMemory());
+    private static final Semaphore SEMAPHORE = new Semaphore(units(BUDGET), true);
+    private static final ThreadLocal<int[]> HELD = ThreadLocal.withInitial(() -> new int[1]);
+
+    private MemoryBudget() {
+    }
+
+    static long getBudget() {
+        return BUDGET;
+    }
+
+    static long getAvailable() {
+        return (long) SEMAPHORE.availablePermits() << UNIT_SHIFT;
+    }
+
+    /**
+     * Usermodel workbooks larger than this are read with the streaming reader
+     * in {@code auto} mode.
+     */
+    static long getStreamingThreshold() {
+        return BUDGET / CpuPermits.getPermits();
+    }
+
+    /**
+     * Heap needed to hold an .xlsx workbook as a usermodel {@code XSSFWorkbook}.
+     * Sheet parts of unknown size count as empty.
+     */
+    static long estimateUsermodel(WorkbookMetadata metadata) {
+        long xmlBytes = Math.max(0, metadata.getSharedStringsSize());
+        for (WorkbookMetadata.SheetInfo sheet : metadata.getSheets()) {
+            xmlBytes += Math.max(0, sheet.getPartSize());
+        }
+        return USERMODEL_OVERHEAD + xmlBytes * USERMODEL_BYTES_PER_XML_BYTE;
+    }
+
+    /**
+     * Heap needed to convert the workbook with a streaming {@link SheetReader}.
+     */
+    static long estimateStreaming(File workbookFile, WorkbookMetadata metadata) {
+        return metadata.isLegacyFormat() ? STREAMING_OVERHEAD + workbookFile.length() : STREAMING_OVERHEAD;
+    }
+
+    /**
+     * Reserves the estimated memory of converting {@code workbookFile} with
+     * the reader {@link SheetReaders#useStreamingReader} picks for it,
+     * blocking until the budget has room. A workbook that cannot be read is
+     * given the streaming allowance and left to the conversion to report.
+     */
+    static Reservation reserve(File workbookFile) throws InterruptedException {
+        if (HELD.get()[0] > 0) {
+            return reserve(0);
+        }
+        try {
+            return reserve(workbookFile, WorkbookMetadata.read(workbookFile));
+        } catch (IOException e) {
+            logger.fine("Could not estimate the memory of " + workbookFile + ": " + e.getMessage());
+            return reserve(STREAMING_OVERHEAD);
+        }
+    }
+
+    static Reservation reserve(File workbookFile, WorkbookMetadata metadata) throws InterruptedException {
+        if (HELD.get()[0] > 0) {
+            return reserve(0);
+        }
+        return reserve(SheetReaders.useStreamingReader(metadata)
+                ? estimateStreaming(workbookFile, metadata)
+                : estimateUsermodel(metadata));
+    }
+
+    /**
+     * Blocks until {@code bytes} of the budget are free, unless the current
+     * thread already holds a reservation.
+     */
+    static Reservation reserve(long bytes) throws InterruptedException {
+        int[] held = HELD.get();
+        int units = 0;
+        if (held[0] == 0) {
+            units = Math.min(units(bytes), units(BUDGET));
+            if (!SEMAPHORE.tryAcquire(units, 0, TimeUnit.SECONDS)) {
+                long start = System.nanoTime();
+                SEMAPHORE.acquire(units);
+                logger.info("Waited " + (System.nanoTime() - start) / 1_000_000 + " ms for " + megabytes(bytes)
+                        + " MB of the " + megabytes(BUDGET) + " MB memory budget");
+            }
+        }
+        held[0]++;
+        return new Reservation(held, units);
+    }
+
+    static String megabytes(long bytes) {
+        return String.valueOf((bytes + (1 << 19)) >> 20);
+    }
+
+    /**
+     * Parses a budget given as a percentage of {@code maxHeap} or as a size
+     * with an optional {@code k}, {@code m} or {@code g} suffix; anything
+     * else, including no value, gives the default percentage.
+     */
+    static long parseBudget(String value, long maxHeap) {
+        long fallback = maxHeap / 100 * DEFAULT_BUDGET_PERCENT;
+        if (value == null || value.trim().isEmpty()) {
+            return fallback;
+        }
+        String budget = value.trim().toLowerCase(Locale.ROOT);
+        try {
+            if (budget.endsWith("%")) {
+                double percent = Double.parseDouble(budget.substring(0, budget.length() - 1));
+                if (percent > 0 && percent <= 100) {
+                    return (long) (maxHeap / 100.0 * percent);
+                }
+            } else {
+                int shift = 0;
+                char unit = budget.charAt(budget.length() - 1);
+                if (unit == 'k' || unit == 'm' || unit == 'g') {
+                    shift = unit == 'k' ? 10 : unit == 'm' ? 20 : 30;
+                    budget = budget.substring(0, budget.length() - 1);
+                }
+                long bytes = Long.parseLong(budget.trim()) << shift;
+                if (bytes > 0) {
+                    return bytes;
+                }
+            }
+        } catch (NumberFormatException e) {
+            // fall through to the default
+        }
+        logger.warning("Ignoring invalid " + BUDGET_PROPERTY + " '" + value + "', using " + DEFAULT_BUDGET_PERCENT + "% of the heap");
+        return fallback;
+    }
+
+    private static int units(long bytes) {
+        return (int) Math.min(Integer.MAX_VALUE, Math.max(1, (bytes + (1 << UNIT_SHIFT) - 1) >> UNIT_SHIFT));
+    }
+
+    static final class Reservation implements AutoCloseable {
+
+        private final int[] held;
+        private final int units;
+        private boolean released;
+
+        private Reservation(int[] held, int units) {
+            this.held = held;
+            this.units = units;
+        }
+
+        @Override
+        public void close() {
+            if (released) {
+                return;
+            }
+            released = true;
+            held[0]--;
+            if (units > 0) {
+                SEMAPHORE.release(units);
+            }
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package org.csdconverter;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.IntFunction;
+import java.util.function.Supplier;
+
+/**
+ * Writes output that is encoded in parallel, chunk by chunk, so that the
+ * file is byte-identical to writing the chunks one after the other.
+ * <p>
+ * Chunk {@code i} is encoded by a task on the common fork/join pool and is
+ * tagged with its sequence number {@code i}; the calling thread is the only
+ * committer and writes the chunks with positional {@link FileChannel} writes
+ * in sequence order, each at the offset where the previous one ended. The
+ * size of a chunk is only known once it is encoded, so its offset is fixed
+ * when every earlier chunk has completed; a chunk that completes early waits,
+ * already encoded, for its turn. Neither the number of workers nor the order
+ * in which they finish can change a byte of the output. At most a few chunks
+ * per worker are in flight, which bounds the memory held by finished chunks.
+ * <p>
+ * If encoding or writing fails, chunks that have not started are skipped and
+ * {@link #write} waits for the ones already running before it rethrows, so
+ * that no encoder is still reading its source, for example a {@link CellArena}
+ * the caller is about to free, once the call has returned.
+ */
+final class OrderedChunkWriter {
+
+    private OrderedChunkWriter() {
+    }
+
+    /**
+     * Encodes chunks {@code 0} to {@code chunkCount - 1} with {@code encoder}
+     * and writes them to {@code channel} from {@code position} on.
+     *
+     * @return the number of bytes written
+     */
+    static long write(FileChannel channel, long position, int chunkCount, IntFunction<ByteBuffer> encoder) throws IOException {
+        return writePrepared(channel, position, chunkCount, sequence -> () -> encoder.apply(sequence));
+    }
+
+    /**
+     * Like {@link #write}, for sources that can only be read from one thread:
+     * {@code prepare} is called on the calling thread, in sequence order, to
+     * read chunk {@code i} and return the encoding of it to run on the pool.
+     *
+     * @return the number of bytes written
+     */
+    static long writePrepared(FileChannel channel, long position, int chunkCount,
+                              IntFunction<Supplier<ByteBuffer>> prepare) throws IOException {
+        ForkJoinPool pool = ForkJoinPool.commonPool();
+        int window = Math.max(2, pool.getParallelism() * 4);
+        Deque<ForkJoinTask<ByteBuffer>> inFlight = new ArrayDeque<>();
+        AtomicBoolean abandoned = new AtomicBoolean();
+        long offset = position;
+        int next = 0;
+        boolean written = false;
+        try {
+            while (next < chunkCount || !inFlight.isEmpty()) {
+                while (next < chunkCount && inFlight.size() < window) {
+                    Supplier<ByteBuffer> encoder = prepare.apply(next++);
+                    inFlight.addLast(pool.submit(() -> abandoned.get() ? null : encoder.get()));
+                }
+                offset += writeAt(channel, inFlight.removeFirst().join(), offset);
+            }
+            written = true;
+        } finally {
+            if (!written) {
+                // ForkJoinTask.cancel does not stop a running task, so wait for them instead.
+                abandoned.set(true);
+                for (ForkJoinTask<ByteBuffer> task : inFlight) {
+                    task.quietlyJoin();
+                }
+            }
+        }
+        return offset - position;
+    }
+
+    private static int writeAt(FileChannel channel, ByteBuffer chunk, long offset) throws IOException {
+        int size = chunk.remaining();
+        long at = offset;
+        while (chunk.hasRemaining()) {
+            at += channel.write(chunk, at);
+        }
+        return size;
+    }
+}
@@ -0,0 +1,427 @@
+package org.csdconverter;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystemException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Logger;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import org.project.WorkbookMetadata;
+
+/**
+ * Content-addressed store of converted CSV files, so that a sheet converted
+ * once is not converted again when it turns up, unchanged, in another
+ * workbook.
+ * <p>
+ * A result is keyed by the SHA-256 of what it is computed from: the sheet's
+ * XML part, the shared strings part if the sheet refers to it, and the
+ * {@link SheetConfig} settings that change the CSV (range, transposition,
+ * comment handling, columns, filter) and the {@link CommentMarkers} rules. For legacy .xls files, which have no separate sheet
+ * parts, the whole workbook file and the sheet name are hashed instead. The
+ * sheet name, the CSV name and the output directory are not part of the key.
+ * <p>
+ * With {@value #STORE_PROPERTY}{@code =link} each committed output is
+ * hard-linked into {@code blobs/} under its key, and an output whose key is
+ * already there is hard-linked from the blob instead of being converted; the
+ * link is put in place through {@link AtomicOutputFile}, so it is journaled
+ * like any other output. Where hard links are not supported, and with
+ * {@code =copy}, the blob and the outputs are copies, which saves the
+ * conversion but not the disk space. Hard-linked outputs share their bytes
+ * with the blob and must not be edited in place; all outputs of this
+ * converter are replaced by rename, which is safe. Without the property the
+ * store is not used.
+ * <p>
+ * Every output materialized from or added to the store is recorded in
+ * {@code refs}. {@code OutputStore gc} deletes the blobs that no recorded
+ * output refers to any more; see {@link #collectGarbage()}.
+ * <p>
+ * Usage: {@code OutputStore gc [store directory]}
+ */
+public final class OutputStore {
+
+    static final String STORE_PROPERTY = "csd.output.store";
+    static final String DIRECTORY = ".csd-store";
+
+    private static final Logger logger = Logger.getLogger(OutputStore.class.getName());
+    private static final String KEY_VERSION = "csd-store 2";
+    private static final String REFS_FILE = "refs";
+    private static final String LINK = "link";
+    private static final String COPY = "copy";
+    private static final long GC_GRACE_MILLIS = 10 * 60 * 1000L;
+    private static final Object REFS_LOCK = new Object();
+
+    private final Path directory;
+    private final boolean useLinks;
+
+    private OutputStore(Path directory, boolean useLinks) {
+        this.directory = directory;
+        this.useLinks = useLinks;
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1 || !"gc".equals(args[0])) {
+            System.err.println("Usage: OutputStore gc [store directory]");
+            return;
+        }
+        Path directory = args.length > 1 ? Paths.get(args[1]) : MainCSD.storeDirectory();
+        System.out.println(new OutputStore(directory, true).collectGarbage());
+    }
+
+    /**
+     * @return the store in {@code directory}, or {@code null} unless {@value #STORE_PROPERTY} enables it
+     */
+    static OutputStore openIfEnabled(Path directory) {
+        String mode = System.getProperty(STORE_PROPERTY, "");
+        if (!LINK.equalsIgnoreCase(mode) && !COPY.equalsIgnoreCase(mode)) {
+            return null;
+        }
+        return new OutputStore(directory, LINK.equalsIgnoreCase(mode));
+    }
+
+    /**
+     * Puts the stored result for {@code key} in place as {@code csvFilePath}.
+     *
+     * @return {@code false} if the store has no result for {@code key}
+     */
+    boolean materialize(String key, String csvFilePath) throws IOException {
+        Path blob = blobPath(key);
+        if (!Files.isRegularFile(blob)) {
+            return false;
+        }
+        AtomicOutputFile output = new AtomicOutputFile(csvFilePath);
+        try {
+            boolean linked = output.fillFrom(blob, useLinks);
+            output.commit();
+            recordRef(key, csvFilePath, linked);
+            return true;
+        } finally {
+            output.abort();
+        }
+    }
+
+    /**
+     * Adds the committed output {@code csvFilePath} to the store under {@code key}.
+     * Failures are logged; they only cost a later reuse.
+     */
+    void add(String key, String csvFilePath) {
+        Path blob = blobPath(key);
+        Path output = Paths.get(csvFilePath);
+        try {
+            if (Files.isRegularFile(blob)) {
+                recordRef(key, csvFilePath, Files.isSameFile(blob, output));
+                return;
+            }
+            Files.createDirectories(blob.getParent());
+            Path temp = Files.createTempFile(blob.getParent(), "." + key + ".", ".tmp");
+            boolean linked = false;
+            try {
+                if (useLinks) {
+                    Files.delete(temp);
+                    linked = link(temp, output);
+                }
+                if (!linked) {
+                    Files.copy(output, temp, StandardCopyOption.REPLACE_EXISTING);
+                }
+                move(temp, blob);
+            } finally {
+                Files.deleteIfExists(temp);
+            }
+            recordRef(key, csvFilePath, linked);
+        } catch (IOException | RuntimeException e) {
+            logger.warning("Could not add " + csvFilePath + " to the output store: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Deletes every blob that no output recorded in {@code refs} still refers
+     * to, and drops those records. A hard-linked output refers to its blob as
+     * long as it is the same file; a copied output as long as it exists with
+     * the blob's size. Blobs younger than ten minutes are kept, so that a
+     * conversion adding one while this runs does not lose it.
+     *
+     * @return a one-line summary
+     */
+    public String collectGarbage() throws IOException {
+        synchronized (REFS_LOCK) {
+            Map<String, List<String[]>> refsByKey = readRefs();
+            Path blobs = directory.resolve("blobs");
+            List<String> liveRefs = new ArrayList<>();
+            int kept = 0;
+            int deleted = 0;
+            long freed = 0;
+            long now = System.currentTimeMillis();
+            if (Files.isDirectory(blobs)) {
+                try (DirectoryStream<Path> prefixes = Files.newDirectoryStream(blobs)) {
+                    for (Path prefix : prefixes) {
+                        if (!Files.isDirectory(prefix)) {
+                            continue;
+                        }
+                        try (DirectoryStream<Path> files = Files.newDirectoryStream(prefix)) {
+                            for (Path blob : files) {
+                                String key = blob.getFileName().toString();
+                                if (key.startsWith(".")) {
+                                    continue;
+                                }
+                                key = key.endsWith(".csv") ? key.substring(0, key.length() - 4) : key;
+                                List<String> live = liveRefs(blob, refsByKey.get(key));
+                                if (!live.isEmpty() || now - Files.getLastModifiedTime(blob).toMillis() < GC_GRACE_MILLIS) {
+                                    liveRefs.addAll(live);
+                                    kept++;
+                                    continue;
+                                }
+                                long size = Files.size(blob);
+                                Files.delete(blob);
+                                deleted++;
+                                freed += size;
+                            }
+                        }
+                    }
+                }
+            }
+            writeRefs(liveRefs);
+            String summary = "Output store " + directory + ": kept " + kept + " blob(s), deleted " + deleted
+                    + " unreferenced blob(s), freed " + freed + " bytes";
+            logger.info(summary);
+            return summary;
+        }
+    }
+
+    private List<String> liveRefs(Path blob, List<String[]> refs) throws IOException {
+        List<String> live = new ArrayList<>();
+        if (refs == null) {
+            return live;
+        }
+        for (String[] ref : refs) {
+            Path output = Paths.get(ref[2]);
+            if (!Files.isRegularFile(output)) {
+                continue;
+            }
+            boolean same = LINK.equals(ref[1])
+                    ? Files.isSameFile(output, blob)
+                    : Files.size(output) == Files.size(blob);
+            if (same) {
+                live.add(String.join(" ", ref));
+            }
+        }
+        return live;
+    }
+
+    /**
+     * @return key record, {@code link} or {@code copy}, output path; the last record of each output wins
+     */
+    private Map<String, List<String[]>> readRefs() throws IOException {
+        Path refsFile = directory.resolve(REFS_FILE);
+        Map<String, String[]> lastByOutput = new LinkedHashMap<>();
+        if (Files.isRegularFile(refsFile)) {
+            for (String line : Files.readAllLines(refsFile, StandardCharsets.UTF_8)) {
+                String[] ref = line.split(" ", 3);
+                if (ref.length == 3) {
+                    lastByOutput.put(ref[2], ref);
+                }
+            }
+        }
+        Map<String, List<String[]>> refsByKey = new HashMap<>();
+        for (String[] ref : lastByOutput.values()) {
+            refsByKey.computeIfAbsent(ref[0], key -> new ArrayList<>()).add(ref);
+        }
+        return refsByKey;
+    }
+
+    private void writeRefs(List<String> refs) throws IOException {
+        Files.createDirectories(directory);
+        Path temp = Files.createTempFile(directory, "." + REFS_FILE + ".", ".tmp");
+        try {
+            Files.write(temp, refs, StandardCharsets.UTF_8);
+            move(temp, directory.resolve(REFS_FILE));
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    private void recordRef(String key, String csvFilePath, boolean linked) throws IOException {
+        synchronized (REFS_LOCK) {
+            Files.createDirectories(directory);
+            try (BufferedWriter writer = Files.newBufferedWriter(directory.resolve(REFS_FILE), StandardCharsets.UTF_8,
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+                writer.write(key + " " + (linked ? LINK : COPY) + " " + Paths.get(csvFilePath).toAbsolutePath());
+                writer.newLine();
+            }
+        }
+    }
+
+    private Path blobPath(String key) {
+        return directory.resolve("blobs").resolve(key.substring(0, 2)).resolve(key + ".csv");
+    }
+
+    /**
+     * Makes {@code link} a hard link to {@code existing}.
+     *
+     * @return {@code false} if the file system cannot link the two
+     */
+    static boolean link(Path link, Path existing) throws IOException {
+        try {
+            Files.createLink(link, existing);
+            return true;
+        } catch (UnsupportedOperationException | FileSystemException e) {
+            logger.fine("Cannot hard-link " + existing + ", copying instead: " + e.getMessage());
+            return false;
+        }
+    }
+
+    private static void move(Path source, Path target) throws IOException {
+        try {
+            Files.move(source, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(source, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * Computes the store keys of the sheets of one workbook, hashing each
+     * sheet part, and the shared strings, at most once.
+     */
+    static final class WorkbookKeys implements Closeable {
+
+        private static final byte[] SHARED_STRING_TYPE = "t=\"s\"".getBytes(StandardCharsets.US_ASCII);
+
+        private final File workbookFile;
+        private final WorkbookMetadata metadata;
+        private final Map<String, String> sheetDigests = new HashMap<>();
+        private final Map<String, Boolean> usesSharedStrings = new HashMap<>();
+        private ZipFile zip;
+        private String sharedStringsDigest;
+        private String workbookDigest;
+
+        WorkbookKeys(File workbookFile, WorkbookMetadata metadata) {
+            this.workbookFile = workbookFile;
+            this.metadata = metadata;
+        }
+
+        /**
+         * @return the key of the CSV {@code config} produces from this workbook
+         */
+        String keyOf(SheetConfig config) throws IOException {
+            StringBuilder source = new StringBuilder(KEY_VERSION).append('\n');
+            String sheetName = config.getSheetName();
+            WorkbookMetadata.SheetInfo sheet = metadata.getSheet(sheetName);
+            if (sheet == null || sheet.getPartName() == null) {
+                if (workbookDigest == null) {
+                    try (InputStream in = Files.newInputStream(workbookFile.toPath())) {
+                        workbookDigest = digest(in, null);
+                    }
+                }
+                source.append("workbook ").append(workbookDigest).append('\n').append("sheet ").append(sheetName).append('\n');
+            } else {
+                if (!sheetDigests.containsKey(sheetName)) {
+                    ZipEntry entry = zip().getEntry(sheet.getPartName());
+                    if (entry == null) {
+                        throw new IOException("Sheet part " + sheet.getPartName() + " not found");
+                    }
+                    boolean[] sharedStrings = new boolean[1];
+                    try (InputStream in = zip().getInputStream(entry)) {
+                        sheetDigests.put(sheetName, digest(in, sharedStrings));
+                    }
+                    usesSharedStrings.put(sheetName, sharedStrings[0]);
+                }
+                source.append("part ").append(sheetDigests.get(sheetName)).append('\n');
+                if (usesSharedStrings.get(sheetName)) {
+                    source.append("strings ").append(sharedStringsDigest()).append('\n');
+                }
+            }
+            source.append("range ").append(config.getRange()).append('\n')
+                    .append("transpose ").append(config.isTranspose()).append(' ').append(MainCSD.isTransposed(config)).append('\n')
+                    .append("comments ").append(config.isCommentRead()).append('\n')
+                    .append("columns ").append(config.getColumns()).append('\n')
+                    .append("filter ").append(config.getFilter()).append('\n')
+                    .append("comment prefix ").append(CommentMarkers.get().getRowPrefix()).append('\n')
+                    .append("comment headers ").append(CommentMarkers.get().getHeaders()).append('\n');
+            return hex(messageDigest().digest(source.toString().getBytes(StandardCharsets.UTF_8)));
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (zip != null) {
+                zip.close();
+            }
+        }
+
+        private ZipFile zip() throws IOException {
+            if (zip == null) {
+                zip = new ZipFile(workbookFile);
+            }
+            return zip;
+        }
+
+        private String sharedStringsDigest() throws IOException {
+            if (sharedStringsDigest == null) {
+                String part = metadata.getSharedStringsPart();
+                ZipEntry entry = part == null ? null : zip().getEntry(part);
+                if (entry == null) {
+                    sharedStringsDigest = "none";
+                } else {
+                    try (InputStream in = zip().getInputStream(entry)) {
+                        sharedStringsDigest = digest(in, null);
+                    }
+                }
+            }
+            return sharedStringsDigest;
+        }
+
+        /**
+         * Hashes {@code in}; if {@code sharedStrings} is given, its only element
+         * is set when the bytes contain a shared string cell type.
+         */
+        private static String digest(InputStream in, boolean[] sharedStrings) throws IOException {
+            MessageDigest digest = messageDigest();
+            byte[] buffer = new byte[64 * 1024];
+            int matched = 0;
+            int read;
+            while ((read = in.read(buffer)) > 0) {
+                digest.update(buffer, 0, read);
+                if (sharedStrings == null || sharedStrings[0]) {
+                    continue;
+                }
+                for (int i = 0; i < read && !sharedStrings[0]; i++) {
+                    matched = buffer[i] == SHARED_STRING_TYPE[matched] ? matched + 1 : buffer[i] == SHARED_STRING_TYPE[0] ? 1 : 0;
+                    sharedStrings[0] = matched == SHARED_STRING_TYPE.length;
+                }
+            }
+            return hex(digest.digest());
+        }
+
+        private static MessageDigest messageDigest() throws IOException {
+            try {
+                return MessageDigest.getInstance("SHA-256");
+            } catch (NoSuchAlgorithmException e) {
+                throw new IOException(e);
+            }
+        }
+
+        private static String hex(byte[] bytes) {
+            StringBuilder hex = new StringBuilder(bytes.length * 2);
+            for (byte b : bytes) {
+                hex.append(String.format("%02x", b));
+            }
+            return hex.toString();
+        }
+    }
+}
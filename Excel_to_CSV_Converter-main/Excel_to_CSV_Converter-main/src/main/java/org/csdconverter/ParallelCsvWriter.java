@@ -0,0 +1,110 @@
+package org.csdconverter;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.logging.Logger;
+
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+
+/**
+ * Converts one large sheet to CSV by splitting its selected rows into blocks
+ * that are extracted on the calling thread and encoded on a fork/join pool,
+ * then written to the output file in block order by {@link OrderedChunkWriter}.
+ * <p>
+ * POI usermodel workbooks must not be read from several threads at once, so
+ * rows are only ever read by the caller; while it extracts the next block,
+ * the workers encode the previous ones. The output is byte-identical to
+ * {@link MainCSD#writeCSV}: the first row extracted is encoded as the header
+ * and every other row as a data row. At most a few blocks per worker are in
+ * flight so memory stays bounded for very tall sheets. A {@link CpuPermits}
+ * permit is held only while a block is extracted.
+ * {@code ParallelCsvBenchmark}, in the test sources, compares this path with
+ * the serial one.
+ */
+class ParallelCsvWriter {
+
+    /** Sheets with fewer selected rows than this are not worth splitting. */
+    static final int MIN_PARALLEL_ROWS = 50_000;
+    static final int BLOCK_ROWS = 8_192;
+
+    private static final Logger logger = Logger.getLogger(ParallelCsvWriter.class.getName());
+
+    private ParallelCsvWriter() {
+    }
+
+    static boolean isWorthSplitting(List<Integer> selectedRows) {
+        return selectedRows.size() >= MIN_PARALLEL_ROWS && ForkJoinPool.getCommonPoolParallelism() > 1;
+    }
+
+    static void write(Sheet sheet, SheetExtractor extractor, List<Integer> selectedRows, String csvFilePath,
+                      StageMetrics extractMetrics, StageMetrics writeMetrics) throws IOException {
+        AtomicOutputFile output = new AtomicOutputFile(csvFilePath);
+        int blocks = (selectedRows.size() + BLOCK_ROWS - 1) / BLOCK_ROWS;
+        boolean[] headerPending = {true};
+
+        try (FileChannel channel = FileChannel.open(output.getTempFile().toPath(), StandardOpenOption.WRITE)) {
+            OrderedChunkWriter.writePrepared(channel, 0, blocks, block -> {
+                List<List<String>> rows = extractBlock(sheet, extractor,
+                        selectedRows.subList(block * BLOCK_ROWS, Math.min(selectedRows.size(), (block + 1) * BLOCK_ROWS)),
+                        extractMetrics);
+                boolean header = headerPending[0] && !rows.isEmpty();
+                if (header) {
+                    headerPending[0] = false;
+                }
+                return () -> encodeBlock(rows, header, writeMetrics);
+            });
+        } catch (IOException | RuntimeException e) {
+            output.abort();
+            throw e;
+        }
+        writeMetrics.addBytesWritten(output.getTempFile().length());
+        try {
+            output.commit();
+        } finally {
+            output.abort();
+        }
+        logger.info("Wrote " + selectedRows.size() + " candidate rows to " + csvFilePath + " in " + blocks + " parallel blocks");
+    }
+
+    private static List<List<String>> extractBlock(Sheet sheet, SheetExtractor extractor, List<Integer> rowIndices, StageMetrics metrics) {
+        List<List<String>> rows = new ArrayList<>(rowIndices.size());
+        try (CpuPermits.Permit cpu = CpuPermits.acquire();
+             StageMetrics.Timer ignored = metrics.start()) {
+            for (int i : rowIndices) {
+                Row row = sheet.getRow(i);
+                if (row != null) {
+                    List<String> rowData = new ArrayList<>();
+                    if (extractor.extractRow(new DomSheetRow(row), () -> rowData)) {
+                        rows.add(rowData);
+                    }
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CancellationException("Interrupted while waiting for a CPU permit");
+        }
+        return rows;
+    }
+
+    /**
+     * Encodes a block, the first row as the header if {@code header} is set.
+     */
+    private static ByteBuffer encodeBlock(List<List<String>> rows, boolean header, StageMetrics metrics) {
+        try (StageMetrics.Timer ignored = metrics.start()) {
+            StringBuilder text = new StringBuilder();
+            for (int i = 0; i < rows.size(); i++) {
+                List<String> row = rows.get(i);
+                MainCSD.prepareRow(row, header && i == 0);
+                text.append(MainCSD.formatCsvLine(row)).append(MainCSD.LINE_SEPARATOR);
+            }
+            return ByteBuffer.wrap(text.toString().getBytes(MainCSD.CHARSET));
+        }
+    }
+}
@@ -0,0 +1,144 @@
+package org.csdconverter;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+/**
+ * Writes extracted rows to a CSV file on a dedicated writer thread, so that
+ * sheet parsing and CSV encoding/disk I/O overlap. Rows travel through a
+ * bounded {@link RowRingBuffer}; a slow disk therefore throttles the reader
+ * instead of growing the heap. Rows go to a temporary file that only
+ * replaces the CSV once {@link #finish()} succeeds (see {@link AtomicOutputFile}).
+ * The time the reader waited for a free slot is recorded as blocked time of
+ * the sheet's extract stage, and the time the writer waited for rows as
+ * blocked time of its write stage.
+ */
+class PipelinedCsvWriter {
+
+    static final int BATCH_SIZE = 1024;
+    static final int SLOT_COUNT = 8;
+
+    private static final Logger logger = Logger.getLogger(PipelinedCsvWriter.class.getName());
+
+    private final String csvFilePath;
+    private final StageMetrics metrics;
+    private final AtomicOutputFile output;
+    private final RowRingBuffer ring;
+    private final Thread writerThread;
+    private RowBatch current;
+    private long rowCount;
+    private volatile IOException writeError;
+
+    PipelinedCsvWriter(String csvFilePath, StageMetrics metrics) throws IOException {
+        this.csvFilePath = csvFilePath;
+        this.metrics = metrics;
+        this.output = new AtomicOutputFile(csvFilePath);
+        BufferedWriter writer;
+        try {
+            writer = new BufferedWriter(new OutputStreamWriter(output.newOutputStream()));
+        } catch (IOException e) {
+            output.abort();
+            throw e;
+        }
+        File tempFile = output.getTempFile();
+        this.ring = new RowRingBuffer(SLOT_COUNT, BATCH_SIZE);
+        this.writerThread = new Thread(() -> drain(writer, tempFile), "csv-writer-" + new File(csvFilePath).getName());
+        this.writerThread.setDaemon(true);
+        this.writerThread.start();
+    }
+
+    /**
+     * Returns an empty row owned by the pipeline for the caller to fill. The row
+     * must not be touched after the next call to this method or {@link #finish()}.
+     */
+    List<String> nextRow() {
+        if (current == null) {
+            current = ring.claim();
+        } else if (current.isFull()) {
+            ring.publish();
+            current = ring.claim();
+        }
+        rowCount++;
+        return current.nextRow();
+    }
+
+    /**
+     * Publishes the last partial batch, waits for the writer to flush and close
+     * the file and moves it into place.
+     */
+    void finish() throws IOException {
+        try {
+            if (current != null && !current.isEmpty()) {
+                ring.publish();
+            }
+        } finally {
+            ring.close();
+        }
+        try {
+            writerThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while writing " + csvFilePath, e);
+        }
+        recordBlocking();
+        if (writeError != null) {
+            output.abort();
+            throw writeError;
+        }
+        try {
+            output.commit();
+        } finally {
+            output.abort();
+        }
+        logger.info("Wrote " + rowCount + " rows to " + csvFilePath
+                + " (reader blocked " + TimeUnit.NANOSECONDS.toMillis(ring.getReaderBlockedNanos()) + " ms"
+                + ", writer blocked " + TimeUnit.NANOSECONDS.toMillis(ring.getWriterBlockedNanos()) + " ms)");
+    }
+
+    /**
+     * Stops the pipeline after a reader-side failure without publishing the
+     * partial batch; the CSV is left as it was before this run.
+     */
+    void abort() {
+        ring.close();
+        try {
+            writerThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        output.abort();
+        recordBlocking();
+    }
+
+    private void recordBlocking() {
+        ConversionMetrics.get().stage(metrics.getSheet(), ConversionMetrics.STAGE_EXTRACT).addBlockedNanos(ring.getReaderBlockedNanos());
+        metrics.addBlockedNanos(ring.getWriterBlockedNanos());
+    }
+
+    private void drain(BufferedWriter writer, File outputFile) {
+        boolean header = true;
+        try (StageMetrics.Timer ignored = metrics.start();
+             BufferedWriter out = writer) {
+            RowBatch batch;
+            while ((batch = ring.take()) != null) {
+                for (int i = 0; i < batch.size(); i++) {
+                    List<String> row = batch.getRow(i);
+                    MainCSD.prepareRow(row, header);
+                    header = false;
+                    out.write(MainCSD.formatCsvLine(row));
+                    out.newLine();
+                }
+                ring.release();
+            }
+        } catch (IOException | RuntimeException e) {
+            writeError = e instanceof IOException ? (IOException) e : new IOException(e.getMessage(), e);
+            ring.fail(e);
+        }
+        metrics.addBytesWritten(outputFile.length());
+    }
+}
@@ -0,0 +1,53 @@
+package org.csdconverter;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A fixed-capacity batch of reusable rows handed from the sheet reader to the
+ * CSV writer. Row lists are cleared and refilled instead of reallocated, so a
+ * batch keeps its backing arrays for the whole conversion.
+ */
+class RowBatch {
+
+    private final List<List<String>> rows;
+    private final int capacity;
+    private int size;
+
+    RowBatch(int capacity) {
+        this.capacity = capacity;
+        this.rows = new ArrayList<>(capacity);
+        for (int i = 0; i < capacity; i++) {
+            rows.add(new ArrayList<>());
+        }
+    }
+
+    /**
+     * Returns the next free row of this batch, emptied and ready to be filled.
+     */
+    List<String> nextRow() {
+        List<String> row = rows.get(size++);
+        row.clear();
+        return row;
+    }
+
+    List<String> getRow(int index) {
+        return rows.get(index);
+    }
+
+    int size() {
+        return size;
+    }
+
+    boolean isFull() {
+        return size == capacity;
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    void reset() {
+        size = 0;
+    }
+}
@@ -0,0 +1,319 @@
+package org.csdconverter;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.function.Predicate;
+
+/**
+ * A row filter of a {@link SheetConfig}, compiled once from an expression
+ * such as {@code status != 'inactive' and (amount > 0 or [Unit Price] >= 9.5)}.
+ * <p>
+ * A comparison is a column, an operator ({@code =}, {@code !=}, {@code <>},
+ * {@code <}, {@code <=}, {@code >}, {@code >=} or {@code contains}) and a
+ * quoted text or a number; comparisons combine with {@code and}, {@code or},
+ * {@code not} and parentheses. Columns are named as in a
+ * {@link ColumnProjection}, by header or letter, in square brackets when the
+ * header is not a single word. Against a number, the cell is compared by
+ * its {@linkplain SheetRow#getNumericValue stored number}, not the rendered
+ * text, which drops the fraction, so {@code 9.7} is {@code >= 9.5}. A formula
+ * cell, which is rendered as its formula, is compared by the result cached in
+ * the workbook when it was last saved; a text cell is read as a number; any
+ * other cell matches only {@code !=}. Against text, the trimmed rendered cell
+ * is compared ignoring case, as the output is lower case, so a formula cell
+ * is compared by its formula.
+ * <p>
+ * The expression is parsed before a sheet is read and its columns are
+ * resolved against the header row, which it does not apply to. Only those
+ * columns are read to test a row, so readers that render cells lazily never
+ * render the rest of a row that is filtered out.
+ */
+final class RowFilter {
+
+    private final String expression;
+    private final List<String> columnNames = new ArrayList<>();
+    private final Condition condition;
+
+    private RowFilter(String expression) {
+        this.expression = expression;
+        this.condition = new Parser(expression).parse();
+    }
+
+    /**
+     * @return the filter described by {@code expression}, or {@code null} if every row is kept
+     * @throws IllegalArgumentException if the expression is malformed
+     */
+    static RowFilter parse(String expression) {
+        if (expression == null || expression.trim().isEmpty() || "NA".equalsIgnoreCase(expression.trim())) {
+            return null;
+        }
+        return new RowFilter(expression.trim());
+    }
+
+    /**
+     * Resolves the filter's columns against {@code headerRow}; without a
+     * header row only column letters resolve.
+     *
+     * @throws IllegalArgumentException if a column cannot be found
+     */
+    Resolved resolve(SheetRow headerRow) {
+        List<String> headers = ColumnProjection.readHeaders(headerRow);
+        int[] columns = new int[columnNames.size()];
+        for (int i = 0; i < columns.length; i++) {
+            columns[i] = ColumnProjection.findColumn(headers, columnNames.get(i));
+            if (columns[i] < 0) {
+                throw new IllegalArgumentException("No column '" + columnNames.get(i) + "' for the filter " + expression);
+            }
+        }
+        return new Resolved(columns);
+    }
+
+    /**
+     * The filter bound to the columns of one sheet.
+     */
+    final class Resolved implements Predicate<SheetRow> {
+
+        private final int[] columns;
+        private final BitSet columnSet = new BitSet();
+
+        private Resolved(int[] columns) {
+            this.columns = columns;
+            for (int column : columns) {
+                columnSet.set(column);
+            }
+        }
+
+        @Override
+        public boolean test(SheetRow row) {
+            return condition.test(row, columns);
+        }
+
+        boolean usesColumn(int column) {
+            return columnSet.get(column);
+        }
+    }
+
+    private interface Condition {
+        boolean test(SheetRow row, int[] columns);
+    }
+
+    private static Condition compare(int slot, String operator, String literal, boolean numeric) {
+        if (numeric) {
+            double number = Double.parseDouble(literal);
+            return (row, columns) -> {
+                double value = row.getNumericValue(columns[slot]);
+                if (Double.isNaN(value)) {
+                    Double text = toNumber(row.getCellValue(columns[slot]));
+                    if (text == null) {
+                        return "!=".equals(operator);
+                    }
+                    value = text;
+                }
+                return matches(operator, Double.compare(value, number));
+            };
+        }
+        if ("contains".equals(operator)) {
+            String needle = literal.toLowerCase(Locale.ROOT);
+            return (row, columns) -> row.getCellValue(columns[slot]).trim().toLowerCase(Locale.ROOT).contains(needle);
+        }
+        return (row, columns) -> matches(operator, row.getCellValue(columns[slot]).trim().compareToIgnoreCase(literal));
+    }
+
+    private static boolean matches(String operator, int comparison) {
+        switch (operator) {
+            case "=":
+                return comparison == 0;
+            case "!=":
+                return comparison != 0;
+            case "<":
+                return comparison < 0;
+            case "<=":
+                return comparison <= 0;
+            case ">":
+                return comparison > 0;
+            case ">=":
+                return comparison >= 0;
+            default:
+                return false;
+        }
+    }
+
+    private static Double toNumber(String value) {
+        try {
+            return Double.valueOf(value.trim());
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Recursive descent over {@code or} (lowest), {@code and}, {@code not},
+     * then parenthesized expressions and comparisons.
+     */
+    private final class Parser {
+
+        private final String text;
+        private int pos;
+
+        private Parser(String text) {
+            this.text = text;
+        }
+
+        private Condition parse() {
+            Condition condition = parseOr();
+            skipWhitespace();
+            if (pos < text.length()) {
+                throw error("Unexpected '" + text.substring(pos) + "'");
+            }
+            return condition;
+        }
+
+        private Condition parseOr() {
+            Condition left = parseAnd();
+            while (keyword("or") || symbol("||")) {
+                Condition first = left;
+                Condition second = parseAnd();
+                left = (row, columns) -> first.test(row, columns) || second.test(row, columns);
+            }
+            return left;
+        }
+
+        private Condition parseAnd() {
+            Condition left = parseNot();
+            while (keyword("and") || symbol("&&")) {
+                Condition first = left;
+                Condition second = parseNot();
+                left = (row, columns) -> first.test(row, columns) && second.test(row, columns);
+            }
+            return left;
+        }
+
+        private Condition parseNot() {
+            if (keyword("not") || symbol("!")) {
+                Condition negated = parseNot();
+                return (row, columns) -> !negated.test(row, columns);
+            }
+            if (symbol("(")) {
+                Condition inner = parseOr();
+                if (!symbol(")")) {
+                    throw error("Expected ')'");
+                }
+                return inner;
+            }
+            return parseComparison();
+        }
+
+        private Condition parseComparison() {
+            String column = parseColumn();
+            String operator = parseOperator();
+            skipWhitespace();
+            if (pos >= text.length()) {
+                throw error("Expected a number or quoted text");
+            }
+            boolean numeric = text.charAt(pos) != '\'' && text.charAt(pos) != '"';
+            String literal = numeric ? parseNumber() : parseText();
+            if (numeric && "contains".equals(operator)) {
+                numeric = false;
+            }
+            int slot = columnNames.indexOf(column);
+            if (slot < 0) {
+                slot = columnNames.size();
+                columnNames.add(column);
+            }
+            return compare(slot, operator, literal, numeric);
+        }
+
+        private String parseColumn() {
+            skipWhitespace();
+            if (symbol("[")) {
+                int end = text.indexOf(']', pos);
+                if (end < 0) {
+                    throw error("Expected ']'");
+                }
+                String column = text.substring(pos, end).trim();
+                pos = end + 1;
+                return column;
+            }
+            int start = pos;
+            while (pos < text.length() && (Character.isLetterOrDigit(text.charAt(pos)) || text.charAt(pos) == '_')) {
+                pos++;
+            }
+            if (start == pos) {
+                throw error("Expected a column");
+            }
+            return text.substring(start, pos);
+        }
+
+        private String parseOperator() {
+            for (String operator : new String[] {"!=", "<>", "<=", ">=", "==", "=", "<", ">"}) {
+                if (symbol(operator)) {
+                    return "<>".equals(operator) ? "!=" : "==".equals(operator) ? "=" : operator;
+                }
+            }
+            if (keyword("contains")) {
+                return "contains";
+            }
+            throw error("Expected a comparison operator");
+        }
+
+        private String parseNumber() {
+            int start = pos;
+            while (pos < text.length() && "+-.0123456789eE".indexOf(text.charAt(pos)) >= 0) {
+                pos++;
+            }
+            String number = text.substring(start, pos);
+            if (toNumber(number) == null) {
+                throw error("Expected a number or quoted text");
+            }
+            return number;
+        }
+
+        private String parseText() {
+            char quote = text.charAt(pos++);
+            StringBuilder value = new StringBuilder();
+            while (pos < text.length()) {
+                char c = text.charAt(pos++);
+                if (c != quote) {
+                    value.append(c);
+                } else if (pos < text.length() && text.charAt(pos) == quote) {
+                    value.append(quote);
+                    pos++;
+                } else {
+                    return value.toString();
+                }
+            }
+            throw error("Unterminated text");
+        }
+
+        private boolean keyword(String keyword) {
+            skipWhitespace();
+            int end = pos + keyword.length();
+            if (text.regionMatches(true, pos, keyword, 0, keyword.length())
+                    && (end == text.length() || !Character.isLetterOrDigit(text.charAt(end)) && text.charAt(end) != '_')) {
+                pos = end;
+                return true;
+            }
+            return false;
+        }
+
+        private boolean symbol(String symbol) {
+            skipWhitespace();
+            if (text.startsWith(symbol, pos) && !("!".equals(symbol) && text.startsWith("!=", pos))) {
+                pos += symbol.length();
+                return true;
+            }
+            return false;
+        }
+
+        private void skipWhitespace() {
+            while (pos < text.length() && Character.isWhitespace(text.charAt(pos))) {
+                pos++;
+            }
+        }
+
+        private IllegalArgumentException error(String message) {
+            return new IllegalArgumentException(message + " at offset " + pos + " of the filter " + text);
+        }
+    }
+}
@@ -0,0 +1,142 @@
+package org.csdconverter;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Bounded single-producer/single-consumer ring of {@link RowBatch} slots.
+ * <p>
+ * The reader claims a slot, fills it and publishes it; the writer takes the
+ * published slot, drains it and releases it back to the reader. Only the two
+ * sequence counters are shared, so no locks are taken on the hot path. When
+ * the ring is full the reader waits (back-pressure), when it is empty the
+ * writer waits; the time each side spends waiting is recorded.
+ */
+class RowRingBuffer {
+
+    private static final int SPIN_TRIES = 100;
+    private static final long PARK_NANOS = 50_000L;
+
+    private final RowBatch[] slots;
+    private final int mask;
+
+    /** Next slot the reader will publish. Written by the reader only. */
+    private final AtomicLong tail = new AtomicLong();
+    /** Next slot the writer will release. Written by the writer only. */
+    private final AtomicLong head = new AtomicLong();
+
+    private volatile boolean closed;
+    private volatile Throwable failure;
+
+    private long readerBlockedNanos;
+    private long writerBlockedNanos;
+
+    /**
+     * @param slotCount number of batches in flight, rounded up to a power of two
+     * @param batchSize rows per batch
+     */
+    RowRingBuffer(int slotCount, int batchSize) {
+        int capacity = Integer.highestOneBit(Math.max(2, slotCount) - 1) << 1;
+        this.slots = new RowBatch[capacity];
+        this.mask = capacity - 1;
+        for (int i = 0; i < capacity; i++) {
+            slots[i] = new RowBatch(batchSize);
+        }
+    }
+
+    /**
+     * Reader side: waits for a free slot and returns it emptied.
+     *
+     * @throws IllegalStateException if the writer has failed
+     */
+    RowBatch claim() {
+        long sequence = tail.get();
+        if (sequence - head.get() >= slots.length) {
+            long start = System.nanoTime();
+            int tries = 0;
+            while (sequence - head.get() >= slots.length) {
+                checkFailure();
+                tries = backOff(tries);
+            }
+            readerBlockedNanos += System.nanoTime() - start;
+        }
+        checkFailure();
+        RowBatch batch = slots[(int) sequence & mask];
+        batch.reset();
+        return batch;
+    }
+
+    /**
+     * Reader side: hands the slot returned by the last {@link #claim()} to the writer.
+     */
+    void publish() {
+        tail.lazySet(tail.get() + 1);
+    }
+
+    /**
+     * Reader side: signals that no more batches will be published.
+     */
+    void close() {
+        closed = true;
+    }
+
+    /**
+     * Writer side: waits for the next published slot.
+     *
+     * @return the batch, or {@code null} once the reader has closed the ring and it is drained
+     */
+    RowBatch take() {
+        long sequence = head.get();
+        if (sequence == tail.get()) {
+            long start = System.nanoTime();
+            int tries = 0;
+            while (sequence == tail.get()) {
+                if (closed && sequence == tail.get()) {
+                    writerBlockedNanos += System.nanoTime() - start;
+                    return null;
+                }
+                tries = backOff(tries);
+            }
+            writerBlockedNanos += System.nanoTime() - start;
+        }
+        return slots[(int) sequence & mask];
+    }
+
+    /**
+     * Writer side: returns the slot obtained from the last {@link #take()} to the reader.
+     */
+    void release() {
+        head.lazySet(head.get() + 1);
+    }
+
+    /**
+     * Writer side: records a failure so that the reader stops producing.
+     */
+    void fail(Throwable cause) {
+        failure = cause;
+    }
+
+    long getReaderBlockedNanos() {
+        return readerBlockedNanos;
+    }
+
+    long getWriterBlockedNanos() {
+        return writerBlockedNanos;
+    }
+
+    private void checkFailure() {
+        Throwable cause = failure;
+        if (cause != null) {
+            throw new IllegalStateException("CSV writer failed: " + cause.getMessage(), cause);
+        }
+    }
+
+    private static int backOff(int tries) {
+        if (tries < SPIN_TRIES) {
+            Thread.onSpinWait();
+        } else {
+            LockSupport.parkNanos(PARK_NANOS);
+        }
+        return tries + 1;
+    }
+}
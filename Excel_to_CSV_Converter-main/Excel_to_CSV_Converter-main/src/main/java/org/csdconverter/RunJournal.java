@@ -0,0 +1,177 @@
+package org.csdconverter;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.logging.Logger;
+
+/**
+ * Journal of the CSV files one conversion run has committed.
+ * <p>
+ * A run is identified by its configuration and workbook files, including
+ * their sizes and modification times, and journals to
+ * {@code <journal dir>/<hash>.journal}. Every {@link AtomicOutputFile}
+ * committed on the thread running the conversion appends a {@code commit}
+ * line; once every planned output is committed a {@code complete} line
+ * marks the run as finished. With {@value #RESUME_PROPERTY}{@code =true} a
+ * rerun of the same inputs reads the journal back and skips the outputs
+ * that were committed and still exist, so an interrupted run only redoes the
+ * sheets that never committed. Otherwise each run starts a fresh journal.
+ * <p>
+ * Journal failures never fail a conversion; they only cost the ability to
+ * resume.
+ */
+final class RunJournal implements AutoCloseable {
+
+    static final String RESUME_PROPERTY = "csd.output.resume";
+    static final String DIRECTORY = ".csd-runs";
+
+    private static final Logger logger = Logger.getLogger(RunJournal.class.getName());
+    private static final ThreadLocal<RunJournal> CURRENT = new ThreadLocal<>();
+    private static final String COMMIT = "commit ";
+    private static final String COMPLETE = "complete";
+
+    private final Path file;
+    private final Set<String> committed = new HashSet<>();
+    private final Set<String> committedEarlier = new HashSet<>();
+    private final RunJournal previous;
+    private boolean complete;
+
+    private RunJournal(Path file) {
+        this.file = file;
+        this.previous = CURRENT.get();
+    }
+
+    /**
+     * Opens the journal of the run converting {@code excelFilePath} with
+     * {@code configFilePath} and makes it current for this thread until closed.
+     */
+    static RunJournal begin(Path journalDirectory, String configFilePath, String excelFilePath) {
+        Path file = null;
+        try {
+            Files.createDirectories(journalDirectory);
+            file = journalDirectory.resolve(runId(configFilePath, excelFilePath) + ".journal");
+        } catch (IOException e) {
+            logger.warning("Run journal disabled, output cannot be resumed: " + e.getMessage());
+        }
+        RunJournal journal = new RunJournal(file);
+        if (file != null) {
+            journal.load(Boolean.getBoolean(RESUME_PROPERTY));
+        }
+        CURRENT.set(journal);
+        return journal;
+    }
+
+    /**
+     * The journal of the conversion running on this thread, or {@code null}.
+     */
+    static RunJournal current() {
+        return CURRENT.get();
+    }
+
+    /**
+     * Whether an earlier attempt of this run committed {@code csvFilePath}
+     * and the file is still there, so that a resumed run can skip it.
+     */
+    boolean isCommitted(String csvFilePath) {
+        return committedEarlier.contains(csvFilePath) && new File(csvFilePath).isFile();
+    }
+
+    /**
+     * Whether this attempt of the run committed {@code csvFilePath}.
+     */
+    synchronized boolean isCommittedNow(String csvFilePath) {
+        return committed.contains(csvFilePath);
+    }
+
+    synchronized void recordCommit(String csvFilePath) {
+        committed.add(csvFilePath);
+        append(COMMIT + csvFilePath);
+    }
+
+    /**
+     * Writes the run commit marker if every one of {@code plannedOutputs} has
+     * been committed, by this attempt or an earlier one.
+     */
+    synchronized void completeIfAll(Collection<String> plannedOutputs) {
+        for (String output : plannedOutputs) {
+            if (!committed.contains(output) && !isCommitted(output)) {
+                logger.info("Run incomplete, " + output + " was not committed");
+                return;
+            }
+        }
+        if (!complete) {
+            complete = true;
+            append(COMPLETE);
+        }
+    }
+
+    @Override
+    public void close() {
+        if (previous == null) {
+            CURRENT.remove();
+        } else {
+            CURRENT.set(previous);
+        }
+    }
+
+    private void load(boolean resume) {
+        try {
+            if (resume && Files.exists(file)) {
+                for (String line : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+                    if (line.startsWith(COMMIT)) {
+                        committedEarlier.add(line.substring(COMMIT.length()));
+                    }
+                }
+                logger.info("Resuming run from " + file + ": " + committedEarlier.size() + " output(s) committed earlier");
+            } else {
+                Files.deleteIfExists(file);
+            }
+        } catch (IOException e) {
+            logger.warning("Could not read run journal " + file + ": " + e.getMessage());
+        }
+    }
+
+    private void append(String line) {
+        if (file == null) {
+            return;
+        }
+        boolean fsync = Boolean.getBoolean(AtomicOutputFile.FSYNC_PROPERTY);
+        try (BufferedWriter writer = fsync
+                ? Files.newBufferedWriter(file, StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.APPEND, StandardOpenOption.SYNC)
+                : Files.newBufferedWriter(file, StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+            writer.write(line);
+            writer.newLine();
+        } catch (IOException e) {
+            logger.warning("Could not write run journal " + file + ": " + e.getMessage());
+        }
+    }
+
+    private static String runId(String configFilePath, String excelFilePath) throws IOException {
+        StringBuilder key = new StringBuilder();
+        for (String path : new String[]{configFilePath, excelFilePath}) {
+            File input = new File(path);
+            key.append(input.getCanonicalPath()).append('|').append(input.length()).append('|')
+                    .append(input.lastModified()).append('\n');
+        }
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(key.toString().getBytes(StandardCharsets.UTF_8));
+            StringBuilder hex = new StringBuilder();
+            for (int i = 0; i < 16; i++) {
+                hex.append(String.format("%02x", digest[i]));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException(e);
+        }
+    }
+}
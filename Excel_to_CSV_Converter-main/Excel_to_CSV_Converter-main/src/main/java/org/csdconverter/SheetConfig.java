@@ -14,8 +14,18 @@ public class SheetConfig {
     private final List<String> excludeFromTranspose;
     private final String outputDirectory;
     private final String range; // For Specific range of data
+    private final String columns; // Output columns, see ColumnProjection
+    private final String filter; // Row filter expression, see RowFilter
 
     public SheetConfig(String sheetName, String csvName, Boolean isTranspose, Boolean isCommentRead, String range, List<String> excludeFromTranspose, String outputDirectory) {
+        this(sheetName, csvName, isTranspose, isCommentRead, range, excludeFromTranspose, outputDirectory, null);
+    }
+
+    public SheetConfig(String sheetName, String csvName, Boolean isTranspose, Boolean isCommentRead, String range, List<String> excludeFromTranspose, String outputDirectory, String columns) {
+        this(sheetName, csvName, isTranspose, isCommentRead, range, excludeFromTranspose, outputDirectory, columns, null);
+    }
+
+    public SheetConfig(String sheetName, String csvName, Boolean isTranspose, Boolean isCommentRead, String range, List<String> excludeFromTranspose, String outputDirectory, String columns, String filter) {
         this.sheetName = sheetName;
         this.csvName = csvName;
         this.isTranspose = isTranspose;
@@ -23,6 +33,8 @@ public class SheetConfig {
         this.excludeFromTranspose = excludeFromTranspose;
         this.outputDirectory = outputDirectory;
         this.range = range;
+        this.columns = columns;
+        this.filter = filter;
     }
 
     public String getSheetName() {
@@ -52,4 +64,12 @@ public class SheetConfig {
     public String getRange() {
         return range;
     }
+
+    public String getColumns() {
+        return columns;
+    }
+
+    public String getFilter() {
+        return filter;
+    }
 }
@@ -0,0 +1,489 @@
+package org.csdconverter;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.logging.Logger;
+
+/**
+ * Loads configuration tables without paying for POI more than once.
+ * <p>
+ * Parsed tables are cached in-process keyed by path, modification time and
+ * size, so picking a file in the UI and then converting it parses it once.
+ * Besides the .xlsx format, tables can be given as plain {@code .csv} or
+ * {@code .json} files, which are read without POI at all. When the
+ * {@value #SNAPSHOT_DIR_PROPERTY} system property names a directory, every
+ * parsed .xlsx table is also saved there as a compact binary snapshot that
+ * later runs load instead of opening the workbook.
+ * <p>
+ * The plain formats use the column names {@code sheetName}, {@code csvName},
+ * {@code transpose}, {@code commentRead}, {@code range},
+ * {@code excludeFromTranspose}, {@code outputDirectory}, {@code columns} and
+ * {@code filter}: as the header row of a CSV file, or as the keys of the
+ * objects in a JSON array, where {@code columns} may also be an array of
+ * entries.
+ */
+final class SheetConfigLoader {
+
+    static final String SNAPSHOT_DIR_PROPERTY = "csd.config.snapshotDir";
+
+    private static final Logger logger = Logger.getLogger(SheetConfigLoader.class.getName());
+    private static final int SNAPSHOT_MAGIC = 0x43534443;
+    private static final int SNAPSHOT_VERSION = 3;
+    private static final List<String> COLUMNS = Arrays.asList(
+            "sheetname", "csvname", "transpose", "commentread", "range", "excludefromtranspose", "outputdirectory", "columns", "filter");
+
+    private static final ConcurrentMap<String, CachedTable> CACHE = new ConcurrentHashMap<>();
+
+    private SheetConfigLoader() {
+    }
+
+    /**
+     * Returns the configurations in {@code configFilePath}, from the in-process
+     * cache or a snapshot when the file has not changed since it was parsed.
+     *
+     * @param workbookParser parses an .xlsx table when neither cache applies
+     */
+    static List<SheetConfig> load(String configFilePath, WorkbookParser workbookParser) throws IOException {
+        Path path = new File(configFilePath).getCanonicalFile().toPath();
+        BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+        long modified = attributes.lastModifiedTime().toMillis();
+        long size = attributes.size();
+
+        CachedTable cached = CACHE.get(path.toString());
+        if (cached != null && cached.modified == modified && cached.size == size) {
+            return cached.configs;
+        }
+
+        List<SheetConfig> configs;
+        String fileName = path.getFileName().toString().toLowerCase(Locale.ROOT);
+        if (fileName.endsWith(".csv")) {
+            configs = readCsv(path);
+        } else if (fileName.endsWith(".json")) {
+            configs = readJson(path);
+        } else {
+            Path snapshot = snapshotPath(path);
+            configs = snapshot == null ? null : readSnapshot(snapshot, modified, size);
+            if (configs == null) {
+                configs = workbookParser.parse(configFilePath);
+                if (snapshot != null) {
+                    writeSnapshot(snapshot, modified, size, configs);
+                }
+            }
+        }
+
+        configs = Collections.unmodifiableList(new ArrayList<>(configs));
+        CACHE.put(path.toString(), new CachedTable(modified, size, configs));
+        return configs;
+    }
+
+    /**
+     * Parses a configuration workbook with POI.
+     */
+    interface WorkbookParser {
+        List<SheetConfig> parse(String configFilePath) throws IOException;
+    }
+
+    private static List<SheetConfig> readCsv(Path path) throws IOException {
+        List<SheetConfig> configs = new ArrayList<>();
+        try (CsvReader reader = new CsvReader(Files.newBufferedReader(path, StandardCharsets.UTF_8))) {
+            List<String> header = reader.readRecord();
+            if (header == null) {
+                return configs;
+            }
+            int[] columns = new int[COLUMNS.size()];
+            for (int i = 0; i < columns.length; i++) {
+                columns[i] = indexOfColumn(header, COLUMNS.get(i));
+            }
+            List<String> record;
+            while ((record = reader.readRecord()) != null) {
+                if (record.size() == 1 && record.get(0).isEmpty()) {
+                    continue;
+                }
+                Map<String, Object> values = new HashMap<>();
+                for (int i = 0; i < columns.length; i++) {
+                    if (columns[i] >= 0 && columns[i] < record.size()) {
+                        values.put(COLUMNS.get(i), record.get(columns[i]));
+                    }
+                }
+                configs.add(toConfig(values));
+            }
+        }
+        return configs;
+    }
+
+    private static int indexOfColumn(List<String> header, String column) {
+        for (int i = 0; i < header.size(); i++) {
+            if (header.get(i).trim().replace("_", "").equalsIgnoreCase(column)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static List<SheetConfig> readJson(Path path) throws IOException {
+        Object root;
+        try (BufferedReader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+            StringBuilder text = new StringBuilder();
+            char[] buffer = new char[8192];
+            int n;
+            while ((n = reader.read(buffer)) != -1) {
+                text.append(buffer, 0, n);
+            }
+            root = new JsonParser(text).parseDocument();
+        }
+        if (!(root instanceof List)) {
+            throw new IOException("Expected a JSON array of sheet configurations in " + path);
+        }
+        List<SheetConfig> configs = new ArrayList<>();
+        for (Object element : (List<?>) root) {
+            if (!(element instanceof Map)) {
+                throw new IOException("Expected a JSON object for each sheet configuration in " + path);
+            }
+            Map<String, Object> values = new HashMap<>();
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) element).entrySet()) {
+                values.put(entry.getKey().toString().replace("_", "").toLowerCase(Locale.ROOT), entry.getValue());
+            }
+            configs.add(toConfig(values));
+        }
+        return configs;
+    }
+
+    /**
+     * Builds a configuration with the same defaults as the .xlsx loader:
+     * missing text is empty, missing flags are false.
+     */
+    private static SheetConfig toConfig(Map<String, Object> values) {
+        return new SheetConfig(
+                text(values.get("sheetname")),
+                text(values.get("csvname")),
+                flag(values.get("transpose")),
+                flag(values.get("commentread")),
+                text(values.get("range")),
+                list(values.get("excludefromtranspose")),
+                text(values.get("outputdirectory")),
+                String.join(",", list(values.get("columns"))),
+                text(values.get("filter")));
+    }
+
+    private static String text(Object value) {
+        return value == null ? "" : value.toString();
+    }
+
+    private static boolean flag(Object value) {
+        if (value instanceof Boolean) {
+            return (Boolean) value;
+        }
+        return value != null && "true".equalsIgnoreCase(value.toString().trim());
+    }
+
+    private static List<String> list(Object value) {
+        List<String> values = new ArrayList<>();
+        if (value instanceof List) {
+            for (Object element : (List<?>) value) {
+                values.add(text(element).trim());
+            }
+        } else if (value != null && !value.toString().isEmpty()) {
+            for (String element : value.toString().split(",")) {
+                values.add(element.trim());
+            }
+        }
+        return values;
+    }
+
+    private static Path snapshotPath(Path configPath) {
+        String directory = System.getProperty(SNAPSHOT_DIR_PROPERTY);
+        if (directory == null || directory.isEmpty()) {
+            return null;
+        }
+        String name = configPath.getFileName() + "-" + Integer.toHexString(configPath.toString().hashCode()) + ".snapshot";
+        return Path.of(directory, name);
+    }
+
+    /**
+     * @return the snapshotted configurations, or {@code null} if there is no
+     * snapshot for this version of the file
+     */
+    private static List<SheetConfig> readSnapshot(Path snapshot, long modified, long size) {
+        if (!Files.isRegularFile(snapshot)) {
+            return null;
+        }
+        try (InputStream in = Files.newInputStream(snapshot);
+             DataInputStream data = new DataInputStream(new BufferedInputStream(in))) {
+            if (data.readInt() != SNAPSHOT_MAGIC || data.readInt() != SNAPSHOT_VERSION
+                    || data.readLong() != modified || data.readLong() != size) {
+                return null;
+            }
+            int count = data.readInt();
+            List<SheetConfig> configs = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                String sheetName = data.readUTF();
+                String csvName = data.readUTF();
+                boolean transpose = data.readBoolean();
+                boolean commentRead = data.readBoolean();
+                String range = data.readUTF();
+                int excludeCount = data.readInt();
+                List<String> exclude = new ArrayList<>(excludeCount);
+                for (int j = 0; j < excludeCount; j++) {
+                    exclude.add(data.readUTF());
+                }
+                String outputDirectory = data.readUTF();
+                String columns = data.readUTF();
+                String filter = data.readUTF();
+                configs.add(new SheetConfig(sheetName, csvName, transpose, commentRead, range, exclude, outputDirectory, columns, filter));
+            }
+            logger.info("Loaded sheet configurations from snapshot " + snapshot);
+            return configs;
+        } catch (IOException e) {
+            logger.warning("Ignoring unreadable configuration snapshot " + snapshot + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    private static void writeSnapshot(Path snapshot, long modified, long size, List<SheetConfig> configs) {
+        try {
+            Files.createDirectories(snapshot.getParent());
+            Path temp = Files.createTempFile(snapshot.getParent(), snapshot.getFileName().toString(), ".tmp");
+            try (OutputStream out = Files.newOutputStream(temp);
+                 DataOutputStream data = new DataOutputStream(new BufferedOutputStream(out))) {
+                data.writeInt(SNAPSHOT_MAGIC);
+                data.writeInt(SNAPSHOT_VERSION);
+                data.writeLong(modified);
+                data.writeLong(size);
+                data.writeInt(configs.size());
+                for (SheetConfig config : configs) {
+                    data.writeUTF(text(config.getSheetName()));
+                    data.writeUTF(text(config.getCsvName()));
+                    data.writeBoolean(Boolean.TRUE.equals(config.isTranspose()));
+                    data.writeBoolean(Boolean.TRUE.equals(config.isCommentRead()));
+                    data.writeUTF(text(config.getRange()));
+                    List<String> exclude = config.getExcludeFromTranspose();
+                    data.writeInt(exclude.size());
+                    for (String sheet : exclude) {
+                        data.writeUTF(sheet);
+                    }
+                    data.writeUTF(text(config.getOutputDirectory()));
+                    data.writeUTF(text(config.getColumns()));
+                    data.writeUTF(text(config.getFilter()));
+                }
+            }
+            Files.move(temp, snapshot, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            logger.warning("Could not write configuration snapshot " + snapshot + ": " + e.getMessage());
+        }
+    }
+
+    private static final class CachedTable {
+
+        private final long modified;
+        private final long size;
+        private final List<SheetConfig> configs;
+
+        private CachedTable(long modified, long size, List<SheetConfig> configs) {
+            this.modified = modified;
+            this.size = size;
+            this.configs = configs;
+        }
+    }
+
+    /**
+     * Just enough JSON for configuration files: objects, arrays, strings,
+     * booleans, null, and numbers (kept as their text).
+     */
+    private static final class JsonParser {
+
+        private final CharSequence text;
+        private int pos;
+
+        private JsonParser(CharSequence text) {
+            this.text = text;
+        }
+
+        private Object parseDocument() throws IOException {
+            Object value = parseValue();
+            skipWhitespace();
+            if (pos < text.length()) {
+                throw error("Unexpected trailing content");
+            }
+            return value;
+        }
+
+        private Object parseValue() throws IOException {
+            skipWhitespace();
+            if (pos >= text.length()) {
+                throw error("Unexpected end of JSON");
+            }
+            char c = text.charAt(pos);
+            switch (c) {
+                case '{':
+                    return parseObject();
+                case '[':
+                    return parseArray();
+                case '"':
+                    return parseString();
+                default:
+                    return parseLiteral();
+            }
+        }
+
+        private Map<String, Object> parseObject() throws IOException {
+            Map<String, Object> object = new LinkedHashMap<>();
+            pos++;
+            skipWhitespace();
+            if (peek() == '}') {
+                pos++;
+                return object;
+            }
+            while (true) {
+                skipWhitespace();
+                if (peek() != '"') {
+                    throw error("Expected a string key");
+                }
+                String key = parseString();
+                skipWhitespace();
+                expect(':');
+                object.put(key, parseValue());
+                skipWhitespace();
+                if (peek() == ',') {
+                    pos++;
+                } else {
+                    expect('}');
+                    return object;
+                }
+            }
+        }
+
+        private List<Object> parseArray() throws IOException {
+            List<Object> array = new ArrayList<>();
+            pos++;
+            skipWhitespace();
+            if (peek() == ']') {
+                pos++;
+                return array;
+            }
+            while (true) {
+                array.add(parseValue());
+                skipWhitespace();
+                if (peek() == ',') {
+                    pos++;
+                } else {
+                    expect(']');
+                    return array;
+                }
+            }
+        }
+
+        private String parseString() throws IOException {
+            StringBuilder value = new StringBuilder();
+            pos++;
+            while (pos < text.length()) {
+                char c = text.charAt(pos++);
+                if (c == '"') {
+                    return value.toString();
+                }
+                if (c != '\\') {
+                    value.append(c);
+                    continue;
+                }
+                if (pos >= text.length()) {
+                    break;
+                }
+                char escaped = text.charAt(pos++);
+                switch (escaped) {
+                    case 'b':
+                        value.append('\b');
+                        break;
+                    case 'f':
+                        value.append('\f');
+                        break;
+                    case 'n':
+                        value.append('\n');
+                        break;
+                    case 'r':
+                        value.append('\r');
+                        break;
+                    case 't':
+                        value.append('\t');
+                        break;
+                    case 'u':
+                        if (pos + 4 > text.length()) {
+                            throw error("Truncated unicode escape");
+                        }
+                        try {
+                            value.append((char) Integer.parseInt(text.subSequence(pos, pos + 4).toString(), 16));
+                        } catch (NumberFormatException e) {
+                            throw error("Invalid unicode escape");
+                        }
+                        pos += 4;
+                        break;
+                    default:
+                        value.append(escaped);
+                }
+            }
+            throw error("Unterminated string");
+        }
+
+        private Object parseLiteral() throws IOException {
+            int start = pos;
+            while (pos < text.length() && ",}] \t\r\n".indexOf(text.charAt(pos)) < 0) {
+                pos++;
+            }
+            String literal = text.subSequence(start, pos).toString();
+            switch (literal) {
+                case "true":
+                    return Boolean.TRUE;
+                case "false":
+                    return Boolean.FALSE;
+                case "null":
+                    return null;
+                default:
+                    if (literal.matches("-?\\d+(\\.\\d+)?([eE][+-]?\\d+)?")) {
+                        return literal;
+                    }
+                    throw error("Unexpected value '" + literal + "'");
+            }
+        }
+
+        private void skipWhitespace() {
+            while (pos < text.length() && Character.isWhitespace(text.charAt(pos))) {
+                pos++;
+            }
+        }
+
+        private char peek() {
+            return pos < text.length() ? text.charAt(pos) : '\0';
+        }
+
+        private void expect(char c) throws IOException {
+            if (peek() != c) {
+                throw error("Expected '" + c + "'");
+            }
+            pos++;
+        }
+
+        private IOException error(String message) {
+            return new IOException(message + " at offset " + pos + " of JSON configuration");
+        }
+    }
+}
@@ -0,0 +1,264 @@
+package org.csdconverter;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.function.Supplier;
+import java.util.logging.Logger;
+
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.ss.util.CellReference;
+
+/**
+ * Row selection and cell extraction rules for one {@link SheetConfig}.
+ * <p>
+ * The range, start row, comment column, {@link ColumnProjection} and
+ * {@link RowFilter} are resolved once up front, after which
+ * {@link #extractRow(SheetRow, Supplier)} only reads state and may be called
+ * from several threads at once. Rows come either from a POI usermodel sheet or
+ * from a streaming {@link SheetReader}; both go through the same rules, and a
+ * streaming reader is told through {@link #needsCell} which cells it can skip
+ * without decoding, and through {@link #decidesRow} which of the rest it can
+ * leave undecoded until the row passes the filter. A row is tested against
+ * the filter before any other cell of it is read.
+ */
+class SheetExtractor {
+
+    private static final Logger logger = Logger.getLogger(SheetExtractor.class.getName());
+    private static final int START_COLUMN = 1;
+
+    private final SheetConfig config;
+    private final StageMetrics metrics;
+    private final int startRow;
+    private final TreeSet<Integer> rowIndices = new TreeSet<>();
+    private final ColumnProjection projection;
+    private ColumnProjection.Resolved projectedColumns;
+    private final RowFilter filter;
+    private RowFilter.Resolved rowFilter;
+    private int commentColumnIndex = -1;
+
+    SheetExtractor(SheetConfig config) {
+        this.config = config;
+        this.metrics = ConversionMetrics.get().stage(config.getSheetName(), ConversionMetrics.STAGE_EXTRACT);
+        this.startRow = config.isTranspose() ? 2 : 0;
+        this.projection = ColumnProjection.parse(config.getColumns());
+        this.filter = RowFilter.parse(config.getFilter());
+        parseRange(config.getRange());
+    }
+
+    /**
+     * Locates the comment column and resolves the projected and filtered
+     * columns from the sheet's header row, or from none if the sheet has no
+     * header row.
+     */
+    void readHeader(SheetRow headerRow) {
+        if (headerRow != null) {
+            commentColumnIndex = CommentMarkers.get().findCommentColumn(headerRow);
+        }
+        if (projection != null) {
+            projectedColumns = projection.resolve(headerRow, config.getSheetName());
+        }
+        if (filter != null) {
+            rowFilter = filter.resolve(headerRow);
+        }
+    }
+
+    void readHeader(Row headerRow) {
+        readHeader(headerRow == null ? null : new DomSheetRow(headerRow));
+    }
+
+    boolean isSelected(int rowIndex) {
+        return rowIndex >= startRow && (rowIndices.isEmpty() || rowIndices.contains(rowIndex));
+    }
+
+    /**
+     * Returns {@code true} once no row after {@code rowIndex} can be selected.
+     */
+    boolean isPastLastSelected(int rowIndex) {
+        return !rowIndices.isEmpty() && rowIndex >= rowIndices.last();
+    }
+
+    /**
+     * Returns the indices of the rows to visit, in order, up to and including {@code lastRowNum}.
+     */
+    List<Integer> selectRows(int lastRowNum) {
+        List<Integer> rows = new ArrayList<>();
+        if (rowIndices.isEmpty()) {
+            for (int i = startRow; i <= lastRowNum; i++) {
+                rows.add(i);
+            }
+        } else if (startRow <= lastRowNum) {
+            rows.addAll(rowIndices.subSet(startRow, true, lastRowNum, true));
+        }
+        return rows;
+    }
+
+    /**
+     * Extracts a single row into a list obtained from {@code rowTarget}.
+     *
+     * @return {@code false} if the row was skipped as a comment row or by the filter
+     */
+    boolean extractRow(SheetRow row, Supplier<List<String>> rowTarget) {
+        if (isSkippingCommentRows() && CommentMarkers.get().isCommentRow(row)) {
+            return false;
+        }
+        if ((projection != null && projectedColumns == null) || (filter != null && rowFilter == null)) {
+            readHeader((SheetRow) null);
+        }
+        if (rowFilter != null && row.getRowNum() != 0 && !rowFilter.test(row)) {
+            return false;
+        }
+        if (projection != null) {
+            extractProjectedRow(row, rowTarget.get());
+            return true;
+        }
+        List<String> rowData = rowTarget.get();
+        for (int j = START_COLUMN; j < row.getLastCellNum(); j++) {
+            if (!config.isCommentRead() && j == commentColumnIndex) {
+                continue;
+            }
+            rowData.add(row.getCellValue(j));
+        }
+        metrics.recordRow(rowData.size());
+        return true;
+    }
+
+    /**
+     * Copies the projected columns in projection order; renamed columns take
+     * their new name in the header row.
+     */
+    private void extractProjectedRow(SheetRow row, List<String> rowData) {
+        boolean header = row.getRowNum() == 0;
+        for (int i = 0; i < projectedColumns.size(); i++) {
+            int column = projectedColumns.getColumn(i);
+            if (!config.isCommentRead() && column == commentColumnIndex) {
+                continue;
+            }
+            String rename = projectedColumns.getRename(i);
+            rowData.add(header && rename != null ? rename : row.getCellValue(column));
+        }
+        metrics.recordRow(rowData.size());
+    }
+
+    /**
+     * Whether the value of the cell at {@code column} of row {@code rowIndex}
+     * can be used. The header row is needed whole, the first column is needed
+     * for comment rows, and otherwise only the projected and filtered columns
+     * of selected rows are.
+     */
+    boolean needsCell(int rowIndex, int column) {
+        if (rowIndex == 0) {
+            return true;
+        }
+        if (!isSelected(rowIndex)) {
+            return false;
+        }
+        if (projectedColumns == null) {
+            return true;
+        }
+        return projectedColumns.contains(column) || (rowFilter != null && rowFilter.usesColumn(column))
+                || (column == 0 && isSkippingCommentRows());
+    }
+
+    /**
+     * Whether the cell at {@code column} of row {@code rowIndex} is read
+     * before the row is known to pass the filter: the filtered columns, and
+     * the first column for comment rows. Without a filter every cell is.
+     */
+    boolean decidesRow(int rowIndex, int column) {
+        if (rowIndex == 0 || rowFilter == null) {
+            return true;
+        }
+        return rowFilter.usesColumn(column) || (column == 0 && isSkippingCommentRows());
+    }
+
+    private boolean isSkippingCommentRows() {
+        return config.isCommentRead() != null && config.isCommentRead();
+    }
+
+    /**
+     * Extracts every selected row of {@code sheet} in order.
+     */
+    void extract(Sheet sheet, Supplier<List<String>> rowTarget) {
+        readHeader(sheet.getRow(0));
+        for (int i : selectRows(sheet.getLastRowNum())) {
+            Row row = sheet.getRow(i);
+            if (row != null) {
+                extractRow(new DomSheetRow(row), rowTarget);
+            }
+        }
+    }
+
+    /**
+     * Handles one row delivered by a {@link SheetReader}: the header row is
+     * inspected first, then the row is extracted if selected.
+     *
+     * @return {@code false} once the remaining rows cannot be selected
+     */
+    boolean extractStreamedRow(SheetRow row, Supplier<List<String>> rowTarget) {
+        int rowIndex = row.getRowNum();
+        if (rowIndex == 0) {
+            readHeader(row);
+        }
+        if (isSelected(rowIndex)) {
+            extractRow(row, rowTarget);
+        }
+        return !isPastLastSelected(rowIndex);
+    }
+
+    /**
+     * A {@link SheetReader.RowHandler} that extracts the rows of a streamed
+     * sheet with {@link #extractStreamedRow} and lets the reader skip the
+     * cells this extractor does not need and defer those the filter does not
+     * read.
+     */
+    SheetReader.RowHandler rowHandler(Supplier<List<String>> rowTarget) {
+        return new SheetReader.RowHandler() {
+            @Override
+            public boolean handleRow(SheetRow row) {
+                return extractStreamedRow(row, rowTarget);
+            }
+
+            @Override
+            public boolean needsCell(int rowIndex, int column) {
+                return SheetExtractor.this.needsCell(rowIndex, column);
+            }
+
+            @Override
+            public boolean decidesRow(int rowIndex, int column) {
+                return SheetExtractor.this.decidesRow(rowIndex, column);
+            }
+        };
+    }
+
+    private void parseRange(String range) {
+        if (range == null || range.isEmpty() || "NA".equalsIgnoreCase(range)) {
+            return;
+        }
+        String[] parts = range.split(",");
+        for (String part : parts) {
+            if (part.contains("-")) {
+                String[] bounds = part.split("-");
+                try {
+                    int start = Integer.parseInt(bounds[0].trim());
+                    int end = Integer.parseInt(bounds[1].trim());
+                    for (int i = start; i <= end; i++) {
+                        rowIndices.add(i - 1);
+                    }
+                } catch (NumberFormatException e) {
+                    logger.severe("Invalid range format: " + range);
+                }
+            } else if (part.matches("\\d+")) {
+                int row = Integer.parseInt(part.trim()) - 1;
+                rowIndices.add(row);
+            } else if (part.matches("[A-Z]+\\d+")) {
+                CellReference cellReference = new CellReference(part.trim());
+                int row = cellReference.getRow();
+                rowIndices.add(row);
+            } else {
+                logger.severe("Invalid range format: " + range);
+            }
+        }
+    }
+}
@@ -0,0 +1,210 @@
+package org.csdconverter;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.logging.Logger;
+
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+
+/**
+ * Converts several {@link SheetConfig}s that name the same sheet in a single
+ * pass over its rows. Each configuration gets its own sink with its own range
+ * filter, comment handling and either a transpose buffer or a
+ * {@link PipelinedCsvWriter}; every row read is offered to all of them.
+ * <p>
+ * A sink that fails is dropped and reported on its own, as if it had been
+ * converted separately, while the remaining sinks keep receiving rows.
+ */
+class SheetFanOut implements SheetReader.RowHandler {
+
+    private static final Logger logger = Logger.getLogger(SheetFanOut.class.getName());
+
+    private final String sheetName;
+    private final List<Sink> sinks = new ArrayList<>();
+
+    SheetFanOut(String sheetName, List<SheetConfig> configs) {
+        this.sheetName = sheetName;
+        for (SheetConfig config : configs) {
+            String csvFilePath = MainCSD.resolveCsvPath(config);
+            try {
+                sinks.add(new Sink(config, csvFilePath));
+            } catch (Exception e) {
+                logger.severe("Error processing sheet: " + sheetName + ". " + e.getMessage());
+            }
+        }
+        logger.info("Sheet: " + sheetName + " - Single scan feeding " + sinks.size() + " outputs");
+    }
+
+    /**
+     * Scans a usermodel sheet once, visiting only rows that at least one sink
+     * selects, under a {@link CpuPermits} permit. If the scan fails, every
+     * sink is aborted.
+     */
+    void scan(Sheet sheet) throws InterruptedException {
+        boolean scanned = false;
+        try (CpuPermits.Permit cpu = CpuPermits.acquire();
+             StageMetrics.Timer ignored = extractMetrics().start()) {
+            TreeSet<Integer> rows = new TreeSet<>();
+            rows.add(0);
+            for (Sink sink : sinks) {
+                rows.addAll(sink.extractor.selectRows(sheet.getLastRowNum()));
+            }
+            for (int i : rows) {
+                Row row = sheet.getRow(i);
+                if (row != null && !handleRow(new DomSheetRow(row))) {
+                    break;
+                }
+            }
+            scanned = true;
+        } finally {
+            if (!scanned) {
+                abort();
+            }
+        }
+    }
+
+    /**
+     * Scans a sheet of a streaming reader once, under a {@link CpuPermits}
+     * permit. If the scan fails, every sink is aborted.
+     */
+    void scan(SheetReader reader) throws Exception {
+        boolean scanned = false;
+        try (CpuPermits.Permit cpu = CpuPermits.acquire();
+             StageMetrics.Timer ignored = extractMetrics().start()) {
+            reader.readSheet(sheetName, this);
+            scanned = true;
+        } finally {
+            if (!scanned) {
+                abort();
+            }
+        }
+    }
+
+    @Override
+    public boolean handleRow(SheetRow row) {
+        int rowIndex = row.getRowNum();
+        boolean more = false;
+        for (Iterator<Sink> it = sinks.iterator(); it.hasNext(); ) {
+            Sink sink = it.next();
+            try {
+                sink.accept(row);
+            } catch (RuntimeException e) {
+                logger.severe("Error processing sheet: " + sheetName + ". " + e.getMessage());
+                sink.abort();
+                it.remove();
+                continue;
+            }
+            more |= !sink.extractor.isPastLastSelected(rowIndex);
+        }
+        return more;
+    }
+
+    /**
+     * A cell is needed if any sink needs it.
+     */
+    @Override
+    public boolean needsCell(int rowIndex, int column) {
+        for (Sink sink : sinks) {
+            if (sink.extractor.needsCell(rowIndex, column)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * A cell is decoded at once if any sink that needs it reads it to decide
+     * on the row.
+     */
+    @Override
+    public boolean decidesRow(int rowIndex, int column) {
+        for (Sink sink : sinks) {
+            if (sink.extractor.needsCell(rowIndex, column) && sink.extractor.decidesRow(rowIndex, column)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Flushes every sink: pipelined writers are closed and transposed sinks are
+     * transposed and written. No CPU permit is held for this.
+     */
+    void finish() {
+        for (Sink sink : sinks) {
+            try {
+                sink.finish();
+            } catch (Exception e) {
+                logger.severe("Error processing sheet: " + sheetName + ". " + e.getMessage());
+            }
+        }
+        sinks.clear();
+    }
+
+    private void abort() {
+        for (Sink sink : sinks) {
+            sink.abort();
+        }
+        sinks.clear();
+    }
+
+    private StageMetrics extractMetrics() {
+        return ConversionMetrics.get().stage(sheetName, ConversionMetrics.STAGE_EXTRACT);
+    }
+
+    private static final class Sink {
+
+        private final SheetConfig config;
+        private final String csvFilePath;
+        private final SheetExtractor extractor;
+        private final CellArena transposeBuffer;
+        private final PipelinedCsvWriter writer;
+
+        private Sink(SheetConfig config, String csvFilePath) throws Exception {
+            this.config = config;
+            this.csvFilePath = csvFilePath;
+            this.extractor = new SheetExtractor(config);
+            if (MainCSD.isTransposed(config)) {
+                this.transposeBuffer = new CellArena();
+                this.writer = null;
+            } else {
+                this.transposeBuffer = null;
+                this.writer = new PipelinedCsvWriter(csvFilePath, ConversionMetrics.get().stage(config.getSheetName(), ConversionMetrics.STAGE_WRITE));
+            }
+        }
+
+        private void accept(SheetRow row) {
+            int rowIndex = row.getRowNum();
+            if (rowIndex == 0) {
+                extractor.readHeader(row);
+            }
+            if (!extractor.isSelected(rowIndex)) {
+                return;
+            }
+            if (writer != null) {
+                extractor.extractRow(row, writer::nextRow);
+            } else {
+                extractor.extractRow(row, transposeBuffer::newRow);
+            }
+        }
+
+        private void finish() throws Exception {
+            if (writer != null) {
+                writer.finish();
+            } else {
+                MainCSD.writeTransposedCSV(config, csvFilePath, transposeBuffer);
+            }
+        }
+
+        private void abort() {
+            if (writer != null) {
+                writer.abort();
+            } else {
+                transposeBuffer.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package org.csdconverter;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Streaming access to the sheets of a workbook. Rows are pushed to a
+ * {@link RowHandler} one at a time in ascending row order, so memory use does
+ * not grow with the size of the sheet.
+ */
+interface SheetReader extends Closeable {
+
+    /**
+     * Names of the sheets in workbook order.
+     */
+    List<String> getSheetNames() throws IOException;
+
+    /**
+     * Streams the rows of {@code sheetName} to {@code handler}. Whether rows
+     * without any cells are reported depends on the format, as it does for
+     * the POI usermodel.
+     *
+     * @return {@code false} if the workbook has no sheet with that name
+     */
+    boolean readSheet(String sheetName, RowHandler handler) throws IOException;
+
+    /**
+     * Receives rows from {@link SheetReader#readSheet}. The row object may be
+     * reused by the reader and must not be retained after the call returns.
+     */
+    interface RowHandler {
+
+        /**
+         * @return {@code false} to stop reading the rest of the sheet
+         */
+        boolean handleRow(SheetRow row);
+
+        /**
+         * Whether the value of the cell at {@code column} of row
+         * {@code rowIndex} will be used. A reader may leave out a cell this
+         * rejects without decoding it; the row is still reported.
+         */
+        default boolean needsCell(int rowIndex, int column) {
+            return true;
+        }
+
+        /**
+         * Whether the cell at {@code column} of row {@code rowIndex} is read
+         * to decide whether the row is used at all. A reader may leave the
+         * other cells this handler needs undecoded until {@link #handleRow}
+         * reads them, so those of rows it drops are never decoded.
+         */
+        default boolean decidesRow(int rowIndex, int column) {
+            return true;
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package org.csdconverter;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.logging.Logger;
+
+import org.apache.poi.openxml4j.exceptions.InvalidFormatException;
+import org.apache.poi.openxml4j.opc.OPCPackage;
+import org.apache.poi.openxml4j.opc.PackageAccess;
+import org.apache.poi.poifs.filesystem.FileMagic;
+import org.apache.poi.ss.usermodel.Workbook;
+import org.apache.poi.ss.usermodel.WorkbookFactory;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.project.WorkbookMetadata;
+
+/**
+ * Opens the {@link SheetReader} or usermodel {@link Workbook} matching a
+ * workbook's on-disk format. The format is detected from the file's leading
+ * bytes, not its extension.
+ */
+final class SheetReaders {
+
+    /**
+     * How .xlsx workbooks are read: {@code stream} always with
+     * {@link XlsxSheetReader}, {@code usermodel} always by loading them into a
+     * usermodel workbook, and {@code auto}, the default, with the streaming
+     * reader when the usermodel workbook would need more than
+     * {@link MemoryBudget#getStreamingThreshold()} of the heap.
+     */
+    static final String XLSX_READER_PROPERTY = "csd.xlsx.reader";
+
+    private static final Logger logger = Logger.getLogger(SheetReaders.class.getName());
+
+    private SheetReaders() {
+    }
+
+    /**
+     * Opens a workbook read-only from its file. .xlsx packages are read through
+     * a {@link MappedZipEntrySource}, so parts are inflated from the mapped file
+     * as POI needs them instead of the whole package being buffered from an
+     * input stream first.
+     */
+    static Workbook openWorkbook(File file) throws IOException {
+        if (isLegacyFormat(file)) {
+            return WorkbookFactory.create(file, null, true);
+        }
+        OPCPackage pkg;
+        try {
+            pkg = OPCPackage.open(new MappedZipEntrySource(file));
+        } catch (IOException | InvalidFormatException e) {
+            logger.fine("Falling back to POI file access for " + file + ": " + e.getMessage());
+            try {
+                pkg = OPCPackage.open(file, PackageAccess.READ);
+            } catch (InvalidFormatException invalid) {
+                throw new IOException(invalid.getMessage(), invalid);
+            }
+        }
+        try {
+            return new XSSFWorkbook(pkg);
+        } catch (IOException | RuntimeException e) {
+            pkg.revert();
+            throw e;
+        }
+    }
+
+    static boolean isLegacyFormat(File file) throws IOException {
+        return FileMagic.valueOf(file) == FileMagic.OLE2;
+    }
+
+    /**
+     * Whether a workbook should be converted through a streaming {@link SheetReader}:
+     * always for .xls, and for .xlsx as {@value #XLSX_READER_PROPERTY} says.
+     */
+    static boolean useStreamingReader(WorkbookMetadata metadata) {
+        if (metadata.isLegacyFormat()) {
+            return true;
+        }
+        String mode = System.getProperty(XLSX_READER_PROPERTY, "auto");
+        if ("stream".equalsIgnoreCase(mode)) {
+            return true;
+        }
+        if ("usermodel".equalsIgnoreCase(mode)) {
+            return false;
+        }
+        return MemoryBudget.estimateUsermodel(metadata) > MemoryBudget.getStreamingThreshold();
+    }
+
+    static SheetReader open(File file) throws IOException {
+        FileMagic magic = FileMagic.valueOf(file);
+        if (magic == FileMagic.OLE2) {
+            return new XlsSheetReader(file);
+        }
+        if (magic == FileMagic.OOXML) {
+            return new XlsxSheetReader(file);
+        }
+        throw new IOException("Unsupported workbook format " + magic + ": " + file);
+    }
+}
@@ -0,0 +1,41 @@
+package org.csdconverter;
+
+/**
+ * Read-only view of one spreadsheet row, independent of how the workbook is
+ * being read (POI usermodel or a streaming record/SAX reader).
+ */
+interface SheetRow {
+
+    /**
+     * Zero-based row index within the sheet.
+     */
+    int getRowNum();
+
+    /**
+     * One more than the index of the last cell present in the row, or -1 if the
+     * row has no cells, matching {@link org.apache.poi.ss.usermodel.Row#getLastCellNum()}.
+     */
+    int getLastCellNum();
+
+    /**
+     * Value of the cell at {@code column}, rendered the way
+     * {@link MainCSD#getCellValue} renders POI cells; empty for missing cells.
+     */
+    String getCellValue(int column);
+
+    /**
+     * Number held by the cell at {@code column}, before it is rendered: the
+     * cell's value, or for a formula cell the result cached in the workbook
+     * when it was last saved. {@link Double#NaN} for missing cells and cells
+     * that do not hold a number.
+     */
+    double getNumericValue(int column);
+
+    /**
+     * {@link CommentMarkers} bits of the cell at {@code column}. Readers that
+     * can classify a cell without rendering it override this.
+     */
+    default int getCellMarkers(int column) {
+        return CommentMarkers.get().classify(getCellValue(column));
+    }
+}
@@ -0,0 +1,297 @@
+package org.csdconverter;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.BitSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.logging.Logger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.poi.openxml4j.util.ZipEntrySource;
+
+import org.example.DirectBuffers;
+
+/**
+ * Shared strings table of an .xlsx workbook that keeps its strings off the
+ * Java heap.
+ * <p>
+ * Nothing is read until the first lookup. The part is then streamed once:
+ * every string is appended UTF-8 encoded to a temporary data file and its
+ * start offset to a temporary index file, and both files are memory-mapped.
+ * A lookup reads two offsets from the index and decodes the bytes between
+ * them; an LRU cache of {@value #DEFAULT_CACHE_SIZE} entries (see
+ * {@value #CACHE_SIZE_PROPERTY}) absorbs the repeated values typical of
+ * spreadsheet columns. Heap use is therefore bounded by the cache, not by the
+ * size of the table. {@link #close()} unmaps the temporary files and then
+ * deletes them; a mapped file cannot be deleted on Windows.
+ * <p>
+ * While the table is indexed every string is also classified by the
+ * {@link CommentMarkers} rules, and the indices of the strings that mark
+ * comment rows or columns are kept in two bit sets, so {@link #markers(int)}
+ * answers without looking the string up.
+ * <p>
+ * Strings are rendered the way {@code XSSFRichTextString.getString()} does:
+ * rich text runs are concatenated, phonetic runs are skipped and
+ * {@code _xHHHH_} escapes are decoded. Not thread-safe.
+ */
+class SpillableSharedStrings implements Closeable {
+
+    static final String CACHE_SIZE_PROPERTY = "csd.sst.cacheSize";
+    static final int DEFAULT_CACHE_SIZE = 8192;
+
+    private static final Logger logger = Logger.getLogger(SpillableSharedStrings.class.getName());
+    private static final Pattern UTF_ESCAPE = Pattern.compile("_x([0-9A-Fa-f]{4})_");
+
+    private final ZipEntrySource zip;
+    private final String partName;
+    private final Map<Integer, String> cache;
+    private final BitSet rowMarkers = new BitSet();
+    private final BitSet commentHeaders = new BitSet();
+
+    private Path dataFile;
+    private Path indexFile;
+    private FileChannel dataChannel;
+    private MappedByteBuffer data;
+    private MappedByteBuffer index;
+    private LongBuffer offsets;
+    private int count = -1;
+
+    SpillableSharedStrings(ZipEntrySource zip, String partName) {
+        this.zip = zip;
+        this.partName = partName;
+        int cacheSize = Integer.getInteger(CACHE_SIZE_PROPERTY, DEFAULT_CACHE_SIZE);
+        this.cache = new LinkedHashMap<Integer, String>(Math.min(cacheSize, 1024), 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, String> eldest) {
+                return size() > cacheSize;
+            }
+        };
+    }
+
+    /**
+     * Returns the string at {@code index}, indexing the table on first use.
+     */
+    String get(int index) throws IOException {
+        String value = cache.get(index);
+        if (value != null) {
+            return value;
+        }
+        ensureIndexed();
+        if (index < 0 || index >= count) {
+            throw new IOException("Shared string index " + index + " out of range (" + count + " strings)");
+        }
+        long start = offsets.get(index);
+        int length = (int) (offsets.get(index + 1) - start);
+        byte[] bytes = new byte[length];
+        if (data != null) {
+            data.duplicate().position((int) start).get(bytes);
+        } else {
+            ByteBuffer buffer = ByteBuffer.wrap(bytes);
+            while (buffer.hasRemaining()) {
+                if (dataChannel.read(buffer, start + buffer.position()) < 0) {
+                    throw new IOException("Shared strings spill file truncated");
+                }
+            }
+        }
+        value = new String(bytes, StandardCharsets.UTF_8);
+        cache.put(index, value);
+        return value;
+    }
+
+    /**
+     * {@link CommentMarkers} bits of the string at {@code index}, indexing the table on first use.
+     */
+    int markers(int index) throws IOException {
+        ensureIndexed();
+        if (index < 0 || index >= count) {
+            throw new IOException("Shared string index " + index + " out of range (" + count + " strings)");
+        }
+        return (rowMarkers.get(index) ? CommentMarkers.ROW_MARKER : 0)
+                | (commentHeaders.get(index) ? CommentMarkers.COMMENT_HEADER : 0);
+    }
+
+    /**
+     * Number of strings in the table, indexing it if needed.
+     */
+    int size() throws IOException {
+        ensureIndexed();
+        return count;
+    }
+
+    @Override
+    public void close() throws IOException {
+        cache.clear();
+        DirectBuffers.free(data);
+        DirectBuffers.free(index);
+        data = null;
+        index = null;
+        offsets = null;
+        try {
+            if (dataChannel != null) {
+                dataChannel.close();
+            }
+        } finally {
+            deleteQuietly(dataFile);
+            deleteQuietly(indexFile);
+        }
+    }
+
+    private void ensureIndexed() throws IOException {
+        if (count >= 0) {
+            return;
+        }
+        ZipArchiveEntry entry = zip.getEntry(partName);
+        if (entry == null) {
+            throw new IOException("Shared strings part " + partName + " not found");
+        }
+        dataFile = Files.createTempFile("csd-sst", ".data");
+        indexFile = Files.createTempFile("csd-sst", ".index");
+
+        long start = System.nanoTime();
+        int strings = 0;
+        long dataSize = 0;
+        try (InputStream in = zip.getInputStream(entry);
+             OutputStream dataOut = new BufferedOutputStream(Files.newOutputStream(dataFile), 1 << 16);
+             DataOutputStream indexOut = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(indexFile), 1 << 16))) {
+            XMLStreamReader xml = newXmlInputFactory().createXMLStreamReader(in);
+            try {
+                StringBuilder text = new StringBuilder();
+                CommentMarkers markers = CommentMarkers.get();
+                while (xml.hasNext()) {
+                    if (xml.next() == XMLStreamConstants.START_ELEMENT && "si".equals(xml.getLocalName())) {
+                        text.setLength(0);
+                        readRichText(xml, text);
+                        String value = decodeEscapes(text);
+                        int marker = markers.classify(value);
+                        if ((marker & CommentMarkers.ROW_MARKER) != 0) {
+                            rowMarkers.set(strings);
+                        }
+                        if ((marker & CommentMarkers.COMMENT_HEADER) != 0) {
+                            commentHeaders.set(strings);
+                        }
+                        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+                        indexOut.writeLong(dataSize);
+                        dataOut.write(bytes);
+                        dataSize += bytes.length;
+                        strings++;
+                    }
+                }
+            } finally {
+                xml.close();
+            }
+            indexOut.writeLong(dataSize);
+        } catch (XMLStreamException e) {
+            throw new IOException("Malformed shared strings part: " + e.getMessage(), e);
+        }
+
+        dataChannel = FileChannel.open(dataFile, StandardOpenOption.READ);
+        if (dataSize <= Integer.MAX_VALUE) {
+            data = dataChannel.map(FileChannel.MapMode.READ_ONLY, 0, dataSize);
+        }
+        try (FileChannel indexChannel = FileChannel.open(indexFile, StandardOpenOption.READ)) {
+            index = indexChannel.map(FileChannel.MapMode.READ_ONLY, 0, indexChannel.size());
+            offsets = index.asLongBuffer();
+        }
+        count = strings;
+        logger.info("Indexed " + strings + " shared strings (" + dataSize + " bytes spilled) in "
+                + (System.nanoTime() - start) / 1_000_000 + " ms");
+    }
+
+    /**
+     * Appends the text of the rich text element the reader is positioned on
+     * ({@code <si>} or {@code <is>}) and leaves the reader on its end tag.
+     * Phonetic runs ({@code <rPh>}) are not part of the displayed string.
+     */
+    static void readRichText(XMLStreamReader xml, StringBuilder text) throws XMLStreamException {
+        int depth = 1;
+        boolean inText = false;
+        int phoneticDepth = 0;
+        while (depth > 0 && xml.hasNext()) {
+            switch (xml.next()) {
+                case XMLStreamConstants.START_ELEMENT:
+                    depth++;
+                    if ("rPh".equals(xml.getLocalName())) {
+                        phoneticDepth++;
+                    } else if ("t".equals(xml.getLocalName()) && phoneticDepth == 0) {
+                        inText = true;
+                    }
+                    break;
+                case XMLStreamConstants.END_ELEMENT:
+                    depth--;
+                    if ("rPh".equals(xml.getLocalName())) {
+                        phoneticDepth--;
+                    } else if ("t".equals(xml.getLocalName())) {
+                        inText = false;
+                    }
+                    break;
+                case XMLStreamConstants.CHARACTERS:
+                case XMLStreamConstants.CDATA:
+                case XMLStreamConstants.SPACE:
+                    if (inText) {
+                        text.append(xml.getTextCharacters(), xml.getTextStart(), xml.getTextLength());
+                    }
+                    break;
+                default:
+                    break;
+            }
+        }
+    }
+
+    /**
+     * Decodes the {@code _xHHHH_} escapes OOXML uses for characters XML cannot carry.
+     */
+    static String decodeEscapes(CharSequence value) {
+        String text = value.toString();
+        if (text.indexOf("_x") < 0) {
+            return text;
+        }
+        Matcher matcher = UTF_ESCAPE.matcher(text);
+        StringBuilder decoded = new StringBuilder(text.length());
+        int last = 0;
+        while (matcher.find()) {
+            decoded.append(text, last, matcher.start());
+            decoded.append((char) Integer.parseInt(matcher.group(1), 16));
+            last = matcher.end();
+        }
+        return decoded.append(text, last, text.length()).toString();
+    }
+
+    static XMLInputFactory newXmlInputFactory() {
+        XMLInputFactory factory = XMLInputFactory.newInstance();
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        factory.setProperty(XMLInputFactory.IS_COALESCING, false);
+        return factory;
+    }
+
+    private static void deleteQuietly(Path file) {
+        if (file == null) {
+            return;
+        }
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            logger.warning("Could not delete " + file + ": " + e.getMessage());
+        }
+    }
+}
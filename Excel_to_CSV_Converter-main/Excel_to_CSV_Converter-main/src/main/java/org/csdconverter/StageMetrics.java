@@ -0,0 +1,140 @@
+package org.csdconverter;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters for one stage (extract, transpose, write, ...) of one sheet. All
+ * counters are striped {@link LongAdder}s so that parallel row blocks and
+ * writer threads can record into the same stage without contention.
+ */
+public class StageMetrics implements StageMetricsMBean {
+
+    private final String sheet;
+    private final String stage;
+    private final LongAdder invocations = new LongAdder();
+    private final LongAdder wallNanos = new LongAdder();
+    private final LongAdder rows = new LongAdder();
+    private final LongAdder cells = new LongAdder();
+    private final LongAdder bytesWritten = new LongAdder();
+    private final LongAdder allocatedBytes = new LongAdder();
+    private final LongAdder blockedNanos = new LongAdder();
+
+    StageMetrics(String sheet, String stage) {
+        this.sheet = sheet;
+        this.stage = stage;
+    }
+
+    /**
+     * Starts timing one invocation of the stage on the current thread.
+     */
+    public Timer start() {
+        return new Timer(this);
+    }
+
+    public void recordRow(int cellCount) {
+        rows.increment();
+        cells.add(cellCount);
+    }
+
+    public void addBytesWritten(long bytes) {
+        bytesWritten.add(bytes);
+    }
+
+    /**
+     * Adds time the stage spent waiting on a neighbouring stage, such as a
+     * reader waiting for the CSV writer to free a buffer.
+     */
+    public void addBlockedNanos(long nanos) {
+        blockedNanos.add(nanos);
+    }
+
+    @Override
+    public String getSheet() {
+        return sheet;
+    }
+
+    @Override
+    public String getStage() {
+        return stage;
+    }
+
+    @Override
+    public long getInvocations() {
+        return invocations.sum();
+    }
+
+    @Override
+    public long getWallTimeMillis() {
+        return wallNanos.sum() / 1_000_000L;
+    }
+
+    long getWallTimeNanos() {
+        return wallNanos.sum();
+    }
+
+    @Override
+    public long getRows() {
+        return rows.sum();
+    }
+
+    @Override
+    public long getCells() {
+        return cells.sum();
+    }
+
+    @Override
+    public long getBytesWritten() {
+        return bytesWritten.sum();
+    }
+
+    @Override
+    public long getAllocatedBytes() {
+        return allocatedBytes.sum();
+    }
+
+    @Override
+    public long getBlockedTimeMillis() {
+        return blockedNanos.sum() / 1_000_000L;
+    }
+
+    long getBlockedTimeNanos() {
+        return blockedNanos.sum();
+    }
+
+    void reset() {
+        invocations.reset();
+        wallNanos.reset();
+        rows.reset();
+        cells.reset();
+        bytesWritten.reset();
+        allocatedBytes.reset();
+        blockedNanos.reset();
+    }
+
+    /**
+     * Measures wall time and heap allocated by the current thread between
+     * creation and {@link #close()}.
+     */
+    public static final class Timer implements AutoCloseable {
+
+        private final StageMetrics metrics;
+        private final long startNanos;
+        private final long startAllocated;
+
+        private Timer(StageMetrics metrics) {
+            this.metrics = metrics;
+            this.startAllocated = ConversionMetrics.currentThreadAllocatedBytes();
+            this.startNanos = System.nanoTime();
+        }
+
+        @Override
+        public void close() {
+            metrics.wallNanos.add(System.nanoTime() - startNanos);
+            long allocated = ConversionMetrics.currentThreadAllocatedBytes();
+            if (allocated >= 0 && startAllocated >= 0) {
+                metrics.allocatedBytes.add(allocated - startAllocated);
+            }
+            metrics.invocations.increment();
+        }
+    }
+}
@@ -0,0 +1,25 @@
+package org.csdconverter;
+
+/**
+ * JMX view of the metrics recorded for one stage of one sheet.
+ */
+public interface StageMetricsMBean {
+
+    String getSheet();
+
+    String getStage();
+
+    long getInvocations();
+
+    long getWallTimeMillis();
+
+    long getRows();
+
+    long getCells();
+
+    long getBytesWritten();
+
+    long getAllocatedBytes();
+
+    long getBlockedTimeMillis();
+}
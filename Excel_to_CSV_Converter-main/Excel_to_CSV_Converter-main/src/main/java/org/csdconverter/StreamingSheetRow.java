@@ -0,0 +1,196 @@
+package org.csdconverter;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
+
+/**
+ * Mutable {@link SheetRow} filled cell by cell by streaming readers and reused
+ * for every row of a sheet.
+ * <p>
+ * A cell that refers to a shared string can be set by its index alone; the
+ * string is looked up the first time the cell's value is asked for, and
+ * {@link #getCellMarkers(int)} answers from the index, so the strings of a row
+ * that is rejected by its markers, or never selected, are not looked up at
+ * all. A failed lookup is thrown as an {@link UncheckedIOException}. Numeric
+ * cells can likewise be set by their stored text and are rendered when first
+ * read, so a row rejected by a {@link RowFilter} renders only the cells the
+ * filter reads. Their {@linkplain #getNumericValue numbers} are kept when
+ * they are rendered; other cells have a number only if the reader sets one.
+ * Any other cell a reader cannot render cheaply can be
+ * {@linkplain #setDeferredCell deferred} and is then rendered by the reader's
+ * {@link DeferredCells} when first read.
+ */
+class StreamingSheetRow implements SheetRow {
+
+    /** Marks a cell whose value is the unrendered text of a number. */
+    private static final int NUMERIC = -2;
+    /** Marks a cell left for {@link DeferredCells} to render. */
+    private static final int DEFERRED = -3;
+
+    /**
+     * Renders a deferred cell of the current row by setting its value on the row.
+     */
+    interface DeferredCells {
+        void render(StreamingSheetRow row, int column);
+    }
+
+    private final SpillableSharedStrings sharedStrings;
+    private final DeferredCells deferredCells;
+    private String[] values = new String[16];
+    private int[] sharedIndices = new int[16];
+    private double[] numbers = new double[16];
+    private int rowNum = -1;
+    private int lastCellNum = -1;
+
+    StreamingSheetRow() {
+        this(null, null);
+    }
+
+    /**
+     * @param sharedStrings the table {@link #setSharedStringCell} indices refer to
+     * @param deferredCells renders the cells set with {@link #setDeferredCell}
+     */
+    StreamingSheetRow(SpillableSharedStrings sharedStrings, DeferredCells deferredCells) {
+        this.sharedStrings = sharedStrings;
+        this.deferredCells = deferredCells;
+        Arrays.fill(sharedIndices, -1);
+        Arrays.fill(numbers, Double.NaN);
+    }
+
+    void reset(int rowNum) {
+        Arrays.fill(values, 0, Math.max(lastCellNum, 0), null);
+        Arrays.fill(sharedIndices, 0, Math.max(lastCellNum, 0), -1);
+        Arrays.fill(numbers, 0, Math.max(lastCellNum, 0), Double.NaN);
+        this.rowNum = rowNum;
+        this.lastCellNum = -1;
+    }
+
+    void setCellValue(int column, String value) {
+        setCellValue(column, value, Double.NaN);
+    }
+
+    /**
+     * Sets a rendered cell together with the number it holds, for a number
+     * or for a formula with a cached numeric result.
+     */
+    void setCellValue(int column, String value, double number) {
+        ensureCapacity(column);
+        values[column] = value;
+        sharedIndices[column] = -1;
+        numbers[column] = number;
+        lastCellNum = Math.max(lastCellNum, column + 1);
+    }
+
+    void setNumericCell(int column, String storedValue) {
+        ensureCapacity(column);
+        values[column] = storedValue;
+        sharedIndices[column] = NUMERIC;
+        numbers[column] = Double.NaN;
+        lastCellNum = Math.max(lastCellNum, column + 1);
+    }
+
+    void setSharedStringCell(int column, int index) {
+        ensureCapacity(column);
+        values[column] = null;
+        sharedIndices[column] = index;
+        numbers[column] = Double.NaN;
+        lastCellNum = Math.max(lastCellNum, column + 1);
+    }
+
+    void setDeferredCell(int column) {
+        ensureCapacity(column);
+        values[column] = null;
+        sharedIndices[column] = DEFERRED;
+        numbers[column] = Double.NaN;
+        lastCellNum = Math.max(lastCellNum, column + 1);
+    }
+
+    boolean isEmpty() {
+        return lastCellNum < 0;
+    }
+
+    @Override
+    public int getRowNum() {
+        return rowNum;
+    }
+
+    @Override
+    public int getLastCellNum() {
+        return lastCellNum;
+    }
+
+    @Override
+    public String getCellValue(int column) {
+        if (column < 0 || column >= lastCellNum) {
+            return "";
+        }
+        if (sharedIndices[column] == DEFERRED) {
+            renderDeferred(column);
+        }
+        if (sharedIndices[column] == NUMERIC) {
+            render(column);
+        }
+        if (values[column] == null && sharedIndices[column] >= 0) {
+            try {
+                values[column] = sharedStrings.get(sharedIndices[column]);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        return values[column] == null ? "" : values[column];
+    }
+
+    @Override
+    public double getNumericValue(int column) {
+        if (column < 0 || column >= lastCellNum) {
+            return Double.NaN;
+        }
+        if (sharedIndices[column] == DEFERRED) {
+            renderDeferred(column);
+        }
+        if (sharedIndices[column] == NUMERIC) {
+            render(column);
+        }
+        return numbers[column];
+    }
+
+    @Override
+    public int getCellMarkers(int column) {
+        if (column >= 0 && column < lastCellNum && sharedIndices[column] == DEFERRED) {
+            renderDeferred(column);
+        }
+        if (column >= 0 && column < lastCellNum && values[column] == null && sharedIndices[column] >= 0) {
+            try {
+                return sharedStrings.markers(sharedIndices[column]);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        return SheetRow.super.getCellMarkers(column);
+    }
+
+    private void renderDeferred(int column) {
+        sharedIndices[column] = -1;
+        deferredCells.render(this, column);
+    }
+
+    private void render(int column) {
+        double number = XlsxSheetReader.parseNumber(values[column]);
+        numbers[column] = number;
+        values[column] = Double.isNaN(number) ? "" : String.valueOf((int) number);
+        sharedIndices[column] = -1;
+    }
+
+    private void ensureCapacity(int column) {
+        if (column >= values.length) {
+            int length = Math.max(column + 1, values.length * 2);
+            int oldLength = sharedIndices.length;
+            values = Arrays.copyOf(values, length);
+            sharedIndices = Arrays.copyOf(sharedIndices, length);
+            numbers = Arrays.copyOf(numbers, length);
+            Arrays.fill(sharedIndices, oldLength, length, -1);
+            Arrays.fill(numbers, oldLength, length, Double.NaN);
+        }
+    }
+}
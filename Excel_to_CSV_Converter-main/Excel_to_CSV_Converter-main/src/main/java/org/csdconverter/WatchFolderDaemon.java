@@ -0,0 +1,398 @@
+package org.csdconverter;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.ZipFile;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
+
+/**
+ * Daemon that converts workbooks as they are dropped into watched folders.
+ * <p>
+ * The rules file is a CSV with one {@code folder,pattern,config} record per
+ * rule: workbooks landing in {@code folder} whose file name matches the glob
+ * {@code pattern} are converted with the configuration file {@code config}.
+ * The first matching rule wins. Folders are watched with a
+ * {@link WatchService}; a file is only picked up once its size and
+ * modification time have not changed for {@value #DEFAULT_QUIET_MILLIS} ms
+ * (see {@value #QUIET_MILLIS_PROPERTY}) and, for .xlsx files, its ZIP
+ * central directory, which is written last, can be read. Office lock files
+ * ({@code ~$...}) and hidden files are ignored.
+ * <p>
+ * Ready files run on {@link ConversionExecutors} tasks under a
+ * {@link MemoryBudget} reservation; {@link MainCSD} holds a {@link CpuPermits}
+ * permit only while it parses them. Processing is at most once: a file, identified by its
+ * path, size and modification time, is recorded in the state file (see
+ * {@value #STATE_FILE_PROPERTY}) before its conversion starts, so a file
+ * rewritten with new content is converted again but a crash never converts
+ * the same content twice. A file the pool rejects, as it does once the daemon
+ * stops, is taken out of the state file again. Files already present when the daemon starts are
+ * handled like new ones unless the state file lists them.
+ * <p>
+ * Usage: {@code WatchFolderDaemon <rules.csv>}
+ */
+public class WatchFolderDaemon {
+
+    static final String QUIET_MILLIS_PROPERTY = "csd.watch.quietMillis";
+    static final String STATE_FILE_PROPERTY = "csd.watch.stateFile";
+    static final long DEFAULT_QUIET_MILLIS = 2000;
+
+    private static final Logger logger = Logger.getLogger(WatchFolderDaemon.class.getName());
+    private static final long POLL_MILLIS = 250;
+
+    private final List<Rule> rules;
+    private final ProcessedFiles processed;
+    private final long quietMillis;
+    private final WatchService watchService;
+    private final Map<WatchKey, Path> watchedFolders = new HashMap<>();
+    private final Map<Path, Pending> pending = new HashMap<>();
+    private final ScheduledExecutorService scheduler;
+    private final ExecutorService conversions;
+
+    public WatchFolderDaemon(List<Rule> rules, Path stateFile, long quietMillis) throws IOException {
+        this.rules = rules;
+        this.processed = new ProcessedFiles(stateFile);
+        this.quietMillis = quietMillis;
+        this.watchService = FileSystems.getDefault().newWatchService();
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "csd-watch-debounce");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.conversions = ConversionExecutors.newTaskExecutor("csd-watch-");
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        if (args.length < 1) {
+            System.err.println("Usage: WatchFolderDaemon <rules csv: folder,file name glob,config file per line>");
+            return;
+        }
+        Path rulesFile = Path.of(args[0]).toAbsolutePath();
+        String stateFile = System.getProperty(STATE_FILE_PROPERTY,
+                rulesFile.resolveSibling(".csd-watch-state").toString());
+        WatchFolderDaemon daemon = new WatchFolderDaemon(readRules(rulesFile), Path.of(stateFile),
+                Long.getLong(QUIET_MILLIS_PROPERTY, DEFAULT_QUIET_MILLIS));
+        Runtime.getRuntime().addShutdownHook(new Thread(daemon::stop, "csd-watch-shutdown"));
+        daemon.run();
+    }
+
+    /**
+     * Registers the folders, queues the files already in them and processes
+     * watch events until {@link #stop()} is called.
+     */
+    public void run() throws IOException, InterruptedException {
+        Set<Path> folders = new HashSet<>();
+        for (Rule rule : rules) {
+            folders.add(rule.folder);
+        }
+        for (Path folder : folders) {
+            watchedFolders.put(folder.register(watchService, ENTRY_CREATE, ENTRY_MODIFY), folder);
+            scanFolder(folder);
+            logger.info("Watching " + folder);
+        }
+        scheduler.scheduleWithFixedDelay(this::pollPending, POLL_MILLIS, POLL_MILLIS, TimeUnit.MILLISECONDS);
+
+        while (true) {
+            WatchKey key;
+            try {
+                key = watchService.take();
+            } catch (ClosedWatchServiceException e) {
+                return;
+            }
+            Path folder = watchedFolders.get(key);
+            for (WatchEvent<?> event : key.pollEvents()) {
+                if (folder == null) {
+                    continue;
+                }
+                if (event.kind() == OVERFLOW) {
+                    scanFolder(folder);
+                } else {
+                    notice(folder.resolve((Path) event.context()));
+                }
+            }
+            key.reset();
+        }
+    }
+
+    public void stop() {
+        try {
+            watchService.close();
+        } catch (IOException e) {
+            logger.warning("Error closing watch service: " + e.getMessage());
+        }
+        scheduler.shutdownNow();
+        conversions.shutdown();
+        try {
+            conversions.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void scanFolder(Path folder) throws IOException {
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(folder)) {
+            for (Path file : files) {
+                notice(file);
+            }
+        }
+    }
+
+    /**
+     * Starts or restarts the quiet period of a file that was created or written to.
+     */
+    private void notice(Path file) {
+        String name = file.getFileName().toString();
+        if (name.startsWith("~$") || name.startsWith(".") || matchRule(file) == null) {
+            return;
+        }
+        synchronized (pending) {
+            pending.computeIfAbsent(file, Pending::new).touch();
+        }
+    }
+
+    /**
+     * Hands every file that has been quiet long enough to the conversion pool.
+     */
+    private void pollPending() {
+        long now = System.currentTimeMillis();
+        List<Pending> ready = new ArrayList<>();
+        synchronized (pending) {
+            for (Iterator<Pending> it = pending.values().iterator(); it.hasNext(); ) {
+                Pending file = it.next();
+                if (file.isSettled(now, quietMillis)) {
+                    it.remove();
+                    ready.add(file);
+                }
+            }
+        }
+        for (Pending file : ready) {
+            submit(file);
+        }
+    }
+
+    private void submit(Pending file) {
+        File workbook = file.path.toFile();
+        if (!workbook.isFile()) {
+            return;
+        }
+        if (!isComplete(workbook)) {
+            synchronized (pending) {
+                pending.putIfAbsent(file.path, file);
+                file.touch();
+            }
+            return;
+        }
+        String key = file.path + "|" + workbook.length() + "|" + workbook.lastModified();
+        try {
+            if (!processed.markProcessed(key)) {
+                return;
+            }
+        } catch (IOException e) {
+            logger.severe("Could not record " + file.path + " in the state file, not converting it: " + e.getMessage());
+            return;
+        }
+        Rule rule = matchRule(file.path);
+        try {
+            execute(file, rule);
+        } catch (RejectedExecutionException e) {
+            logger.warning("Conversion of " + file.path + " was not accepted: " + e.getMessage());
+            try {
+                processed.unmark(key);
+            } catch (IOException unmarkFailed) {
+                logger.severe("Could not take " + file.path + " out of the state file, it will not be converted: "
+                        + unmarkFailed.getMessage());
+            }
+        }
+    }
+
+    private void execute(Pending file, Rule rule) {
+        conversions.execute(() -> {
+            try (MemoryBudget.Reservation memory = MemoryBudget.reserve(file.path.toFile())) {
+                MainCSD.convertWithoutReport(rule.config, file.path.toString());
+                logger.info("Converted " + file.path + " with " + rule.config + ", "
+                        + (System.currentTimeMillis() - file.firstSeen) + " ms after it landed");
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (RuntimeException e) {
+                logger.log(Level.SEVERE, "Conversion of " + file.path + " failed", e);
+            }
+        });
+    }
+
+    private Rule matchRule(Path file) {
+        Path folder = file.getParent();
+        for (Rule rule : rules) {
+            if (rule.folder.equals(folder) && rule.matcher.matches(file.getFileName())) {
+                return rule;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * A stable size is not proof that a copy has finished; an .xlsx file is
+     * only complete once its central directory, the last thing written, is
+     * readable. {@link ZipFile} reads the end-of-central-directory record and
+     * the directory with plain file reads, so probing maps nothing.
+     */
+    private static boolean isComplete(File workbook) {
+        try {
+            if (SheetReaders.isLegacyFormat(workbook)) {
+                return true;
+            }
+            try (ZipFile ignored = new ZipFile(workbook)) {
+                return true;
+            }
+        } catch (IOException | RuntimeException e) {
+            return false;
+        }
+    }
+
+    static List<Rule> readRules(Path rulesFile) throws IOException {
+        List<Rule> rules = new ArrayList<>();
+        try (CsvReader reader = new CsvReader(Files.newBufferedReader(rulesFile, StandardCharsets.UTF_8))) {
+            List<String> record;
+            while ((record = reader.readRecord()) != null) {
+                if (record.size() < 3 || record.get(0).trim().isEmpty()) {
+                    continue;
+                }
+                if (rules.isEmpty() && "folder".equalsIgnoreCase(record.get(0).trim())) {
+                    continue;
+                }
+                rules.add(new Rule(Path.of(record.get(0).trim()), record.get(1).trim(), record.get(2).trim()));
+            }
+        }
+        return rules;
+    }
+
+    public static final class Rule {
+
+        private final Path folder;
+        private final PathMatcher matcher;
+        private final String config;
+
+        public Rule(Path folder, String fileNameGlob, String config) {
+            this.folder = folder.toAbsolutePath().normalize();
+            this.matcher = FileSystems.getDefault().getPathMatcher("glob:" + fileNameGlob);
+            this.config = config;
+        }
+    }
+
+    /**
+     * A file seen by the watcher that has not been quiet for long enough yet.
+     */
+    private static final class Pending {
+
+        private final Path path;
+        private final long firstSeen = System.currentTimeMillis();
+        private long lastChange;
+        private long size = -1;
+        private long modified = -1;
+
+        private Pending(Path path) {
+            this.path = path;
+        }
+
+        private void touch() {
+            lastChange = System.currentTimeMillis();
+        }
+
+        /**
+         * Events can lag behind writes, so the file itself is checked too:
+         * any change of size or modification time restarts the quiet period.
+         */
+        private boolean isSettled(long now, long quietMillis) {
+            File file = path.toFile();
+            long currentSize = file.length();
+            long currentModified = file.lastModified();
+            if (currentSize != size || currentModified != modified) {
+                size = currentSize;
+                modified = currentModified;
+                lastChange = now;
+                return false;
+            }
+            return now - lastChange >= quietMillis;
+        }
+    }
+
+    /**
+     * Append-only record of the files already handed to a conversion.
+     */
+    private static final class ProcessedFiles {
+
+        private final Path stateFile;
+        private final Set<String> keys = new HashSet<>();
+
+        private ProcessedFiles(Path stateFile) throws IOException {
+            this.stateFile = stateFile;
+            if (Files.exists(stateFile)) {
+                keys.addAll(Files.readAllLines(stateFile, StandardCharsets.UTF_8));
+            }
+        }
+
+        /**
+         * Records {@code key} durably before it is processed.
+         *
+         * @return {@code false} if it was recorded already
+         */
+        private synchronized boolean markProcessed(String key) throws IOException {
+            if (keys.contains(key)) {
+                return false;
+            }
+            try (BufferedWriter writer = Files.newBufferedWriter(stateFile, StandardCharsets.UTF_8,
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND, StandardOpenOption.SYNC)) {
+                writer.write(key);
+                writer.newLine();
+            }
+            keys.add(key);
+            return true;
+        }
+
+        /**
+         * Takes back a {@code key} whose processing never started, rewriting
+         * the state file without it.
+         */
+        private synchronized void unmark(String key) throws IOException {
+            if (!keys.remove(key)) {
+                return;
+            }
+            List<String> remaining = new ArrayList<>(Files.readAllLines(stateFile, StandardCharsets.UTF_8));
+            remaining.removeIf(key::equals);
+            AtomicOutputFile output = new AtomicOutputFile(stateFile.toString());
+            try {
+                Files.write(output.getTempFile().toPath(), remaining, StandardCharsets.UTF_8);
+                output.commit();
+            } finally {
+                output.abort();
+            }
+        }
+    }
+}
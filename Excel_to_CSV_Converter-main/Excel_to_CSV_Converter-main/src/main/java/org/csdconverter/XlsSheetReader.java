@@ -0,0 +1,132 @@
+package org.csdconverter;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+
+import org.example.CellValue;
+
+/**
+ * {@link SheetReader} for legacy BIFF8 ({@code .xls}) workbooks, over the
+ * HSSF event reader of the extraction project,
+ * {@link org.example.XlsSheetReader}: the record stream is processed once per
+ * requested sheet and abandoned as soon as that sheet ends, so only the
+ * shared string table and the current row are held in memory. Cells the
+ * {@link RowHandler} does not need are set empty instead of being rendered,
+ * and those it does not read to {@linkplain RowHandler#decidesRow decide on a
+ * row} are decoded and rendered only when they are read.
+ * <p>
+ * Cells are rendered as {@link MainCSD#getCellValue} renders usermodel cells:
+ * numbers truncated to integers, formulas as their formula text, with shared
+ * and array formulas resolved from the record that owns their group.
+ */
+class XlsSheetReader implements SheetReader {
+
+    private final org.example.XlsSheetReader reader;
+
+    XlsSheetReader(File file) throws IOException {
+        this.reader = new org.example.XlsSheetReader(file);
+    }
+
+    @Override
+    public List<String> getSheetNames() throws IOException {
+        return reader.getSheetNames();
+    }
+
+    @Override
+    public boolean readSheet(String sheetName, RowHandler handler) throws IOException {
+        int sheetIndex = getSheetNames().indexOf(sheetName);
+        if (sheetIndex < 0) {
+            return false;
+        }
+        reader.read(new RowAdapter(sheetIndex, handler));
+        return true;
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+
+    /**
+     * Copies the rows of one sheet into a {@link StreamingSheetRow}, leaving
+     * the cells the handler does not decide rows on to be rendered from the
+     * source row when they are read.
+     */
+    private static final class RowAdapter implements org.example.XlsSheetReader.Handler, StreamingSheetRow.DeferredCells {
+
+        private final int sheetIndex;
+        private final RowHandler handler;
+        private final StreamingSheetRow row = new StreamingSheetRow(null, this);
+        private org.example.SheetRow source;
+
+        private RowAdapter(int sheetIndex, RowHandler handler) {
+            this.sheetIndex = sheetIndex;
+            this.handler = handler;
+        }
+
+        @Override
+        public boolean startSheet(String name, int index) {
+            return index == sheetIndex;
+        }
+
+        @Override
+        public boolean needsCell(int rowIndex, int column) {
+            return handler.needsCell(rowIndex, column);
+        }
+
+        @Override
+        public boolean decidesRow(int rowIndex, int column) {
+            return handler.decidesRow(rowIndex, column);
+        }
+
+        @Override
+        public boolean row(org.example.SheetRow source) {
+            this.source = source;
+            int rowIndex = source.getRowIndex();
+            row.reset(rowIndex);
+            for (int column = 0; column < source.getLastCellNum(); column++) {
+                if (!source.hasCell(column)) {
+                    continue;
+                }
+                if (handler.decidesRow(rowIndex, column)) {
+                    setCell(row, column, source.getCell(column));
+                } else {
+                    row.setDeferredCell(column);
+                }
+            }
+            return handler.handleRow(row);
+        }
+
+        @Override
+        public boolean endSheet() {
+            return false;
+        }
+
+        @Override
+        public void render(StreamingSheetRow target, int column) {
+            setCell(target, column, source.getCell(column));
+        }
+    }
+
+    private static void setCell(StreamingSheetRow row, int column, CellValue cell) {
+        switch (cell.getType()) {
+            case NUMERIC:
+                row.setCellValue(column, String.valueOf(cell.asInt()), cell.asNumber());
+                break;
+            case FORMULA:
+                row.setCellValue(column, cell.asText(),
+                        cell.getCachedResultType() == CellValue.Type.NUMERIC ? cell.asNumber() : Double.NaN);
+                break;
+            case STRING:
+            case BOOLEAN:
+                row.setCellValue(column, cell.asText());
+                break;
+            case ERROR:
+            case BLANK:
+            default:
+                row.setCellValue(column, "");
+                break;
+        }
+    }
+}
@@ -0,0 +1,403 @@
+package org.csdconverter;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Logger;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.poi.ss.SpreadsheetVersion;
+import org.apache.poi.ss.formula.FormulaParser;
+import org.apache.poi.ss.formula.FormulaRenderer;
+import org.apache.poi.ss.formula.FormulaType;
+import org.apache.poi.ss.formula.SharedFormula;
+import org.apache.poi.ss.formula.ptg.Ptg;
+import org.apache.poi.ss.util.CellRangeAddress;
+import org.apache.poi.xssf.usermodel.XSSFEvaluationWorkbook;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.project.WorkbookMetadata;
+
+/**
+ * {@link SheetReader} for .xlsx workbooks that streams the sheet XML with
+ * StAX instead of building a usermodel workbook.
+ * <p>
+ * Parts are read from a {@link MappedZipEntrySource}, shared strings are
+ * looked up in a {@link SpillableSharedStrings} table once a cell's value is
+ * used (see {@link StreamingSheetRow}), and only the current row is held in
+ * memory, so heap use stays flat however large the sheet or its string table.
+ * Cell values are rendered as {@link MainCSD#getCellValue} renders the
+ * corresponding POI cell, including formula text of shared and array
+ * formulas, so both paths produce the same CSV. Every {@code <row>} element is
+ * reported, including rows without cells, as the usermodel does. Cells the
+ * {@link RowHandler} does not need are skipped without being decoded, and
+ * shared formulas of cells it does not read to
+ * {@linkplain RowHandler#decidesRow decide on a row} are only shifted if the
+ * row is used.
+ */
+class XlsxSheetReader implements SheetReader {
+
+    private static final Logger logger = Logger.getLogger(XlsxSheetReader.class.getName());
+
+    private final WorkbookMetadata metadata;
+    private final MappedZipEntrySource zip;
+    private final SpillableSharedStrings sharedStrings;
+    private final XMLInputFactory xmlInputFactory = SpillableSharedStrings.newXmlInputFactory();
+    private XSSFEvaluationWorkbook formulaWorkbook;
+
+    XlsxSheetReader(File file) throws IOException {
+        this.metadata = WorkbookMetadata.read(file);
+        this.zip = new MappedZipEntrySource(file);
+        String sharedStringsPart = metadata.getSharedStringsPart();
+        this.sharedStrings = sharedStringsPart == null ? null : new SpillableSharedStrings(zip, sharedStringsPart);
+    }
+
+    @Override
+    public List<String> getSheetNames() {
+        return metadata.getSheetNames();
+    }
+
+    @Override
+    public boolean readSheet(String sheetName, RowHandler handler) throws IOException {
+        WorkbookMetadata.SheetInfo sheet = metadata.getSheet(sheetName);
+        if (sheet == null) {
+            return false;
+        }
+        ZipArchiveEntry entry = sheet.getPartName() == null ? null : zip.getEntry(sheet.getPartName());
+        if (entry == null) {
+            throw new IOException("Part of sheet " + sheetName + " not found");
+        }
+        try (InputStream in = zip.getInputStream(entry)) {
+            XMLStreamReader xml = xmlInputFactory.createXMLStreamReader(in);
+            try {
+                new SheetParser(xml, sheet.getIndex(), handler).parse();
+            } finally {
+                xml.close();
+            }
+        } catch (XMLStreamException e) {
+            throw new IOException("Malformed sheet " + sheetName + ": " + e.getMessage(), e);
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        return true;
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            if (sharedStrings != null) {
+                sharedStrings.close();
+            }
+        } finally {
+            zip.close();
+        }
+    }
+
+    /**
+     * Parses shared formulas against a workbook stub that only has the sheet
+     * names, which is all that formula parsing and rendering needs here.
+     */
+    private XSSFEvaluationWorkbook formulaWorkbook() {
+        if (formulaWorkbook == null) {
+            XSSFWorkbook stub = new XSSFWorkbook();
+            for (String name : metadata.getSheetNames()) {
+                stub.createSheet(name);
+            }
+            formulaWorkbook = XSSFEvaluationWorkbook.create(stub);
+        }
+        return formulaWorkbook;
+    }
+
+    /**
+     * Walks one sheet's {@code <sheetData>}, filling a reusable row cell by cell.
+     */
+    private final class SheetParser {
+
+        private final XMLStreamReader xml;
+        private final int sheetIndex;
+        private final RowHandler handler;
+        private final StreamingSheetRow row = new StreamingSheetRow(sharedStrings, this::renderDeferred);
+        private final Map<String, SharedFormulaMaster> sharedFormulas = new HashMap<>();
+        private final List<ArrayFormula> arrayFormulas = new ArrayList<>();
+        private SharedFormulaMaster[] deferredFormulas = new SharedFormulaMaster[16];
+        private double[] deferredResults = new double[16];
+        private final StringBuilder text = new StringBuilder();
+        private int rowIndex = -1;
+        private int column = -1;
+
+        private SheetParser(XMLStreamReader xml, int sheetIndex, RowHandler handler) {
+            this.xml = xml;
+            this.sheetIndex = sheetIndex;
+            this.handler = handler;
+        }
+
+        private void parse() throws XMLStreamException, IOException {
+            while (xml.hasNext()) {
+                int event = xml.next();
+                if (event == XMLStreamConstants.START_ELEMENT) {
+                    String name = xml.getLocalName();
+                    if ("row".equals(name)) {
+                        String r = xml.getAttributeValue(null, "r");
+                        rowIndex = r == null ? rowIndex + 1 : Integer.parseInt(r) - 1;
+                        column = -1;
+                        row.reset(rowIndex);
+                    } else if ("c".equals(name)) {
+                        String r = xml.getAttributeValue(null, "r");
+                        column = r == null ? column + 1 : columnOf(r);
+                        if (!handler.needsCell(rowIndex, column)) {
+                            skipCell();
+                            continue;
+                        }
+                        String value = readCell(xml.getAttributeValue(null, "t"));
+                        if (value != null) {
+                            row.setCellValue(column, value);
+                        }
+                    }
+                } else if (event == XMLStreamConstants.END_ELEMENT) {
+                    String name = xml.getLocalName();
+                    if ("row".equals(name)) {
+                        if (!handler.handleRow(row)) {
+                            return;
+                        }
+                    } else if ("sheetData".equals(name)) {
+                        return;
+                    }
+                }
+            }
+        }
+
+        /**
+         * Reads the {@code <c>} element the parser is positioned on up to its
+         * end tag and renders its value. A shared string or numeric cell is
+         * instead set on the row unrendered, for its value to be looked up or
+         * rendered only if it is used, and a formula cell is set with its
+         * cached numeric result, if it has one. A shared formula is shifted
+         * to the cell only once the cell is read, unless the handler reads
+         * it to decide on the row.
+         *
+         * @return the rendered value, or {@code null} if the cell was set on the row
+         */
+        private String readCell(String type) throws XMLStreamException, IOException {
+            String value = null;
+            String inlineString = null;
+            String formula = null;
+            String formulaType = null;
+            String formulaRef = null;
+            String sharedIndex = null;
+            while (xml.hasNext()) {
+                int event = xml.next();
+                if (event == XMLStreamConstants.END_ELEMENT && "c".equals(xml.getLocalName())) {
+                    break;
+                }
+                if (event != XMLStreamConstants.START_ELEMENT) {
+                    continue;
+                }
+                switch (xml.getLocalName()) {
+                    case "v":
+                        value = xml.getElementText();
+                        break;
+                    case "f":
+                        formulaType = xml.getAttributeValue(null, "t");
+                        formulaRef = xml.getAttributeValue(null, "ref");
+                        sharedIndex = xml.getAttributeValue(null, "si");
+                        formula = xml.getElementText();
+                        break;
+                    case "is":
+                        text.setLength(0);
+                        SpillableSharedStrings.readRichText(xml, text);
+                        inlineString = SpillableSharedStrings.decodeEscapes(text);
+                        break;
+                    default:
+                        break;
+                }
+            }
+
+            ArrayFormula array = formula == null || formula.isEmpty() ? arrayFormulaAt(rowIndex, column) : null;
+            if (array != null || formula != null) {
+                boolean numeric = (type == null || "n".equals(type)) && value != null && !value.isEmpty();
+                double result = numeric ? parseNumber(value) : Double.NaN;
+                SharedFormulaMaster master = array != null ? null : masterOf(formula, formulaType, formulaRef, sharedIndex);
+                if (master != null && !handler.decidesRow(rowIndex, column)) {
+                    deferFormula(master, result);
+                    return null;
+                }
+                String text = array != null ? array.formula : master != null ? shift(master, column) : formula;
+                row.setCellValue(column, text, result);
+                return null;
+            }
+            if (type == null || "n".equals(type) || "d".equals(type)) {
+                if (value == null || value.isEmpty()) {
+                    return "";
+                }
+                row.setNumericCell(column, value);
+                return null;
+            }
+            switch (type) {
+                case "s":
+                    if (value == null || value.isEmpty() || sharedStrings == null) {
+                        return "";
+                    }
+                    row.setSharedStringCell(column, Integer.parseInt(value.trim()));
+                    return null;
+                case "inlineStr":
+                    return inlineString == null ? "" : inlineString;
+                case "str":
+                    return value == null ? "" : value;
+                case "b":
+                    return String.valueOf("1".equals(value) || "true".equalsIgnoreCase(value));
+                default:
+                    return "";
+            }
+        }
+
+        /**
+         * Reads past the {@code <c>} element the parser is positioned on
+         * without rendering it. Shared and array formulas it defines are
+         * still recorded, as cells of needed columns may refer to them.
+         */
+        private void skipCell() throws XMLStreamException {
+            while (xml.hasNext()) {
+                int event = xml.next();
+                if (event == XMLStreamConstants.END_ELEMENT && "c".equals(xml.getLocalName())) {
+                    return;
+                }
+                if (event == XMLStreamConstants.START_ELEMENT && "f".equals(xml.getLocalName())) {
+                    String formulaType = xml.getAttributeValue(null, "t");
+                    String formulaRef = xml.getAttributeValue(null, "ref");
+                    String sharedIndex = xml.getAttributeValue(null, "si");
+                    if (formulaRef != null && ("array".equals(formulaType) || "shared".equals(formulaType))) {
+                        String formula = xml.getElementText();
+                        if ("array".equals(formulaType)) {
+                            arrayFormulas.add(new ArrayFormula(CellRangeAddress.valueOf(formulaRef), formula));
+                        } else if (sharedIndex != null && !sharedFormulas.containsKey(sharedIndex)) {
+                            sharedFormulas.put(sharedIndex, new SharedFormulaMaster(formula, CellRangeAddress.valueOf(formulaRef)));
+                        }
+                    }
+                }
+            }
+        }
+
+        /**
+         * Records the array or shared formula a formula cell defines.
+         *
+         * @return the shared formula the cell's text is shifted from, or
+         *         {@code null} if its formula text is used as it is
+         */
+        private SharedFormulaMaster masterOf(String formula, String formulaType, String formulaRef, String sharedIndex) {
+            if ("array".equals(formulaType) && formulaRef != null) {
+                arrayFormulas.add(new ArrayFormula(CellRangeAddress.valueOf(formulaRef), formula));
+                return null;
+            }
+            if (!"shared".equals(formulaType) || sharedIndex == null) {
+                return null;
+            }
+            SharedFormulaMaster master = sharedFormulas.get(sharedIndex);
+            if (master == null && formulaRef != null) {
+                master = new SharedFormulaMaster(formula, CellRangeAddress.valueOf(formulaRef));
+                sharedFormulas.put(sharedIndex, master);
+            }
+            return master;
+        }
+
+        private void deferFormula(SharedFormulaMaster master, double result) {
+            if (column >= deferredFormulas.length) {
+                int length = Math.max(column + 1, deferredFormulas.length * 2);
+                deferredFormulas = Arrays.copyOf(deferredFormulas, length);
+                deferredResults = Arrays.copyOf(deferredResults, length);
+            }
+            deferredFormulas[column] = master;
+            deferredResults[column] = result;
+            row.setDeferredCell(column);
+        }
+
+        private void renderDeferred(StreamingSheetRow target, int column) {
+            target.setCellValue(column, shift(deferredFormulas[column], column), deferredResults[column]);
+        }
+
+        /**
+         * Text of a shared formula shifted to {@code column} of the current row.
+         */
+        private String shift(SharedFormulaMaster master, int column) {
+            try {
+                XSSFEvaluationWorkbook workbook = formulaWorkbook();
+                Ptg[] ptgs = FormulaParser.parse(master.formula, workbook, FormulaType.CELL, sheetIndex, rowIndex);
+                Ptg[] shifted = new SharedFormula(SpreadsheetVersion.EXCEL2007).convertSharedFormulas(ptgs,
+                        rowIndex - master.range.getFirstRow(), column - master.range.getFirstColumn());
+                return FormulaRenderer.toFormulaString(workbook, shifted);
+            } catch (RuntimeException e) {
+                logger.warning("Could not shift shared formula " + master.formula + ": " + e.getMessage());
+                return master.formula;
+            }
+        }
+
+        private ArrayFormula arrayFormulaAt(int rowIndex, int column) {
+            for (ArrayFormula array : arrayFormulas) {
+                if (array.range.isInRange(rowIndex, column)) {
+                    return array;
+                }
+            }
+            return null;
+        }
+    }
+
+    /**
+     * @return the number stored as {@code value}, or {@link Double#NaN} if it is not one
+     */
+    static double parseNumber(String value) {
+        try {
+            return Double.parseDouble(value);
+        } catch (NumberFormatException e) {
+            return Double.NaN;
+        }
+    }
+
+    /**
+     * Zero-based column index of an A1-style cell reference.
+     */
+    private static int columnOf(String reference) {
+        int column = 0;
+        for (int i = 0; i < reference.length(); i++) {
+            char c = reference.charAt(i);
+            if (c >= 'A' && c <= 'Z') {
+                column = column * 26 + (c - 'A' + 1);
+            } else if (c >= 'a' && c <= 'z') {
+                column = column * 26 + (c - 'a' + 1);
+            } else if (c != '$') {
+                break;
+            }
+        }
+        return column - 1;
+    }
+
+    private static final class SharedFormulaMaster {
+
+        private final String formula;
+        private final CellRangeAddress range;
+
+        private SharedFormulaMaster(String formula, CellRangeAddress range) {
+            this.formula = formula;
+            this.range = range;
+        }
+    }
+
+    private static final class ArrayFormula {
+
+        private final CellRangeAddress range;
+        private final String formula;
+
+        private ArrayFormula(CellRangeAddress range, String formula) {
+            this.range = range;
+            this.formula = formula;
+        }
+    }
+}
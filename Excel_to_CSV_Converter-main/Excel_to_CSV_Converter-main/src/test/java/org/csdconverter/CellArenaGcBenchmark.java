@@ -0,0 +1,254 @@
+package org.csdconverter;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.Notification;
+import javax.management.NotificationEmitter;
+import javax.management.NotificationListener;
+import javax.management.openmbean.CompositeData;
+
+import com.sun.management.GarbageCollectionNotificationInfo;
+
+/**
+ * Measures the garbage collection cost of holding a sheet in a
+ * {@link CellArena} against holding it as lists of strings on the heap, the
+ * way {@link MainCSD} held sheets before the arena, and checks that both
+ * write the same bytes.
+ * <p>
+ * Each iteration reads the whole sheet with its {@link SheetReader},
+ * transposes it and writes it serially, as {@link MainCSD#writeTransposedCSV}
+ * does, and runs {@value #FULL_GCS} full collections while the sheet is held
+ * so that the cost of tracing it shows up even on a large heap. Pauses are
+ * taken from the JVM's collection notifications: their count, total and the
+ * longest one over the measured iterations, and the live heap once the
+ * sheet is loaded. The two layouts alternate after {@value #WARMUP_RUNS}
+ * warm-up runs of each. Run with the collector and heap size to compare,
+ * e.g. {@code -XX:+UseG1GC -Xmx2g}.
+ * <p>
+ * Usage: {@code CellArenaGcBenchmark <workbook> [sheet] [iterations]}; exits
+ * with status 1 if the outputs differ.
+ */
+public final class CellArenaGcBenchmark {
+
+    static final int WARMUP_RUNS = 2;
+    static final int DEFAULT_ITERATIONS = 5;
+    static final int FULL_GCS = 3;
+
+    private static final PauseRecorder PAUSES = new PauseRecorder();
+
+    private CellArenaGcBenchmark() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 1) {
+            System.err.println("Usage: CellArenaGcBenchmark <workbook> [sheet] [iterations]");
+            return;
+        }
+        int iterations = args.length > 2 ? Integer.parseInt(args[2]) : DEFAULT_ITERATIONS;
+        Path scratch = Files.createTempDirectory("csd-gcbench-");
+        try (SheetReader reader = SheetReaders.open(new File(args[0]))) {
+            String sheetName = args.length > 1 ? args[1] : reader.getSheetNames().get(0);
+            if (!reader.getSheetNames().contains(sheetName)) {
+                System.err.println("Sheet not found: " + sheetName);
+                return;
+            }
+            Path heapCsv = scratch.resolve("heap.csv");
+            Path arenaCsv = scratch.resolve("arena.csv");
+            Result heap = new Result("heap lists", iterations);
+            Result arena = new Result("cell arena", iterations);
+            PAUSES.install();
+            for (int run = -WARMUP_RUNS; run < iterations; run++) {
+                measure(heap, run, () -> convertOnHeap(reader, sheetName, heapCsv, heap));
+                measure(arena, run, () -> convertInArena(reader, sheetName, arenaCsv, arena));
+            }
+
+            boolean identical = WriterParityHarness.digest(heapCsv).equals(WriterParityHarness.digest(arenaCsv));
+            System.out.println(String.format("%-12s %10s %10s %8s %12s %12s %12s  %s",
+                    "layout", "cells", "wall ms", "GCs", "pause ms", "max pause", "live MB", "result"));
+            heap.print(identical);
+            arena.print(identical);
+            if (!identical) {
+                System.exit(1);
+            }
+        } finally {
+            WriterParityHarness.deleteRecursively(scratch);
+        }
+    }
+
+    private static void measure(Result result, int run, Conversion conversion) throws IOException {
+        System.gc();
+        PAUSES.reset();
+        long start = System.nanoTime();
+        conversion.run();
+        long wallNanos = System.nanoTime() - start;
+        if (run >= 0) {
+            result.wallNanos[run] = wallNanos;
+            result.add(PAUSES.snapshot());
+        }
+    }
+
+    private static void convertOnHeap(SheetReader reader, String sheetName, Path csv, Result result) throws IOException {
+        List<List<String>> rows = new ArrayList<>();
+        reader.readSheet(sheetName, row -> {
+            List<String> cells = new ArrayList<>(row.getLastCellNum());
+            for (int column = 0; column < row.getLastCellNum(); column++) {
+                cells.add(row.getCellValue(column));
+            }
+            rows.add(cells);
+            return true;
+        });
+        result.loaded(rows.stream().mapToLong(List::size).sum());
+
+        int width = rows.stream().mapToInt(List::size).max().orElse(0);
+        List<List<String>> transposed = new ArrayList<>(width);
+        for (int column = 0; column < width; column++) {
+            List<String> line = new ArrayList<>(rows.size());
+            for (List<String> row : rows) {
+                line.add(column < row.size() ? row.get(column) : "");
+            }
+            transposed.add(line);
+        }
+        try (BufferedWriter writer = Files.newBufferedWriter(csv, MainCSD.CHARSET)) {
+            for (int i = 0; i < transposed.size(); i++) {
+                List<String> row = new ArrayList<>(transposed.get(i));
+                MainCSD.prepareRow(row, i == 0);
+                writer.write(MainCSD.formatCsvLine(row));
+                writer.newLine();
+            }
+        }
+    }
+
+    private static void convertInArena(SheetReader reader, String sheetName, Path csv, Result result) throws IOException {
+        try (CellArena cells = new CellArena()) {
+            reader.readSheet(sheetName, row -> {
+                List<String> target = cells.newRow();
+                for (int column = 0; column < row.getLastCellNum(); column++) {
+                    target.add(row.getCellValue(column));
+                }
+                return true;
+            });
+            result.loaded(cells.getCellCount());
+            try (CellArena transposed = cells.transpose()) {
+                MainCSD.writeCSV(csv.toString(), transposed, ConversionMetrics.get().stage("benchmark", ConversionMetrics.STAGE_WRITE), false);
+            }
+        }
+    }
+
+    private static long median(long[] values) {
+        long[] sorted = values.clone();
+        Arrays.sort(sorted);
+        return sorted[sorted.length / 2];
+    }
+
+    private interface Conversion {
+        void run() throws IOException;
+    }
+
+    /**
+     * Totals of one layout over the measured iterations.
+     */
+    private static final class Result {
+
+        private final String layout;
+        private final long[] wallNanos;
+        private long cells;
+        private long collections;
+        private long pauseMillis;
+        private long maxPauseMillis;
+        private long liveBytes;
+
+        private Result(String layout, int iterations) {
+            this.layout = layout;
+            this.wallNanos = new long[iterations];
+        }
+
+        /**
+         * Called with the sheet held: forces the full collections and records the live heap.
+         */
+        private void loaded(long cellCount) {
+            cells = cellCount;
+            for (int i = 0; i < FULL_GCS; i++) {
+                System.gc();
+            }
+            liveBytes = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+        }
+
+        private void add(long[] pauses) {
+            collections += pauses[0];
+            pauseMillis += pauses[1];
+            maxPauseMillis = Math.max(maxPauseMillis, pauses[2]);
+        }
+
+        private void print(boolean identical) {
+            System.out.println(String.format("%-12s %10d %10.1f %8d %12d %12d %12.1f  %s",
+                    layout, cells, median(wallNanos) / 1e6, collections, pauseMillis, maxPauseMillis,
+                    liveBytes / (1024.0 * 1024.0), identical ? "identical" : "DIFFERS"));
+        }
+    }
+
+    /**
+     * Collects the duration of every collection the JVM reports.
+     */
+    private static final class PauseRecorder implements NotificationListener {
+
+        private final AtomicLong count = new AtomicLong();
+        private final AtomicLong totalMillis = new AtomicLong();
+        private final AtomicLong maxMillis = new AtomicLong();
+
+        private void install() {
+            for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+                if (collector instanceof NotificationEmitter) {
+                    ((NotificationEmitter) collector).addNotificationListener(this, null, null);
+                }
+            }
+        }
+
+        @Override
+        public void handleNotification(Notification notification, Object handback) {
+            if (!GarbageCollectionNotificationInfo.GARBAGE_COLLECTION_NOTIFICATION.equals(notification.getType())) {
+                return;
+            }
+            long duration = GarbageCollectionNotificationInfo.from((CompositeData) notification.getUserData())
+                    .getGcInfo().getDuration();
+            count.incrementAndGet();
+            totalMillis.addAndGet(duration);
+            maxMillis.accumulateAndGet(duration, Math::max);
+        }
+
+        private void reset() {
+            awaitNotifications();
+            count.set(0);
+            totalMillis.set(0);
+            maxMillis.set(0);
+        }
+
+        /**
+         * @return {count, total ms, longest ms} since the last reset
+         */
+        private long[] snapshot() {
+            awaitNotifications();
+            return new long[] {count.get(), totalMillis.get(), maxMillis.get()};
+        }
+
+        /**
+         * Notifications are delivered on a JVM service thread shortly after each collection.
+         */
+        private static void awaitNotifications() {
+            try {
+                Thread.sleep(200);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
@@ -0,0 +1,124 @@
+package org.csdconverter;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.ss.usermodel.Workbook;
+
+/**
+ * Measures how {@link ParallelCsvWriter} scales against the serial
+ * {@link PipelinedCsvWriter} path on one sheet of a usermodel workbook, and
+ * checks that both write the same bytes.
+ * <p>
+ * The workbook is opened once; each path then converts the whole sheet
+ * {@value #WARMUP_RUNS} times to warm up and {@code iterations} times
+ * measured, alternating between the two so that both see the same JIT and
+ * page cache state. Run with
+ * {@code -Djava.util.concurrent.ForkJoinPool.common.parallelism=<n>} for each
+ * number of workers to compare; the serial time is the baseline.
+ * <p>
+ * Usage: {@code ParallelCsvBenchmark <workbook> [sheet] [iterations]}; exits
+ * with status 1 if the outputs differ.
+ */
+public final class ParallelCsvBenchmark {
+
+    static final int WARMUP_RUNS = 2;
+    static final int DEFAULT_ITERATIONS = 5;
+
+    private ParallelCsvBenchmark() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 1) {
+            System.err.println("Usage: ParallelCsvBenchmark <workbook> [sheet] [iterations]");
+            return;
+        }
+        int iterations = args.length > 2 ? Integer.parseInt(args[2]) : DEFAULT_ITERATIONS;
+        Path scratch = Files.createTempDirectory("csd-bench-");
+        try (Workbook workbook = SheetReaders.openWorkbook(new File(args[0]))) {
+            Sheet sheet = args.length > 1 ? workbook.getSheet(args[1]) : workbook.getSheetAt(0);
+            if (sheet == null) {
+                System.err.println("Sheet not found: " + args[1]);
+                return;
+            }
+            SheetConfig config = new SheetConfig(sheet.getSheetName(), "bench", false, false, "NA", new ArrayList<>(), scratch.toString());
+            Path serial = scratch.resolve("serial.csv");
+            Path parallel = scratch.resolve("parallel.csv");
+
+            long[] serialNanos = new long[iterations];
+            long[] parallelNanos = new long[iterations];
+            for (int run = -WARMUP_RUNS; run < iterations; run++) {
+                long serialRun = time(() -> writeSerial(sheet, config, serial));
+                long parallelRun = time(() -> writeParallel(sheet, config, parallel));
+                if (run >= 0) {
+                    serialNanos[run] = serialRun;
+                    parallelNanos[run] = parallelRun;
+                }
+            }
+
+            boolean identical = WriterParityHarness.digest(serial).equals(WriterParityHarness.digest(parallel));
+            long serialMedian = median(serialNanos);
+            long parallelMedian = median(parallelNanos);
+            int rows = sheet.getLastRowNum() + 1;
+            System.out.println(String.format("%-24s %10s %8s %12s %12s %12s %8s  %s",
+                    "sheet", "rows", "workers", "serial ms", "parallel ms", "rows/s", "speedup", "result"));
+            System.out.println(String.format("%-24s %10d %8d %12.1f %12.1f %12.0f %8.2f  %s",
+                    sheet.getSheetName(), rows, ForkJoinPool.getCommonPoolParallelism(),
+                    serialMedian / 1e6, parallelMedian / 1e6, rows / (parallelMedian / 1e9),
+                    (double) serialMedian / parallelMedian, identical ? "identical" : "DIFFERS"));
+            if (!identical) {
+                System.exit(1);
+            }
+        } finally {
+            WriterParityHarness.deleteRecursively(scratch);
+        }
+    }
+
+    private static void writeSerial(Sheet sheet, SheetConfig config, Path csv) throws IOException {
+        SheetExtractor extractor = new SheetExtractor(config);
+        extractor.readHeader(sheet.getRow(0));
+        PipelinedCsvWriter writer = new PipelinedCsvWriter(csv.toString(), stage(ConversionMetrics.STAGE_WRITE));
+        for (int i : extractor.selectRows(sheet.getLastRowNum())) {
+            Row row = sheet.getRow(i);
+            if (row != null) {
+                extractor.extractRow(new DomSheetRow(row), writer::nextRow);
+            }
+        }
+        writer.finish();
+    }
+
+    private static void writeParallel(Sheet sheet, SheetConfig config, Path csv) throws IOException {
+        SheetExtractor extractor = new SheetExtractor(config);
+        extractor.readHeader(sheet.getRow(0));
+        ParallelCsvWriter.write(sheet, extractor, extractor.selectRows(sheet.getLastRowNum()), csv.toString(),
+                stage(ConversionMetrics.STAGE_EXTRACT), stage(ConversionMetrics.STAGE_WRITE));
+    }
+
+    private static StageMetrics stage(String stage) {
+        return ConversionMetrics.get().stage("benchmark", stage);
+    }
+
+    private static long time(Conversion conversion) throws IOException {
+        long start = System.nanoTime();
+        conversion.run();
+        return System.nanoTime() - start;
+    }
+
+    private static long median(long[] values) {
+        long[] sorted = values.clone();
+        Arrays.sort(sorted);
+        return sorted[sorted.length / 2];
+    }
+
+    private interface Conversion {
+        void run() throws IOException;
+    }
+}
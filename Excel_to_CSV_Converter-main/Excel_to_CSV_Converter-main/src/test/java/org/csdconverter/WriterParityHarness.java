@@ -0,0 +1,159 @@
+package org.csdconverter;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+
+/**
+ * Checks that parallel CSV writing never changes the output: every sheet of
+ * every workbook in a corpus is written by {@link MainCSD#writeCSV} once
+ * serially and {@value #PARALLEL_RUNS} times in parallel, as read and
+ * transposed, and the files are compared byte for byte.
+ * <p>
+ * All cells of each sheet are written, without ranges or comment filtering,
+ * so that every cell value in the corpus goes through the encoder. Run with
+ * {@code -Djava.util.concurrent.ForkJoinPool.common.parallelism=<n>} to
+ * vary the number of workers; the result must not depend on it.
+ * <p>
+ * Usage: {@code WriterParityHarness <workbook or folder>...}; exits with
+ * status 1 if any output differs.
+ */
+public final class WriterParityHarness {
+
+    static final int PARALLEL_RUNS = 3;
+
+    private static final Logger logger = Logger.getLogger(WriterParityHarness.class.getName());
+
+    private WriterParityHarness() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.err.println("Usage: WriterParityHarness <workbook or folder>...");
+            return;
+        }
+        List<File> corpus = new ArrayList<>();
+        for (String arg : args) {
+            collect(new File(arg), corpus);
+        }
+        Path scratch = Files.createTempDirectory("csd-parity-");
+        int mismatches = 0;
+        try {
+            System.out.println(String.format("%-40s %-24s %-10s %10s %12s %10s %10s  %s",
+                    "workbook", "sheet", "layout", "rows", "bytes", "serial ms", "par ms", "result"));
+            for (File workbook : corpus) {
+                mismatches += check(workbook, scratch);
+            }
+        } finally {
+            deleteRecursively(scratch);
+        }
+        System.out.println(corpus.size() + " workbook(s), " + mismatches + " mismatch(es), "
+                + ForkJoinPool.getCommonPoolParallelism() + " worker(s)");
+        if (mismatches > 0) {
+            System.exit(1);
+        }
+    }
+
+    private static int check(File workbookFile, Path scratch) {
+        int mismatches = 0;
+        try (SheetReader reader = SheetReaders.open(workbookFile)) {
+            for (String sheetName : reader.getSheetNames()) {
+                try (CellArena cells = new CellArena()) {
+                    reader.readSheet(sheetName, row -> {
+                        List<String> target = cells.newRow();
+                        for (int column = 0; column < row.getLastCellNum(); column++) {
+                            target.add(row.getCellValue(column));
+                        }
+                        return true;
+                    });
+                    mismatches += compare(workbookFile, sheetName, "as read", cells, scratch);
+                    try (CellArena transposed = cells.transpose()) {
+                        mismatches += compare(workbookFile, sheetName, "transposed", transposed, scratch);
+                    }
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            logger.severe("Could not check " + workbookFile + ": " + e.getMessage());
+            mismatches++;
+        }
+        return mismatches;
+    }
+
+    private static int compare(File workbookFile, String sheetName, String layout, CellArena cells, Path scratch) throws IOException {
+        StageMetrics metrics = ConversionMetrics.get().stage("parity", ConversionMetrics.STAGE_WRITE);
+        Path serial = scratch.resolve("serial.csv");
+        long start = System.nanoTime();
+        MainCSD.writeCSV(serial.toString(), cells, metrics, false);
+        long serialNanos = System.nanoTime() - start;
+        String expected = digest(serial);
+
+        String result = "identical";
+        long parallelNanos = 0;
+        for (int run = 0; run < PARALLEL_RUNS; run++) {
+            Path parallel = scratch.resolve("parallel-" + run + ".csv");
+            start = System.nanoTime();
+            MainCSD.writeCSV(parallel.toString(), cells, metrics, true);
+            parallelNanos += System.nanoTime() - start;
+            if (!expected.equals(digest(parallel))) {
+                result = "DIFFERS (parallel run " + (run + 1) + ", " + Files.size(parallel) + " bytes)";
+                break;
+            }
+        }
+        System.out.println(String.format("%-40s %-24s %-10s %10d %12d %10d %10d  %s",
+                workbookFile.getName(), sheetName, layout, cells.getRowCount(), Files.size(serial),
+                serialNanos / 1_000_000, parallelNanos / PARALLEL_RUNS / 1_000_000, result));
+        return "identical".equals(result) ? 0 : 1;
+    }
+
+    private static void collect(File file, List<File> corpus) {
+        if (file.isDirectory()) {
+            File[] children = file.listFiles();
+            if (children != null) {
+                Arrays.sort(children);
+                for (File child : children) {
+                    collect(child, corpus);
+                }
+            }
+        } else {
+            String name = file.getName().toLowerCase();
+            if ((name.endsWith(".xlsx") || name.endsWith(".xls")) && !name.startsWith("~$")) {
+                corpus.add(file);
+            }
+        }
+    }
+
+    static String digest(Path file) throws IOException {
+        try (InputStream in = Files.newInputStream(file)) {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            byte[] buffer = new byte[1 << 16];
+            int read;
+            while ((read = in.read(buffer)) > 0) {
+                digest.update(buffer, 0, read);
+            }
+            StringBuilder hex = new StringBuilder();
+            for (byte b : digest.digest()) {
+                hex.append(String.format("%02x", b));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException(e);
+        }
+    }
+
+    static void deleteRecursively(Path directory) throws IOException {
+        try (Stream<Path> paths = Files.walk(directory)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+}